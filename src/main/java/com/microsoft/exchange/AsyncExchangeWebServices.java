@@ -0,0 +1,176 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange;
+
+import com.microsoft.exchange.messages.AddDelegate;
+import com.microsoft.exchange.messages.AddDelegateResponse;
+import com.microsoft.exchange.messages.ConvertId;
+import com.microsoft.exchange.messages.ConvertIdResponse;
+import com.microsoft.exchange.messages.CopyFolder;
+import com.microsoft.exchange.messages.CopyFolderResponse;
+import com.microsoft.exchange.messages.CopyItem;
+import com.microsoft.exchange.messages.CopyItemResponse;
+import com.microsoft.exchange.messages.CreateAttachment;
+import com.microsoft.exchange.messages.CreateAttachmentResponse;
+import com.microsoft.exchange.messages.CreateFolder;
+import com.microsoft.exchange.messages.CreateFolderResponse;
+import com.microsoft.exchange.messages.CreateItem;
+import com.microsoft.exchange.messages.CreateItemResponse;
+import com.microsoft.exchange.messages.CreateManagedFolder;
+import com.microsoft.exchange.messages.CreateManagedFolderResponse;
+import com.microsoft.exchange.messages.DeleteAttachment;
+import com.microsoft.exchange.messages.DeleteAttachmentResponse;
+import com.microsoft.exchange.messages.DeleteFolder;
+import com.microsoft.exchange.messages.DeleteFolderResponse;
+import com.microsoft.exchange.messages.DeleteItem;
+import com.microsoft.exchange.messages.DeleteItemResponse;
+import com.microsoft.exchange.messages.EmptyFolder;
+import com.microsoft.exchange.messages.EmptyFolderResponse;
+import com.microsoft.exchange.messages.ExpandDL;
+import com.microsoft.exchange.messages.ExpandDLResponse;
+import com.microsoft.exchange.messages.FindFolder;
+import com.microsoft.exchange.messages.FindFolderResponse;
+import com.microsoft.exchange.messages.FindItem;
+import com.microsoft.exchange.messages.FindItemResponse;
+import com.microsoft.exchange.messages.GetAttachment;
+import com.microsoft.exchange.messages.GetAttachmentResponse;
+import com.microsoft.exchange.messages.GetDelegate;
+import com.microsoft.exchange.messages.GetDelegateResponse;
+import com.microsoft.exchange.messages.GetEvents;
+import com.microsoft.exchange.messages.GetEventsResponse;
+import com.microsoft.exchange.messages.GetFolder;
+import com.microsoft.exchange.messages.GetFolderResponse;
+import com.microsoft.exchange.messages.GetItem;
+import com.microsoft.exchange.messages.GetItemResponse;
+import com.microsoft.exchange.messages.GetServerTimeZones;
+import com.microsoft.exchange.messages.GetServerTimeZonesResponse;
+import com.microsoft.exchange.messages.GetUserAvailabilityRequest;
+import com.microsoft.exchange.messages.GetUserAvailabilityResponse;
+import com.microsoft.exchange.messages.GetUserOofSettingsRequest;
+import com.microsoft.exchange.messages.GetUserOofSettingsResponse;
+import com.microsoft.exchange.messages.MoveFolder;
+import com.microsoft.exchange.messages.MoveFolderResponse;
+import com.microsoft.exchange.messages.MoveItem;
+import com.microsoft.exchange.messages.MoveItemResponse;
+import com.microsoft.exchange.messages.RemoveDelegate;
+import com.microsoft.exchange.messages.RemoveDelegateResponse;
+import com.microsoft.exchange.messages.ResolveNames;
+import com.microsoft.exchange.messages.ResolveNamesResponse;
+import com.microsoft.exchange.messages.SendItem;
+import com.microsoft.exchange.messages.SendItemResponse;
+import com.microsoft.exchange.messages.SetUserOofSettingsRequest;
+import com.microsoft.exchange.messages.SetUserOofSettingsResponse;
+import com.microsoft.exchange.messages.Subscribe;
+import com.microsoft.exchange.messages.SubscribeResponse;
+import com.microsoft.exchange.messages.SyncFolderHierarchy;
+import com.microsoft.exchange.messages.SyncFolderHierarchyResponse;
+import com.microsoft.exchange.messages.SyncFolderItems;
+import com.microsoft.exchange.messages.SyncFolderItemsResponse;
+import com.microsoft.exchange.messages.Unsubscribe;
+import com.microsoft.exchange.messages.UnsubscribeResponse;
+import com.microsoft.exchange.messages.UpdateDelegate;
+import com.microsoft.exchange.messages.UpdateDelegateResponse;
+import com.microsoft.exchange.messages.UpdateFolder;
+import com.microsoft.exchange.messages.UpdateFolderResponse;
+import com.microsoft.exchange.messages.UpdateItem;
+import com.microsoft.exchange.messages.UpdateItemResponse;
+
+/**
+ * Asynchronous counterpart to {@link ExchangeWebServices}.
+ * 
+ * Each method accepts the {@link ExchangeRequestContext} (impersonation principal and credentials)
+ * the request should be made with, and returns immediately with an {@link ExchangeResponseFuture}.
+ * Because the context travels with the request, requests for many different mailboxes may be
+ * in flight at the same time on a small, shared pool of threads.
+ */
+public interface AsyncExchangeWebServices {
+
+	ExchangeResponseFuture<ResolveNamesResponse> resolveNames(ResolveNames request, ExchangeRequestContext context);
+
+	ExchangeResponseFuture<ExpandDLResponse> expandDL(ExpandDL request, ExchangeRequestContext context);
+
+	ExchangeResponseFuture<FindFolderResponse> findFolder(FindFolder request, ExchangeRequestContext context);
+
+	ExchangeResponseFuture<FindItemResponse> findItem(FindItem request, ExchangeRequestContext context);
+
+	ExchangeResponseFuture<EmptyFolderResponse> emptyFolder(EmptyFolder request, ExchangeRequestContext context);
+
+	ExchangeResponseFuture<GetFolderResponse> getFolder(GetFolder request, ExchangeRequestContext context);
+
+	ExchangeResponseFuture<ConvertIdResponse> convertId(ConvertId request, ExchangeRequestContext context);
+
+	ExchangeResponseFuture<CreateFolderResponse> createFolder(CreateFolder request, ExchangeRequestContext context);
+
+	ExchangeResponseFuture<DeleteFolderResponse> deleteFolder(DeleteFolder request, ExchangeRequestContext context);
+
+	ExchangeResponseFuture<UpdateFolderResponse> updateFolder(UpdateFolder request, ExchangeRequestContext context);
+
+	ExchangeResponseFuture<MoveFolderResponse> moveFolder(MoveFolder request, ExchangeRequestContext context);
+
+	ExchangeResponseFuture<CopyFolderResponse> copyFolder(CopyFolder request, ExchangeRequestContext context);
+
+	ExchangeResponseFuture<SubscribeResponse> subscribe(Subscribe request, ExchangeRequestContext context);
+
+	ExchangeResponseFuture<UnsubscribeResponse> unsubscribe(Unsubscribe request, ExchangeRequestContext context);
+
+	ExchangeResponseFuture<GetEventsResponse> getEvents(GetEvents request, ExchangeRequestContext context);
+
+	ExchangeResponseFuture<SyncFolderHierarchyResponse> syncFolderHierarchy(SyncFolderHierarchy request, ExchangeRequestContext context);
+
+	ExchangeResponseFuture<SyncFolderItemsResponse> syncFolderItems(SyncFolderItems request, ExchangeRequestContext context);
+
+	ExchangeResponseFuture<CreateManagedFolderResponse> createManagedFolder(CreateManagedFolder request, ExchangeRequestContext context);
+
+	ExchangeResponseFuture<GetItemResponse> getItem(GetItem request, ExchangeRequestContext context);
+
+	ExchangeResponseFuture<CreateItemResponse> createItem(CreateItem request, ExchangeRequestContext context);
+
+	ExchangeResponseFuture<DeleteItemResponse> deleteItem(DeleteItem request, ExchangeRequestContext context);
+
+	ExchangeResponseFuture<UpdateItemResponse> updateItem(UpdateItem request, ExchangeRequestContext context);
+
+	ExchangeResponseFuture<SendItemResponse> sendItem(SendItem request, ExchangeRequestContext context);
+
+	ExchangeResponseFuture<MoveItemResponse> moveItem(MoveItem request, ExchangeRequestContext context);
+
+	ExchangeResponseFuture<CopyItemResponse> copyItem(CopyItem request, ExchangeRequestContext context);
+
+	ExchangeResponseFuture<CreateAttachmentResponse> createAttachment(CreateAttachment request, ExchangeRequestContext context);
+
+	ExchangeResponseFuture<DeleteAttachmentResponse> deleteAttachment(DeleteAttachment request, ExchangeRequestContext context);
+
+	ExchangeResponseFuture<GetAttachmentResponse> getAttachment(GetAttachment request, ExchangeRequestContext context);
+
+	ExchangeResponseFuture<GetDelegateResponse> getDelegate(GetDelegate request, ExchangeRequestContext context);
+
+	ExchangeResponseFuture<AddDelegateResponse> addDelegate(AddDelegate request, ExchangeRequestContext context);
+
+	ExchangeResponseFuture<RemoveDelegateResponse> removeDelegate(RemoveDelegate request, ExchangeRequestContext context);
+
+	ExchangeResponseFuture<UpdateDelegateResponse> updateDelegate(UpdateDelegate request, ExchangeRequestContext context);
+
+	ExchangeResponseFuture<GetUserAvailabilityResponse> getUserAvailability(GetUserAvailabilityRequest request, ExchangeRequestContext context);
+
+	ExchangeResponseFuture<GetUserOofSettingsResponse> getUserOofSettings(GetUserOofSettingsRequest request, ExchangeRequestContext context);
+
+	ExchangeResponseFuture<SetUserOofSettingsResponse> setUserOofSettings(SetUserOofSettingsRequest request, ExchangeRequestContext context);
+
+	ExchangeResponseFuture<GetServerTimeZonesResponse> getServerTimeZones(GetServerTimeZones request, ExchangeRequestContext context);
+
+}
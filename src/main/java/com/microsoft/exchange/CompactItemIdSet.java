@@ -0,0 +1,500 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.apache.commons.lang.Validate;
+
+import com.microsoft.exchange.types.ItemIdType;
+
+/**
+ * An insertion ordered set of item ids that uses a fraction of the heap of a {@link Set} of {@link ItemIdType}.
+ * 
+ * Ids are stored back to back in a single byte array: Exchange ids are base64, so they are kept decoded 
+ * (any id that is not canonical base64 is kept as UTF-8 instead, and still round trips exactly). 
+ * Membership is an open addressing table of entry indexes; no object is allocated per id. ChangeKeys are
+ * optional and held apart from the ids; only the id takes part in equality.
+ * 
+ * Adding an id that is already present keeps its position and replaces its ChangeKey if a new one is given.
+ * Ids cannot be removed; {@link #difference(CompactItemIdSet)} builds a new set instead.
+ * 
+ * Also an {@link ItemIdHandler}, so an IdOnly response can be read straight into it.
+ * Instances are not thread safe.
+ */
+public class CompactItemIdSet implements Iterable<ItemIdType>, ItemIdHandler {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final byte BASE64 = 0;
+	private static final byte UTF_8 = 1;
+	
+	/** the tagged bytes of every entry, back to back */
+	private byte[] arena;
+	private int arenaLength;
+	/** offsets[i] is where entry i starts, offsets[size] where the next will */
+	private int[] offsets;
+	private int[] hashes;
+	/** entry index + 1, 0 for an empty slot; length is a power of 2 */
+	private int[] table;
+	/** created on the first ChangeKey */
+	private String[] changeKeys;
+	private int size;
+	
+	public CompactItemIdSet() {
+		this(16);
+	}
+	
+	/**
+	 * 
+	 * @param expectedSize the number of ids to allocate space for up front
+	 */
+	public CompactItemIdSet(int expectedSize) {
+		Validate.isTrue(expectedSize >= 0, "expectedSize cannot be negative");
+		int capacity = Math.max(expectedSize, 4);
+		// a typical decoded id is about 100 bytes
+		arena = new byte[capacity * 64];
+		offsets = new int[capacity + 1];
+		hashes = new int[capacity];
+		table = new int[tableSizeFor(capacity)];
+	}
+	
+	/**
+	 * 
+	 * @param itemIds
+	 * @return a set of the ids (and ChangeKeys) in iteration order
+	 */
+	public static CompactItemIdSet of(Collection<ItemIdType> itemIds) {
+		CompactItemIdSet set = new CompactItemIdSet(itemIds.size());
+		set.addAll(itemIds);
+		return set;
+	}
+	
+	/**
+	 * @return the number of ids
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * @return true if there are no ids
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	/**
+	 * 
+	 * @param id
+	 * @param changeKey may be null
+	 * @return true if the id was not already present
+	 */
+	public boolean add(String id, String changeKey) {
+		Validate.notNull(id, "id argument cannot be null");
+		byte[] encoded = encode(id);
+		int hash = hash(encoded, 0, encoded.length);
+		int index = indexOf(encoded, 0, encoded.length, hash);
+		if(index >= 0) {
+			if(changeKey != null) {
+				setChangeKey(index, changeKey);
+			}
+			return false;
+		}
+		append(encoded, 0, encoded.length, hash, changeKey);
+		return true;
+	}
+	
+	/**
+	 * 
+	 * @param itemId
+	 * @return true if the id was not already present
+	 */
+	public boolean add(ItemIdType itemId) {
+		Validate.notNull(itemId, "itemId argument cannot be null");
+		return add(itemId.getId(), itemId.getChangeKey());
+	}
+	
+	/**
+	 * 
+	 * @param itemIds
+	 * @return true if any id was not already present
+	 */
+	public boolean addAll(Collection<ItemIdType> itemIds) {
+		boolean changed = false;
+		for(ItemIdType itemId : itemIds) {
+			changed |= add(itemId);
+		}
+		return changed;
+	}
+	
+	/**
+	 * Add the ids of another set without decoding them.
+	 * 
+	 * @param other
+	 * @return true if any id was not already present
+	 */
+	public boolean addAll(CompactItemIdSet other) {
+		boolean changed = false;
+		for(int i = 0; i < other.size; i++) {
+			int start = other.offsets[i];
+			int length = other.offsets[i + 1] - start;
+			String changeKey = other.getChangeKey(i);
+			int index = indexOf(other.arena, start, length, other.hashes[i]);
+			if(index >= 0) {
+				if(changeKey != null) {
+					setChangeKey(index, changeKey);
+				}
+			} else {
+				append(other.arena, start, length, other.hashes[i], changeKey);
+				changed = true;
+			}
+		}
+		return changed;
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.ItemIdHandler#itemId(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public void itemId(String id, String changeKey) {
+		add(id, changeKey);
+	}
+	
+	/**
+	 * 
+	 * @param id
+	 * @return true if the id is present
+	 */
+	public boolean contains(String id) {
+		return indexOf(id) >= 0;
+	}
+	
+	/**
+	 * 
+	 * @param itemId
+	 * @return true if the id is present, regardless of ChangeKey
+	 */
+	public boolean contains(ItemIdType itemId) {
+		return itemId != null && itemId.getId() != null && contains(itemId.getId());
+	}
+	
+	/**
+	 * 
+	 * @param id
+	 * @return the insertion index of the id, or -1 if it is not present
+	 */
+	public int indexOf(String id) {
+		if(id == null) {
+			return -1;
+		}
+		byte[] encoded = encode(id);
+		return indexOf(encoded, 0, encoded.length, hash(encoded, 0, encoded.length));
+	}
+	
+	/**
+	 * 
+	 * @param index
+	 * @return the id at the insertion index
+	 */
+	public String getId(int index) {
+		checkIndex(index);
+		int start = offsets[index];
+		int length = offsets[index + 1] - start;
+		if(arena[start] == BASE64) {
+			return DatatypeConverter.printBase64Binary(Arrays.copyOfRange(arena, start + 1, start + length));
+		}
+		return new String(arena, start + 1, length - 1, UTF8);
+	}
+	
+	/**
+	 * 
+	 * @param index
+	 * @return the ChangeKey of the id at the insertion index, or null
+	 */
+	public String getChangeKey(int index) {
+		checkIndex(index);
+		return changeKeys == null ? null : changeKeys[index];
+	}
+	
+	/**
+	 * 
+	 * @param id
+	 * @return the ChangeKey of the id, or null if it has none or is not present
+	 */
+	public String getChangeKey(String id) {
+		int index = indexOf(id);
+		return index < 0 ? null : getChangeKey(index);
+	}
+	
+	/**
+	 * 
+	 * @param index
+	 * @return a new {@link ItemIdType} for the id at the insertion index
+	 */
+	public ItemIdType getItemId(int index) {
+		ItemIdType itemId = new ItemIdType();
+		itemId.setId(getId(index));
+		itemId.setChangeKey(getChangeKey(index));
+		return itemId;
+	}
+	
+	/**
+	 * Compares the stored bytes directly; neither set's ids are decoded.
+	 * 
+	 * @param other
+	 * @return a new set of the ids (with their ChangeKeys) in this set but not in other, in this set's order
+	 */
+	public CompactItemIdSet difference(CompactItemIdSet other) {
+		Validate.notNull(other, "other argument cannot be null");
+		CompactItemIdSet result = new CompactItemIdSet(Math.max(0, size - other.size));
+		for(int i = 0; i < size; i++) {
+			int start = offsets[i];
+			int length = offsets[i + 1] - start;
+			if(other.indexOf(arena, start, length, hashes[i]) < 0) {
+				result.append(arena, start, length, hashes[i], getChangeKey(i));
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * 
+	 * @return new {@link ItemIdType}s for every id, in insertion order
+	 */
+	public List<ItemIdType> toItemIdList() {
+		List<ItemIdType> itemIds = new ArrayList<ItemIdType>(size);
+		for(int i = 0; i < size; i++) {
+			itemIds.add(getItemId(i));
+		}
+		return itemIds;
+	}
+	
+	/**
+	 * 
+	 * @return new {@link ItemIdType}s for every id, in insertion order
+	 */
+	public Set<ItemIdType> toItemIdSet() {
+		return new LinkedHashSet<ItemIdType>(toItemIdList());
+	}
+	
+	/**
+	 * Creates each {@link ItemIdType} as it is reached, so the set can be walked without materialising all of them.
+	 * 
+	 * @see java.lang.Iterable#iterator()
+	 */
+	@Override
+	public Iterator<ItemIdType> iterator() {
+		return new Iterator<ItemIdType>() {
+			private int next = 0;
+			@Override
+			public boolean hasNext() {
+				return next < size;
+			}
+			@Override
+			public ItemIdType next() {
+				if(next >= size) {
+					throw new NoSuchElementException();
+				}
+				return getItemId(next++);
+			}
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("CompactItemIdSet does not support removal");
+			}
+		};
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "CompactItemIdSet [size=" + size + ", arenaBytes=" + arenaLength + "]";
+	}
+	
+	private void checkIndex(int index) {
+		if(index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+		}
+	}
+	
+	private void setChangeKey(int index, String changeKey) {
+		if(changeKeys == null) {
+			changeKeys = new String[hashes.length];
+		}
+		changeKeys[index] = changeKey;
+	}
+	
+	private int indexOf(byte[] bytes, int start, int length, int hash) {
+		int mask = table.length - 1;
+		for(int slot = hash & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+			int index = table[slot] - 1;
+			if(hashes[index] == hash && equalsEntry(index, bytes, start, length)) {
+				return index;
+			}
+		}
+		return -1;
+	}
+	
+	private boolean equalsEntry(int index, byte[] bytes, int start, int length) {
+		int entryStart = offsets[index];
+		if(offsets[index + 1] - entryStart != length) {
+			return false;
+		}
+		for(int i = 0; i < length; i++) {
+			if(arena[entryStart + i] != bytes[start + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private void append(byte[] bytes, int start, int length, int hash, String changeKey) {
+		if(size == hashes.length) {
+			int capacity = hashes.length * 2;
+			offsets = Arrays.copyOf(offsets, capacity + 1);
+			hashes = Arrays.copyOf(hashes, capacity);
+			if(changeKeys != null) {
+				changeKeys = Arrays.copyOf(changeKeys, capacity);
+			}
+		}
+		if(arenaLength + length > arena.length) {
+			arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaLength + length));
+		}
+		System.arraycopy(bytes, start, arena, arenaLength, length);
+		arenaLength += length;
+		hashes[size] = hash;
+		offsets[size + 1] = arenaLength;
+		if(changeKey != null) {
+			setChangeKey(size, changeKey);
+		}
+		size++;
+		if(size * 2 > table.length) {
+			rehash(table.length * 2);
+		} else {
+			insert(size - 1);
+		}
+	}
+	
+	private void insert(int index) {
+		int mask = table.length - 1;
+		int slot = hashes[index] & mask;
+		while(table[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		table[slot] = index + 1;
+	}
+	
+	private void rehash(int tableSize) {
+		table = new int[tableSize];
+		for(int i = 0; i < size; i++) {
+			insert(i);
+		}
+	}
+	
+	private static int tableSizeFor(int capacity) {
+		int tableSize = 16;
+		while(tableSize < capacity * 2) {
+			tableSize <<= 1;
+		}
+		return tableSize;
+	}
+	
+	private static int hash(byte[] bytes, int start, int length) {
+		int h = 0x811c9dc5;
+		for(int i = start; i < start + length; i++) {
+			h = (h ^ bytes[i]) * 0x01000193;
+		}
+		// spread the bits the table mask keeps
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		return h;
+	}
+	
+	/**
+	 * 
+	 * @param id
+	 * @return the id decoded and tagged {@link #BASE64} if it is canonical base64, otherwise UTF-8 tagged {@link #UTF_8}
+	 */
+	static byte[] encode(String id) {
+		if(isCanonicalBase64(id)) {
+			byte[] decoded = DatatypeConverter.parseBase64Binary(id);
+			byte[] encoded = new byte[decoded.length + 1];
+			encoded[0] = BASE64;
+			System.arraycopy(decoded, 0, encoded, 1, decoded.length);
+			return encoded;
+		}
+		byte[] utf8 = id.getBytes(UTF8);
+		byte[] encoded = new byte[utf8.length + 1];
+		encoded[0] = UTF_8;
+		System.arraycopy(utf8, 0, encoded, 1, utf8.length);
+		return encoded;
+	}
+	
+	/**
+	 * 
+	 * @param value
+	 * @return true if value is padded base64 that decoding and re-encoding reproduces exactly
+	 */
+	static boolean isCanonicalBase64(String value) {
+		int length = value.length();
+		if(length == 0 || length % 4 != 0) {
+			return false;
+		}
+		int padding = value.charAt(length - 1) == '=' ? (value.charAt(length - 2) == '=' ? 2 : 1) : 0;
+		for(int i = 0; i < length - padding; i++) {
+			if(base64Value(value.charAt(i)) < 0) {
+				return false;
+			}
+		}
+		// unused low bits of the last character must be zero
+		int last = base64Value(value.charAt(length - padding - 1));
+		return padding == 0 || (padding == 1 && (last & 0x3) == 0) || (padding == 2 && (last & 0xf) == 0);
+	}
+	
+	private static int base64Value(char c) {
+		if(c >= 'A' && c <= 'Z') {
+			return c - 'A';
+		}
+		if(c >= 'a' && c <= 'z') {
+			return c - 'a' + 26;
+		}
+		if(c >= '0' && c <= '9') {
+			return c - '0' + 52;
+		}
+		if(c == '+') {
+			return 62;
+		}
+		if(c == '/') {
+			return 63;
+		}
+		return -1;
+	}
+}
@@ -32,7 +32,6 @@ import java.util.List;
 import java.util.TimeZone;
 
 import javax.xml.datatype.DatatypeConfigurationException;
-import javax.xml.datatype.DatatypeConstants;
 import javax.xml.datatype.DatatypeFactory;
 import javax.xml.datatype.XMLGregorianCalendar;
 
@@ -44,6 +43,8 @@ import org.apache.commons.logging.LogFactory;
 import org.joda.time.Interval;
 import org.joda.time.Period;
 
+import com.microsoft.exchange.impl.ThreadLocalTimeZoneContextSource;
+
 /**
  * @author Nicholas Blair
  */
@@ -53,6 +54,29 @@ public class DateHelp {
 
 	protected static final String DATE_TIME_FORMAT = "yyyyMMdd-HHmm";
 	private static final String DATE_FORMAT = "yyyy-MM-dd";
+	private static final ThreadLocal<SimpleDateFormat> dateTimeFormat = new ThreadLocal<SimpleDateFormat>() {
+		@Override
+		protected SimpleDateFormat initialValue() {
+			return new SimpleDateFormat(DATE_TIME_FORMAT);
+		}
+	};
+	private static final ThreadLocal<SimpleDateFormat> dateFormat = new ThreadLocal<SimpleDateFormat>() {
+		@Override
+		protected SimpleDateFormat initialValue() {
+			return new SimpleDateFormat(DATE_FORMAT);
+		}
+	};
+	
+	/**
+	 * @param format
+	 * @return the current thread's format, reset to the JVM default time zone
+	 */
+	private static SimpleDateFormat threadFormat(ThreadLocal<SimpleDateFormat> format) {
+		SimpleDateFormat df = format.get();
+		df.setTimeZone(TimeZone.getDefault());
+		return df;
+	}
+	
 	/**
 	 * @return a new instance of {@link SimpleDateFormat} that uses this application's common Date/Time format ("yyyyMMdd-HHmm").
 	 */
@@ -72,7 +96,7 @@ public class DateHelp {
 			return null;
 		}
 		try {
-			Date time = getDateTimeFormat().parse(timePhrase);
+			Date time = threadFormat(dateTimeFormat).parse(timePhrase);
 			time = DateUtils.truncate(time, Calendar.MINUTE);
 			return time;
 		} catch (ParseException e) {
@@ -83,44 +107,47 @@ public class DateHelp {
 	/**
 	 * 
 	 * @param date
-	 * @return
+	 * @return the date as local time (without a zone offset) in the time zone of the current request, see
+	 * {@link ThreadLocalTimeZoneContextSource#getCurrentTimeZone()}, or the JVM default time zone if there is none
 	 */
 	public static XMLGregorianCalendar convertDateToXMLGregorianCalendar(final Date date) {
 		return convertDateToXMLGregorianCalendar(date,null);
 	}
 	
+	/**
+	 * 
+	 * @param date
+	 * @param tz the time zone to write the date in, with its offset; null for the local time of {@link #convertDateToXMLGregorianCalendar(Date)}
+	 * @return the date as an {@link XMLGregorianCalendar}
+	 * @see XmlDateTimes#toXMLGregorianCalendar(Date, TimeZone, boolean)
+	 */
 	public static XMLGregorianCalendar convertDateToXMLGregorianCalendar(final Date date, TimeZone tz) {
-		
 		if(date == null) {
 			return null;
 		}
-		DateTime dt = new DateTime(date);
-		GregorianCalendar calendar = new GregorianCalendar();
-//		calendar.setTime(date);
-		calendar.setTimeInMillis(dt.getTime());
-		if(tz != null){
-			calendar.setTimeZone(tz);
-		}
-		
-		XMLGregorianCalendar xmlDate = null;
-		
-		try {
-			 xmlDate = DatatypeFactory.newInstance().newXMLGregorianCalendar(calendar);
-		} catch (DatatypeConfigurationException e) {
-			throw new IllegalStateException("unable to invoke DatatypeFactory.newInstance", e);
+		// whole seconds, as iCalendar
+		long millis = date.getTime();
+		Date seconds = new Date(millis - ((millis % 1000) + 1000) % 1000);
+		if(tz != null) {
+			return XmlDateTimes.toXMLGregorianCalendar(seconds, tz, true);
 		}
-		if(tz == null) xmlDate.setTimezone(DatatypeConstants.FIELD_UNDEFINED);
-		
-		
-		long msDiff = Math.abs(xmlDate.toGregorianCalendar().getTime().getTime() - date.getTime());
-		org.apache.commons.lang.Validate.isTrue(msDiff < 1000, "original time ("+xmlDate.toGregorianCalendar().getTime()+") differs from converted time ("+date+") by more than 1000ms.  Check the Timezones?");
-		
-		return xmlDate;
-		
+		// local times are interpreted by exchange in the request's TimeZoneContext, which need not be the JVM default
+		TimeZone localTimeZone = ThreadLocalTimeZoneContextSource.getCurrentTimeZone();
+		return XmlDateTimes.toXMLGregorianCalendar(seconds, localTimeZone == null ? TimeZone.getDefault() : localTimeZone, false);
 	}
 
+	/**
+	 * 
+	 * @param calendar
+	 * @return the instant; a calendar without a zone offset is read in the time zone of the current request, 
+	 * or the JVM default time zone if there is none
+	 */
+	public static Date convertXMLGregorianCalendarToDate(XMLGregorianCalendar calendar){
+		return XmlDateTimes.toDate(calendar, ThreadLocalTimeZoneContextSource.getCurrentTimeZone());
+	}
+	
 	public static DateTime convertXMLGregorianCalendarToDateTime(XMLGregorianCalendar calendar){
-		return new DateTime(calendar.toGregorianCalendar().getTime());
+		return new DateTime(convertXMLGregorianCalendarToDate(calendar));
 	}
 	
 	/**
@@ -129,7 +156,7 @@ public class DateHelp {
 	 * @return
 	 */
 	public static Date makeDate(String value) {
-		SimpleDateFormat df = new SimpleDateFormat(DATE_FORMAT);
+		SimpleDateFormat df = threadFormat(dateFormat);
 		try {
 			Date date = df.parse(value);
 			return DateUtils.truncate(date, java.util.Calendar.DATE);
@@ -144,7 +171,7 @@ public class DateHelp {
 	 * @return
 	 */
 	public static Date makeDateTime(String value) {
-		SimpleDateFormat df = new SimpleDateFormat(DATE_TIME_FORMAT);
+		SimpleDateFormat df = threadFormat(dateTimeFormat);
 		try {
 			Date date = df.parse(value);
 			return DateUtils.truncate(date, java.util.Calendar.MINUTE);
@@ -218,12 +245,38 @@ public class DateHelp {
 		return intervals;
 	}
 
+	/**
+	 * Split the range between start and end into count contiguous intervals of (nearly) equal length.
+	 * 
+	 * @param start
+	 * @param end
+	 * @param count
+	 * @return a list of count intervals, the first starting at start and the last ending at end
+	 */
+	public static List<Interval> generateIntervals(Date start, Date end, int count){
+		org.apache.commons.lang.Validate.isTrue(end.after(start));
+		org.apache.commons.lang.Validate.isTrue(count > 0, "count must be greater than 0");
+		long startInstant = start.getTime();
+		long span = end.getTime() - startInstant;
+		count = (int) Math.min(count, span);
+		
+		List<Interval> intervals = new ArrayList<Interval>(count);
+		long intervalStart = startInstant;
+		for(int i = 1; i <= count; i++) {
+			long intervalEnd = (i == count) ? end.getTime() : startInstant + (span * i) / count;
+			intervals.add(new Interval(intervalStart, intervalEnd));
+			intervalStart = intervalEnd;
+		}
+		return intervals;
+	}
+
 	/**
 	 * @return
 	 * @throws DatatypeConfigurationException
 	 */
 	public static XMLGregorianCalendar getXMLGregorianCalendarNow() throws DatatypeConfigurationException  {
-       GregorianCalendar gregorianCalendar = new GregorianCalendar();
+       TimeZone timeZone = ThreadLocalTimeZoneContextSource.getCurrentTimeZone();
+       GregorianCalendar gregorianCalendar = timeZone == null ? new GregorianCalendar() : new GregorianCalendar(timeZone);
        return getXMLGregorianCalendar(gregorianCalendar);
     }
 	
@@ -233,7 +286,7 @@ public class DateHelp {
 	}
 	
 	private static XMLGregorianCalendar getXMLGregorianCalendar(GregorianCalendar gregorianCalendar) throws DatatypeConfigurationException{
-		DatatypeFactory datatypeFactory = DatatypeFactory.newInstance();
+		DatatypeFactory datatypeFactory = XmlDateTimes.getDatatypeFactory();
         XMLGregorianCalendar now = datatypeFactory.newXMLGregorianCalendar(gregorianCalendar);
         return now;
 	}
@@ -53,6 +53,9 @@ public interface ExchangeEventConverter {
 	 * 
 	 * The {@link Calendar} returned will also contain {@link VTimeZone}
 	 * components corresponding to any {@link TimeZoneDefinitionType} that can be accurately mapped to a {@link VTimeZone}.
+	 * DTSTART and DTEND carry the TZID of the item's StartTimeZone and EndTimeZone where these map to a {@link VTimeZone}, 
+	 * and are UTC otherwise. Only {@link VTimeZone}s named by the TZID of a date-time are included, each once, 
+	 * ahead of the first {@link VEvent} that refers to it.
 	 * 
 	 * More info on what a succesful timezone mapping is...
 	 * 
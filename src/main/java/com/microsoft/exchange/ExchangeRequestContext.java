@@ -0,0 +1,126 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.Validate;
+import org.apache.http.auth.Credentials;
+
+import com.microsoft.exchange.types.ConnectingSIDType;
+
+/**
+ * Immutable description of "who" a single Exchange Web Services request is made for.
+ * 
+ * Instances carry the impersonation {@link ConnectingSIDType}, (optionally) the
+ * {@link Credentials} and (optionally) the time zone of the mailbox with the request itself, 
+ * rather than relying on values previously stored in a {@link ThreadLocal} by the calling thread
+ * or on the JVM default time zone.
+ * 
+ * @see AsyncExchangeWebServices
+ */
+public final class ExchangeRequestContext {
+
+	private final ConnectingSIDType connectingSID;
+	private final Credentials credentials;
+	private final String timeZoneId;
+	
+	/**
+	 * @param connectingSID the impersonation principal, may be null
+	 * @param credentials the credentials to authenticate with, may be null to use the configured defaults
+	 */
+	public ExchangeRequestContext(ConnectingSIDType connectingSID, Credentials credentials) {
+		this(connectingSID, credentials, null);
+	}
+	
+	/**
+	 * @param connectingSID the impersonation principal, may be null
+	 * @param credentials the credentials to authenticate with, may be null to use the configured defaults
+	 * @param timeZoneId the IANA time zone id (e.g. "America/Chicago") for the request's dates and TimeZoneContext, 
+	 * may be null to use the default time zone
+	 */
+	public ExchangeRequestContext(ConnectingSIDType connectingSID, Credentials credentials, String timeZoneId) {
+		this.connectingSID = connectingSID;
+		this.credentials = credentials;
+		this.timeZoneId = timeZoneId;
+	}
+	
+	/**
+	 * Construct a context that impersonates the specified user principal name using the default credentials.
+	 * 
+	 * @param upn
+	 * @return a new {@link ExchangeRequestContext}
+	 */
+	public static ExchangeRequestContext forPrincipalName(String upn) {
+		return forPrincipalName(upn, null);
+	}
+	
+	/**
+	 * Construct a context that impersonates the specified user principal name.
+	 * 
+	 * @param upn
+	 * @param credentials may be null
+	 * @return a new {@link ExchangeRequestContext}
+	 */
+	public static ExchangeRequestContext forPrincipalName(String upn, Credentials credentials) {
+		Validate.isTrue(StringUtils.isNotBlank(upn), "upn argument cannot be blank");
+		ConnectingSIDType connectingSID = new ConnectingSIDType();
+		connectingSID.setPrincipalName(upn);
+		return new ExchangeRequestContext(connectingSID, credentials);
+	}
+
+	/**
+	 * 
+	 * @param timeZoneId an IANA time zone id, may be null
+	 * @return a copy of this context with the time zone
+	 */
+	public ExchangeRequestContext withTimeZoneId(String timeZoneId) {
+		return new ExchangeRequestContext(connectingSID, credentials, timeZoneId);
+	}
+
+	/**
+	 * @return the connectingSID, may be null
+	 */
+	public ConnectingSIDType getConnectingSID() {
+		return connectingSID;
+	}
+
+	/**
+	 * @return the credentials, may be null
+	 */
+	public Credentials getCredentials() {
+		return credentials;
+	}
+	
+	/**
+	 * @return the timeZoneId, may be null
+	 */
+	public String getTimeZoneId() {
+		return timeZoneId;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "ExchangeRequestContext [connectingSID=" + connectingSID
+				+ ", credentials=" + (credentials == null ? null : credentials.getUserPrincipal()) 
+				+ ", timeZoneId=" + timeZoneId + "]";
+	}
+}
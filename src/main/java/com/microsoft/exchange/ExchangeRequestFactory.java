@@ -42,12 +42,17 @@ import com.microsoft.exchange.messages.DeleteItem;
 import com.microsoft.exchange.messages.EmptyFolder;
 import com.microsoft.exchange.messages.FindFolder;
 import com.microsoft.exchange.messages.FindItem;
+import com.microsoft.exchange.messages.GetEvents;
 import com.microsoft.exchange.messages.GetFolder;
 import com.microsoft.exchange.messages.GetItem;
 import com.microsoft.exchange.messages.GetServerTimeZones;
 import com.microsoft.exchange.messages.GetUserAvailabilityRequest;
 import com.microsoft.exchange.messages.GetUserConfiguration;
 import com.microsoft.exchange.messages.ResolveNames;
+import com.microsoft.exchange.messages.Subscribe;
+import com.microsoft.exchange.messages.SyncFolderHierarchy;
+import com.microsoft.exchange.messages.SyncFolderItems;
+import com.microsoft.exchange.messages.Unsubscribe;
 import com.microsoft.exchange.messages.UpdateFolder;
 import com.microsoft.exchange.types.AcceptItemType;
 import com.microsoft.exchange.types.AffectedTaskOccurrencesType;
@@ -99,11 +104,14 @@ import com.microsoft.exchange.types.NonEmptyArrayOfFieldOrdersType;
 import com.microsoft.exchange.types.NonEmptyArrayOfFolderChangeDescriptionsType;
 import com.microsoft.exchange.types.NonEmptyArrayOfFolderChangesType;
 import com.microsoft.exchange.types.NonEmptyArrayOfFoldersType;
+import com.microsoft.exchange.types.NonEmptyArrayOfNotificationEventTypesType;
 import com.microsoft.exchange.types.NonEmptyArrayOfPathsToElementType;
+import com.microsoft.exchange.types.NotificationEventTypeType;
 import com.microsoft.exchange.types.ObjectFactory;
 import com.microsoft.exchange.types.PathToExtendedFieldType;
 import com.microsoft.exchange.types.PathToUnindexedFieldType;
 import com.microsoft.exchange.types.PermissionActionType;
+import com.microsoft.exchange.types.PullSubscriptionRequestType;
 import com.microsoft.exchange.types.ResolveNamesSearchScopeType;
 import com.microsoft.exchange.types.RestrictionType;
 import com.microsoft.exchange.types.SearchFolderTraversalType;
@@ -112,6 +120,7 @@ import com.microsoft.exchange.types.SearchParametersType;
 import com.microsoft.exchange.types.SetFolderFieldType;
 import com.microsoft.exchange.types.SortDirectionType;
 import com.microsoft.exchange.types.SuggestionsViewOptions;
+import com.microsoft.exchange.types.SyncFolderItemsScopeType;
 import com.microsoft.exchange.types.TargetFolderIdType;
 import com.microsoft.exchange.types.TasksFolderType;
 import com.microsoft.exchange.types.TimeZone;
@@ -1187,6 +1196,97 @@ public class ExchangeRequestFactory {
 	}
 
 
+	/**
+	 * SyncFolderItems operations
+	 * 
+	 * @param folderId a {@link FolderIdType} or {@link DistinguishedFolderIdType}
+	 * @param syncState the SyncState returned by the previous request, or null to start from the beginning
+	 * @param maxChangesReturned 1 to 512
+	 * @return an IdOnly SyncFolderItems request for the normal items of the folder
+	 */
+	public SyncFolderItems constructSyncFolderItems(BaseFolderIdType folderId, String syncState, int maxChangesReturned) {
+		Validate.notNull(folderId, "folderId cannot be null");
+		Validate.isTrue(maxChangesReturned > 0 && maxChangesReturned <= 512, "maxChangesReturned must be between 1 and 512");
+		SyncFolderItems request = new SyncFolderItems();
+		request.setItemShape(constructResponseShape(DefaultShapeNamesType.ID_ONLY, getAdditionalExtendedProperties()));
+		request.setSyncFolderId(constructTargetFolderId(folderId));
+		request.setSyncState(syncState);
+		request.setMaxChangesReturned(maxChangesReturned);
+		request.setSyncScope(SyncFolderItemsScopeType.NORMAL_ITEMS);
+		return request;
+	}
+	
+	/**
+	 * 
+	 * @param folderId a {@link FolderIdType} or {@link DistinguishedFolderIdType}, the root of the hierarchy
+	 * @param syncState the SyncState returned by the previous request, or null to start from the beginning
+	 * @return an IdOnly SyncFolderHierarchy request for the folders below folderId
+	 */
+	public SyncFolderHierarchy constructSyncFolderHierarchy(BaseFolderIdType folderId, String syncState) {
+		Validate.notNull(folderId, "folderId cannot be null");
+		FolderResponseShapeType folderShape = new FolderResponseShapeType();
+		folderShape.setBaseShape(DefaultShapeNamesType.ID_ONLY);
+		SyncFolderHierarchy request = new SyncFolderHierarchy();
+		request.setFolderShape(folderShape);
+		request.setSyncFolderId(constructTargetFolderId(folderId));
+		request.setSyncState(syncState);
+		return request;
+	}
+	
+	private TargetFolderIdType constructTargetFolderId(BaseFolderIdType folderId) {
+		TargetFolderIdType targetFolderId = new TargetFolderIdType();
+		if(folderId instanceof DistinguishedFolderIdType) {
+			targetFolderId.setDistinguishedFolderId((DistinguishedFolderIdType) folderId);
+		} else if(folderId instanceof FolderIdType) {
+			targetFolderId.setFolderId((FolderIdType) folderId);
+		} else {
+			throw new IllegalArgumentException("unsupported folderId type "+folderId.getClass());
+		}
+		return targetFolderId;
+	}
+
+	/**
+	 *
+	 * @param folderIds the folders to watch, must not be empty
+	 * @param eventTypes the events to report, must not be empty
+	 * @param watermark the watermark to resume from, or null to start a new subscription
+	 * @param timeoutMinutes minutes without a GetEvents request before Exchange discards the subscription, 1 to 1440
+	 * @return a pull {@link Subscribe} request
+	 */
+	public Subscribe constructPullSubscription(Collection<? extends BaseFolderIdType> folderIds, Collection<NotificationEventTypeType> eventTypes, String watermark, int timeoutMinutes) {
+		Validate.notEmpty(folderIds, "folderIds cannot be empty");
+		Validate.notEmpty(eventTypes, "eventTypes cannot be empty");
+		Validate.isTrue(timeoutMinutes > 0 && timeoutMinutes <= 1440, "timeoutMinutes must be between 1 and 1440");
+		NonEmptyArrayOfBaseFolderIdsType folders = new NonEmptyArrayOfBaseFolderIdsType();
+		folders.getFolderIdsAndDistinguishedFolderIds().addAll(folderIds);
+		NonEmptyArrayOfNotificationEventTypesType events = new NonEmptyArrayOfNotificationEventTypesType();
+		events.getEventTypes().addAll(eventTypes);
+		PullSubscriptionRequestType pullSubscription = new PullSubscriptionRequestType();
+		pullSubscription.setFolderIds(folders);
+		pullSubscription.setEventTypes(events);
+		pullSubscription.setWatermark(watermark);
+		pullSubscription.setTimeout(timeoutMinutes);
+		Subscribe request = new Subscribe();
+		request.setPullSubscriptionRequest(pullSubscription);
+		return request;
+	}
+
+	public GetEvents constructGetEvents(String subscriptionId, String watermark) {
+		Validate.isTrue(StringUtils.isNotBlank(subscriptionId), "subscriptionId cannot be blank");
+		Validate.isTrue(StringUtils.isNotBlank(watermark), "watermark cannot be blank");
+		GetEvents request = new GetEvents();
+		request.setSubscriptionId(subscriptionId);
+		request.setWatermark(watermark);
+		return request;
+	}
+
+	public Unsubscribe constructUnsubscribe(String subscriptionId) {
+		Validate.isTrue(StringUtils.isNotBlank(subscriptionId), "subscriptionId cannot be blank");
+		Unsubscribe request = new Unsubscribe();
+		request.setSubscriptionId(subscriptionId);
+		return request;
+	}
+	
 	public FindItem constructFindFirstItemIdSet(Collection<FolderIdType> folderIds) {
 		return constructFindAllItemIds(INIT_BASE_OFFSET, getMaxFindItems(), folderIds);
 	}
@@ -0,0 +1,45 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange;
+
+/**
+ * Callback notified when an {@link ExchangeResponseFuture} completes.
+ * 
+ * Callbacks are invoked by the thread that completes the future, or by the thread
+ * registering the callback if the future has already completed; implementations
+ * should not block.
+ * 
+ * @param <T> the response type
+ */
+public interface ExchangeResponseCallback<T> {
+
+	/**
+	 * Invoked when the request completed successfully.
+	 * 
+	 * @param response
+	 */
+	void onSuccess(T response);
+	
+	/**
+	 * Invoked when the request failed or was cancelled.
+	 * 
+	 * @param failure
+	 */
+	void onFailure(Throwable failure);
+}
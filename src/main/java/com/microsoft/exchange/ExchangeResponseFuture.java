@@ -0,0 +1,39 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange;
+
+import java.util.concurrent.Future;
+
+/**
+ * {@link Future} for the result of an Exchange Web Services request that
+ * additionally accepts completion callbacks, so callers do not need to park 
+ * a thread in {@link #get()} for every in flight request.
+ * 
+ * @param <T> the response type
+ */
+public interface ExchangeResponseFuture<T> extends Future<T> {
+
+	/**
+	 * Register a callback to be notified upon completion.
+	 * If this future has already completed the callback is invoked immediately.
+	 * 
+	 * @param callback
+	 */
+	void addCallback(ExchangeResponseCallback<? super T> callback);
+}
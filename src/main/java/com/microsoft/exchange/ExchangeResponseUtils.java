@@ -85,6 +85,13 @@ public interface ExchangeResponseUtils {
 
 	public Set<ItemType> parseFindItemResponse(FindItemResponse response);
 
+	/**
+	 * 
+	 * @param response
+	 * @return the sum of the TotalItemsInView of every response message, or -1 if not reported
+	 */
+	public int parseTotalItemsInView(FindItemResponse response);
+
 	public boolean parseEmptyFolderResponse(EmptyFolderResponse response);
 
 	public Set<String> parseResolveNamesResponse(ResolveNamesResponse response);
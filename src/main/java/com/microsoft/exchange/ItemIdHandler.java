@@ -0,0 +1,33 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange;
+
+/**
+ * Receives the Id and ChangeKey attributes of each ItemId read from an IdOnly response,
+ * without an {@link com.microsoft.exchange.types.ItemIdType} being created for it.
+ */
+public interface ItemIdHandler {
+
+	/**
+	 * 
+	 * @param id the Id attribute, never null
+	 * @param changeKey the ChangeKey attribute, may be null
+	 */
+	void itemId(String id, String changeKey);
+}
@@ -0,0 +1,38 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange;
+
+import java.util.Collection;
+
+import com.microsoft.exchange.types.ItemType;
+
+/**
+ * Receives items as they are retrieved, so large result sets need not be held in memory at once.
+ * 
+ * Batches are delivered on the thread that requested the items, in completion order (not 
+ * necessarily the order of the requested ids); implementations need not be thread safe.
+ */
+public interface ItemTypeHandler {
+
+	/**
+	 * 
+	 * @param items a batch of retrieved items, never null
+	 */
+	void handle(Collection<? extends ItemType> items);
+}
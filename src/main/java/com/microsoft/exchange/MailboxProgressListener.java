@@ -0,0 +1,38 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange;
+
+/**
+ * Receives progress notifications while a bulk, multi-mailbox operation runs.
+ * 
+ * Notifications arrive in completion order (not submission order) and may be
+ * delivered from the thread that submitted the bulk operation; implementations
+ * should return quickly.
+ */
+public interface MailboxProgressListener {
+
+	/**
+	 * Invoked once for every mailbox, successful or not.
+	 * 
+	 * @param result the result for the mailbox that just finished
+	 * @param completed the number of mailboxes finished so far, including this one
+	 * @param total the total number of mailboxes in the bulk operation
+	 */
+	void onMailboxComplete(MailboxResult<?> result, int completed, int total);
+}
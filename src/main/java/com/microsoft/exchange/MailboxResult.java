@@ -0,0 +1,103 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange;
+
+/**
+ * The outcome of an operation against a single mailbox within a bulk request.
+ * 
+ * Exactly one of {@link #getResult()} and {@link #getFailure()} is non-null; a failure
+ * for one mailbox never prevents results from being returned for the others.
+ * 
+ * @param <T> the result type
+ */
+public final class MailboxResult<T> {
+
+	private final String upn;
+	private final T result;
+	private final Throwable failure;
+	private final long elapsedMillis;
+	
+	private MailboxResult(String upn, T result, Throwable failure, long elapsedMillis) {
+		this.upn = upn;
+		this.result = result;
+		this.failure = failure;
+		this.elapsedMillis = elapsedMillis;
+	}
+	
+	/**
+	 * @param upn
+	 * @param result
+	 * @param elapsedMillis
+	 * @return a successful {@link MailboxResult}
+	 */
+	public static <T> MailboxResult<T> success(String upn, T result, long elapsedMillis) {
+		return new MailboxResult<T>(upn, result, null, elapsedMillis);
+	}
+	
+	/**
+	 * @param upn
+	 * @param failure
+	 * @param elapsedMillis
+	 * @return a failed {@link MailboxResult}
+	 */
+	public static <T> MailboxResult<T> failure(String upn, Throwable failure, long elapsedMillis) {
+		return new MailboxResult<T>(upn, null, failure, elapsedMillis);
+	}
+
+	/**
+	 * @return the user principal name of the mailbox
+	 */
+	public String getUpn() {
+		return upn;
+	}
+	/**
+	 * @return the result, or null if the operation failed
+	 */
+	public T getResult() {
+		return result;
+	}
+	/**
+	 * @return the failure, or null if the operation succeeded
+	 */
+	public Throwable getFailure() {
+		return failure;
+	}
+	/**
+	 * @return true if the operation succeeded
+	 */
+	public boolean isSuccess() {
+		return failure == null;
+	}
+	/**
+	 * @return the wall clock time spent on this mailbox, in milliseconds
+	 */
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "MailboxResult [upn=" + upn + ", success=" + isSuccess()
+				+ (failure == null ? "" : ", failure=" + failure) 
+				+ ", elapsedMillis=" + elapsedMillis + "]";
+	}
+}
@@ -0,0 +1,61 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Collection;
+
+import net.fortuna.ical4j.model.Calendar;
+import net.fortuna.ical4j.model.component.VTimeZone;
+
+import com.microsoft.exchange.types.ItemType;
+
+/**
+ * An {@link ExchangeEventConverter} that can also write the iCalendar text for items directly,
+ * for callers exporting large calendars; check for it with instanceof and fall back to 
+ * {@link #convertToCalendar(Collection, String)} otherwise.
+ */
+public interface StreamingExchangeEventConverter extends ExchangeEventConverter {
+
+	/**
+	 * Write the iCalendar text for the items, as {@link #convertToCalendar(Collection, String)} would produce,
+	 * without holding the whole {@link Calendar} in memory.
+	 * 
+	 * Components are written in the order of the items, and each {@link VTimeZone} is written once, 
+	 * ahead of the first component that refers to it. The writer is flushed but not closed.
+	 * 
+	 * @param items
+	 * @param upn
+	 * @param writer
+	 * @throws IOException
+	 */
+	void writeCalendar(Collection<ItemType> items, String upn, Writer writer) throws IOException;
+	
+	/**
+	 * Write the iCalendar text for the items as UTF-8, see {@link #writeCalendar(Collection, String, Writer)}.
+	 * 
+	 * @param items
+	 * @param upn
+	 * @param out
+	 * @throws IOException
+	 */
+	void writeCalendar(Collection<ItemType> items, String upn, OutputStream out) throws IOException;
+}
@@ -0,0 +1,58 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange;
+
+import com.microsoft.exchange.messages.FindItem;
+import com.microsoft.exchange.messages.GetItem;
+import com.microsoft.exchange.types.FindItemParentType;
+
+/**
+ * Variants of the {@link ExchangeWebServices} item operations that read the response incrementally,
+ * passing items to an {@link ItemTypeHandler} rather than returning one fully unmarshalled response.
+ * 
+ * Unsuccessful response messages raise the same exceptions as 
+ * {@link ExchangeResponseUtils#confirmSuccess(com.microsoft.exchange.messages.BaseResponseMessageType)};
+ * items read before the failing response message may already have been passed to the handler.
+ */
+public interface StreamingExchangeWebServices {
+
+	/**
+	 * 
+	 * @param request
+	 * @param handler receives the items of the RootFolder as they are read
+	 * @return the paging attributes of the RootFolder (TotalItemsInView, IncludesLastItemInRange, IndexedPagingOffset); its Items are not populated
+	 */
+	FindItemParentType findItem(FindItem request, ItemTypeHandler handler);
+	
+	/**
+	 * Read only the ItemIds of a FindItem request made with the IdOnly shape.
+	 * 
+	 * @param request
+	 * @param handler receives the Id and ChangeKey of each item as it is read
+	 * @return the paging attributes of the RootFolder; its Items are not populated
+	 */
+	FindItemParentType findItemIds(FindItem request, ItemIdHandler handler);
+	
+	/**
+	 * 
+	 * @param request
+	 * @param handler receives the items as they are read
+	 */
+	void getItem(GetItem request, ItemTypeHandler handler);
+}
@@ -0,0 +1,288 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeConstants;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * Conversions between {@link Date} and xs:dateTime ({@link XMLGregorianCalendar} or text) for the
+ * hot paths in {@link DateHelp}, request construction and event conversion.
+ * 
+ * The calendar fields are computed arithmetically (proleptic Gregorian, like {@link XMLGregorianCalendar#toGregorianCalendar()}),
+ * and each thread reuses one {@link DatatypeFactory} and one {@link GregorianCalendar}, so a conversion 
+ * allocates little beyond its result. Years before 1 AD and calendars with an eon fall back to the 
+ * {@link GregorianCalendar} based conversions.
+ */
+public final class XmlDateTimes {
+
+	private static final long MILLIS_PER_DAY = 86400000L;
+	private static final long DATE_MIN = -62135596800000L; // 0001-01-01T00:00:00Z
+	private static final long DATE_MAX = 253402300799999L; // 9999-12-31T23:59:59.999Z
+	
+	private static final ThreadLocal<Converter> converters = new ThreadLocal<Converter>() {
+		@Override
+		protected Converter initialValue() {
+			return new Converter();
+		}
+	};
+	
+	private XmlDateTimes() {
+	}
+	
+	/**
+	 * 
+	 * @return a {@link DatatypeFactory} for the current thread, created once rather than per call
+	 */
+	public static DatatypeFactory getDatatypeFactory() {
+		return converters.get().factory;
+	}
+	
+	/**
+	 * 
+	 * @param date
+	 * @param zone the time zone the local time is in
+	 * @param includeOffset if false the result has no zone offset, and the local time must map back to the same instant
+	 * in the zone (it does not in the hour repeated at the end of daylight saving time)
+	 * @return the date as an {@link XMLGregorianCalendar}, or null if the date is null
+	 * @throws IllegalArgumentException if the offset is excluded and the local time is ambiguous in the zone
+	 */
+	public static XMLGregorianCalendar toXMLGregorianCalendar(Date date, TimeZone zone, boolean includeOffset) {
+		if(date == null) {
+			return null;
+		}
+		Validate.notNull(zone, "zone cannot be null");
+		Converter converter = converters.get();
+		long millis = date.getTime();
+		int offset = zone.getOffset(millis);
+		if(millis + offset < DATE_MIN || millis + offset > DATE_MAX) {
+			GregorianCalendar calendar = new GregorianCalendar(zone);
+			calendar.setTimeInMillis(millis);
+			XMLGregorianCalendar xmlDate = converter.factory.newXMLGregorianCalendar(calendar);
+			if(!includeOffset) {
+				xmlDate.setTimezone(DatatypeConstants.FIELD_UNDEFINED);
+			}
+			return xmlDate;
+		}
+		converter.setFields(millis + offset);
+		if(!includeOffset) {
+			long resolved = converter.resolve(zone);
+			if(Math.abs(resolved - millis) >= 1000) {
+				throw new IllegalArgumentException("original time ("+new Date(resolved)+") differs from converted time ("+date+") by more than 1000ms.  Check the Timezones?");
+			}
+		}
+		return converter.factory.newXMLGregorianCalendar(converter.year, converter.month, converter.day, 
+				converter.hour, converter.minute, converter.second, converter.millisecond, 
+				includeOffset ? offset / 60000 : DatatypeConstants.FIELD_UNDEFINED);
+	}
+	
+	/**
+	 * 
+	 * @param xmlDate
+	 * @param defaultZone the time zone for an xmlDate without a zone offset
+	 * @return the instant, as {@link XMLGregorianCalendar#toGregorianCalendar(java.util.TimeZone, java.util.Locale, XMLGregorianCalendar)} 
+	 * would compute it; null if xmlDate is null
+	 */
+	public static Date toDate(XMLGregorianCalendar xmlDate, TimeZone defaultZone) {
+		if(xmlDate == null) {
+			return null;
+		}
+		if(xmlDate.getEon() != null || xmlDate.getYear() < 1 || xmlDate.getYear() == DatatypeConstants.FIELD_UNDEFINED
+				|| xmlDate.getMonth() == DatatypeConstants.FIELD_UNDEFINED || xmlDate.getDay() == DatatypeConstants.FIELD_UNDEFINED) {
+			return xmlDate.toGregorianCalendar(defaultZone, null, null).getTime();
+		}
+		Converter converter = converters.get();
+		converter.year = xmlDate.getYear();
+		converter.month = xmlDate.getMonth();
+		converter.day = xmlDate.getDay();
+		converter.hour = definedOrZero(xmlDate.getHour());
+		converter.minute = definedOrZero(xmlDate.getMinute());
+		converter.second = definedOrZero(xmlDate.getSecond());
+		converter.millisecond = definedOrZero(xmlDate.getMillisecond());
+		int timezone = xmlDate.getTimezone();
+		if(timezone == DatatypeConstants.FIELD_UNDEFINED) {
+			return new Date(converter.resolve(defaultZone == null ? TimeZone.getDefault() : defaultZone));
+		}
+		return new Date(converter.localMillis() - timezone * 60000L);
+	}
+	
+	/**
+	 * 
+	 * @param date
+	 * @return the date as xs:dateTime text in UTC, e.g. "2014-01-15T18:00:00.000Z"
+	 */
+	public static String formatDateTime(Date date) {
+		return formatDateTime(date, null, true);
+	}
+	
+	/**
+	 * 
+	 * @param date
+	 * @param zone the time zone for the local time, null for UTC
+	 * @param includeOffset whether to write the zone offset ("Z" or "+hh:mm")
+	 * @return the date as xs:dateTime text, formatted as {@link XMLGregorianCalendar#toXMLFormat()} would
+	 */
+	public static String formatDateTime(Date date, TimeZone zone, boolean includeOffset) {
+		if(date == null) {
+			return null;
+		}
+		return appendDateTime(new StringBuilder(29), date.getTime(), zone, includeOffset).toString();
+	}
+	
+	/**
+	 * Write an instant as xs:dateTime text without creating an {@link XMLGregorianCalendar}.
+	 * 
+	 * @param builder
+	 * @param millis the instant
+	 * @param zone the time zone for the local time, null for UTC
+	 * @param includeOffset whether to write the zone offset ("Z" or "+hh:mm")
+	 * @return the builder
+	 */
+	public static StringBuilder appendDateTime(StringBuilder builder, long millis, TimeZone zone, boolean includeOffset) {
+		int offset = zone == null ? 0 : zone.getOffset(millis);
+		Validate.isTrue(millis + offset >= DATE_MIN && millis + offset <= DATE_MAX, "only years 1 through 9999 can be formatted");
+		Converter converter = converters.get();
+		converter.setFields(millis + offset);
+		pad(builder, converter.year, 4).append('-');
+		pad(builder, converter.month, 2).append('-');
+		pad(builder, converter.day, 2).append('T');
+		pad(builder, converter.hour, 2).append(':');
+		pad(builder, converter.minute, 2).append(':');
+		pad(builder, converter.second, 2).append('.');
+		pad(builder, converter.millisecond, 3);
+		if(includeOffset) {
+			if(offset == 0) {
+				builder.append('Z');
+			} else {
+				int minutes = Math.abs(offset / 60000);
+				builder.append(offset < 0 ? '-' : '+');
+				pad(builder, minutes / 60, 2).append(':');
+				pad(builder, minutes % 60, 2);
+			}
+		}
+		return builder;
+	}
+	
+	private static StringBuilder pad(StringBuilder builder, int value, int width) {
+		for(int limit = 10, i = 1; i < width; limit *= 10, i++) {
+			if(value < limit) {
+				builder.append('0');
+			}
+		}
+		return builder.append(value);
+	}
+	
+	private static int definedOrZero(int field) {
+		return field == DatatypeConstants.FIELD_UNDEFINED ? 0 : field;
+	}
+	
+	/**
+	 * Per thread conversion state.
+	 */
+	static final class Converter {
+		final DatatypeFactory factory;
+		final GregorianCalendar calendar = new GregorianCalendar();
+		int year;
+		int month;
+		int day;
+		int hour;
+		int minute;
+		int second;
+		int millisecond;
+		
+		Converter() {
+			try {
+				this.factory = DatatypeFactory.newInstance();
+			} catch (DatatypeConfigurationException e) {
+				throw new IllegalStateException("unable to invoke DatatypeFactory.newInstance", e);
+			}
+			// proleptic, as XMLGregorianCalendar#toGregorianCalendar
+			this.calendar.setGregorianChange(new Date(Long.MIN_VALUE));
+		}
+		
+		/**
+		 * Set the fields from the local time in milliseconds since 1970-01-01T00:00:00 (civil-from-days, after Howard Hinnant).
+		 * 
+		 * @param localMillis
+		 */
+		void setFields(long localMillis) {
+			long days = localMillis / MILLIS_PER_DAY;
+			long millisOfDay = localMillis % MILLIS_PER_DAY;
+			if(millisOfDay < 0) {
+				days--;
+				millisOfDay += MILLIS_PER_DAY;
+			}
+			long z = days + 719468;
+			long era = (z >= 0 ? z : z - 146096) / 146097;
+			long doe = z - era * 146097;
+			long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+			long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+			long mp = (5 * doy + 2) / 153;
+			this.day = (int) (doy - (153 * mp + 2) / 5 + 1);
+			this.month = (int) (mp < 10 ? mp + 3 : mp - 9);
+			this.year = (int) (yoe + era * 400 + (this.month <= 2 ? 1 : 0));
+			int ms = (int) millisOfDay;
+			this.hour = ms / 3600000;
+			this.minute = ms / 60000 % 60;
+			this.second = ms / 1000 % 60;
+			this.millisecond = ms % 1000;
+		}
+		
+		/**
+		 * @return the fields as milliseconds since 1970-01-01T00:00:00 local time
+		 */
+		long localMillis() {
+			long y = this.month <= 2 ? this.year - 1 : this.year;
+			long era = (y >= 0 ? y : y - 399) / 400;
+			long yoe = y - era * 400;
+			long doy = (153 * (this.month > 2 ? this.month - 3 : this.month + 9) + 2) / 5 + this.day - 1;
+			long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+			long days = era * 146097 + doe - 719468;
+			return days * MILLIS_PER_DAY + this.hour * 3600000L + this.minute * 60000L + this.second * 1000L + this.millisecond;
+		}
+		
+		/**
+		 * @param zone
+		 * @return the instant the fields denote in the zone, resolving gaps and overlaps as {@link GregorianCalendar} does
+		 */
+		long resolve(TimeZone zone) {
+			long local = localMillis();
+			int before = zone.getOffset(local - zone.getRawOffset() - MILLIS_PER_DAY);
+			int after = zone.getOffset(local - zone.getRawOffset() + MILLIS_PER_DAY);
+			if(before == after && zone.getOffset(local - before) == before) {
+				// no transition within a day, the common case
+				return local - before;
+			}
+			calendar.setTimeZone(zone);
+			calendar.clear();
+			calendar.set(this.year, this.month - 1, this.day, this.hour, this.minute, this.second);
+			calendar.set(Calendar.MILLISECOND, this.millisecond);
+			return calendar.getTimeInMillis();
+		}
+	}
+}
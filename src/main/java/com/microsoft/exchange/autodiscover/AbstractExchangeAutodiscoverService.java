@@ -76,6 +76,16 @@ public abstract class AbstractExchangeAutodiscoverService implements ExchangeAut
 	 */
 	abstract protected String getServiceSuffix();
 	
+	/**
+	 * Query a single autodiscover endpoint.
+	 * 
+	 * @param email the mailbox to discover
+	 * @param potentialEndpoint one of {@link #getPotentialAutodiscoverEndpoints(String)}
+	 * @return the EWS url, never blank
+	 * @throws AutodiscoverException if the endpoint could not be reached or did not return an EWS url
+	 */
+	abstract public String probeAutodiscoverEndpoint(String email, String potentialEndpoint) throws AutodiscoverException;
+	
 	@Override
 	public List<String> getPotentialAutodiscoverEndpoints(String email) {
 		String domain = null;
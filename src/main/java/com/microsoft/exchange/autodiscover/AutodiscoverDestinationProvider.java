@@ -23,6 +23,12 @@ package com.microsoft.exchange.autodiscover;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
@@ -36,6 +42,12 @@ import com.microsoft.exchange.impl.ImpersonationConnectingSIDSource;
 import com.microsoft.exchange.types.ConnectingSIDType;
 
 /**
+ * Resolves the EWS endpoint for the mailbox of the current {@link ImpersonationConnectingSIDSource}.
+ * 
+ * Concurrent lookups for the same mailbox share a single autodiscover request. With {@link #isDomainShortcutEnabled()}
+ * the endpoint found for one mailbox is used for every mailbox in the same domain (taken from the domain entry of a 
+ * {@link CachingAutodiscoverService} when there is one), and concurrent lookups for the domain share a single request; mailboxes known to live elsewhere can be registered with {@link #redirect(String, String)}.
+ * 
  * @author ctcudd
  *
  */
@@ -44,13 +56,44 @@ public class AutodiscoverDestinationProvider implements DestinationProvider {
 	protected final Log log = LogFactory.getLog(this.getClass());
 	private ImpersonationConnectingSIDSource connectingSIDSource;
 	private ExchangeAutodiscoverService	compositeAutodiscoverService;
+	private boolean domainShortcutEnabled = false;
 	
 	@Value("${endpoint:https://outlook.office365.com/ews/exchange.asmx}")
 	private String defaultUri;
 	
+	private final ConcurrentMap<String, FutureTask<String>> inFlight = new ConcurrentHashMap<String, FutureTask<String>>();
+	// domain -> a mailbox whose endpoint stands for the whole domain
+	private final ConcurrentMap<String, String> domainMailboxes = new ConcurrentHashMap<String, String>();
+	private final ConcurrentMap<String, String> redirects = new ConcurrentHashMap<String, String>();
+	private final AtomicLong coalesced = new AtomicLong();
+	
 	public String getDefaultUri() {
 		return defaultUri;
 	}
+	/**
+	 * @param defaultUri the endpoint used when autodiscover fails
+	 */
+	public void setDefaultUri(String defaultUri) {
+		this.defaultUri = defaultUri;
+	}
+	/**
+	 * @return the domainShortcutEnabled
+	 */
+	public boolean isDomainShortcutEnabled() {
+		return domainShortcutEnabled;
+	}
+	/**
+	 * @param domainShortcutEnabled true to use one autodiscover result for all mailboxes in a domain
+	 */
+	public void setDomainShortcutEnabled(boolean domainShortcutEnabled) {
+		this.domainShortcutEnabled = domainShortcutEnabled;
+	}
+	/**
+	 * @return the number of lookups that waited on another thread's autodiscover request instead of making their own
+	 */
+	public long getCoalescedCount() {
+		return coalesced.get();
+	}
 
 	/**
 	 * @return the connectingSIDSource
@@ -89,7 +132,7 @@ public class AutodiscoverDestinationProvider implements DestinationProvider {
 			
 			String upn = connectingSID.getPrincipalName();
 			try {
-				autodiscoverEndpoint = compositeAutodiscoverService.getAutodiscoverEndpoint(upn);
+				autodiscoverEndpoint = getAutodiscoverEndpoint(upn);
 			} catch (AutodiscoverException e) {
 				log.warn("Failed to getAutodiscoverEndpoint for "+upn+": "+e.getMessage());
 				
@@ -108,6 +151,105 @@ public class AutodiscoverDestinationProvider implements DestinationProvider {
 		}
 		return autodiscoverURI;
 	}
-
+	
+	/**
+	 * Record that the mailbox is served by a different endpoint than its domain, 
+	 * for example after Exchange redirected a request for it. Passing a blank ewsUrl removes the redirect.
+	 * 
+	 * @param upn
+	 * @param ewsUrl
+	 */
+	public void redirect(String upn, String ewsUrl) {
+		if(StringUtils.isBlank(ewsUrl)) {
+			redirects.remove(upn.toLowerCase());
+		} else {
+			redirects.put(upn.toLowerCase(), ewsUrl);
+		}
+	}
+	
+	/**
+	 * 
+	 * @param upn
+	 * @return the EWS endpoint for the mailbox
+	 * @throws AutodiscoverException
+	 */
+	protected String getAutodiscoverEndpoint(String upn) throws AutodiscoverException {
+		if(StringUtils.isBlank(upn)) {
+			return compositeAutodiscoverService.getAutodiscoverEndpoint(upn);
+		}
+		String redirect = redirects.get(upn.toLowerCase());
+		if(redirect != null) {
+			return redirect;
+		}
+		String domain = StringUtils.substringAfterLast(upn, "@").toLowerCase();
+		if(!domainShortcutEnabled || StringUtils.isBlank(domain)) {
+			return resolve("user:" + upn.toLowerCase(), upn);
+		}
+		if(compositeAutodiscoverService instanceof CachingAutodiscoverService) {
+			// the domain's entry outlives domainMailboxes, e.g. when read back from the persistence file
+			String cached = ((CachingAutodiscoverService) compositeAutodiscoverService).getCachedDomainEndpoint(domain);
+			if(cached != null) {
+				return cached;
+			}
+		}
+		String domainMailbox = domainMailboxes.get(domain);
+		String mailbox = domainMailbox != null ? domainMailbox : upn;
+		try {
+			String ewsUrl = resolve("domain:" + domain, mailbox);
+			domainMailboxes.putIfAbsent(domain, mailbox);
+			return ewsUrl;
+		} catch (AutodiscoverException e) {
+			if(domainMailbox != null) {
+				// let the next lookup try its own mailbox
+				domainMailboxes.remove(domain, domainMailbox);
+			}
+			throw e;
+		}
+	}
+	
+	/**
+	 * Ask the autodiscover service for the endpoint of the mailbox, unless another thread is already resolving the key,
+	 * in which case wait for and share its result.
+	 * 
+	 * @param key
+	 * @param upn
+	 * @return the EWS endpoint
+	 * @throws AutodiscoverException
+	 */
+	private String resolve(String key, final String upn) throws AutodiscoverException {
+		FutureTask<String> task = new FutureTask<String>(new Callable<String>() {
+			@Override
+			public String call() throws AutodiscoverException {
+				return compositeAutodiscoverService.getAutodiscoverEndpoint(upn);
+			}
+		});
+		FutureTask<String> existing = inFlight.putIfAbsent(key, task);
+		if(existing == null) {
+			try {
+				task.run();
+			} finally {
+				inFlight.remove(key, task);
+			}
+			existing = task;
+		} else {
+			coalesced.incrementAndGet();
+		}
+		try {
+			return existing.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AutodiscoverException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof AutodiscoverException) {
+				throw (AutodiscoverException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new AutodiscoverException(e);
+		}
+	}
 
 }
@@ -0,0 +1,519 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.autodiscover;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import com.microsoft.exchange.exception.AutodiscoverException;
+
+/**
+ * Caches the EWS URL found by another {@link ExchangeAutodiscoverService} (usually the {@link CompositeAutodiscoverServiceImpl}).
+ * 
+ * <ul>
+ * <li>Successful lookups are kept for {@link #getTimeToLiveMillis()}, per user and, as the most recent
+ * result for any user of the domain, per domain ({@link #getCachedDomainEndpoint(String)}).</li>
+ * <li>Failures are kept for the much shorter {@link #getNegativeTimeToLiveMillis()}, so an unknown user does 
+ * not send every request through the full POX and SOAP probe chain.</li>
+ * <li>An entry read after {@link #getRefreshAheadFactor()} of its lifetime is refreshed in the background
+ * while the cached value is returned; a failed refresh leaves the entry in place until it expires.</li>
+ * <li>With a {@link #getPersistenceFile()}, successful entries are written out every {@link #getPersistIntervalMillis()} 
+ * and on {@link #destroy()}, and read back by {@link #afterPropertiesSet()}, so a restart starts warm.</li>
+ * </ul>
+ * At most {@link #getMaxEntries()} entries are held, evicting the least recently used.
+ */
+public class CachingAutodiscoverService implements ExchangeAutodiscoverService, InitializingBean, DisposableBean {
+
+	private static final String USER_PREFIX = "user:";
+	private static final String DOMAIN_PREFIX = "domain:";
+	
+	protected final Log log = LogFactory.getLog(this.getClass());
+	
+	private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	
+	private ExchangeAutodiscoverService delegate;
+	private int maxEntries = 10000;
+	private long timeToLiveMillis = 86400000L;
+	private long negativeTimeToLiveMillis = 300000L;
+	private double refreshAheadFactor = 0.75;
+	private int refreshThreads = 2;
+	private File persistenceFile;
+	private long persistIntervalMillis = 60000L;
+	
+	private volatile ScheduledExecutorService scheduledExecutorService;
+	private boolean destroyed = false;
+	private final AtomicBoolean dirty = new AtomicBoolean();
+	
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong negativeHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong refreshes = new AtomicLong();
+	
+	public CachingAutodiscoverService() {
+	}
+	
+	/**
+	 * 
+	 * @param delegate
+	 */
+	public CachingAutodiscoverService(ExchangeAutodiscoverService delegate) {
+		this.delegate = delegate;
+	}
+	/**
+	 * @return the delegate
+	 */
+	public ExchangeAutodiscoverService getDelegate() {
+		return delegate;
+	}
+	/**
+	 * @param delegate the service that performs lookups missing from the cache
+	 */
+	public void setDelegate(ExchangeAutodiscoverService delegate) {
+		this.delegate = delegate;
+	}
+	/**
+	 * @return the maxEntries
+	 */
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+	/**
+	 * @param maxEntries the maximum number of user and domain entries held
+	 */
+	public void setMaxEntries(int maxEntries) {
+		Validate.isTrue(maxEntries > 0, "maxEntries must be greater than 0");
+		this.maxEntries = maxEntries;
+	}
+	/**
+	 * @return the timeToLiveMillis
+	 */
+	public long getTimeToLiveMillis() {
+		return timeToLiveMillis;
+	}
+	/**
+	 * @param timeToLiveMillis how long a successful lookup is used
+	 */
+	public void setTimeToLiveMillis(long timeToLiveMillis) {
+		Validate.isTrue(timeToLiveMillis > 0, "timeToLiveMillis must be greater than 0");
+		this.timeToLiveMillis = timeToLiveMillis;
+	}
+	/**
+	 * @return the negativeTimeToLiveMillis
+	 */
+	public long getNegativeTimeToLiveMillis() {
+		return negativeTimeToLiveMillis;
+	}
+	/**
+	 * @param negativeTimeToLiveMillis how long a failed lookup is remembered; 0 disables negative caching
+	 */
+	public void setNegativeTimeToLiveMillis(long negativeTimeToLiveMillis) {
+		Validate.isTrue(negativeTimeToLiveMillis >= 0, "negativeTimeToLiveMillis cannot be negative");
+		this.negativeTimeToLiveMillis = negativeTimeToLiveMillis;
+	}
+	/**
+	 * @return the refreshAheadFactor
+	 */
+	public double getRefreshAheadFactor() {
+		return refreshAheadFactor;
+	}
+	/**
+	 * @param refreshAheadFactor the fraction of {@link #getTimeToLiveMillis()} after which a read triggers a background refresh; 1 disables refresh-ahead
+	 */
+	public void setRefreshAheadFactor(double refreshAheadFactor) {
+		Validate.isTrue(refreshAheadFactor > 0 && refreshAheadFactor <= 1, "refreshAheadFactor must be greater than 0 and at most 1");
+		this.refreshAheadFactor = refreshAheadFactor;
+	}
+	/**
+	 * @return the refreshThreads
+	 */
+	public int getRefreshThreads() {
+		return refreshThreads;
+	}
+	/**
+	 * @param refreshThreads the number of threads performing background refreshes
+	 */
+	public void setRefreshThreads(int refreshThreads) {
+		Validate.isTrue(refreshThreads > 0, "refreshThreads must be greater than 0");
+		this.refreshThreads = refreshThreads;
+	}
+	/**
+	 * @return the persistenceFile, may be null
+	 */
+	public File getPersistenceFile() {
+		return persistenceFile;
+	}
+	/**
+	 * @param persistenceFile where successful lookups are saved between restarts; null to keep them in memory only
+	 */
+	public void setPersistenceFile(File persistenceFile) {
+		this.persistenceFile = persistenceFile;
+	}
+	/**
+	 * @return the persistIntervalMillis
+	 */
+	public long getPersistIntervalMillis() {
+		return persistIntervalMillis;
+	}
+	/**
+	 * @param persistIntervalMillis the delay between writes of the {@link #getPersistenceFile()}, which only happen when something changed
+	 */
+	public void setPersistIntervalMillis(long persistIntervalMillis) {
+		Validate.isTrue(persistIntervalMillis > 0, "persistIntervalMillis must be greater than 0");
+		this.persistIntervalMillis = persistIntervalMillis;
+	}
+	/**
+	 * @return the number of lookups answered with a cached URL
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+	/**
+	 * @return the number of lookups answered with a cached failure
+	 */
+	public long getNegativeHitCount() {
+		return negativeHits.get();
+	}
+	/**
+	 * @return the number of lookups passed to the delegate
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+	/**
+	 * @return the number of background refreshes started
+	 */
+	public long getRefreshCount() {
+		return refreshes.get();
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.springframework.beans.factory.InitializingBean#afterPropertiesSet()
+	 */
+	@Override
+	public void afterPropertiesSet() {
+		Validate.notNull(delegate, "delegate property cannot be null");
+		initialize();
+		if(persistenceFile != null) {
+			load();
+		}
+	}
+	
+	/**
+	 * Create the {@link ScheduledExecutorService} used for refreshes and persistence.
+	 * Invoked by {@link #afterPropertiesSet()}, and safe to call more than once.
+	 */
+	public synchronized void initialize() {
+		if(scheduledExecutorService == null && !destroyed) {
+			CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("ews-autodiscover-");
+			threadFactory.setDaemon(true);
+			ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(refreshThreads, threadFactory);
+			if(persistenceFile != null) {
+				executor.scheduleWithFixedDelay(new Runnable() {
+					@Override
+					public void run() {
+						if(dirty.get()) {
+							persist();
+						}
+					}
+				}, persistIntervalMillis, persistIntervalMillis, TimeUnit.MILLISECONDS);
+			}
+			this.scheduledExecutorService = executor;
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.springframework.beans.factory.DisposableBean#destroy()
+	 */
+	@Override
+	public synchronized void destroy() {
+		destroyed = true;
+		if(scheduledExecutorService != null) {
+			scheduledExecutorService.shutdownNow();
+			scheduledExecutorService = null;
+		}
+		if(persistenceFile != null && dirty.get()) {
+			persist();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.autodiscover.ExchangeAutodiscoverService#getAutodiscoverEndpoint(java.lang.String)
+	 */
+	@Override
+	public String getAutodiscoverEndpoint(String email) throws AutodiscoverException {
+		Validate.isTrue(StringUtils.isNotBlank(email), "email argument cannot be blank");
+		String key = userKey(email);
+		long now = System.currentTimeMillis();
+		Entry entry = lookup(key);
+		if(entry != null && now < entry.expiresAt) {
+			if(entry.ewsUrl == null) {
+				negativeHits.incrementAndGet();
+				throw new AutodiscoverException("autodiscover failed recently for email="+email+": "+entry.failure);
+			}
+			hits.incrementAndGet();
+			if(now - entry.createdAt >= (long) (timeToLiveMillis * refreshAheadFactor)) {
+				refreshAhead(email, entry);
+			}
+			return entry.ewsUrl;
+		}
+		misses.incrementAndGet();
+		try {
+			return resolve(email);
+		} catch (AutodiscoverException e) {
+			if(negativeTimeToLiveMillis > 0) {
+				store(key, new Entry(null, e.getMessage(), now, now + negativeTimeToLiveMillis));
+			}
+			throw e;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.autodiscover.ExchangeAutodiscoverService#getPotentialAutodiscoverEndpoints(java.lang.String)
+	 */
+	@Override
+	public List<String> getPotentialAutodiscoverEndpoints(String email) {
+		return delegate.getPotentialAutodiscoverEndpoints(email);
+	}
+	
+	/**
+	 * 
+	 * @param domain
+	 * @return the EWS URL most recently found for any user of the domain, or null
+	 */
+	public String getCachedDomainEndpoint(String domain) {
+		if(StringUtils.isBlank(domain)) {
+			return null;
+		}
+		Entry entry = lookup(DOMAIN_PREFIX + domain.toLowerCase());
+		return entry != null && System.currentTimeMillis() < entry.expiresAt ? entry.ewsUrl : null;
+	}
+	
+	/**
+	 * Forget the cached result for the user, for example after Exchange reports the mailbox has moved.
+	 * 
+	 * @param email
+	 */
+	public void evict(String email) {
+		synchronized (entries) {
+			entries.remove(userKey(email));
+		}
+	}
+	
+	/**
+	 * Write the successful, unexpired entries to the {@link #getPersistenceFile()}.
+	 */
+	public synchronized void persist() {
+		Validate.notNull(persistenceFile, "persistenceFile is required");
+		dirty.set(false);
+		long now = System.currentTimeMillis();
+		Properties properties = new Properties();
+		synchronized (entries) {
+			for(Map.Entry<String, Entry> e : entries.entrySet()) {
+				Entry entry = e.getValue();
+				if(entry.ewsUrl != null && now < entry.expiresAt) {
+					properties.setProperty(e.getKey(), entry.createdAt + " " + entry.expiresAt + " " + entry.ewsUrl);
+				}
+			}
+		}
+		File temp = new File(persistenceFile.getPath() + ".tmp");
+		OutputStream out = null;
+		try {
+			File parent = persistenceFile.getAbsoluteFile().getParentFile();
+			if(parent != null) {
+				FileUtils.forceMkdir(parent);
+			}
+			out = new FileOutputStream(temp);
+			properties.store(out, "autodiscover cache");
+			out.close();
+			out = null;
+			if(!temp.renameTo(persistenceFile)) {
+				// rename does not replace an existing file on every platform
+				FileUtils.forceDelete(persistenceFile);
+				if(!temp.renameTo(persistenceFile)) {
+					throw new IOException("failed to rename "+temp+" to "+persistenceFile);
+				}
+			}
+			log.debug("persisted "+properties.size()+" autodiscover entries to "+persistenceFile);
+		} catch (IOException e) {
+			dirty.set(true);
+			log.warn("failed to persist autodiscover cache to "+persistenceFile, e);
+		} finally {
+			IOUtils.closeQuietly(out);
+		}
+	}
+	
+	/**
+	 * Read the unexpired entries of the {@link #getPersistenceFile()}, if it exists.
+	 */
+	protected void load() {
+		if(!persistenceFile.exists()) {
+			return;
+		}
+		Properties properties = new Properties();
+		InputStream in = null;
+		try {
+			in = new FileInputStream(persistenceFile);
+			properties.load(in);
+		} catch (IOException e) {
+			log.warn("failed to read autodiscover cache from "+persistenceFile+", starting empty", e);
+			return;
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+		long now = System.currentTimeMillis();
+		int loaded = 0;
+		for(String key : properties.stringPropertyNames()) {
+			String[] parts = StringUtils.split(properties.getProperty(key), " ", 3);
+			try {
+				long createdAt = Long.parseLong(parts[0]);
+				long expiresAt = Long.parseLong(parts[1]);
+				if(now < expiresAt) {
+					store(key, new Entry(parts[2], null, createdAt, expiresAt));
+					loaded++;
+				}
+			} catch (RuntimeException e) {
+				log.debug("ignoring malformed autodiscover cache entry "+key);
+			}
+		}
+		dirty.set(false);
+		log.info("loaded "+loaded+" autodiscover entries from "+persistenceFile);
+	}
+	
+	/**
+	 * Ask the delegate and cache the result under the user and the domain.
+	 * 
+	 * @param email
+	 * @return the EWS URL
+	 * @throws AutodiscoverException
+	 */
+	protected String resolve(String email) throws AutodiscoverException {
+		String ewsUrl = delegate.getAutodiscoverEndpoint(email);
+		if(StringUtils.isBlank(ewsUrl)) {
+			throw new AutodiscoverException("autodiscover returned no ewsurl for email="+email);
+		}
+		long now = System.currentTimeMillis();
+		Entry entry = new Entry(ewsUrl, null, now, now + timeToLiveMillis);
+		store(userKey(email), entry);
+		String domain = domain(email);
+		if(domain != null) {
+			store(DOMAIN_PREFIX + domain, entry);
+		}
+		return ewsUrl;
+	}
+	
+	private void refreshAhead(final String email, final Entry entry) {
+		ScheduledExecutorService executor = this.scheduledExecutorService;
+		if(executor == null || !entry.refreshing.compareAndSet(false, true)) {
+			return;
+		}
+		refreshes.incrementAndGet();
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						resolve(email);
+					} catch (AutodiscoverException e) {
+						log.warn("refresh of autodiscover entry for "+email+" failed, keeping the cached value: "+e.getMessage());
+						entry.refreshing.set(false);
+					} catch (RuntimeException e) {
+						log.warn("refresh of autodiscover entry for "+email+" failed, keeping the cached value", e);
+						entry.refreshing.set(false);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			entry.refreshing.set(false);
+		}
+	}
+	
+	private Entry lookup(String key) {
+		synchronized (entries) {
+			return entries.get(key);
+		}
+	}
+	
+	private void store(String key, Entry entry) {
+		synchronized (entries) {
+			entries.put(key, entry);
+			Iterator<Entry> eldest = entries.values().iterator();
+			while(entries.size() > maxEntries && eldest.hasNext()) {
+				eldest.next();
+				eldest.remove();
+			}
+		}
+		if(entry.ewsUrl != null) {
+			dirty.set(true);
+		}
+	}
+	
+	private static String userKey(String email) {
+		return USER_PREFIX + email.toLowerCase();
+	}
+	
+	/**
+	 * 
+	 * @param email
+	 * @return the lower case domain of the address, or null
+	 */
+	static String domain(String email) {
+		int at = email.lastIndexOf('@');
+		return at < 0 || at == email.length() - 1 ? null : email.substring(at + 1).toLowerCase();
+	}
+	
+	private static final class Entry {
+		private final String ewsUrl;
+		private final String failure;
+		private final long createdAt;
+		private final long expiresAt;
+		private final AtomicBoolean refreshing = new AtomicBoolean();
+		
+		Entry(String ewsUrl, String failure, long createdAt, long expiresAt) {
+			this.ewsUrl = ewsUrl;
+			this.failure = failure;
+			this.createdAt = createdAt;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
@@ -27,7 +27,6 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
-import com.googlecode.ehcache.annotations.Cacheable;
 import com.microsoft.exchange.exception.AutodiscoverException;
 
 /**
@@ -47,7 +46,6 @@ public class CompositeAutodiscoverServiceImpl implements ExchangeAutodiscoverSer
 	private Collection<ExchangeAutodiscoverService> autodiscoverServices;
 
 	@Override
-	@Cacheable(cacheName="autodiscoverCache")
 	public String getAutodiscoverEndpoint(String email) throws AutodiscoverException {
 		String ewsUrl = null;
 		for(ExchangeAutodiscoverService service : getAutodiscoverServices()){
@@ -0,0 +1,220 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.autodiscover;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import com.microsoft.exchange.exception.AutodiscoverException;
+
+/**
+ * An autodiscover implementation that probes every potential endpoint of every configured service at once,
+ * returning the first EWS url found and cancelling the remaining probes.
+ * 
+ * Where {@link CompositeAutodiscoverServiceImpl} waits for each candidate in turn, so a single unreachable host 
+ * costs a full connection timeout, this service waits at most {@link #getProbeTimeoutMillis()} in total.
+ * Probes still running at that point are cancelled; give the underlying services short timeouts as well
+ * (see {@link PoxAutodiscoverServiceImpl#setProbeTimeoutMillis(int)}) so cancelled probes release their threads promptly.
+ * 
+ * @see <a href="http://msdn.microsoft.com/EN-US/library/office/ee332364(v=exchg.140).aspx">Implementing an Autodiscover Client in Microsoft Exchange</a>
+ */
+public class ConcurrentAutodiscoverServiceImpl implements ExchangeAutodiscoverService, InitializingBean, DisposableBean {
+
+	protected final Log log = LogFactory.getLog(this.getClass());
+	
+	private List<AbstractExchangeAutodiscoverService> autodiscoverServices = new ArrayList<AbstractExchangeAutodiscoverService>();
+	private long probeTimeoutMillis = 10000L;
+	private int poolSize = 16;
+	
+	private volatile ExecutorService executorService;
+	private boolean ownsExecutorService = false;
+	private boolean destroyed = false;
+	
+	/**
+	 * @return the autodiscoverServices
+	 */
+	public List<AbstractExchangeAutodiscoverService> getAutodiscoverServices() {
+		return autodiscoverServices;
+	}
+	/**
+	 * @param autodiscoverServices the services whose endpoints are probed
+	 */
+	public void setAutodiscoverServices(List<AbstractExchangeAutodiscoverService> autodiscoverServices) {
+		this.autodiscoverServices = autodiscoverServices;
+	}
+	/**
+	 * @return the probeTimeoutMillis
+	 */
+	public long getProbeTimeoutMillis() {
+		return probeTimeoutMillis;
+	}
+	/**
+	 * @param probeTimeoutMillis the longest {@link #getAutodiscoverEndpoint(String)} waits for any probe to succeed
+	 */
+	public void setProbeTimeoutMillis(long probeTimeoutMillis) {
+		Validate.isTrue(probeTimeoutMillis > 0, "probeTimeoutMillis must be greater than 0");
+		this.probeTimeoutMillis = probeTimeoutMillis;
+	}
+	/**
+	 * @return the poolSize
+	 */
+	public int getPoolSize() {
+		return poolSize;
+	}
+	/**
+	 * @param poolSize the number of threads in the default {@link ExecutorService}
+	 */
+	public void setPoolSize(int poolSize) {
+		Validate.isTrue(poolSize > 0, "poolSize must be greater than 0");
+		this.poolSize = poolSize;
+	}
+	/**
+	 * @return the executorService
+	 */
+	public ExecutorService getExecutorService() {
+		return executorService;
+	}
+	/**
+	 * Use an existing {@link ExecutorService} rather than creating one; it is not shut down by {@link #destroy()}.
+	 * 
+	 * @param executorService the executorService to set
+	 */
+	public void setExecutorService(ExecutorService executorService) {
+		this.executorService = executorService;
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.springframework.beans.factory.InitializingBean#afterPropertiesSet()
+	 */
+	@Override
+	public void afterPropertiesSet() {
+		Validate.notEmpty(autodiscoverServices, "autodiscoverServices cannot be empty");
+		initialize();
+	}
+	
+	/**
+	 * Create the default {@link ExecutorService} if one was not provided.
+	 * Invoked by {@link #afterPropertiesSet()} and lazily on first use.
+	 */
+	public synchronized void initialize() {
+		if(executorService == null && !destroyed) {
+			CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("ews-autodiscover-probe-");
+			threadFactory.setDaemon(true);
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+			executor.allowCoreThreadTimeOut(true);
+			this.executorService = executor;
+			this.ownsExecutorService = true;
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.springframework.beans.factory.DisposableBean#destroy()
+	 */
+	@Override
+	public synchronized void destroy() {
+		destroyed = true;
+		if(ownsExecutorService && executorService != null) {
+			executorService.shutdownNow();
+			ownsExecutorService = false;
+		}
+		executorService = null;
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.autodiscover.ExchangeAutodiscoverService#getAutodiscoverEndpoint(java.lang.String)
+	 */
+	@Override
+	public String getAutodiscoverEndpoint(final String email) throws AutodiscoverException {
+		initialize();
+		ExecutorService executor = this.executorService;
+		if(executor == null) {
+			throw new AutodiscoverException("autodiscover service has been destroyed");
+		}
+		CompletionService<String> completionService = new ExecutorCompletionService<String>(executor);
+		List<Future<String>> probes = new ArrayList<Future<String>>();
+		try {
+			for(final AbstractExchangeAutodiscoverService service : getAutodiscoverServices()) {
+				for(final String potential : service.getPotentialAutodiscoverEndpoints(email)) {
+					probes.add(completionService.submit(new Callable<String>() {
+						@Override
+						public String call() throws AutodiscoverException {
+							return service.probeAutodiscoverEndpoint(email, potential);
+						}
+					}));
+				}
+			}
+			long deadline = System.currentTimeMillis() + probeTimeoutMillis;
+			for(int remaining = probes.size(); remaining > 0; remaining--) {
+				long wait = deadline - System.currentTimeMillis();
+				Future<String> done = wait > 0 ? completionService.poll(wait, TimeUnit.MILLISECONDS) : null;
+				if(done == null) {
+					throw new AutodiscoverException("autodiscover timed out after "+probeTimeoutMillis+"ms, cannot find ewsurl for email="+email);
+				}
+				try {
+					String ewsUrl = done.get();
+					if(StringUtils.isNotBlank(ewsUrl)) {
+						return ewsUrl;
+					}
+				} catch (ExecutionException e) {
+					log.debug("autodiscover probe failed for email="+email+": "+e.getCause().getMessage());
+				}
+			}
+			throw new AutodiscoverException("autodiscover failed.  cannot find ewsurl for email="+email);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AutodiscoverException(e);
+		} catch (RejectedExecutionException e) {
+			throw new AutodiscoverException(e);
+		} finally {
+			for(Future<String> probe : probes) {
+				probe.cancel(true);
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.autodiscover.ExchangeAutodiscoverService#getPotentialAutodiscoverEndpoints(java.lang.String)
+	 */
+	@Override
+	public List<String> getPotentialAutodiscoverEndpoints(String email) {
+		List<String> potentials = new ArrayList<String>();
+		for(ExchangeAutodiscoverService service : getAutodiscoverServices()){
+			potentials.addAll(service.getPotentialAutodiscoverEndpoints(email));
+		}
+		return potentials;
+	}
+}
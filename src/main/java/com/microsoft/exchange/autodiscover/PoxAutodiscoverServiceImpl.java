@@ -37,6 +37,7 @@ import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.protocol.HTTP;
 import org.apache.http.util.EntityUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -70,6 +71,7 @@ public class PoxAutodiscoverServiceImpl extends AbstractExchangeAutodiscoverServ
 	private DefaultHttpClient httpClient;
 	protected final Log log = LogFactory.getLog(this.getClass());
 	private static final String ENDPOINT_SUFFIX = "xml";
+	private int probeTimeoutMillis = 0;
 	
 	@Override
 	public String getServiceSuffix(){
@@ -95,30 +97,45 @@ public class PoxAutodiscoverServiceImpl extends AbstractExchangeAutodiscoverServ
 	
 	@Override
 	public String getAutodiscoverEndpoint(String email) throws AutodiscoverException {
-		String ewsUrl = null;
-		String responseString = null;
-		String payload = String.format(POX_REQUEST_FORMAT,email);
-		
 		for(String potential : getPotentialAutodiscoverEndpoints(email)){
-			log.info("attempting pox autodiscover for email="+email+" uri="+potential);
-			HttpPost request = new HttpPost(potential);
-			StringEntity requestEntity = new StringEntity(payload, getContentType());
-			request.setEntity(requestEntity);
 			try {
-				HttpResponse response = executeInternal(request);
-				responseString = parseHttpResponseToString(response);
-				if(StringUtils.isNotBlank(responseString)){
-					ewsUrl = parseResponseString(responseString);
-					if(StringUtils.isNotBlank(ewsUrl))
-						return ewsUrl;
-				}
-			} catch (Exception e) {
+				return probeAutodiscoverEndpoint(email, potential);
+			} catch (AutodiscoverException e) {
 				log.warn("caught exception while attempting POX autodiscover: "+e.getMessage());
 			}
 		}
 		throw new PoxAutodiscoverException("POX autodiscover failed.  cannot find ewsurl for email="+email);
 	}
 
+	@Override
+	public String probeAutodiscoverEndpoint(String email, String potential) throws AutodiscoverException {
+		log.info("attempting pox autodiscover for email="+email+" uri="+potential);
+		HttpPost request = new HttpPost(potential);
+		StringEntity requestEntity = new StringEntity(String.format(POX_REQUEST_FORMAT,email), getContentType());
+		request.setEntity(requestEntity);
+		if(probeTimeoutMillis > 0) {
+			// request params take precedence over the (shared) client's
+			HttpConnectionParams.setConnectionTimeout(request.getParams(), probeTimeoutMillis);
+			HttpConnectionParams.setSoTimeout(request.getParams(), probeTimeoutMillis);
+		}
+		try {
+			HttpResponse response = executeInternal(request);
+			if(response == null) {
+				throw new PoxAutodiscoverException("no response from uri="+potential);
+			}
+			String responseString = parseHttpResponseToString(response);
+			if(StringUtils.isNotBlank(responseString)){
+				String ewsUrl = parseResponseString(responseString);
+				if(StringUtils.isNotBlank(ewsUrl))
+					return ewsUrl;
+			}
+		} catch (AutodiscoverException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new PoxAutodiscoverException(e);
+		}
+		throw new PoxAutodiscoverException("no ewsurl in response from uri="+potential);
+	}
 
 	
 	private HttpResponse executeInternal(HttpPost request) {
@@ -294,6 +311,19 @@ public class PoxAutodiscoverServiceImpl extends AbstractExchangeAutodiscoverServ
 		}
 	}
 	
+	/**
+	 * @return the probeTimeoutMillis
+	 */
+	public int getProbeTimeoutMillis() {
+		return probeTimeoutMillis;
+	}
+	/**
+	 * @param probeTimeoutMillis connect and read timeout for each autodiscover request; 0 to use the httpClient's
+	 */
+	public void setProbeTimeoutMillis(int probeTimeoutMillis) {
+		this.probeTimeoutMillis = probeTimeoutMillis;
+	}
+
 	public DefaultHttpClient getHttpClient() {
 		return httpClient;
 	}
@@ -27,6 +27,8 @@ import javax.xml.namespace.QName;
 import javax.xml.transform.TransformerException;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.params.HttpConnectionParams;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.oxm.Marshaller;
@@ -35,6 +37,9 @@ import org.springframework.ws.client.core.WebServiceMessageCallback;
 import org.springframework.ws.client.core.WebServiceOperations;
 import org.springframework.ws.soap.SoapMessage;
 import org.springframework.ws.soap.client.core.SoapActionCallback;
+import org.springframework.ws.transport.context.TransportContext;
+import org.springframework.ws.transport.context.TransportContextHolder;
+import org.springframework.ws.transport.http.HttpComponentsConnection;
 import org.springframework.xml.transform.StringResult;
 
 import com.microsoft.exchange.exception.AutodiscoverException;
@@ -84,6 +89,7 @@ public class SoapAutodiscoverServiceImpl extends AbstractExchangeAutodiscoverSer
     }
     
     private Marshaller marshaller;
+    private int probeTimeoutMillis = 0;
     
 	public Marshaller getMarshaller() {
 		return marshaller;
@@ -93,6 +99,19 @@ public class SoapAutodiscoverServiceImpl extends AbstractExchangeAutodiscoverSer
 	public void setMarshaller(Marshaller marshaller) {
 		this.marshaller = marshaller;
 	}
+	
+	/**
+	 * @return the probeTimeoutMillis
+	 */
+	public int getProbeTimeoutMillis() {
+		return probeTimeoutMillis;
+	}
+	/**
+	 * @param probeTimeoutMillis connect and read timeout for each autodiscover request; 0 to use the message sender's
+	 */
+	public void setProbeTimeoutMillis(int probeTimeoutMillis) {
+		this.probeTimeoutMillis = probeTimeoutMillis;
+	}
     
 	private String parseGetUserSettingsResponse( GetUserSettingsResponseMessage response) throws SoapAutodiscoverException {
 		GetUserSettingsResponse soapResponse = response.getResponse().getValue();
@@ -196,6 +215,7 @@ public class SoapAutodiscoverServiceImpl extends AbstractExchangeAutodiscoverSer
                 soap.getEnvelope().getHeader().addHeaderElement(REQUEST_SERVER_VERSION_QNAME)
                         .setText(ExchangeVersion.EXCHANGE_2010.value());
                 soap.getEnvelope().getHeader().addHeaderElement(SOAP_ACTION_HEADER_QNAME).setText(soapAction);
+                applyProbeTimeout();
             }
 
         };
@@ -228,28 +248,55 @@ public class SoapAutodiscoverServiceImpl extends AbstractExchangeAutodiscoverSer
         return response;
     }
 
+    /**
+     * Set {@link #getProbeTimeoutMillis()} on the request about to be sent.
+     * The callback runs before the request is sent, on the thread holding its {@link TransportContext}; 
+     * request params take precedence over the (shared) client's, whose timeouts are far too long for a probe.
+     */
+    protected void applyProbeTimeout() {
+    	if(probeTimeoutMillis <= 0) {
+    		return;
+    	}
+    	TransportContext context = TransportContextHolder.getTransportContext();
+    	if(context != null && context.getConnection() instanceof HttpComponentsConnection) {
+    		HttpPost request = ((HttpComponentsConnection) context.getConnection()).getHttpPost();
+    		HttpConnectionParams.setConnectionTimeout(request.getParams(), probeTimeoutMillis);
+    		HttpConnectionParams.setSoTimeout(request.getParams(), probeTimeoutMillis);
+    	} else {
+    		log.debug("no HttpComponentsConnection in the TransportContext, probeTimeoutMillis not applied");
+    	}
+    }
+
 	@Override
 	public String getAutodiscoverEndpoint(String email) throws AutodiscoverException {
-		String ewsUrl = null;
-		GetUserSettingsRequestMessage request = createGetUserSettingsSoapMessage(email);
-		
 		for(String potential : getPotentialAutodiscoverEndpoints(email)){
-			log.info("attempting soap autodiscover for email="+email+" uri="+potential);
-			GetUserSettingsResponseMessage response = null;
-			 try {
-				response = getUserSettings(potential, request, GET_USER_SETTINGS_ACTION);
-				if(null != response){
-					ewsUrl = parseGetUserSettingsResponse(response);
-					if(StringUtils.isNotBlank(ewsUrl))
-						return ewsUrl;
-				}
-			} catch (Exception e) {
+			try {
+				return probeAutodiscoverEndpoint(email, potential);
+			} catch (AutodiscoverException e) {
 				log.warn("caught exception while attempting SOAP autodiscover : "+e.getMessage());
-			} 
+			}
 		}
 		throw new SoapAutodiscoverException("SOAP autodiscover failed.  cannot find ewsurl for email="+email);
 	}
 
+	@Override
+	public String probeAutodiscoverEndpoint(String email, String potential) throws AutodiscoverException {
+		log.info("attempting soap autodiscover for email="+email+" uri="+potential);
+		GetUserSettingsRequestMessage request = createGetUserSettingsSoapMessage(email);
+		GetUserSettingsResponseMessage response = getUserSettings(potential, request, GET_USER_SETTINGS_ACTION);
+		if(null == response){
+			throw new SoapAutodiscoverException("no response from uri="+potential);
+		}
+		try {
+			String ewsUrl = parseGetUserSettingsResponse(response);
+			if(StringUtils.isNotBlank(ewsUrl))
+				return ewsUrl;
+		} catch (RuntimeException e) {
+			throw new SoapAutodiscoverException(e);
+		}
+		throw new SoapAutodiscoverException("no ewsurl in response from uri="+potential);
+	}
+
 }
 
 
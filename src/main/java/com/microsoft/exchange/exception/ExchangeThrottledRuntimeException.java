@@ -0,0 +1,39 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.exception;
+
+/**
+ * Raised when the client side throttling governor cannot obtain a permit to send a request
+ * to Exchange before the configured timeout.
+ */
+public class ExchangeThrottledRuntimeException extends ExchangeRuntimeException {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 2795542542302178166L;
+
+	public ExchangeThrottledRuntimeException(Throwable arg0) {
+		super(arg0);
+	}
+
+	public ExchangeThrottledRuntimeException(String arg0) {
+		super(arg0);
+	}
+}
@@ -24,11 +24,24 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
 
 import net.fortuna.ical4j.model.Calendar;
 
@@ -44,16 +57,32 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.support.DataAccessUtils;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StopWatch.TaskInfo;
 
-import com.microsoft.exchange.DateHelp;
+import com.microsoft.exchange.CompactItemIdSet;
+import com.microsoft.exchange.ExchangeRequestContext;
 import com.microsoft.exchange.ExchangeRequestFactory;
 import com.microsoft.exchange.ExchangeResponseUtils;
 import com.microsoft.exchange.ExchangeWebServices;
+import com.microsoft.exchange.ItemTypeHandler;
+import com.microsoft.exchange.MailboxProgressListener;
+import com.microsoft.exchange.MailboxResult;
+import com.microsoft.exchange.StreamingExchangeWebServices;
 import com.microsoft.exchange.exception.ExchangeExceededFindCountLimitRuntimeException;
 import com.microsoft.exchange.exception.ExchangeInvalidUPNRuntimeException;
 import com.microsoft.exchange.exception.ExchangeRuntimeException;
+import com.microsoft.exchange.impl.cache.FolderHierarchy;
+import com.microsoft.exchange.impl.cache.FolderHierarchyCache;
+import com.microsoft.exchange.impl.cache.FolderHierarchyLoader;
+import com.microsoft.exchange.impl.cache.ItemCache;
+import com.microsoft.exchange.impl.retry.DefaultRetryPolicy;
+import com.microsoft.exchange.impl.retry.RetryExecutor;
+import com.microsoft.exchange.impl.retry.RetryPolicy;
+import com.microsoft.exchange.impl.sync.InMemorySyncStateStore;
+import com.microsoft.exchange.impl.sync.ItemSyncDelta;
+import com.microsoft.exchange.impl.sync.SyncStateStore;
 import com.microsoft.exchange.messages.CreateFolder;
 import com.microsoft.exchange.messages.CreateFolderResponse;
 import com.microsoft.exchange.messages.CreateItem;
@@ -75,6 +104,14 @@ import com.microsoft.exchange.messages.GetServerTimeZones;
 import com.microsoft.exchange.messages.GetServerTimeZonesResponse;
 import com.microsoft.exchange.messages.ResolveNames;
 import com.microsoft.exchange.messages.ResolveNamesResponse;
+import com.microsoft.exchange.messages.ResponseCodeType;
+import com.microsoft.exchange.messages.ResponseMessageType;
+import com.microsoft.exchange.messages.SyncFolderHierarchy;
+import com.microsoft.exchange.messages.SyncFolderHierarchyResponse;
+import com.microsoft.exchange.messages.SyncFolderHierarchyResponseMessageType;
+import com.microsoft.exchange.messages.SyncFolderItems;
+import com.microsoft.exchange.messages.SyncFolderItemsResponse;
+import com.microsoft.exchange.messages.SyncFolderItemsResponseMessageType;
 import com.microsoft.exchange.types.BaseFolderIdType;
 import com.microsoft.exchange.types.BaseFolderType;
 import com.microsoft.exchange.types.CalendarFolderType;
@@ -84,7 +121,9 @@ import com.microsoft.exchange.types.ConnectingSIDType;
 import com.microsoft.exchange.types.DefaultShapeNamesType;
 import com.microsoft.exchange.types.DisposalType;
 import com.microsoft.exchange.types.DistinguishedFolderIdNameType;
+import com.microsoft.exchange.types.DistinguishedFolderIdType;
 import com.microsoft.exchange.types.ExtendedPropertyType;
+import com.microsoft.exchange.types.FindItemParentType;
 import com.microsoft.exchange.types.FolderIdType;
 import com.microsoft.exchange.types.FolderQueryTraversalType;
 import com.microsoft.exchange.types.ItemIdType;
@@ -115,6 +154,31 @@ public class BaseExchangeCalendarDataDao {
 	private ExchangeResponseUtils responseUtils = new ExchangeResponseUtilsImpl();
 
 	private int maxRetries = 10;
+	private volatile RetryPolicy retryPolicy = new DefaultRetryPolicy(maxRetries);
+	
+	private RetryExecutor retryExecutor;
+	private FindItemRangePlanner rangePlanner = new FindItemRangePlanner();
+	private ExecutorService parallelExecutor;
+	private int parallelism = ExchangeOnlineThrottlingPolicy.MAX_CONCURRENT_CONNECTIONS_IMPERSONATION;
+	private int pagingDepth = 4;
+	private int getItemBatchSize = 100;
+	private ItemCache itemCache;
+	private FolderHierarchyCache folderHierarchyCache;
+	private final FolderHierarchyLoader folderHierarchyLoader = new FolderHierarchyLoader() {
+		@Override
+		public FolderHierarchy load(String upn, DistinguishedFolderIdNameType root) {
+			return loadFolderHierarchy(upn, root);
+		}
+		@Override
+		public String revalidate(String upn, FolderHierarchy hierarchy) {
+			return revalidateFolderHierarchy(upn, hierarchy);
+		}
+	};
+	private SyncStateStore syncStateStore = new InMemorySyncStateStore();
+	private int syncMaxChangesReturned = 512;
+	private ExecutorService bulkExecutorService;
+	private int bulkConcurrency = ExchangeOnlineThrottlingPolicy.MAX_CONCURRENT_CONNECTIONS_IMPERSONATION;
+	private MailboxTimeZoneContextSource mailboxTimeZoneContextSource;
 	
 	@Value("${username}")
 	private String adminUsername;
@@ -122,8 +186,223 @@ public class BaseExchangeCalendarDataDao {
 	public int getMaxRetries() {
 		return maxRetries;
 	}
+	/**
+	 * Bounds both the retries of each request (via {@link #getRetryPolicy()}) and the depth of
+	 * upn resolution and date range splitting; this applies whichever {@link RetryExecutor} is used.
+	 * 
+	 * @param maxRetries the maxRetries to set
+	 */
 	public void setMaxRetries(int maxRetries) {
 		this.maxRetries = maxRetries;
+		this.retryPolicy = new DefaultRetryPolicy(maxRetries);
+	}
+	/**
+	 * @return the {@link DefaultRetryPolicy} built from {@link #getMaxRetries()}
+	 */
+	public RetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+	/**
+	 * If no {@link RetryExecutor} has been set, one is created.
+	 * Retries are always governed by {@link #getRetryPolicy()}, not by the policy of the {@link RetryExecutor}.
+	 * 
+	 * @return the retryExecutor, never null
+	 */
+	public synchronized RetryExecutor getRetryExecutor() {
+		if(retryExecutor == null) {
+			retryExecutor = new RetryExecutor();
+			retryExecutor.initialize();
+		}
+		return retryExecutor;
+	}
+	/**
+	 * @param retryExecutor the retryExecutor to set
+	 */
+	@Autowired(required=false)
+	public synchronized void setRetryExecutor(RetryExecutor retryExecutor) {
+		this.retryExecutor = retryExecutor;
+	}
+	/**
+	 * @return the mailboxTimeZoneContextSource, may be null
+	 */
+	public MailboxTimeZoneContextSource getMailboxTimeZoneContextSource() {
+		return mailboxTimeZoneContextSource;
+	}
+	/**
+	 * When set, the time zone of each mailbox is bound along with the impersonated mailbox, so the dates 
+	 * of its requests and their TimeZoneContext header use the mailbox's time zone.
+	 * 
+	 * @param mailboxTimeZoneContextSource the mailboxTimeZoneContextSource to set
+	 */
+	@Autowired(required=false)
+	public void setMailboxTimeZoneContextSource(MailboxTimeZoneContextSource mailboxTimeZoneContextSource) {
+		this.mailboxTimeZoneContextSource = mailboxTimeZoneContextSource;
+	}
+	/**
+	 * Run the task with the {@link RetryExecutor}, retrying according to {@link #getRetryPolicy()}.
+	 * 
+	 * @param description a short description of the task, used in log messages
+	 * @param task
+	 * @return the result of the first successful attempt
+	 */
+	protected <T> T executeWithRetry(String description, Callable<T> task) {
+		return getRetryExecutor().execute(description, task, getRetryPolicy());
+	}
+	/**
+	 * @return the rangePlanner
+	 */
+	public FindItemRangePlanner getRangePlanner() {
+		return rangePlanner;
+	}
+	/**
+	 * @param rangePlanner the rangePlanner to set
+	 */
+	public void setRangePlanner(FindItemRangePlanner rangePlanner) {
+		Validate.notNull(rangePlanner, "rangePlanner argument cannot be null");
+		this.rangePlanner = rangePlanner;
+	}
+	/**
+	 * {@link ExecutorService} used to split a single mailbox request into concurrent sub-requests.
+	 * 
+	 * If none has been set, one is created with at most {@link #getParallelism()} threads and no queue;
+	 * when all threads are busy, work runs on the submitting thread instead.
+	 * Any executor set here should behave similarly, since tasks may submit further tasks (a bounded
+	 * queue could otherwise deadlock).
+	 * 
+	 * @return the parallelExecutor, never null
+	 */
+	public synchronized ExecutorService getParallelExecutor() {
+		if(parallelExecutor == null) {
+			CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("ews-parallel-");
+			threadFactory.setDaemon(true);
+			parallelExecutor = new ThreadPoolExecutor(0, getParallelism(), 60L, TimeUnit.SECONDS, 
+					new SynchronousQueue<Runnable>(), threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+		}
+		return parallelExecutor;
+	}
+	/**
+	 * @param parallelExecutor the parallelExecutor to set
+	 */
+	public synchronized void setParallelExecutor(ExecutorService parallelExecutor) {
+		this.parallelExecutor = parallelExecutor;
+	}
+	/**
+	 * @return the parallelism
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+	/**
+	 * @param parallelism the maximum number of threads in the default {@link #getParallelExecutor()}
+	 */
+	public void setParallelism(int parallelism) {
+		Validate.isTrue(parallelism > 0, "parallelism must be greater than 0");
+		this.parallelism = parallelism;
+	}
+	/**
+	 * @return the pagingDepth
+	 */
+	public int getPagingDepth() {
+		return pagingDepth;
+	}
+	/**
+	 * @param pagingDepth the maximum number of FindItem pages requested concurrently by {@link #findAllItemIds(String, Collection)}
+	 */
+	public void setPagingDepth(int pagingDepth) {
+		Validate.isTrue(pagingDepth > 0, "pagingDepth must be greater than 0");
+		this.pagingDepth = pagingDepth;
+	}
+	/**
+	 * @return the getItemBatchSize
+	 */
+	public int getGetItemBatchSize() {
+		return getItemBatchSize;
+	}
+	/**
+	 * @param getItemBatchSize the maximum number of ids in a single GetItem request
+	 */
+	public void setGetItemBatchSize(int getItemBatchSize) {
+		Validate.isTrue(getItemBatchSize > 0, "getItemBatchSize must be greater than 0");
+		this.getItemBatchSize = getItemBatchSize;
+	}
+	/**
+	 * @return the itemCache, may be null
+	 */
+	public ItemCache getItemCache() {
+		return itemCache;
+	}
+	/**
+	 * @param itemCache consulted by {@link #getItems(String, Collection, ItemTypeHandler)} before requesting an item; null (the default) disables caching
+	 */
+	public void setItemCache(ItemCache itemCache) {
+		this.itemCache = itemCache;
+	}
+	/**
+	 * @return the folderHierarchyCache, may be null
+	 */
+	public FolderHierarchyCache getFolderHierarchyCache() {
+		return folderHierarchyCache;
+	}
+	/**
+	 * @param folderHierarchyCache used by the calendar and task folder lookups; null (the default) disables caching
+	 */
+	public void setFolderHierarchyCache(FolderHierarchyCache folderHierarchyCache) {
+		this.folderHierarchyCache = folderHierarchyCache;
+	}
+	/**
+	 * @return the syncStateStore
+	 */
+	public SyncStateStore getSyncStateStore() {
+		return syncStateStore;
+	}
+	/**
+	 * @param syncStateStore where {@link #syncFolderItems(String, BaseFolderIdType)} keeps SyncStates; in memory by default
+	 */
+	public void setSyncStateStore(SyncStateStore syncStateStore) {
+		Validate.notNull(syncStateStore, "syncStateStore cannot be null");
+		this.syncStateStore = syncStateStore;
+	}
+	/**
+	 * @return the syncMaxChangesReturned
+	 */
+	public int getSyncMaxChangesReturned() {
+		return syncMaxChangesReturned;
+	}
+	/**
+	 * @param syncMaxChangesReturned the MaxChangesReturned of each SyncFolderItems request, 1 to 512
+	 */
+	public void setSyncMaxChangesReturned(int syncMaxChangesReturned) {
+		Validate.isTrue(syncMaxChangesReturned > 0 && syncMaxChangesReturned <= 512, "syncMaxChangesReturned must be between 1 and 512");
+		this.syncMaxChangesReturned = syncMaxChangesReturned;
+	}
+	/**
+	 * @return the bulkExecutorService, may be null
+	 */
+	public ExecutorService getBulkExecutorService() {
+		return bulkExecutorService;
+	}
+	/**
+	 * Optional {@link ExecutorService} used by the multi-mailbox operations.
+	 * If not set, a pool of {@link #getBulkConcurrency()} threads is created for
+	 * (and shut down after) each bulk invocation.
+	 * 
+	 * @param bulkExecutorService the bulkExecutorService to set
+	 */
+	public void setBulkExecutorService(ExecutorService bulkExecutorService) {
+		this.bulkExecutorService = bulkExecutorService;
+	}
+	/**
+	 * @return the bulkConcurrency
+	 */
+	public int getBulkConcurrency() {
+		return bulkConcurrency;
+	}
+	/**
+	 * @param bulkConcurrency the bulkConcurrency to set
+	 */
+	public void setBulkConcurrency(int bulkConcurrency) {
+		Validate.isTrue(bulkConcurrency > 0, "bulkConcurrency must be greater than 0");
+		this.bulkConcurrency = bulkConcurrency;
 	}
 	public ExchangeWebServices getWebServices() {
 		return webServices;
@@ -180,6 +459,10 @@ public class BaseExchangeCalendarDataDao {
 		ConnectingSIDType connectingSID = new ConnectingSIDType();
 		connectingSID.setPrincipalName(upn);
 		ThreadLocalImpersonationConnectingSIDSourceImpl.setConnectingSID(connectingSID);
+		MailboxTimeZoneContextSource mailboxTimeZones = this.mailboxTimeZoneContextSource;
+		if(mailboxTimeZones != null) {
+			mailboxTimeZones.bindTimeZone(upn);
+		}
 	}
 	
 	public CalendarFolderType getCalendarFolder(String upn, FolderIdType folderId) {
@@ -225,6 +508,14 @@ public class BaseExchangeCalendarDataDao {
 	}
 	
 	private List<BaseFolderType> getFoldersByType(String upn, DistinguishedFolderIdNameType parent){
+		FolderHierarchyCache cache = getFolderHierarchyCache();
+		if(cache != null) {
+			return new ArrayList<BaseFolderType>(cache.get(upn, parent, folderHierarchyLoader).getFolders());
+		}
+		return loadFoldersByType(upn, parent);
+	}
+	
+	private List<BaseFolderType> loadFoldersByType(String upn, DistinguishedFolderIdNameType parent){
 		List<BaseFolderType> folders = new ArrayList<BaseFolderType>();
 		BaseFolderType baseFolderType = getPrimaryFolder(upn, parent);
 		if(null != baseFolderType) {
@@ -268,6 +559,17 @@ public class BaseExchangeCalendarDataDao {
 	}
 	
 	public FolderIdType getCalendarFolderId(String upn, String calendarName) {
+		FolderHierarchyCache cache = getFolderHierarchyCache();
+		if(cache != null) {
+			Validate.notEmpty(upn, "upn cannnot be empty");
+			BaseFolderType folder = cache.get(upn, DistinguishedFolderIdNameType.CALENDAR, folderHierarchyLoader).getFolderByDisplayName(calendarName);
+			if(folder == null) {
+				throw new ExchangeRuntimeException("No calendar folder with name of '"+calendarName+"' for "+upn);
+			}
+			FolderIdType folderIdType = new FolderIdType();
+			folderIdType.setId(folder.getFolderId().getId());
+			return folderIdType;
+		}
 		Map<String, String> calendarFolderMap = getCalendarFolderMap(upn);
 		if(!CollectionUtils.isEmpty(calendarFolderMap) && calendarFolderMap.containsValue(calendarName)) {
 			for(String c_id: calendarFolderMap.keySet()) {
@@ -293,6 +595,76 @@ public class BaseExchangeCalendarDataDao {
 		return calendarsMap;
 	}
 	
+	/**
+	 * Load the hierarchy below the distinguished folder for the {@link #getFolderHierarchyCache()},
+	 * along with a SyncFolderHierarchy state that {@link #revalidateFolderHierarchy(String, FolderHierarchy)} can check later.
+	 * 
+	 * @param upn
+	 * @param root
+	 * @return the current hierarchy
+	 */
+	protected FolderHierarchy loadFolderHierarchy(String upn, DistinguishedFolderIdNameType root) {
+		DistinguishedFolderIdType folderId = new DistinguishedFolderIdType();
+		folderId.setId(root);
+		// taken before the folders are read, so a change in between shows up at the next revalidation
+		String syncState = null;
+		boolean includesLastFolderInRange = false;
+		while(!includesLastFolderInRange) {
+			SyncFolderHierarchyResponseMessageType message = syncFolderHierarchyInternal(upn, getRequestFactory().constructSyncFolderHierarchy(folderId, syncState));
+			if(ResponseCodeType.ERROR_INVALID_SYNC_STATE_DATA.equals(message.getResponseCode())) {
+				syncState = null;
+				break;
+			}
+			syncState = message.getSyncState();
+			includesLastFolderInRange = message.isIncludesLastFolderInRange() == null || message.isIncludesLastFolderInRange();
+		}
+		return new FolderHierarchy(root, loadFoldersByType(upn, root), syncState);
+	}
+	
+	/**
+	 * 
+	 * @param upn
+	 * @param hierarchy
+	 * @return the new SyncState if no folder below the root changed since the hierarchy was loaded, otherwise null
+	 */
+	protected String revalidateFolderHierarchy(String upn, FolderHierarchy hierarchy) {
+		DistinguishedFolderIdType folderId = new DistinguishedFolderIdType();
+		folderId.setId(hierarchy.getRoot());
+		SyncFolderHierarchyResponseMessageType message = syncFolderHierarchyInternal(upn, getRequestFactory().constructSyncFolderHierarchy(folderId, hierarchy.getSyncState()));
+		if(ResponseCodeType.ERROR_INVALID_SYNC_STATE_DATA.equals(message.getResponseCode())) {
+			return null;
+		}
+		boolean unchanged = (message.getChanges() == null || message.getChanges().getCreatesAndUpdatesAndDeletes().isEmpty())
+				&& (message.isIncludesLastFolderInRange() == null || message.isIncludesLastFolderInRange());
+		return unchanged ? message.getSyncState() : null;
+	}
+	
+	/**
+	 * 
+	 * @param upn
+	 * @param request
+	 * @return the response message, which has passed {@link ExchangeResponseUtils#confirmSuccess(com.microsoft.exchange.messages.BaseResponseMessageType)} unless its code is ErrorInvalidSyncStateData
+	 */
+	private SyncFolderHierarchyResponseMessageType syncFolderHierarchyInternal(final String upn, final SyncFolderHierarchy request) {
+		return executeWithRetry("syncFolderHierarchyInternal(upn="+upn+",...)", new Callable<SyncFolderHierarchyResponseMessageType>() {
+			@Override
+			public SyncFolderHierarchyResponseMessageType call() {
+				setContextCredentials(upn);
+				SyncFolderHierarchyResponse response = getWebServices().syncFolderHierarchy(request);
+				for(JAXBElement<? extends ResponseMessageType> element : response.getResponseMessages().getCreateItemResponseMessagesAndDeleteItemResponseMessagesAndGetItemResponseMessages()) {
+					if(element.getValue() instanceof SyncFolderHierarchyResponseMessageType) {
+						SyncFolderHierarchyResponseMessageType message = (SyncFolderHierarchyResponseMessageType) element.getValue();
+						if(!ResponseCodeType.ERROR_INVALID_SYNC_STATE_DATA.equals(message.getResponseCode())) {
+							getResponseUtils().confirmSuccess(response);
+						}
+						return message;
+					}
+				}
+				throw new ExchangeRuntimeException("SyncFolderHierarchyResponse without a SyncFolderHierarchyResponseMessage");
+			}
+		});
+	}
+	
 	public Map<String, String> getTaskFolderMap(String upn){
 		Map<String, String> taskFolderMap = new HashMap<String, String>();
 		List<BaseFolderType> allTaskFolders = getAllTaskFolders(upn);
@@ -333,7 +705,7 @@ public class BaseExchangeCalendarDataDao {
 	 * @param depth
 	 * @return
 	 */
-	private Set<ItemIdType> findCalendarItemIdsInternal(String upn, Date startDate, Date endDate, Collection<FolderIdType> calendarIds, int depth){
+	private Set<ItemIdType> findCalendarItemIdsInternal(final String upn, final Date startDate, final Date endDate, final Collection<FolderIdType> calendarIds, int depth){
 		Validate.isTrue(StringUtils.isNotBlank(upn), "upn argument cannot be blank");
 		Validate.notNull(startDate, "startDate argument cannot be null");
 		Validate.notNull(endDate, "endDate argument cannot be null");
@@ -343,65 +715,207 @@ public class BaseExchangeCalendarDataDao {
 		int newDepth = depth +1;
 		if(depth > getMaxRetries()) {
 			throw new ExchangeRuntimeException("findCalendarItemIdsInternal(upn="+upn+",startDate="+startDate+",+endDate="+endDate+",...) failed "+getMaxRetries()+ " consecutive attempts.");
-		}else {
-			setContextCredentials(upn);
-			FindItem request = getRequestFactory().constructFindCalendarItemIdsByDateRange(startDate, endDate, calendarIds);
-			try {
-				FindItemResponse response = getWebServices().findItem(request);
-				return getResponseUtils().parseFindItemIdResponseNoOffset(response);
-				
-			}catch(ExchangeInvalidUPNRuntimeException e0) {
-				log.warn("findCalendarItemIdsInternal(upn="+upn+",startDate="+startDate+",+endDate="+endDate+",...) ExchangeInvalidUPNRuntimeException.  Attempting to resolve valid upn... - failure #"+newDepth);
-				
-				String resolvedUpn = resolveUpn(upn);
-				if(StringUtils.isNotBlank(resolvedUpn) && (!resolvedUpn.equalsIgnoreCase(upn))){
-					return findCalendarItemIdsInternal(resolvedUpn, startDate, endDate, calendarIds, newDepth);
-				}else {
-					//rethrow
-					throw e0;
-				}
-			}catch(ExchangeExceededFindCountLimitRuntimeException e1) {
-				log.warn("findCalendarItemIdsInternal(upn="+upn+",startDate="+startDate+",+endDate="+endDate+",...) ExceededFindCountLimit splitting request and trying again. - failure #"+newDepth);
-				Set<ItemIdType> foundItems = new HashSet<ItemIdType>();
-				List<Interval> intervals = DateHelp.generateIntervals(startDate, endDate);
-				for(Interval i: intervals) {
-					foundItems.addAll(findCalendarItemIdsInternal(upn,i.getStart().toDate(), i.getEnd().toDate(),calendarIds,newDepth));
+		}
+		
+		List<Interval> plannedIntervals = getRangePlanner().plan(upn, startDate, endDate);
+		if(plannedIntervals.size() > 1) {
+			log.debug("findCalendarItemIdsInternal(upn="+upn+",startDate="+startDate+",+endDate="+endDate+",...) planned "+plannedIntervals.size()+" ranges");
+			return findCalendarItemIdsInParallel(upn, plannedIntervals, calendarIds, newDepth);
+		}
+		
+		try {
+			return executeWithRetry("findCalendarItemIdsInternal(upn="+upn+",startDate="+startDate+",+endDate="+endDate+",...)", new Callable<Set<ItemIdType>>() {
+				@Override
+				public Set<ItemIdType> call() {
+					setContextCredentials(upn);
+					FindItem request = getRequestFactory().constructFindCalendarItemIdsByDateRange(startDate, endDate, calendarIds);
+					Pair<CompactItemIdSet, FindItemParentType> page = findItemIdPage(request);
+					Integer total = page.getRight() == null ? null : page.getRight().getTotalItemsInView();
+					getRangePlanner().recordSuccess(upn, startDate, endDate, total == null ? -1 : total);
+					return page.getLeft().toItemIdSet();
 				}
-				return foundItems;
-			}catch(Exception e2) {
-				long backoff = getWaitTimeExp(newDepth);
-				log.warn("findCalendarItemIdsInternal(upn="+upn+",startDate="+startDate+",+endDate="+endDate+",...) - failure #"+newDepth+". Sleeping for "+backoff+" before retry. " +e2.getMessage());
-				try {
-					Thread.sleep(backoff);
-				} catch (InterruptedException e1) {
-					log.warn("InterruptedException="+e1);
+			});
+		}catch(ExchangeInvalidUPNRuntimeException e0) {
+			log.warn("findCalendarItemIdsInternal(upn="+upn+",startDate="+startDate+",+endDate="+endDate+",...) ExchangeInvalidUPNRuntimeException.  Attempting to resolve valid upn... - failure #"+newDepth);
+			
+			String resolvedUpn = resolveUpn(upn);
+			if(StringUtils.isNotBlank(resolvedUpn) && (!resolvedUpn.equalsIgnoreCase(upn))){
+				return findCalendarItemIdsInternal(resolvedUpn, startDate, endDate, calendarIds, newDepth);
+			}else {
+				//rethrow
+				throw e0;
+			}
+		}catch(ExchangeExceededFindCountLimitRuntimeException e1) {
+			List<Interval> intervals = getRangePlanner().planAfterLimitExceeded(upn, startDate, endDate);
+			log.warn("findCalendarItemIdsInternal(upn="+upn+",startDate="+startDate+",+endDate="+endDate+",...) ExceededFindCountLimit splitting request into "+intervals.size()+" ranges and trying again. - failure #"+newDepth);
+			return findCalendarItemIdsInParallel(upn, intervals, calendarIds, newDepth);
+		}
+	}
+	
+	/**
+	 * Fetch each of the intervals concurrently on the {@link #getParallelExecutor()} and merge the results.
+	 * 
+	 * @param upn
+	 * @param intervals
+	 * @param calendarIds
+	 * @param depth
+	 * @return the union of the {@link ItemIdType}s found in each interval
+	 */
+	private Set<ItemIdType> findCalendarItemIdsInParallel(final String upn, List<Interval> intervals, final Collection<FolderIdType> calendarIds, final int depth) {
+		List<Callable<Set<ItemIdType>>> tasks = new ArrayList<Callable<Set<ItemIdType>>>(intervals.size());
+		for(final Interval interval : intervals) {
+			tasks.add(new Callable<Set<ItemIdType>>() {
+				@Override
+				public Set<ItemIdType> call() {
+					return findCalendarItemIdsInternal(upn, interval.getStart().toDate(), interval.getEnd().toDate(), calendarIds, depth);
 				}
-				return findCalendarItemIdsInternal(upn, startDate, endDate, calendarIds, newDepth);
+			});
+		}
+		// occurrences spanning a boundary are returned by both neighbouring ranges
+		Set<ItemIdType> foundItems = new HashSet<ItemIdType>();
+		for(Set<ItemIdType> itemIds : invokeAllInParallel(tasks)) {
+			foundItems.addAll(itemIds);
+		}
+		return foundItems;
+	}
+	
+	/**
+	 * Run the tasks concurrently on the {@link #getParallelExecutor()}, the last one on the calling thread.
+	 * The {@link com.microsoft.exchange.ExchangeRequestContext} of the calling thread is propagated to each task. 
+	 * 
+	 * If any task fails, the remaining tasks are cancelled and the failure rethrown.
+	 * 
+	 * @param tasks
+	 * @return the results, in the same order as the tasks
+	 */
+	protected <T> List<T> invokeAllInParallel(List<Callable<T>> tasks) {
+		final ExchangeRequestContext context = ExchangeRequestContextHolder.capture();
+		List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+		try {
+			ExecutorService executor = getParallelExecutor();
+			for(int i = 0; i < tasks.size() - 1; i++) {
+				futures.add(executor.submit(new ContextPropagatingCallable<T>(context, tasks.get(i))));
+			}
+			List<T> results = new ArrayList<T>(tasks.size());
+			T last = tasks.isEmpty() ? null : tasks.get(tasks.size() - 1).call();
+			for(Future<T> future : futures) {
+				results.add(future.get());
+			}
+			if(!tasks.isEmpty()) {
+				results.add(last);
+			}
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ExchangeRuntimeException(e);
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new ExchangeRuntimeException(e.getCause());
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ExchangeRuntimeException(e);
+		} finally {
+			for(Future<T> future : futures) {
+				future.cancel(true);
+			}
+			ExchangeRequestContextHolder.bind(context);
+		}
+	}
+	
+	/**
+	 * {@link Callable} that binds an {@link ExchangeRequestContext} for the duration of the call, then restores
+	 * whatever was bound before (the executor may run it on the submitting thread).
+	 */
+	private static class ContextPropagatingCallable<T> implements Callable<T> {
+		private final ExchangeRequestContext context;
+		private final Callable<T> delegate;
+		
+		ContextPropagatingCallable(ExchangeRequestContext context, Callable<T> delegate) {
+			this.context = context;
+			this.delegate = delegate;
+		}
+		
+		@Override
+		public T call() throws Exception {
+			ExchangeRequestContext previous = ExchangeRequestContextHolder.capture();
+			ExchangeRequestContextHolder.bind(context);
+			try {
+				return delegate.call();
+			} finally {
+				ExchangeRequestContextHolder.bind(previous);
 			}
 		}
 	}
 	
 	public Set<ItemIdType> findindFirstItemIdSet(String upn, Collection<FolderIdType> folderIds){
 		FindItem request = getRequestFactory().constructFindFirstItemIdSet(folderIds);
-		Pair<Set<ItemIdType>, Integer> pair =  findItemIdsInternal(upn, request, 0);
-		return pair.getLeft();
+		Pair<CompactItemIdSet, Integer> pair =  findItemIdsInternal(upn, request, 0);
+		return pair.getLeft().toItemIdSet();
 	}
 	
 	
 	public Set<ItemIdType> findItemIds(String upn, Collection<FolderIdType> folderIds){
 		FindItem request = getRequestFactory().constructFindFirstItemIdSet(folderIds);
-		Pair<Set<ItemIdType>, Integer> pair = findItemIdsInternal(upn, request, 0);
-		return pair.getLeft();
+		Pair<CompactItemIdSet, Integer> pair = findItemIdsInternal(upn, request, 0);
+		return pair.getLeft().toItemIdSet();
 	}
 	
+	/**
+	 * Find the {@link ItemIdType}s of every item in the folders using IndexedPageView paging.
+	 * 
+	 * Once the first page reports TotalItemsInView, the remaining pages are requested concurrently,
+	 * up to {@link #getPagingDepth()} at a time, and merged in offset order.
+	 * A pagingDepth of 1 requests one page after another.
+	 * 
+	 * @param upn
+	 * @param folderIds
+	 * @return the {@link ItemIdType}s found, in paging order
+	 * @see #findAllCompactItemIds(String, Collection)
+	 */
 	public Set<ItemIdType> findAllItemIds(String upn, Collection<FolderIdType> folderIds){
+		return findAllCompactItemIds(upn, folderIds).toItemIdSet();
+	}
+	
+	/**
+	 * As {@link #findAllItemIds(String, Collection)}, but the ids are returned in a {@link CompactItemIdSet};
+	 * prefer this for large folders, e.g. to diff against a previous listing with {@link CompactItemIdSet#difference(CompactItemIdSet)}.
+	 * 
+	 * @param upn
+	 * @param folderIds
+	 * @return the ids found, in paging order
+	 */
+	public CompactItemIdSet findAllCompactItemIds(final String upn, final Collection<FolderIdType> folderIds){
 		FindItem request = getRequestFactory().constructFindFirstItemIdSet(folderIds);
-		Pair<Set<ItemIdType>, Integer> pair = findItemIdsInternal(upn, request, 0);
-		Set<ItemIdType> itemIds = pair.getLeft();
-		Integer nextOffset = pair.getRight();
+		Pair<CompactItemIdSet, FindItemParentType> firstPage = findItemIdPageInternal(upn, request, 0);
+		CompactItemIdSet itemIds = firstPage.getLeft();
+		Integer nextOffset = getNextOffset(firstPage.getRight());
+		
+		int totalItemsInView = firstPage.getRight() == null || firstPage.getRight().getTotalItemsInView() == null ? -1 : firstPage.getRight().getTotalItemsInView();
+		int pageSize = getRequestFactory().getMaxFindItems();
+		while(getPagingDepth() > 1 && nextOffset > 0 && nextOffset < totalItemsInView){
+			List<Callable<Pair<CompactItemIdSet, Integer>>> pages = new ArrayList<Callable<Pair<CompactItemIdSet, Integer>>>(getPagingDepth());
+			for(int offset = nextOffset; offset < totalItemsInView && pages.size() < getPagingDepth(); offset += pageSize) {
+				final FindItem pageRequest = getRequestFactory().constructFindNextItemIdSet(offset, folderIds);
+				pages.add(new Callable<Pair<CompactItemIdSet, Integer>>() {
+					@Override
+					public Pair<CompactItemIdSet, Integer> call() {
+						return findItemIdsInternal(upn, pageRequest, 0);
+					}
+				});
+			}
+			log.debug("findAllItemIds(upn="+upn+") requesting "+pages.size()+" pages from offset "+nextOffset+" of "+totalItemsInView);
+			for(Pair<CompactItemIdSet, Integer> page : invokeAllInParallel(pages)) {
+				itemIds.addAll(page.getLeft());
+				nextOffset = page.getRight();
+			}
+		}
+		// items added since the first page (or pagingDepth of 1) 
 		while(nextOffset > 0){
 			request = getRequestFactory().constructFindNextItemIdSet(nextOffset, folderIds);
-			pair = findItemIdsInternal(upn, request, 0);
+			Pair<CompactItemIdSet, Integer> pair = findItemIdsInternal(upn, request, 0);
 			itemIds.addAll(pair.getLeft());
 			nextOffset = pair.getRight();
 		}
@@ -410,49 +924,105 @@ public class BaseExchangeCalendarDataDao {
 
 	
 	
-	private Pair<Set<ItemIdType>, Integer> findItemIdsInternal(String upn, FindItem request, int depth){
+	private Pair<CompactItemIdSet, Integer> findItemIdsInternal(String upn, FindItem request, int depth){
+		Pair<CompactItemIdSet, FindItemParentType> page = findItemIdPageInternal(upn, request, depth);
+		return Pair.of(page.getLeft(), getNextOffset(page.getRight()));
+	}
+	
+	/**
+	 * 
+	 * @param rootFolder
+	 * @return the IndexedPagingOffset of the next page, or -1 if rootFolder includes the last item
+	 */
+	private static Integer getNextOffset(FindItemParentType rootFolder) {
+		if(null == rootFolder || Boolean.TRUE.equals(rootFolder.isIncludesLastItemInRange()) || null == rootFolder.getIndexedPagingOffset()) {
+			return -1;
+		}
+		return rootFolder.getIndexedPagingOffset();
+	}
+	
+	/**
+	 * 
+	 * @param upn
+	 * @param request an IdOnly FindItem request
+	 * @param depth
+	 * @return the ids found and the paging attributes of the RootFolder
+	 */
+	private Pair<CompactItemIdSet, FindItemParentType> findItemIdPageInternal(final String upn, final FindItem request, int depth){
 		Validate.isTrue(StringUtils.isNotBlank(upn), "upn argument cannot be blank");
 		Validate.notNull(request, "request argument cannot be null");
 		int newDepth = depth +1;
 		if(depth > getMaxRetries()) {
-			throw new ExchangeRuntimeException("findCalendarItemIdsInternal(upn="+upn+",request="+request+",...) failed "+getMaxRetries()+ " consecutive attempts.");
+			throw new ExchangeRuntimeException("findItemIdPageInternal(upn="+upn+",request="+request+",...) failed "+getMaxRetries()+ " consecutive attempts.");
 		}else {
-			setContextCredentials(upn);
 			try {
-				FindItemResponse response = getWebServices().findItem(request);
-				Pair<Set<ItemIdType>, Integer> parsed = getResponseUtils().parseFindItemIdResponse(response);
-
-				return parsed;
+				return executeWithRetry("findItemIdPageInternal(upn="+upn+",request="+request+",...)", new Callable<Pair<CompactItemIdSet, FindItemParentType>>() {
+					@Override
+					public Pair<CompactItemIdSet, FindItemParentType> call() {
+						setContextCredentials(upn);
+						return findItemIdPage(request);
+					}
+				});
 			}catch(ExchangeInvalidUPNRuntimeException e0) {
-				log.warn("findCalendarItemIdsInternal(upn="+upn+",request="+request+",...) ExchangeInvalidUPNRuntimeException.  Attempting to resolve valid upn... - failure #"+newDepth);
+				log.warn("findItemIdPageInternal(upn="+upn+",request="+request+",...) ExchangeInvalidUPNRuntimeException.  Attempting to resolve valid upn... - failure #"+newDepth);
 				
 				String resolvedUpn = resolveUpn(upn);
 				if(StringUtils.isNotBlank(resolvedUpn) && (!resolvedUpn.equalsIgnoreCase(upn))){
-					return findItemIdsInternal(resolvedUpn, request, newDepth);
+					return findItemIdPageInternal(resolvedUpn, request, newDepth);
 				}else {
 					//rethrow
 					throw e0;
 				}
-//			}catch(ExchangeExceededFindCountLimitRuntimeException e1) {
-//				log.warn("findCalendarItemIdsInternal(upn="+upn+",request="+request+",...) ExceededFindCountLimit splitting request and trying again. - failure #"+newDepth);
-//				Set<ItemIdType> foundItems = new HashSet<ItemIdType>();
-//				List<Interval> intervals = DateHelp.generateIntervals(startDate, endDate);
-//				for(Interval i: intervals) {
-//					foundItems.addAll(findCalendarItemIdsInternal(upn,i.getStart().toDate(), i.getEnd().toDate(),calendarIds,newDepth));
-//				}
-//				return foundItems;
-			}catch(Exception e2) {
-				long backoff = getWaitTimeExp(newDepth);
-				log.warn("findCalendarItemIdsInternal(upn="+upn+",request="+request+",...) - failure #"+newDepth+". Sleeping for "+backoff+" before retry. " +e2.getMessage());
-				try {
-					Thread.sleep(backoff);
-				} catch (InterruptedException e1) {
-					log.warn("InterruptedException="+e1);
-				}
-				return findItemIdsInternal(upn, request, newDepth);
 			}
 		}
-		
+	}
+	
+	/**
+	 * Send an IdOnly FindItem request once. When the web services implement {@link StreamingExchangeWebServices}
+	 * the ItemIds are read directly off the response, otherwise the response is unmarshalled and parsed.
+	 * 
+	 * @param request
+	 * @return the ids found, in response order, and the paging attributes of the RootFolder
+	 */
+	protected Pair<CompactItemIdSet, FindItemParentType> findItemIdPage(FindItem request) {
+		ExchangeWebServices webServices = getWebServices();
+		CompactItemIdSet itemIds = new CompactItemIdSet();
+		if(webServices instanceof StreamingExchangeWebServices) {
+			FindItemParentType rootFolder = ((StreamingExchangeWebServices) webServices).findItemIds(request, itemIds);
+			return Pair.of(itemIds, rootFolder);
+		}
+		FindItemResponse response = webServices.findItem(request);
+		Pair<Set<ItemIdType>, Integer> pair = getResponseUtils().parseFindItemIdResponse(response);
+		itemIds.addAll(pair.getLeft());
+		FindItemParentType rootFolder = new FindItemParentType();
+		rootFolder.setTotalItemsInView(getResponseUtils().parseTotalItemsInView(response));
+		rootFolder.setIncludesLastItemInRange(pair.getRight() < 0);
+		rootFolder.setIndexedPagingOffset(pair.getRight());
+		return Pair.of(itemIds, rootFolder);
+	}
+	
+	/**
+	 * Send a GetItem request once. When the web services implement {@link StreamingExchangeWebServices}
+	 * the items are unmarshalled one at a time as the response is read, otherwise the whole response is 
+	 * unmarshalled and parsed.
+	 * 
+	 * @param request
+	 * @return the items returned
+	 */
+	protected Set<ItemType> getItemBatch(GetItem request) {
+		ExchangeWebServices webServices = getWebServices();
+		if(webServices instanceof StreamingExchangeWebServices) {
+			final Set<ItemType> items = new HashSet<ItemType>();
+			((StreamingExchangeWebServices) webServices).getItem(request, new ItemTypeHandler() {
+				@Override
+				public void handle(Collection<? extends ItemType> batch) {
+					items.addAll(batch);
+				}
+			});
+			return items;
+		}
+		GetItemResponse response = webServices.getItem(request);
+		return getResponseUtils().parseGetItemResponse(response);
 	}
 	
 	public Set<CalendarItemType> getCalendarItems(String upn, Date startDate, Date endDate, Collection<FolderIdType> calendarFolderId){
@@ -460,9 +1030,137 @@ public class BaseExchangeCalendarDataDao {
 		return getCalendarItems(upn, itemIds);
 	}
 	
+	/**
+	 * Fetch the calendar items between startDate and endDate from the primary calendar
+	 * of each of the specified mailboxes.
+	 * 
+	 * @see #getCalendarItems(Collection, Date, Date, MailboxProgressListener)
+	 * @param upns
+	 * @param startDate
+	 * @param endDate
+	 * @return a {@link Map} of upn to {@link MailboxResult}, in the iteration order of upns
+	 */
+	public Map<String, MailboxResult<Set<CalendarItemType>>> getCalendarItems(Collection<String> upns, Date startDate, Date endDate) {
+		return getCalendarItems(upns, startDate, endDate, null);
+	}
+	
+	/**
+	 * Fetch the calendar items between startDate and endDate from the primary calendar
+	 * of each of the specified mailboxes.
+	 * 
+	 * Mailboxes are processed concurrently, at most {@link #getBulkConcurrency()} at a time
+	 * (defaulting to {@link ExchangeOnlineThrottlingPolicy#MAX_CONCURRENT_CONNECTIONS_IMPERSONATION}) 
+	 * unless a {@link #getBulkExecutorService()} is provided.
+	 * Each mailbox runs FindItem then GetItem on a single worker, with its own impersonation
+	 * context and the usual retry behavior.
+	 * A failure for one mailbox is recorded in its {@link MailboxResult} and does not affect the others.
+	 * 
+	 * @param upns
+	 * @param startDate
+	 * @param endDate
+	 * @param listener optional, notified as each mailbox completes
+	 * @return a {@link Map} of upn to {@link MailboxResult}, in the iteration order of upns
+	 */
+	public Map<String, MailboxResult<Set<CalendarItemType>>> getCalendarItems(Collection<String> upns, final Date startDate, final Date endDate, MailboxProgressListener listener) {
+		Validate.notNull(upns, "upns argument cannot be null");
+		Validate.notNull(startDate, "startDate argument cannot be null");
+		Validate.notNull(endDate, "endDate argument cannot be null");
+		
+		Set<String> distinctUpns = new LinkedHashSet<String>(upns);
+		Map<String, MailboxResult<Set<CalendarItemType>>> results = new LinkedHashMap<String, MailboxResult<Set<CalendarItemType>>>();
+		if(distinctUpns.isEmpty()) {
+			return results;
+		}
+		for(String upn : distinctUpns) {
+			Validate.isTrue(StringUtils.isNotBlank(upn), "upns argument cannot contain blank values");
+			// reserve the slot to preserve iteration order
+			results.put(upn, null);
+		}
+		
+		ExecutorService executor = getBulkExecutorService();
+		boolean ownsExecutor = false;
+		if(executor == null) {
+			CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("ews-bulk-");
+			threadFactory.setDaemon(true);
+			executor = Executors.newFixedThreadPool(Math.min(getBulkConcurrency(), distinctUpns.size()), threadFactory);
+			ownsExecutor = true;
+		}
+		
+		final int total = distinctUpns.size();
+		CompletionService<MailboxResult<Set<CalendarItemType>>> completionService = new ExecutorCompletionService<MailboxResult<Set<CalendarItemType>>>(executor);
+		List<Future<MailboxResult<Set<CalendarItemType>>>> futures = new ArrayList<Future<MailboxResult<Set<CalendarItemType>>>>(total);
+		try {
+			for(final String upn : distinctUpns) {
+				futures.add(completionService.submit(new Callable<MailboxResult<Set<CalendarItemType>>>() {
+					@Override
+					public MailboxResult<Set<CalendarItemType>> call() {
+						return getCalendarItemsForMailbox(upn, startDate, endDate);
+					}
+				}));
+			}
+			for(int completed = 1; completed <= total; completed++) {
+				MailboxResult<Set<CalendarItemType>> result = completionService.take().get();
+				results.put(result.getUpn(), result);
+				if(listener != null) {
+					try {
+						listener.onMailboxComplete(result, completed, total);
+					} catch (RuntimeException e) {
+						log.warn("MailboxProgressListener threw exception for " + result.getUpn() + ", ignoring", e);
+					}
+				}
+			}
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ExchangeRuntimeException(e);
+		} catch (ExecutionException e) {
+			// getCalendarItemsForMailbox does not throw
+			throw new ExchangeRuntimeException(e.getCause());
+		} finally {
+			for(Future<?> future : futures) {
+				future.cancel(true);
+			}
+			if(ownsExecutor) {
+				executor.shutdownNow();
+			}
+		}
+	}
+	
+	/**
+	 * Unit of work for {@link #getCalendarItems(Collection, Date, Date, MailboxProgressListener)}, 
+	 * never throws.
+	 * 
+	 * @param upn
+	 * @param startDate
+	 * @param endDate
+	 * @return a {@link MailboxResult}, never null
+	 */
+	protected MailboxResult<Set<CalendarItemType>> getCalendarItemsForMailbox(String upn, Date startDate, Date endDate) {
+		StopWatch stopWatch = new StopWatch();
+		stopWatch.start();
+		try {
+			Set<ItemIdType> itemIds = findCalendarItemIds(upn, startDate, endDate);
+			Set<CalendarItemType> calendarItems;
+			if(CollectionUtils.isEmpty(itemIds)) {
+				calendarItems = new HashSet<CalendarItemType>();
+			}else {
+				calendarItems = getCalendarItems(upn, itemIds);
+			}
+			stopWatch.stop();
+			return MailboxResult.success(upn, calendarItems, stopWatch.getTime());
+		} catch (Exception e) {
+			stopWatch.stop();
+			log.warn("getCalendarItemsForMailbox(upn="+upn+",startDate="+startDate+",endDate="+endDate+") failed after "+stopWatch.getTime()+" ms: "+e.getMessage());
+			return MailboxResult.failure(upn, e, stopWatch.getTime());
+		} finally {
+			// the worker is pooled, nothing bound for this mailbox may reach the next one
+			ExchangeRequestContextHolder.clear();
+		}
+	}
+	
 	public Set<CalendarItemType> getCalendarItems(String upn, Set<ItemIdType> itemIds) {
 		Set<CalendarItemType> calendarItems = new HashSet<CalendarItemType>();
-		Set<ItemType> items = getItemsInternal(upn, itemIds, 0);
+		Set<ItemType> items = getItemsInternal(upn, itemIds);
 		for(ItemType item : items){
 			if(item instanceof CalendarItemType){
 				calendarItems.add( (CalendarItemType) item );
@@ -475,7 +1173,7 @@ public class BaseExchangeCalendarDataDao {
 	
 	public Set<TaskType> getTaskItems(String upn, Set<ItemIdType> itemIds) {
 		Set<TaskType> taskItems = new HashSet<TaskType>();
-		Set<ItemType> items = getItemsInternal(upn, itemIds, 0);
+		Set<ItemType> items = getItemsInternal(upn, itemIds);
 		for(ItemType item : items){
 			if(item instanceof TaskType){
 				taskItems.add( (TaskType) item );
@@ -486,68 +1184,150 @@ public class BaseExchangeCalendarDataDao {
 		return taskItems;
 	}
 	
-	private Set<ItemType> getItemsInternal(String upn, Set<ItemIdType> itemIds, int depth){
+	private Set<ItemType> getItemsInternal(final String upn, final Set<ItemIdType> itemIds){
+		final Set<ItemType> items = new HashSet<ItemType>();
+		getItems(upn, itemIds, new ItemTypeHandler() {
+			@Override
+			public void handle(Collection<? extends ItemType> batch) {
+				items.addAll(batch);
+			}
+		});
+		return items;
+	}
+	
+	/**
+	 * Retrieve the items with GetItem, passing them to the handler as they arrive.
+	 * 
+	 * The ids are split into batches of {@link #getGetItemBatchSize()}; at most {@link #getParallelism()} batches
+	 * are requested concurrently. Each batch is retried independently, so a failure only re-fetches that batch.
+	 * If a batch still fails, outstanding batches are cancelled and the failure is rethrown; batches already
+	 * handed to the handler are not withdrawn.
+	 * 
+	 * If an {@link #getItemCache()} is set, ids carrying a ChangeKey that matches a cached item are answered
+	 * from the cache (as the first batch) and only the remainder is requested; requested items are added to the cache.
+	 * 
+	 * @param upn
+	 * @param itemIds
+	 * @param handler invoked on the calling thread with each batch
+	 */
+	public void getItems(final String upn, Collection<ItemIdType> itemIds, ItemTypeHandler handler) {
 		Validate.isTrue(StringUtils.isNotBlank(upn), "upn argument cannot be blank");
 		Validate.notEmpty(itemIds, "itemids argument cannot be empty");
+		Validate.notNull(handler, "handler argument cannot be null");
 		
-		//folderIds can be null
-
-		int newDepth = depth +1;
-		if(depth > getMaxRetries()) {
-			throw new ExchangeRuntimeException("getItemsInternal(upn="+upn+",...) failed "+getMaxRetries()+ " consecutive attempts.");
-		}else {
-			setContextCredentials(upn);
-			GetItem request = getRequestFactory().constructGetItems(itemIds);	
+		List<ItemIdType> idList = new ArrayList<ItemIdType>(itemIds);
+		final ItemCache cache = getItemCache();
+		if(cache != null) {
+			List<ItemType> cached = new ArrayList<ItemType>();
+			List<ItemIdType> uncached = new ArrayList<ItemIdType>();
+			for(ItemIdType itemId : idList) {
+				ItemType item = cache.get(itemId.getId(), itemId.getChangeKey());
+				if(item != null) {
+					cached.add(item);
+				} else {
+					uncached.add(itemId);
+				}
+			}
+			log.debug("getItems(upn="+upn+") "+cached.size()+" of "+idList.size()+" items unchanged since cached");
+			if(!cached.isEmpty()) {
+				handler.handle(cached);
+			}
+			if(uncached.isEmpty()) {
+				return;
+			}
+			idList = uncached;
+			final ItemTypeHandler target = handler;
+			handler = new ItemTypeHandler() {
+				@Override
+				public void handle(Collection<? extends ItemType> items) {
+					for(ItemType item : items) {
+						cache.put(item);
+					}
+					target.handle(items);
+				}
+			};
+		}
+		int batchSize = getGetItemBatchSize();
+		List<Callable<Set<ItemType>>> batches = new ArrayList<Callable<Set<ItemType>>>();
+		for(int i = 0; i < idList.size(); i += batchSize) {
+			final List<ItemIdType> batch = idList.subList(i, Math.min(i + batchSize, idList.size()));
+			final String description = "getItems(upn="+upn+",batch="+(i / batchSize + 1)+",size="+batch.size()+")";
+			batches.add(new Callable<Set<ItemType>>() {
+				@Override
+				public Set<ItemType> call() {
+					return executeWithRetry(description, new Callable<Set<ItemType>>() {
+						@Override
+						public Set<ItemType> call() {
+							setContextCredentials(upn);
+							return getItemBatch(getRequestFactory().constructGetItems(batch));
+						}
+					});
+				}
+			});
+		}
+		
+		if(batches.size() == 1) {
 			try {
-				GetItemResponse response = getWebServices().getItem(request);
-				return getResponseUtils().parseGetItemResponse(response);
-			}catch(Exception e) {
-				long backoff = getWaitTimeExp(newDepth);
-				log.warn("getItemsInternal - failure #"+newDepth+". Sleeping for "+backoff+" before retry. " +e.getMessage());
-				try {
-					Thread.sleep(backoff);
-				} catch (InterruptedException e1) {
-					log.warn("InterruptedException="+e1);
+				handler.handle(batches.get(0).call());
+				return;
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new ExchangeRuntimeException(e);
+			}
+		}
+		
+		ExchangeRequestContext context = ExchangeRequestContextHolder.capture();
+		CompletionService<Set<ItemType>> completionService = new ExecutorCompletionService<Set<ItemType>>(getParallelExecutor());
+		List<Future<Set<ItemType>>> futures = new ArrayList<Future<Set<ItemType>>>(batches.size());
+		try {
+			int submitted = 0;
+			for(; submitted < batches.size() && submitted < getParallelism(); submitted++) {
+				futures.add(completionService.submit(new ContextPropagatingCallable<Set<ItemType>>(context, batches.get(submitted))));
+			}
+			for(int completed = 0; completed < batches.size(); completed++) {
+				Set<ItemType> items = completionService.take().get();
+				if(submitted < batches.size()) {
+					futures.add(completionService.submit(new ContextPropagatingCallable<Set<ItemType>>(context, batches.get(submitted++))));
 				}
-				return getItemsInternal(upn, itemIds, newDepth);
+				handler.handle(items);
 			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ExchangeRuntimeException(e);
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new ExchangeRuntimeException(e.getCause());
+		} finally {
+			for(Future<Set<ItemType>> future : futures) {
+				future.cancel(true);
+			}
+			ExchangeRequestContextHolder.bind(context);
 		}
 	}
 	
-	private ItemIdType createCalendarItemInternal(String upn, CalendarItemType calendarItem, int depth){
+	private ItemIdType createCalendarItemInternal(final String upn, final CalendarItemType calendarItem){
 		Validate.isTrue(StringUtils.isNotBlank(upn), "upn argument cannot be blank");
 		Validate.notNull(calendarItem, "calendarItem argument cannot be empty");
 	
-		int newDepth = depth +1;
-		if(depth > getMaxRetries()) {
-			throw new ExchangeRuntimeException("createCalendarItemInternal(upn="+upn+",...) failed "+getMaxRetries()+ " consecutive attempts.");
-		}else {
-			setContextCredentials(upn);
-			
-			Set<CalendarItemType> singleton = Collections.singleton(calendarItem);
-			CalendarItemCreateOrDeleteOperationType sendTo = CalendarItemCreateOrDeleteOperationType.SEND_TO_ALL_AND_SAVE_COPY;
-			CreateItem request = getRequestFactory().constructCreateCalendarItem(singleton, sendTo, null);
-			
-			try {
+		return executeWithRetry("createCalendarItemInternal(upn="+upn+",...)", new Callable<ItemIdType>() {
+			@Override
+			public ItemIdType call() {
+				setContextCredentials(upn);
+				Set<CalendarItemType> singleton = Collections.singleton(calendarItem);
+				CalendarItemCreateOrDeleteOperationType sendTo = CalendarItemCreateOrDeleteOperationType.SEND_TO_ALL_AND_SAVE_COPY;
+				CreateItem request = getRequestFactory().constructCreateCalendarItem(singleton, sendTo, null);
 				CreateItemResponse response = getWebServices().createItem(request);
 				List<ItemIdType> createdCalendarItems = getResponseUtils().parseCreateItemResponse(response);
 				return DataAccessUtils.singleResult(createdCalendarItems);
-			}catch(Exception e) {
-				long backoff = getWaitTimeExp(newDepth);
-				log.warn("createCalendarItemInternal - failure #"+newDepth+". Sleeping for "+backoff+" before retry. " +e.getMessage());
-				try {
-					Thread.sleep(backoff);
-				} catch (InterruptedException e1) {
-					log.warn("InterruptedException="+e1);
-				}
-				return createCalendarItemInternal(upn, calendarItem, newDepth);
 			}
-		}
-		
+		});
 	}
 
 	public ItemIdType createCalendarItem(String upn, CalendarItemType calendarItem){
-		return createCalendarItemInternal(upn, calendarItem, 0);
+		return createCalendarItemInternal(upn, calendarItem);
 	}
 	
 	public FolderIdType createCalendarFolder(String upn, String displayName) {
@@ -557,40 +1337,29 @@ public class BaseExchangeCalendarDataDao {
 		CreateFolder createCalendarFolderRequest = getRequestFactory().constructCreateCalendarFolder(displayName, null);
 		CreateFolderResponse createFolderResponse = getWebServices().createFolder(createCalendarFolderRequest);
 		Set<FolderIdType> folders = getResponseUtils().parseCreateFolderResponse(createFolderResponse);
+		if(getFolderHierarchyCache() != null) {
+			getFolderHierarchyCache().invalidate(upn);
+		}
 		return DataAccessUtils.singleResult(folders);
 	}
 	
-	private boolean deleteCalendarItemsInternal(String upn, Collection<ItemIdType> itemIds, int depth) {
+	private boolean deleteCalendarItemsInternal(final String upn, final Collection<ItemIdType> itemIds) {
 		Validate.isTrue(StringUtils.isNotBlank(upn), "upn argument cannot be blank");
 		Validate.notEmpty(itemIds, "itemIds argument cannot be empty");
 	
-		int newDepth = depth +1;
-		if(depth > getMaxRetries()) {
-			throw new ExchangeRuntimeException("createCalendarItemInternal(upn="+upn+",...) failed "+getMaxRetries()+ " consecutive attempts.");
-		}else {
-			setContextCredentials(upn);
-			DeleteItem request = getRequestFactory().constructDeleteCalendarItems(itemIds, DisposalType.HARD_DELETE, CalendarItemCreateOrDeleteOperationType.SEND_TO_NONE);
-
-			try {
+		return executeWithRetry("deleteCalendarItemsInternal(upn="+upn+",...)", new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				setContextCredentials(upn);
+				DeleteItem request = getRequestFactory().constructDeleteCalendarItems(itemIds, DisposalType.HARD_DELETE, CalendarItemCreateOrDeleteOperationType.SEND_TO_NONE);
 				DeleteItemResponse response = getWebServices().deleteItem(request);
-				boolean success = getResponseUtils().confirmSuccess(response);
-				return success;
-			
-			}catch(Exception e) {
-				long backoff = getWaitTimeExp(newDepth);
-				log.warn("deleteCalendarItemsInternal - failure #"+newDepth+". Sleeping for "+backoff+" before retry. " +e.getMessage());
-				try {
-					Thread.sleep(backoff);
-				} catch (InterruptedException e1) {
-					log.warn("InterruptedException="+e1);
-				}
-				return deleteCalendarItemsInternal(upn, itemIds, newDepth);
+				return getResponseUtils().confirmSuccess(response);
 			}
-		}
+		});
 	}
 	
 	public boolean deleteCalendarItems(String upn, Collection<ItemIdType> itemIds) {
-		return deleteCalendarItemsInternal(upn, itemIds,0);
+		return deleteCalendarItemsInternal(upn, itemIds);
 	}
 	
 	public Set<String> resolveEmailAddresses(String alias) {
@@ -658,6 +1427,126 @@ public class BaseExchangeCalendarDataDao {
 		EmptyFolderResponse response = getWebServices().emptyFolder(request);
 		return getResponseUtils().parseEmptyFolderResponse(response);
 	}
+	/**
+	 * Synchronize the folder with SyncFolderItems and save the new SyncState.
+	 * 
+	 * @see #syncFolderItems(String, BaseFolderIdType, boolean)
+	 * @param upn
+	 * @param folderId
+	 * @return the changes since the previous synchronization of the folder
+	 */
+	public ItemSyncDelta syncFolderItems(String upn, BaseFolderIdType folderId) {
+		return syncFolderItems(upn, folderId, true);
+	}
+	
+	/**
+	 * Ask Exchange what has changed in the folder since the SyncState held by the {@link #getSyncStateStore()},
+	 * following SyncFolderItems pages until IncludesLastItemInRange. A folder with no SyncState (or one 
+	 * Exchange no longer accepts) is synchronized from the beginning, and every item is reported as created.
+	 * 
+	 * Only ids are returned; use {@link #getCalendarItems(String, Set)} or {@link #getItems(String, Collection, ItemTypeHandler)}
+	 * for the created and updated items.
+	 * 
+	 * @param upn
+	 * @param folderId a {@link FolderIdType} or {@link DistinguishedFolderIdType}
+	 * @param commit if false the new SyncState is not saved; pass the delta to {@link #commitSyncState(ItemSyncDelta)} once it has been processed
+	 * @return the changes since the previous synchronization of the folder
+	 */
+	public ItemSyncDelta syncFolderItems(String upn, BaseFolderIdType folderId, boolean commit) {
+		Validate.isTrue(StringUtils.isNotBlank(upn), "upn argument cannot be blank");
+		Validate.notNull(folderId, "folderId argument cannot be null");
+		String folderKey = getSyncFolderKey(folderId);
+		String syncState = getSyncStateStore().getSyncState(upn, folderKey);
+		ItemSyncDelta delta = new ItemSyncDelta(upn, folderKey, syncState == null);
+		int pages = 0;
+		boolean includesLastItemInRange = false;
+		while(!includesLastItemInRange) {
+			SyncFolderItems request = getRequestFactory().constructSyncFolderItems(folderId, syncState, getSyncMaxChangesReturned());
+			SyncFolderItemsResponseMessageType message = syncFolderItemsInternal(upn, request);
+			if(ResponseCodeType.ERROR_INVALID_SYNC_STATE_DATA.equals(message.getResponseCode())) {
+				if(syncState == null) {
+					throw new ExchangeRuntimeException("syncFolderItems(upn="+upn+",folderKey="+folderKey+") SyncState rejected without one being sent");
+				}
+				log.warn("syncFolderItems(upn="+upn+",folderKey="+folderKey+") SyncState rejected, synchronizing from the beginning");
+				getSyncStateStore().removeSyncState(upn, folderKey);
+				syncState = null;
+				delta = new ItemSyncDelta(upn, folderKey, true);
+				continue;
+			}
+			delta.apply(message.getChanges());
+			syncState = message.getSyncState();
+			delta.setSyncState(syncState);
+			includesLastItemInRange = message.isIncludesLastItemInRange() == null || message.isIncludesLastItemInRange();
+			pages++;
+		}
+		if(getItemCache() != null) {
+			for(ItemIdType deleted : delta.getDeleted()) {
+				getItemCache().remove(deleted.getId());
+			}
+		}
+		log.debug("syncFolderItems(upn="+upn+",folderKey="+folderKey+") "+delta+" in "+pages+" pages");
+		if(commit) {
+			commitSyncState(delta);
+		}
+		return delta;
+	}
+	
+	/**
+	 * Save the SyncState of a delta returned by {@link #syncFolderItems(String, BaseFolderIdType, boolean)},
+	 * so the next synchronization starts after it.
+	 * 
+	 * @param delta
+	 */
+	public void commitSyncState(ItemSyncDelta delta) {
+		Validate.notNull(delta, "delta argument cannot be null");
+		if(null != delta.getSyncState()) {
+			getSyncStateStore().putSyncState(delta.getUpn(), delta.getFolderKey(), delta.getSyncState());
+		}
+	}
+	
+	/**
+	 * 
+	 * @param folderId
+	 * @return the key the SyncState of the folder is stored under
+	 */
+	protected String getSyncFolderKey(BaseFolderIdType folderId) {
+		if(folderId instanceof FolderIdType) {
+			return "id:" + ((FolderIdType) folderId).getId();
+		}
+		if(folderId instanceof DistinguishedFolderIdType) {
+			DistinguishedFolderIdType distinguished = (DistinguishedFolderIdType) folderId;
+			String mailbox = distinguished.getMailbox() == null ? "" : "," + distinguished.getMailbox().getEmailAddress();
+			return "distinguished:" + distinguished.getId().value() + mailbox;
+		}
+		throw new IllegalArgumentException("unsupported folderId type "+folderId.getClass());
+	}
+	
+	/**
+	 * 
+	 * @param upn
+	 * @param request
+	 * @return the response message, which has passed {@link ExchangeResponseUtils#confirmSuccess(com.microsoft.exchange.messages.BaseResponseMessageType)} unless its code is ErrorInvalidSyncStateData
+	 */
+	private SyncFolderItemsResponseMessageType syncFolderItemsInternal(final String upn, final SyncFolderItems request) {
+		return executeWithRetry("syncFolderItemsInternal(upn="+upn+",...)", new Callable<SyncFolderItemsResponseMessageType>() {
+			@Override
+			public SyncFolderItemsResponseMessageType call() {
+				setContextCredentials(upn);
+				SyncFolderItemsResponse response = getWebServices().syncFolderItems(request);
+				for(JAXBElement<? extends ResponseMessageType> element : response.getResponseMessages().getCreateItemResponseMessagesAndDeleteItemResponseMessagesAndGetItemResponseMessages()) {
+					if(element.getValue() instanceof SyncFolderItemsResponseMessageType) {
+						SyncFolderItemsResponseMessageType message = (SyncFolderItemsResponseMessageType) element.getValue();
+						if(!ResponseCodeType.ERROR_INVALID_SYNC_STATE_DATA.equals(message.getResponseCode())) {
+							getResponseUtils().confirmSuccess(response);
+						}
+						return message;
+					}
+				}
+				throw new ExchangeRuntimeException("SyncFolderItemsResponse without a SyncFolderItemsResponseMessage");
+			}
+		});
+	}
+	
 	/**
 	 * Deleting a calendarFolder with many (1k+) items is a problem.  You will always be throttled because the FindItemCount is 1000 and not configurable in Exchange Online.
 	 * More info on throttling http://msdn.microsoft.com/en-us/library/office/jj945066(v=exchg.150).aspx
@@ -699,6 +1588,9 @@ public class BaseExchangeCalendarDataDao {
 		DeleteFolder request = getRequestFactory().constructDeleteFolder(folderId, disposalType);
 		setContextCredentials(upn);
 		DeleteFolderResponse response = getWebServices().deleteFolder(request);
+		if(getFolderHierarchyCache() != null) {
+			getFolderHierarchyCache().invalidate(upn);
+		}
 		return getResponseUtils().parseDeleteFolderResponse(response);
 				
 	}
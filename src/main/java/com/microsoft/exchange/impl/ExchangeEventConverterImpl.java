@@ -18,24 +18,44 @@
  */
 package com.microsoft.exchange.impl;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.xml.datatype.XMLGregorianCalendar;
 
+import net.fortuna.ical4j.data.FoldingWriter;
 import net.fortuna.ical4j.model.Calendar;
+import net.fortuna.ical4j.model.Component;
+import net.fortuna.ical4j.model.ComponentList;
 import net.fortuna.ical4j.model.Date;
 import net.fortuna.ical4j.model.DateTime;
 import net.fortuna.ical4j.model.Dur;
 import net.fortuna.ical4j.model.Parameter;
 import net.fortuna.ical4j.model.ParameterList;
 import net.fortuna.ical4j.model.TextList;
+import net.fortuna.ical4j.model.TimeZone;
 import net.fortuna.ical4j.model.component.VEvent;
 import net.fortuna.ical4j.model.component.VTimeZone;
 import net.fortuna.ical4j.model.component.VToDo;
@@ -46,6 +66,7 @@ import net.fortuna.ical4j.model.parameter.Role;
 import net.fortuna.ical4j.model.property.Attendee;
 import net.fortuna.ical4j.model.property.Categories;
 import net.fortuna.ical4j.model.property.Clazz;
+import net.fortuna.ical4j.model.property.DateProperty;
 import net.fortuna.ical4j.model.property.DtEnd;
 import net.fortuna.ical4j.model.property.DtStamp;
 import net.fortuna.ical4j.model.property.DtStart;
@@ -56,8 +77,10 @@ import net.fortuna.ical4j.model.property.Priority;
 import net.fortuna.ical4j.model.property.Status;
 import net.fortuna.ical4j.model.property.Summary;
 import net.fortuna.ical4j.model.property.Transp;
+import net.fortuna.ical4j.model.property.TzId;
 import net.fortuna.ical4j.model.property.Uid;
 import net.fortuna.ical4j.model.property.XProperty;
+import net.fortuna.ical4j.util.Strings;
 
 import org.apache.commons.lang.BooleanUtils;
 import org.apache.commons.lang.StringUtils;
@@ -65,10 +88,16 @@ import org.apache.commons.lang.Validate;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.util.CollectionUtils;
 
-import com.microsoft.exchange.ExchangeEventConverter;
+import com.microsoft.exchange.DateHelp;
+import com.microsoft.exchange.ExchangeRequestContext;
+import com.microsoft.exchange.StreamingExchangeEventConverter;
 import com.microsoft.exchange.exception.ExchangeEventConverterException;
+import com.microsoft.exchange.exception.ExchangeRuntimeException;
 import com.microsoft.exchange.ical.model.EmailAddressMailboxType;
 import com.microsoft.exchange.ical.model.EmailAddressRoutingType;
 import com.microsoft.exchange.ical.model.ExchangeEndTimeZoneProperty;
@@ -105,11 +134,116 @@ import com.microsoft.exchange.types.SingleRecipientType;
 import com.microsoft.exchange.types.TaskType;
 import com.microsoft.exchange.types.TimeZoneDefinitionType;
 
-public class ExchangeEventConverterImpl implements ExchangeEventConverter {
+public class ExchangeEventConverterImpl implements StreamingExchangeEventConverter, InitializingBean, DisposableBean {
 
 	protected Log log = LogFactory.getLog(this.getClass());
+	
+	private int exportThreads = Runtime.getRuntime().availableProcessors();
+	private int exportChunkSize = 250;
+	private VTimeZoneRegistry vTimeZoneRegistry = VTimeZoneRegistry.getDefault();
+	private volatile ExecutorService executorService;
+	private boolean ownsExecutorService = false;
+	private boolean destroyed = false;
 
 	
+	/**
+	 * @return the vTimeZoneRegistry
+	 */
+	public VTimeZoneRegistry getVTimeZoneRegistry() {
+		return vTimeZoneRegistry;
+	}
+
+	/**
+	 * @param vTimeZoneRegistry the registry to look up the StartTimeZone and EndTimeZone of each calendar item in, 
+	 * defaults to {@link VTimeZoneRegistry#getDefault()}
+	 */
+	public void setVTimeZoneRegistry(VTimeZoneRegistry vTimeZoneRegistry) {
+		Validate.notNull(vTimeZoneRegistry, "vTimeZoneRegistry cannot be null");
+		this.vTimeZoneRegistry = vTimeZoneRegistry;
+	}
+
+	/**
+	 * @return the exportThreads
+	 */
+	public int getExportThreads() {
+		return exportThreads;
+	}
+
+	/**
+	 * @param exportThreads the number of threads converting items for {@link #writeCalendar(Collection, String, Writer)}
+	 */
+	public void setExportThreads(int exportThreads) {
+		Validate.isTrue(exportThreads > 0, "exportThreads must be greater than 0");
+		this.exportThreads = exportThreads;
+	}
+
+	/**
+	 * @return the exportChunkSize
+	 */
+	public int getExportChunkSize() {
+		return exportChunkSize;
+	}
+
+	/**
+	 * @param exportChunkSize the number of items converted by one task; smaller exports are converted on the calling thread
+	 */
+	public void setExportChunkSize(int exportChunkSize) {
+		Validate.isTrue(exportChunkSize > 0, "exportChunkSize must be greater than 0");
+		this.exportChunkSize = exportChunkSize;
+	}
+
+	/**
+	 * @return the executorService
+	 */
+	public ExecutorService getExecutorService() {
+		return executorService;
+	}
+
+	/**
+	 * Use an existing {@link ExecutorService} rather than creating one; it is not shut down by {@link #destroy()}.
+	 * 
+	 * @param executorService the executorService to set
+	 */
+	public void setExecutorService(ExecutorService executorService) {
+		this.executorService = executorService;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.springframework.beans.factory.InitializingBean#afterPropertiesSet()
+	 */
+	@Override
+	public void afterPropertiesSet() {
+		initialize();
+	}
+
+	/**
+	 * Create the default {@link ExecutorService} if one was not provided.
+	 * Invoked by {@link #afterPropertiesSet()} and lazily on first use.
+	 */
+	public synchronized void initialize() {
+		if(executorService == null && !destroyed) {
+			CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("ews-calendar-export-");
+			threadFactory.setDaemon(true);
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(exportThreads, exportThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+			executor.allowCoreThreadTimeOut(true);
+			this.executorService = executor;
+			this.ownsExecutorService = true;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.springframework.beans.factory.DisposableBean#destroy()
+	 */
+	@Override
+	public synchronized void destroy() {
+		destroyed = true;
+		if(ownsExecutorService && executorService != null) {
+			executorService.shutdownNow();
+			ownsExecutorService = false;
+		}
+		executorService = null;
+	}
+
 	@Override
 	public Calendar convertToCalendar(Collection<ItemType> items, String upn) {
 		Calendar result = new Calendar();
@@ -120,46 +254,196 @@ public class ExchangeEventConverterImpl implements ExchangeEventConverter {
 		int size = CollectionUtils.isEmpty(items) ? 0 : items.size();
 		log.debug("attempting to convert "+size+" items");
 		if(!CollectionUtils.isEmpty(items)){
-
-			for(ItemType item: items){
-				if(item instanceof CalendarItemType) {
-					CalendarItemType calendarItem = (CalendarItemType) item;
-					Pair<VEvent, ArrayList<VTimeZone>> pair = null;
-					try {
-						pair = convertCalendarItemType(calendarItem, upn);
-					} catch (ExchangeEventConverterException e) {
-						log.error("Failed to convert calendarItem:" + e.getMessage());
+			ComponentList components = result.getComponents();
+			for(Component component : convertItems(items, upn)) {
+				components.add(component);
+			}
+		}
+		
+		return result;
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.StreamingExchangeEventConverter#writeCalendar(java.util.Collection, java.lang.String, java.io.OutputStream)
+	 */
+	@Override
+	public void writeCalendar(Collection<ItemType> items, String upn, OutputStream out) throws IOException {
+		writeCalendar(items, upn, new BufferedWriter(new OutputStreamWriter(out, "UTF-8")));
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.StreamingExchangeEventConverter#writeCalendar(java.util.Collection, java.lang.String, java.io.Writer)
+	 */
+	@Override
+	public void writeCalendar(Collection<ItemType> items, final String upn, Writer writer) throws IOException {
+		FoldingWriter out = new FoldingWriter(writer, FoldingWriter.REDUCED_FOLD_LENGTH);
+		out.write(Calendar.BEGIN + ':' + Calendar.VCALENDAR + Strings.LINE_SEPARATOR);
+		out.write(PROD_ID.toString());
+		out.write(VERSION.toString());
+		
+		int size = CollectionUtils.isEmpty(items) ? 0 : items.size();
+		log.debug("attempting to write "+size+" items");
+		Set<String> writtenTimeZones = new HashSet<String>();
+		if(size > exportChunkSize) {
+			initialize();
+		}
+		ExecutorService executor = this.executorService;
+		if(size <= exportChunkSize || executor == null) {
+			if(size > 0) {
+				writeChunk(out, renderItems(items, upn), writtenTimeZones);
+			}
+		} else {
+			// convert chunks in parallel, keeping only a few rendered chunks ahead of the writer
+			final ExchangeRequestContext context = ExchangeRequestContextHolder.capture();
+			Queue<Future<RenderedChunk>> pending = new LinkedList<Future<RenderedChunk>>();
+			try {
+				Iterator<ItemType> iterator = items.iterator();
+				while(iterator.hasNext()) {
+					final List<ItemType> chunk = new ArrayList<ItemType>(exportChunkSize);
+					while(iterator.hasNext() && chunk.size() < exportChunkSize) {
+						chunk.add(iterator.next());
 					}
-					
-					if(null != pair){
-						if(null != pair.getLeft()){
-							result.getComponents().add(pair.getLeft());
-						}else{
-							log.warn("Failed to generate VEvent for CalendarItemType="+calendarItem);
-						}
-						if(!CollectionUtils.isEmpty(pair.getRight())){
-							log.debug("Generated "+pair.getRight().size()+" VTimeZone components for CalendarItemType="+calendarItem);
-							for(VTimeZone timeZone : pair.getRight()){
-								result.getComponents().add(timeZone);
+					pending.add(executor.submit(new Callable<RenderedChunk>() {
+						@Override
+						public RenderedChunk call() {
+							ExchangeRequestContextHolder.bind(context);
+							try {
+								return renderItems(chunk, upn);
+							} finally {
+								ExchangeRequestContextHolder.clear();
 							}
-						}else{
-							log.warn("Failed to generate VTimeZone for CalendarItemType="+calendarItem);
 						}
+					}));
+					if(pending.size() > 2 * exportThreads) {
+						writeChunk(out, awaitChunk(pending.remove()), writtenTimeZones);
 					}
-					
-				}else if(item instanceof TaskType){
-					TaskType taskItem = (TaskType) item;
-					Pair<VToDo,ArrayList<VTimeZone>> pair = convertTaskType(taskItem, upn);
-					//TODO handle tasks
-				}else{
-					log.warn("Not an instanceof CalendarItemType | TaskType.  Cannot convert item: "+item);
+				}
+				while(!pending.isEmpty()) {
+					writeChunk(out, awaitChunk(pending.remove()), writtenTimeZones);
+				}
+			} finally {
+				for(Future<RenderedChunk> future : pending) {
+					future.cancel(true);
 				}
 			}
 		}
 		
-		return result;
+		out.write(Calendar.END + ':' + Calendar.VCALENDAR + Strings.LINE_SEPARATOR);
+		out.flush();
+	}
+	
+	/**
+	 * Convert the items in order, skipping any that cannot be converted.
+	 * 
+	 * @param items
+	 * @param upn
+	 * @return the {@link VEvent}s, each preceded by the {@link VTimeZone}s it refers to that have not already been returned
+	 */
+	protected List<Component> convertItems(Collection<ItemType> items, String upn) {
+		List<Component> components = new ArrayList<Component>();
+		Set<String> timeZoneIds = new HashSet<String>();
+		for(ItemType item: items){
+			if(item instanceof CalendarItemType) {
+				CalendarItemType calendarItem = (CalendarItemType) item;
+				Pair<VEvent, ArrayList<VTimeZone>> pair = null;
+				try {
+					pair = convertCalendarItemType(calendarItem, upn);
+				} catch (ExchangeEventConverterException e) {
+					log.error("Failed to convert calendarItem:" + e.getMessage());
+				}
+				
+				if(null != pair){
+					if(!CollectionUtils.isEmpty(pair.getRight())){
+						log.debug("Generated "+pair.getRight().size()+" VTimeZone components for CalendarItemType="+calendarItem);
+						for(VTimeZone timeZone : pair.getRight()){
+							if(timeZoneIds.add(timeZoneKey(timeZone))){
+								components.add(timeZone);
+							}
+						}
+					}else{
+						log.debug("No VTimeZone generated for CalendarItemType="+calendarItem);
+					}
+					if(null != pair.getLeft()){
+						components.add(pair.getLeft());
+					}else{
+						log.warn("Failed to generate VEvent for CalendarItemType="+calendarItem);
+					}
+				}
+				
+			}else if(item instanceof TaskType){
+				TaskType taskItem = (TaskType) item;
+				Pair<VToDo,ArrayList<VTimeZone>> pair = convertTaskType(taskItem, upn);
+				//TODO handle tasks
+			}else{
+				log.warn("Not an instanceof CalendarItemType | TaskType.  Cannot convert item: "+item);
+			}
+		}
+		return components;
+	}
+	
+	private static String timeZoneKey(VTimeZone timeZone) {
+		TzId tzId = timeZone.getTimeZoneId();
+		return tzId == null ? timeZone.toString() : tzId.getValue();
+	}
+	
+	/**
+	 * The iCalendar text of a run of converted items; the components are discarded once rendered.
+	 * Text is split at each {@link VTimeZone}, so one already written for an earlier chunk can be left out.
+	 */
+	static final class RenderedChunk {
+		final List<String> timeZoneKeys = new ArrayList<String>();
+		final List<String> texts = new ArrayList<String>();
+	}
+	
+	private RenderedChunk renderItems(Collection<ItemType> items, String upn) {
+		RenderedChunk chunk = new RenderedChunk();
+		StringBuilder text = new StringBuilder();
+		for(Component component : convertItems(items, upn)) {
+			if(component instanceof VTimeZone) {
+				if(text.length() > 0) {
+					chunk.timeZoneKeys.add(null);
+					chunk.texts.add(text.toString());
+					text.setLength(0);
+				}
+				chunk.timeZoneKeys.add(timeZoneKey((VTimeZone) component));
+				chunk.texts.add(component.toString());
+			} else {
+				text.append(component.toString());
+			}
+		}
+		if(text.length() > 0) {
+			chunk.timeZoneKeys.add(null);
+			chunk.texts.add(text.toString());
+		}
+		return chunk;
+	}
+	
+	private void writeChunk(Writer out, RenderedChunk chunk, Set<String> writtenTimeZones) throws IOException {
+		for(int i = 0; i < chunk.texts.size(); i++) {
+			String timeZoneKey = chunk.timeZoneKeys.get(i);
+			if(timeZoneKey == null || writtenTimeZones.add(timeZoneKey)) {
+				out.write(chunk.texts.get(i));
+			}
+		}
+	}
+	
+	private RenderedChunk awaitChunk(Future<RenderedChunk> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while converting items");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if(cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new ExchangeRuntimeException(cause);
+		}
 	}
-
 
 	protected Pair<VToDo, ArrayList<VTimeZone>> convertTaskType(TaskType taskItem, String upn) {
 		VToDo task = new VToDo();
@@ -195,27 +479,31 @@ public class ExchangeEventConverterImpl implements ExchangeEventConverter {
 		
 		//does this element have a timezone?
 		XMLGregorianCalendar start = calendarItem.getStart();
-		DtStart dtStart = new DtStart(new DateTime(start.toGregorianCalendar().getTime()));
+		DtStart dtStart;
 		DtEnd dtEnd = null;
 		
-		if(null != calendarItem.getEnd()){
-			dtEnd = new DtEnd(new DateTime(calendarItem.getEnd().toGregorianCalendar().getTime()));
-		}
-		
 		//if all day event, must use Date
 		if(null !=  calendarItem.isIsAllDayEvent()  && calendarItem.isIsAllDayEvent()) {
-			dtStart = new DtStart(new Date(start.toGregorianCalendar().getTime()),true);
-			dtEnd = new DtEnd(new Date(calendarItem.getEnd().toGregorianCalendar().getTime()),true);
+			dtStart = new DtStart(new Date(DateHelp.convertXMLGregorianCalendarToDate(start)),true);
+			dtEnd = new DtEnd(new Date(DateHelp.convertXMLGregorianCalendarToDate(calendarItem.getEnd())),true);
 			log.debug("set to all day event");
+		}else{
+			//local times in the zones of the item where they map to a VTIMEZONE, otherwise UTC
+			TimeZone startTimeZone = vTimeZoneRegistry.getTimeZone(calendarItem.getStartTimeZone());
+			TimeZone endTimeZone = vTimeZoneRegistry.getTimeZone(calendarItem.getEndTimeZone());
+			if(null == endTimeZone){
+				endTimeZone = startTimeZone;
+			}
+			dtStart = new DtStart(zonedDateTime(start, startTimeZone));
+			if(null != calendarItem.getEnd()){
+				dtEnd = new DtEnd(zonedDateTime(calendarItem.getEnd(), endTimeZone));
+			}
 		}
-		//this way no vtimezone is needed
-		dtStart.setUtc(true);
 		
 		event.getProperties().add(dtStart);
 		log.debug("added dtStart="+dtStart);
 		
 		if( null != dtEnd ){
-			dtEnd.setUtc(true);
 			event.getProperties().add(dtEnd);
 			log.debug("added dtEnd="+dtEnd);
 		}
@@ -241,7 +529,7 @@ public class ExchangeEventConverterImpl implements ExchangeEventConverter {
 		
 		//should always set dtstamp, otherwise it's auto-generated and !veventCreatedNow.equals(veventCreatedLater);
 		if(null != calendarItem.getDateTimeCreated()){
-			DtStamp dtstamp = new DtStamp(new DateTime(calendarItem.getDateTimeCreated().toGregorianCalendar().getTime())); 
+			DtStamp dtstamp = new DtStamp(new DateTime(DateHelp.convertXMLGregorianCalendarToDate(calendarItem.getDateTimeCreated()))); 
 			dtstamp.setUtc(true);
 			
 			event.getProperties().remove(event.getProperty(DtStamp.DTSTAMP));
@@ -359,10 +647,56 @@ public class ExchangeEventConverterImpl implements ExchangeEventConverter {
 			}
 		}
 		
+		timeZones.addAll(referencedTimeZones(event));
+		
 		Pair<VEvent, ArrayList<VTimeZone>> pair = Pair.of(event, timeZones);
 		return pair;
 	}
 	
+	/**
+	 * 
+	 * @param value
+	 * @param timeZone the zone from the {@link VTimeZoneRegistry}, or null for UTC
+	 * @return the {@link DateTime} of the value, in the timeZone 
+	 */
+	private static DateTime zonedDateTime(XMLGregorianCalendar value, TimeZone timeZone) {
+		DateTime dateTime = new DateTime(DateHelp.convertXMLGregorianCalendarToDate(value));
+		if(null == timeZone){
+			dateTime.setUtc(true);
+		}else{
+			dateTime.setTimeZone(timeZone);
+		}
+		return dateTime;
+	}
+	
+	/**
+	 * Only date-times carrying a TZID parameter need a VTIMEZONE; a zone named nowhere else is not returned.
+	 * 
+	 * @param component
+	 * @return the {@link VTimeZone}s named by the TZID parameter of the component's date-time properties, each once
+	 */
+	protected ArrayList<VTimeZone> referencedTimeZones(Component component) {
+		ArrayList<VTimeZone> timeZones = new ArrayList<VTimeZone>();
+		for(Object property : component.getProperties()) {
+			if(!(property instanceof DateProperty)) {
+				continue;
+			}
+			DateProperty dateProperty = (DateProperty) property;
+			Parameter tzId = dateProperty.getParameter(Parameter.TZID);
+			if(null == tzId) {
+				continue;
+			}
+			VTimeZone timeZone = null != dateProperty.getTimeZone() ? dateProperty.getTimeZone().getVTimeZone() 
+					: vTimeZoneRegistry.getVTimeZone(tzId.getValue());
+			if(null == timeZone) {
+				log.warn("no VTimeZone found for TZID="+tzId.getValue()+" of "+dateProperty.getName());
+			}else if(!timeZones.contains(timeZone)) {
+				timeZones.add(timeZone);
+			}
+		}
+		return timeZones;
+	}
+	
 	private Collection<XProperty> generateCalendarItemTypeXProperties(CalendarItemType calendarItem){
 		Collection<XProperty> xprops = new LinkedHashSet<XProperty>();
 		
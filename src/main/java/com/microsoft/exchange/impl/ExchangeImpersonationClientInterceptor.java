@@ -20,7 +20,6 @@ package com.microsoft.exchange.impl;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Marshaller;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -29,7 +28,6 @@ import org.springframework.ws.WebServiceMessage;
 import org.springframework.ws.client.WebServiceClientException;
 import org.springframework.ws.client.support.interceptor.ClientInterceptor;
 import org.springframework.ws.context.MessageContext;
-import org.springframework.ws.soap.SoapEnvelope;
 import org.springframework.ws.soap.SoapHeader;
 import org.springframework.ws.soap.SoapMessage;
 
@@ -49,11 +47,12 @@ import com.microsoft.exchange.types.ExchangeImpersonation;
  * @author Nicholas Blair
  */
 public class ExchangeImpersonationClientInterceptor implements
-ClientInterceptor {
+ClientInterceptor, SoapHeaderWriter {
 
 	protected final Log log = LogFactory.getLog(this.getClass());
 	private ImpersonationConnectingSIDSource connectingSIDSource;
 	private JAXBContext jaxbContext;
+	private volatile MarshallerPool marshallerPool;
 	/**
 	 * @return the connectingSIDSource
 	 */
@@ -79,6 +78,19 @@ ClientInterceptor {
 	@Autowired
 	public void setJaxbContext(JAXBContext jaxbContext) {
 		this.jaxbContext = jaxbContext;
+		this.marshallerPool = null;
+	}
+	/**
+	 * 
+	 * @return a {@link MarshallerPool} for the {@link #getJaxbContext()}
+	 */
+	protected MarshallerPool getMarshallerPool() {
+		MarshallerPool pool = this.marshallerPool;
+		if(pool == null) {
+			pool = new MarshallerPool(jaxbContext);
+			this.marshallerPool = pool;
+		}
+		return pool;
 	}
 
 	
@@ -91,31 +103,34 @@ ClientInterceptor {
 		WebServiceMessage request = messageContext.getRequest();
 		if(request instanceof SoapMessage) {
 			SoapMessage soapMessage = (SoapMessage) request;
+			writeHeader(soapMessage, soapMessage.getSoapHeader(), messageContext);
+		}
 
-			ConnectingSIDType connectingSID = connectingSIDSource.getConnectingSID(soapMessage, messageContext);
-			if(connectingSID != null) {
-				ExchangeImpersonation impersonation = new ExchangeImpersonation();
-				impersonation.setConnectingSID(connectingSID);
-				
-				SoapEnvelope envelope = soapMessage.getEnvelope();
-				SoapHeader header = envelope.getHeader();
+		return true;
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.impl.SoapHeaderWriter#writeHeader(org.springframework.ws.soap.SoapMessage, org.springframework.ws.soap.SoapHeader, org.springframework.ws.context.MessageContext)
+	 */
+	@Override
+	public void writeHeader(SoapMessage soapMessage, SoapHeader header, MessageContext messageContext) 
+			throws WebServiceClientException {
+		ConnectingSIDType connectingSID = connectingSIDSource.getConnectingSID(soapMessage, messageContext);
+		if(connectingSID != null) {
+			ExchangeImpersonation impersonation = new ExchangeImpersonation();
+			impersonation.setConnectingSID(connectingSID);
 
-				try {
-					Marshaller m = jaxbContext.createMarshaller();
-					m.marshal(impersonation, header.getResult());
-					
-				} catch (JAXBException e) {
-					log.error("JAXBException raised while attempting to add ExchangeImpersonation header with SID: " + connectingSID, e);
-					throw new ExchangeImpersonationException("JAXBException raised while attempting to add ExchangeImpersonation header with SID: " + connectingSID, e);
-				}
-			} else {
-				if(log.isDebugEnabled()) {
-					log.debug("no connectingSID found for " + soapMessage);
-				}
+			try {
+				getMarshallerPool().marshal(impersonation, header.getResult());
+			} catch (JAXBException e) {
+				log.error("JAXBException raised while attempting to add ExchangeImpersonation header with SID: " + connectingSID, e);
+				throw new ExchangeImpersonationException("JAXBException raised while attempting to add ExchangeImpersonation header with SID: " + connectingSID, e);
+			}
+		} else {
+			if(log.isDebugEnabled()) {
+				log.debug("no connectingSID found for " + soapMessage);
 			}
 		}
-
-		return true;
 	}
 
 	/* (non-Javadoc)
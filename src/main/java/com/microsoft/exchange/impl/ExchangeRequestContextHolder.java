@@ -0,0 +1,76 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.impl;
+
+import com.microsoft.exchange.ExchangeRequestContext;
+import com.microsoft.exchange.impl.http.ThreadLocalCredentialsProviderFactory;
+
+/**
+ * Static helpers to move an {@link ExchangeRequestContext} in and out of the thread locals consulted 
+ * by {@link ThreadLocalImpersonationConnectingSIDSourceImpl}, {@link ThreadLocalCredentialsProviderFactory} 
+ * and {@link ThreadLocalTimeZoneContextSource}.
+ * 
+ * Used wherever work started on one thread is carried out on another.
+ */
+public final class ExchangeRequestContextHolder {
+
+	private ExchangeRequestContextHolder() {
+	}
+	
+	/**
+	 * 
+	 * @return an {@link ExchangeRequestContext} describing the thread locals of the current thread
+	 */
+	public static ExchangeRequestContext capture() {
+		return new ExchangeRequestContext(ThreadLocalImpersonationConnectingSIDSourceImpl.getCurrentConnectingSID(),
+				ThreadLocalCredentialsProviderFactory.get(), ThreadLocalTimeZoneContextSource.getBoundTimeZoneId());
+	}
+	
+	/**
+	 * Bind the {@link ExchangeRequestContext} to the current thread, replacing (or clearing) any existing values.
+	 * 
+	 * @param context may be null
+	 */
+	public static void bind(ExchangeRequestContext context) {
+		if(context != null && context.getConnectingSID() != null) {
+			ThreadLocalImpersonationConnectingSIDSourceImpl.setConnectingSID(context.getConnectingSID());
+		} else {
+			ThreadLocalImpersonationConnectingSIDSourceImpl.clear();
+		}
+		if(context != null && context.getCredentials() != null) {
+			ThreadLocalCredentialsProviderFactory.set(context.getCredentials());
+		} else {
+			ThreadLocalCredentialsProviderFactory.clear();
+		}
+		if(context != null && context.getTimeZoneId() != null) {
+			ThreadLocalTimeZoneContextSource.setTimeZoneId(context.getTimeZoneId());
+		} else {
+			ThreadLocalTimeZoneContextSource.clear();
+		}
+	}
+	
+	/**
+	 * Remove any context bound to the current thread.
+	 */
+	public static void clear() {
+		ThreadLocalImpersonationConnectingSIDSourceImpl.clear();
+		ThreadLocalCredentialsProviderFactory.clear();
+		ThreadLocalTimeZoneContextSource.clear();
+	}
+}
@@ -20,6 +20,7 @@ package com.microsoft.exchange.impl;
 
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -372,7 +373,7 @@ public class ExchangeResponseUtilsImpl implements ExchangeResponseUtils  {
 	public Pair<Set<ItemIdType>, Integer> parseFindItemIdResponse(FindItemResponse response){
 		
 		confirmSuccess(response);
-		Set<ItemIdType> foundItemIds = new HashSet<ItemIdType>();
+		Set<ItemIdType> foundItemIds = new LinkedHashSet<ItemIdType>();
 		Integer nextOffset = -1;
 		ArrayOfResponseMessagesType findItemResponseMessages = response.getResponseMessages();
 		List<JAXBElement<? extends ResponseMessageType>> itemResponseMessages = findItemResponseMessages.getCreateItemResponseMessagesAndDeleteItemResponseMessagesAndGetItemResponseMessages();
@@ -422,6 +423,27 @@ public class ExchangeResponseUtilsImpl implements ExchangeResponseUtils  {
 		return calendarItems;
 	}
 	
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.ExchangeResponseUtils#parseTotalItemsInView(com.microsoft.exchange.messages.FindItemResponse)
+	 */
+	@Override
+	public int parseTotalItemsInView(FindItemResponse response) {
+		int total = -1;
+		ArrayOfResponseMessagesType findItemResponseMessages = response.getResponseMessages();
+		if(null == findItemResponseMessages) {
+			return total;
+		}
+		for(JAXBElement<? extends ResponseMessageType> element : findItemResponseMessages.getCreateItemResponseMessagesAndDeleteItemResponseMessagesAndGetItemResponseMessages()) {
+			if(element.getValue() instanceof FindItemResponseMessageType) {
+				FindItemParentType rootFolder = ((FindItemResponseMessageType) element.getValue()).getRootFolder();
+				if(null != rootFolder && null != rootFolder.getTotalItemsInView()) {
+					total = Math.max(total, 0) + rootFolder.getTotalItemsInView();
+				}
+			}
+		}
+		return total;
+	}
+	
 	private String parseInnerResponse(JAXBElement<? extends ResponseMessageType> innerResponse) {
 		
 		ResponseMessageType responseMessage = innerResponse.getValue();
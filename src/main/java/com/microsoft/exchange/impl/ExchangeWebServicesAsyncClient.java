@@ -0,0 +1,718 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.impl;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import com.microsoft.exchange.AsyncExchangeWebServices;
+import com.microsoft.exchange.ExchangeRequestContext;
+import com.microsoft.exchange.ExchangeResponseFuture;
+import com.microsoft.exchange.ExchangeWebServices;
+import com.microsoft.exchange.messages.AddDelegate;
+import com.microsoft.exchange.messages.AddDelegateResponse;
+import com.microsoft.exchange.messages.ConvertId;
+import com.microsoft.exchange.messages.ConvertIdResponse;
+import com.microsoft.exchange.messages.CopyFolder;
+import com.microsoft.exchange.messages.CopyFolderResponse;
+import com.microsoft.exchange.messages.CopyItem;
+import com.microsoft.exchange.messages.CopyItemResponse;
+import com.microsoft.exchange.messages.CreateAttachment;
+import com.microsoft.exchange.messages.CreateAttachmentResponse;
+import com.microsoft.exchange.messages.CreateFolder;
+import com.microsoft.exchange.messages.CreateFolderResponse;
+import com.microsoft.exchange.messages.CreateItem;
+import com.microsoft.exchange.messages.CreateItemResponse;
+import com.microsoft.exchange.messages.CreateManagedFolder;
+import com.microsoft.exchange.messages.CreateManagedFolderResponse;
+import com.microsoft.exchange.messages.DeleteAttachment;
+import com.microsoft.exchange.messages.DeleteAttachmentResponse;
+import com.microsoft.exchange.messages.DeleteFolder;
+import com.microsoft.exchange.messages.DeleteFolderResponse;
+import com.microsoft.exchange.messages.DeleteItem;
+import com.microsoft.exchange.messages.DeleteItemResponse;
+import com.microsoft.exchange.messages.EmptyFolder;
+import com.microsoft.exchange.messages.EmptyFolderResponse;
+import com.microsoft.exchange.messages.ExpandDL;
+import com.microsoft.exchange.messages.ExpandDLResponse;
+import com.microsoft.exchange.messages.FindFolder;
+import com.microsoft.exchange.messages.FindFolderResponse;
+import com.microsoft.exchange.messages.FindItem;
+import com.microsoft.exchange.messages.FindItemResponse;
+import com.microsoft.exchange.messages.GetAttachment;
+import com.microsoft.exchange.messages.GetAttachmentResponse;
+import com.microsoft.exchange.messages.GetDelegate;
+import com.microsoft.exchange.messages.GetDelegateResponse;
+import com.microsoft.exchange.messages.GetEvents;
+import com.microsoft.exchange.messages.GetEventsResponse;
+import com.microsoft.exchange.messages.GetFolder;
+import com.microsoft.exchange.messages.GetFolderResponse;
+import com.microsoft.exchange.messages.GetItem;
+import com.microsoft.exchange.messages.GetItemResponse;
+import com.microsoft.exchange.messages.GetServerTimeZones;
+import com.microsoft.exchange.messages.GetServerTimeZonesResponse;
+import com.microsoft.exchange.messages.GetUserAvailabilityRequest;
+import com.microsoft.exchange.messages.GetUserAvailabilityResponse;
+import com.microsoft.exchange.messages.GetUserOofSettingsRequest;
+import com.microsoft.exchange.messages.GetUserOofSettingsResponse;
+import com.microsoft.exchange.messages.MoveFolder;
+import com.microsoft.exchange.messages.MoveFolderResponse;
+import com.microsoft.exchange.messages.MoveItem;
+import com.microsoft.exchange.messages.MoveItemResponse;
+import com.microsoft.exchange.messages.RemoveDelegate;
+import com.microsoft.exchange.messages.RemoveDelegateResponse;
+import com.microsoft.exchange.messages.ResolveNames;
+import com.microsoft.exchange.messages.ResolveNamesResponse;
+import com.microsoft.exchange.messages.SendItem;
+import com.microsoft.exchange.messages.SendItemResponse;
+import com.microsoft.exchange.messages.SetUserOofSettingsRequest;
+import com.microsoft.exchange.messages.SetUserOofSettingsResponse;
+import com.microsoft.exchange.messages.Subscribe;
+import com.microsoft.exchange.messages.SubscribeResponse;
+import com.microsoft.exchange.messages.SyncFolderHierarchy;
+import com.microsoft.exchange.messages.SyncFolderHierarchyResponse;
+import com.microsoft.exchange.messages.SyncFolderItems;
+import com.microsoft.exchange.messages.SyncFolderItemsResponse;
+import com.microsoft.exchange.messages.Unsubscribe;
+import com.microsoft.exchange.messages.UnsubscribeResponse;
+import com.microsoft.exchange.messages.UpdateDelegate;
+import com.microsoft.exchange.messages.UpdateDelegateResponse;
+import com.microsoft.exchange.messages.UpdateFolder;
+import com.microsoft.exchange.messages.UpdateFolderResponse;
+import com.microsoft.exchange.messages.UpdateItem;
+import com.microsoft.exchange.messages.UpdateItemResponse;
+
+/**
+ * {@link AsyncExchangeWebServices} implementation that dispatches requests to an
+ * {@link ExchangeWebServices} client on an {@link ExecutorService}.
+ * 
+ * The {@link ExchangeRequestContext} submitted with each request is bound to the
+ * {@link ThreadLocalImpersonationConnectingSIDSourceImpl} and {@link com.microsoft.exchange.impl.http.ThreadLocalCredentialsProviderFactory}
+ * of the worker thread only for the duration of that request, so the calling thread never
+ * needs to set (or clear) those thread locals itself.
+ * 
+ * Credentials are only honored when the message sender is configured with the 
+ * {@link com.microsoft.exchange.impl.http.ThreadLocalCredentialsProviderFactory} (the default for the {@link com.microsoft.exchange.impl.http.CustomHttpComponentsMessageSender}).
+ * 
+ * If no {@link ExecutorService} is provided, a fixed pool of {@link #getPoolSize()} daemon threads is created 
+ * in {@link #afterPropertiesSet()} and shut down in {@link #destroy()}.
+ */
+public class ExchangeWebServicesAsyncClient implements AsyncExchangeWebServices, InitializingBean, DisposableBean {
+
+	protected final Log log = LogFactory.getLog(this.getClass());
+	
+	private ExchangeWebServices webServices;
+	private ExecutorService executorService;
+	private int poolSize = ExchangeOnlineThrottlingPolicy.MAX_CONCURRENT_CONNECTIONS_IMPERSONATION;
+	private boolean ownsExecutorService = false;
+	
+	/**
+	 * @return the webServices
+	 */
+	public ExchangeWebServices getWebServices() {
+		return webServices;
+	}
+	/**
+	 * @param webServices the webServices to set
+	 */
+	@Autowired @Qualifier("ewsClient")
+	public void setWebServices(ExchangeWebServices webServices) {
+		this.webServices = webServices;
+	}
+	/**
+	 * @return the executorService
+	 */
+	public ExecutorService getExecutorService() {
+		return executorService;
+	}
+	/**
+	 * @param executorService the executorService to set
+	 */
+	public void setExecutorService(ExecutorService executorService) {
+		this.executorService = executorService;
+	}
+	/**
+	 * @return the number of threads used when no {@link ExecutorService} is provided
+	 */
+	public int getPoolSize() {
+		return poolSize;
+	}
+	/**
+	 * @param poolSize the poolSize to set
+	 */
+	public void setPoolSize(int poolSize) {
+		this.poolSize = poolSize;
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.springframework.beans.factory.InitializingBean#afterPropertiesSet()
+	 */
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		if(webServices == null) {
+			throw new IllegalStateException("webServices property is required");
+		}
+		if(executorService == null) {
+			CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("ews-async-");
+			threadFactory.setDaemon(true);
+			this.executorService = Executors.newFixedThreadPool(poolSize, threadFactory);
+			this.ownsExecutorService = true;
+			log.info("created executorService with " + poolSize + " threads");
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.springframework.beans.factory.DisposableBean#destroy()
+	 */
+	@Override
+	public void destroy() throws Exception {
+		if(ownsExecutorService && executorService != null) {
+			executorService.shutdown();
+		}
+	}
+	
+	/**
+	 * Submit the invocation to the {@link ExecutorService}, binding the context for the duration of the invocation.
+	 * 
+	 * @param context
+	 * @param invocation
+	 * @return a never null {@link ExchangeResponseFuture}
+	 */
+	protected <T> ExchangeResponseFuture<T> submit(final ExchangeRequestContext context, final Callable<T> invocation) {
+		final SettableExchangeResponseFuture<T> future = new SettableExchangeResponseFuture<T>();
+		try {
+			Future<?> task = executorService.submit(new Runnable() {
+				@Override
+				public void run() {
+					if(future.isCancelled()) {
+						return;
+					}
+					bindContext(context);
+					try {
+						future.set(invocation.call());
+					} catch (Throwable e) {
+						future.setFailure(e);
+					} finally {
+						clearContext();
+					}
+				}
+			});
+			future.setDelegate(task);
+		} catch (RejectedExecutionException e) {
+			log.warn("request rejected for " + context + ", " + e.getMessage());
+			future.setFailure(e);
+		}
+		return future;
+	}
+	
+	/**
+	 * Bind the {@link ExchangeRequestContext} to the current (worker) thread.
+	 * 
+	 * @param context
+	 */
+	protected void bindContext(ExchangeRequestContext context) {
+		ExchangeRequestContextHolder.bind(context);
+	}
+	
+	/**
+	 * Remove any context bound by {@link #bindContext(ExchangeRequestContext)}.
+	 */
+	protected void clearContext() {
+		ExchangeRequestContextHolder.clear();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.AsyncExchangeWebServices#resolveNames(com.microsoft.exchange.messages.ResolveNames, com.microsoft.exchange.ExchangeRequestContext)
+	 */
+	@Override
+	public ExchangeResponseFuture<ResolveNamesResponse> resolveNames(final ResolveNames request, ExchangeRequestContext context) {
+		return submit(context, new Callable<ResolveNamesResponse>() {
+			@Override
+			public ResolveNamesResponse call() {
+				return getWebServices().resolveNames(request);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.AsyncExchangeWebServices#expandDL(com.microsoft.exchange.messages.ExpandDL, com.microsoft.exchange.ExchangeRequestContext)
+	 */
+	@Override
+	public ExchangeResponseFuture<ExpandDLResponse> expandDL(final ExpandDL request, ExchangeRequestContext context) {
+		return submit(context, new Callable<ExpandDLResponse>() {
+			@Override
+			public ExpandDLResponse call() {
+				return getWebServices().expandDL(request);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.AsyncExchangeWebServices#findFolder(com.microsoft.exchange.messages.FindFolder, com.microsoft.exchange.ExchangeRequestContext)
+	 */
+	@Override
+	public ExchangeResponseFuture<FindFolderResponse> findFolder(final FindFolder request, ExchangeRequestContext context) {
+		return submit(context, new Callable<FindFolderResponse>() {
+			@Override
+			public FindFolderResponse call() {
+				return getWebServices().findFolder(request);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.AsyncExchangeWebServices#findItem(com.microsoft.exchange.messages.FindItem, com.microsoft.exchange.ExchangeRequestContext)
+	 */
+	@Override
+	public ExchangeResponseFuture<FindItemResponse> findItem(final FindItem request, ExchangeRequestContext context) {
+		return submit(context, new Callable<FindItemResponse>() {
+			@Override
+			public FindItemResponse call() {
+				return getWebServices().findItem(request);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.AsyncExchangeWebServices#emptyFolder(com.microsoft.exchange.messages.EmptyFolder, com.microsoft.exchange.ExchangeRequestContext)
+	 */
+	@Override
+	public ExchangeResponseFuture<EmptyFolderResponse> emptyFolder(final EmptyFolder request, ExchangeRequestContext context) {
+		return submit(context, new Callable<EmptyFolderResponse>() {
+			@Override
+			public EmptyFolderResponse call() {
+				return getWebServices().emptyFolder(request);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.AsyncExchangeWebServices#getFolder(com.microsoft.exchange.messages.GetFolder, com.microsoft.exchange.ExchangeRequestContext)
+	 */
+	@Override
+	public ExchangeResponseFuture<GetFolderResponse> getFolder(final GetFolder request, ExchangeRequestContext context) {
+		return submit(context, new Callable<GetFolderResponse>() {
+			@Override
+			public GetFolderResponse call() {
+				return getWebServices().getFolder(request);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.AsyncExchangeWebServices#convertId(com.microsoft.exchange.messages.ConvertId, com.microsoft.exchange.ExchangeRequestContext)
+	 */
+	@Override
+	public ExchangeResponseFuture<ConvertIdResponse> convertId(final ConvertId request, ExchangeRequestContext context) {
+		return submit(context, new Callable<ConvertIdResponse>() {
+			@Override
+			public ConvertIdResponse call() {
+				return getWebServices().convertId(request);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.AsyncExchangeWebServices#createFolder(com.microsoft.exchange.messages.CreateFolder, com.microsoft.exchange.ExchangeRequestContext)
+	 */
+	@Override
+	public ExchangeResponseFuture<CreateFolderResponse> createFolder(final CreateFolder request, ExchangeRequestContext context) {
+		return submit(context, new Callable<CreateFolderResponse>() {
+			@Override
+			public CreateFolderResponse call() {
+				return getWebServices().createFolder(request);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.AsyncExchangeWebServices#deleteFolder(com.microsoft.exchange.messages.DeleteFolder, com.microsoft.exchange.ExchangeRequestContext)
+	 */
+	@Override
+	public ExchangeResponseFuture<DeleteFolderResponse> deleteFolder(final DeleteFolder request, ExchangeRequestContext context) {
+		return submit(context, new Callable<DeleteFolderResponse>() {
+			@Override
+			public DeleteFolderResponse call() {
+				return getWebServices().deleteFolder(request);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.AsyncExchangeWebServices#updateFolder(com.microsoft.exchange.messages.UpdateFolder, com.microsoft.exchange.ExchangeRequestContext)
+	 */
+	@Override
+	public ExchangeResponseFuture<UpdateFolderResponse> updateFolder(final UpdateFolder request, ExchangeRequestContext context) {
+		return submit(context, new Callable<UpdateFolderResponse>() {
+			@Override
+			public UpdateFolderResponse call() {
+				return getWebServices().updateFolder(request);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.AsyncExchangeWebServices#moveFolder(com.microsoft.exchange.messages.MoveFolder, com.microsoft.exchange.ExchangeRequestContext)
+	 */
+	@Override
+	public ExchangeResponseFuture<MoveFolderResponse> moveFolder(final MoveFolder request, ExchangeRequestContext context) {
+		return submit(context, new Callable<MoveFolderResponse>() {
+			@Override
+			public MoveFolderResponse call() {
+				return getWebServices().moveFolder(request);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.AsyncExchangeWebServices#copyFolder(com.microsoft.exchange.messages.CopyFolder, com.microsoft.exchange.ExchangeRequestContext)
+	 */
+	@Override
+	public ExchangeResponseFuture<CopyFolderResponse> copyFolder(final CopyFolder request, ExchangeRequestContext context) {
+		return submit(context, new Callable<CopyFolderResponse>() {
+			@Override
+			public CopyFolderResponse call() {
+				return getWebServices().copyFolder(request);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.AsyncExchangeWebServices#subscribe(com.microsoft.exchange.messages.Subscribe, com.microsoft.exchange.ExchangeRequestContext)
+	 */
+	@Override
+	public ExchangeResponseFuture<SubscribeResponse> subscribe(final Subscribe request, ExchangeRequestContext context) {
+		return submit(context, new Callable<SubscribeResponse>() {
+			@Override
+			public SubscribeResponse call() {
+				return getWebServices().subscribe(request);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.AsyncExchangeWebServices#unsubscribe(com.microsoft.exchange.messages.Unsubscribe, com.microsoft.exchange.ExchangeRequestContext)
+	 */
+	@Override
+	public ExchangeResponseFuture<UnsubscribeResponse> unsubscribe(final Unsubscribe request, ExchangeRequestContext context) {
+		return submit(context, new Callable<UnsubscribeResponse>() {
+			@Override
+			public UnsubscribeResponse call() {
+				return getWebServices().unsubscribe(request);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.AsyncExchangeWebServices#getEvents(com.microsoft.exchange.messages.GetEvents, com.microsoft.exchange.ExchangeRequestContext)
+	 */
+	@Override
+	public ExchangeResponseFuture<GetEventsResponse> getEvents(final GetEvents request, ExchangeRequestContext context) {
+		return submit(context, new Callable<GetEventsResponse>() {
+			@Override
+			public GetEventsResponse call() {
+				return getWebServices().getEvents(request);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.AsyncExchangeWebServices#syncFolderHierarchy(com.microsoft.exchange.messages.SyncFolderHierarchy, com.microsoft.exchange.ExchangeRequestContext)
+	 */
+	@Override
+	public ExchangeResponseFuture<SyncFolderHierarchyResponse> syncFolderHierarchy(final SyncFolderHierarchy request, ExchangeRequestContext context) {
+		return submit(context, new Callable<SyncFolderHierarchyResponse>() {
+			@Override
+			public SyncFolderHierarchyResponse call() {
+				return getWebServices().syncFolderHierarchy(request);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.AsyncExchangeWebServices#syncFolderItems(com.microsoft.exchange.messages.SyncFolderItems, com.microsoft.exchange.ExchangeRequestContext)
+	 */
+	@Override
+	public ExchangeResponseFuture<SyncFolderItemsResponse> syncFolderItems(final SyncFolderItems request, ExchangeRequestContext context) {
+		return submit(context, new Callable<SyncFolderItemsResponse>() {
+			@Override
+			public SyncFolderItemsResponse call() {
+				return getWebServices().syncFolderItems(request);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.AsyncExchangeWebServices#createManagedFolder(com.microsoft.exchange.messages.CreateManagedFolder, com.microsoft.exchange.ExchangeRequestContext)
+	 */
+	@Override
+	public ExchangeResponseFuture<CreateManagedFolderResponse> createManagedFolder(final CreateManagedFolder request, ExchangeRequestContext context) {
+		return submit(context, new Callable<CreateManagedFolderResponse>() {
+			@Override
+			public CreateManagedFolderResponse call() {
+				return getWebServices().createManagedFolder(request);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.AsyncExchangeWebServices#getItem(com.microsoft.exchange.messages.GetItem, com.microsoft.exchange.ExchangeRequestContext)
+	 */
+	@Override
+	public ExchangeResponseFuture<GetItemResponse> getItem(final GetItem request, ExchangeRequestContext context) {
+		return submit(context, new Callable<GetItemResponse>() {
+			@Override
+			public GetItemResponse call() {
+				return getWebServices().getItem(request);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.AsyncExchangeWebServices#createItem(com.microsoft.exchange.messages.CreateItem, com.microsoft.exchange.ExchangeRequestContext)
+	 */
+	@Override
+	public ExchangeResponseFuture<CreateItemResponse> createItem(final CreateItem request, ExchangeRequestContext context) {
+		return submit(context, new Callable<CreateItemResponse>() {
+			@Override
+			public CreateItemResponse call() {
+				return getWebServices().createItem(request);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.AsyncExchangeWebServices#deleteItem(com.microsoft.exchange.messages.DeleteItem, com.microsoft.exchange.ExchangeRequestContext)
+	 */
+	@Override
+	public ExchangeResponseFuture<DeleteItemResponse> deleteItem(final DeleteItem request, ExchangeRequestContext context) {
+		return submit(context, new Callable<DeleteItemResponse>() {
+			@Override
+			public DeleteItemResponse call() {
+				return getWebServices().deleteItem(request);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.AsyncExchangeWebServices#updateItem(com.microsoft.exchange.messages.UpdateItem, com.microsoft.exchange.ExchangeRequestContext)
+	 */
+	@Override
+	public ExchangeResponseFuture<UpdateItemResponse> updateItem(final UpdateItem request, ExchangeRequestContext context) {
+		return submit(context, new Callable<UpdateItemResponse>() {
+			@Override
+			public UpdateItemResponse call() {
+				return getWebServices().updateItem(request);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.AsyncExchangeWebServices#sendItem(com.microsoft.exchange.messages.SendItem, com.microsoft.exchange.ExchangeRequestContext)
+	 */
+	@Override
+	public ExchangeResponseFuture<SendItemResponse> sendItem(final SendItem request, ExchangeRequestContext context) {
+		return submit(context, new Callable<SendItemResponse>() {
+			@Override
+			public SendItemResponse call() {
+				return getWebServices().sendItem(request);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.AsyncExchangeWebServices#moveItem(com.microsoft.exchange.messages.MoveItem, com.microsoft.exchange.ExchangeRequestContext)
+	 */
+	@Override
+	public ExchangeResponseFuture<MoveItemResponse> moveItem(final MoveItem request, ExchangeRequestContext context) {
+		return submit(context, new Callable<MoveItemResponse>() {
+			@Override
+			public MoveItemResponse call() {
+				return getWebServices().moveItem(request);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.AsyncExchangeWebServices#copyItem(com.microsoft.exchange.messages.CopyItem, com.microsoft.exchange.ExchangeRequestContext)
+	 */
+	@Override
+	public ExchangeResponseFuture<CopyItemResponse> copyItem(final CopyItem request, ExchangeRequestContext context) {
+		return submit(context, new Callable<CopyItemResponse>() {
+			@Override
+			public CopyItemResponse call() {
+				return getWebServices().copyItem(request);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.AsyncExchangeWebServices#createAttachment(com.microsoft.exchange.messages.CreateAttachment, com.microsoft.exchange.ExchangeRequestContext)
+	 */
+	@Override
+	public ExchangeResponseFuture<CreateAttachmentResponse> createAttachment(final CreateAttachment request, ExchangeRequestContext context) {
+		return submit(context, new Callable<CreateAttachmentResponse>() {
+			@Override
+			public CreateAttachmentResponse call() {
+				return getWebServices().createAttachment(request);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.AsyncExchangeWebServices#deleteAttachment(com.microsoft.exchange.messages.DeleteAttachment, com.microsoft.exchange.ExchangeRequestContext)
+	 */
+	@Override
+	public ExchangeResponseFuture<DeleteAttachmentResponse> deleteAttachment(final DeleteAttachment request, ExchangeRequestContext context) {
+		return submit(context, new Callable<DeleteAttachmentResponse>() {
+			@Override
+			public DeleteAttachmentResponse call() {
+				return getWebServices().deleteAttachment(request);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.AsyncExchangeWebServices#getAttachment(com.microsoft.exchange.messages.GetAttachment, com.microsoft.exchange.ExchangeRequestContext)
+	 */
+	@Override
+	public ExchangeResponseFuture<GetAttachmentResponse> getAttachment(final GetAttachment request, ExchangeRequestContext context) {
+		return submit(context, new Callable<GetAttachmentResponse>() {
+			@Override
+			public GetAttachmentResponse call() {
+				return getWebServices().getAttachment(request);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.AsyncExchangeWebServices#getDelegate(com.microsoft.exchange.messages.GetDelegate, com.microsoft.exchange.ExchangeRequestContext)
+	 */
+	@Override
+	public ExchangeResponseFuture<GetDelegateResponse> getDelegate(final GetDelegate request, ExchangeRequestContext context) {
+		return submit(context, new Callable<GetDelegateResponse>() {
+			@Override
+			public GetDelegateResponse call() {
+				return getWebServices().getDelegate(request);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.AsyncExchangeWebServices#addDelegate(com.microsoft.exchange.messages.AddDelegate, com.microsoft.exchange.ExchangeRequestContext)
+	 */
+	@Override
+	public ExchangeResponseFuture<AddDelegateResponse> addDelegate(final AddDelegate request, ExchangeRequestContext context) {
+		return submit(context, new Callable<AddDelegateResponse>() {
+			@Override
+			public AddDelegateResponse call() {
+				return getWebServices().addDelegate(request);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.AsyncExchangeWebServices#removeDelegate(com.microsoft.exchange.messages.RemoveDelegate, com.microsoft.exchange.ExchangeRequestContext)
+	 */
+	@Override
+	public ExchangeResponseFuture<RemoveDelegateResponse> removeDelegate(final RemoveDelegate request, ExchangeRequestContext context) {
+		return submit(context, new Callable<RemoveDelegateResponse>() {
+			@Override
+			public RemoveDelegateResponse call() {
+				return getWebServices().removeDelegate(request);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.AsyncExchangeWebServices#updateDelegate(com.microsoft.exchange.messages.UpdateDelegate, com.microsoft.exchange.ExchangeRequestContext)
+	 */
+	@Override
+	public ExchangeResponseFuture<UpdateDelegateResponse> updateDelegate(final UpdateDelegate request, ExchangeRequestContext context) {
+		return submit(context, new Callable<UpdateDelegateResponse>() {
+			@Override
+			public UpdateDelegateResponse call() {
+				return getWebServices().updateDelegate(request);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.AsyncExchangeWebServices#getUserAvailability(com.microsoft.exchange.messages.GetUserAvailabilityRequest, com.microsoft.exchange.ExchangeRequestContext)
+	 */
+	@Override
+	public ExchangeResponseFuture<GetUserAvailabilityResponse> getUserAvailability(final GetUserAvailabilityRequest request, ExchangeRequestContext context) {
+		return submit(context, new Callable<GetUserAvailabilityResponse>() {
+			@Override
+			public GetUserAvailabilityResponse call() {
+				return getWebServices().getUserAvailability(request);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.AsyncExchangeWebServices#getUserOofSettings(com.microsoft.exchange.messages.GetUserOofSettingsRequest, com.microsoft.exchange.ExchangeRequestContext)
+	 */
+	@Override
+	public ExchangeResponseFuture<GetUserOofSettingsResponse> getUserOofSettings(final GetUserOofSettingsRequest request, ExchangeRequestContext context) {
+		return submit(context, new Callable<GetUserOofSettingsResponse>() {
+			@Override
+			public GetUserOofSettingsResponse call() {
+				return getWebServices().getUserOofSettings(request);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.AsyncExchangeWebServices#setUserOofSettings(com.microsoft.exchange.messages.SetUserOofSettingsRequest, com.microsoft.exchange.ExchangeRequestContext)
+	 */
+	@Override
+	public ExchangeResponseFuture<SetUserOofSettingsResponse> setUserOofSettings(final SetUserOofSettingsRequest request, ExchangeRequestContext context) {
+		return submit(context, new Callable<SetUserOofSettingsResponse>() {
+			@Override
+			public SetUserOofSettingsResponse call() {
+				return getWebServices().setUserOofSettings(request);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.AsyncExchangeWebServices#getServerTimeZones(com.microsoft.exchange.messages.GetServerTimeZones, com.microsoft.exchange.ExchangeRequestContext)
+	 */
+	@Override
+	public ExchangeResponseFuture<GetServerTimeZonesResponse> getServerTimeZones(final GetServerTimeZones request, ExchangeRequestContext context) {
+		return submit(context, new Callable<GetServerTimeZonesResponse>() {
+			@Override
+			public GetServerTimeZonesResponse call() {
+				return getWebServices().getServerTimeZones(request);
+			}
+		});
+	}
+}
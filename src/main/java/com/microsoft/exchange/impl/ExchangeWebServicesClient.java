@@ -28,6 +28,8 @@ import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
 
+import javax.xml.transform.TransformerException;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.http.conn.ClientConnectionManager;
@@ -36,16 +38,25 @@ import org.apache.http.conn.scheme.SchemeRegistry;
 import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Component;
+import org.springframework.oxm.Marshaller;
+import org.springframework.oxm.jaxb.Jaxb2Marshaller;
+import org.springframework.ws.WebServiceMessage;
 import org.springframework.ws.client.core.WebServiceMessageCallback;
+import org.springframework.ws.client.core.WebServiceMessageExtractor;
 import org.springframework.ws.client.core.support.WebServiceGatewaySupport;
 import org.springframework.ws.soap.client.SoapFaultClientException;
 import org.springframework.ws.soap.client.core.SoapActionCallback;
+import org.springframework.ws.support.MarshallingUtils;
 import org.springframework.ws.transport.WebServiceMessageSender;
 import org.springframework.ws.transport.http.HttpComponentsMessageSender;
 
 import com.microsoft.exchange.ExchangeWebServices;
+import com.microsoft.exchange.ItemIdHandler;
+import com.microsoft.exchange.ItemTypeHandler;
+import com.microsoft.exchange.StreamingExchangeWebServices;
 import com.microsoft.exchange.exception.ExchangeInvalidUPNRuntimeException;
 import com.microsoft.exchange.exception.ExchangeWebServicesRuntimeException;
+import com.microsoft.exchange.impl.throttle.ThrottlingGovernor;
 import com.microsoft.exchange.messages.AddDelegate;
 import com.microsoft.exchange.messages.AddDelegateResponse;
 import com.microsoft.exchange.messages.ConvertId;
@@ -118,14 +129,20 @@ import com.microsoft.exchange.messages.UpdateFolder;
 import com.microsoft.exchange.messages.UpdateFolderResponse;
 import com.microsoft.exchange.messages.UpdateItem;
 import com.microsoft.exchange.messages.UpdateItemResponse;
+import com.microsoft.exchange.types.FindItemParentType;
 
 /**
  * Spring {@link WebServiceGatewaySupport} backed implementatoin of {@link ExchangeWebServices}.
  * 
+ * The {@link StreamingExchangeWebServices} methods read the response payload with a {@link StreamingItemParser}.
+ * How much of the response that avoids holding in memory depends on the configured message factory: 
+ * SAAJ builds a DOM of the whole envelope (only the JAXB copy is avoided), while a streaming factory such
+ * as AxiomSoapMessageFactory with payloadCaching disabled lets the items be read straight off the connection.
+ * 
  * @author Nicholas Blair
  */
 @Component
-public class ExchangeWebServicesClient extends WebServiceGatewaySupport implements ExchangeWebServices {
+public class ExchangeWebServicesClient extends WebServiceGatewaySupport implements ExchangeWebServices, StreamingExchangeWebServices {
 
 	/**
 	 * This appears as the message of a SoapFault in the event the client encounters throttle policy limits.
@@ -136,6 +153,55 @@ public class ExchangeWebServicesClient extends WebServiceGatewaySupport implemen
 	private KeyStore keyStore;
 	private char[] keyStorePassword;
 	private KeyStore trustStore;
+	private ThrottlingGovernor throttlingGovernor;
+	private StreamingItemParser streamingItemParser;
+	private ItemIdParser itemIdParser = new ItemIdParser();
+	
+	/**
+	 * @return the streamingItemParser; created from the JAXBContext of the {@link Jaxb2Marshaller} if not set
+	 */
+	public StreamingItemParser getStreamingItemParser() {
+		if(null == streamingItemParser) {
+			Marshaller unmarshaller = getMarshaller();
+			if(!(unmarshaller instanceof Jaxb2Marshaller)) {
+				throw new IllegalStateException("streamingItemParser must be set when the unmarshaller is not a Jaxb2Marshaller");
+			}
+			streamingItemParser = new StreamingItemParser(((Jaxb2Marshaller) unmarshaller).getJaxbContext());
+		}
+		return streamingItemParser;
+	}
+	/**
+	 * @param streamingItemParser the streamingItemParser to set
+	 */
+	public void setStreamingItemParser(StreamingItemParser streamingItemParser) {
+		this.streamingItemParser = streamingItemParser;
+	}
+	/**
+	 * @return the itemIdParser
+	 */
+	public ItemIdParser getItemIdParser() {
+		return itemIdParser;
+	}
+	/**
+	 * @param itemIdParser the itemIdParser to set
+	 */
+	public void setItemIdParser(ItemIdParser itemIdParser) {
+		this.itemIdParser = itemIdParser;
+	}
+	/**
+	 * @return the throttlingGovernor, may be null
+	 */
+	public ThrottlingGovernor getThrottlingGovernor() {
+		return throttlingGovernor;
+	}
+	/**
+	 * Optional; if set, every request must obtain a permit from the {@link ThrottlingGovernor} before it is sent.
+	 * 
+	 * @param throttlingGovernor the throttlingGovernor to set
+	 */
+	public void setThrottlingGovernor(ThrottlingGovernor throttlingGovernor) {
+		this.throttlingGovernor = throttlingGovernor;
+	}
 	/**
 	 * @param keyStore the keyStore to set
 	 */
@@ -368,6 +434,45 @@ public class ExchangeWebServicesClient extends WebServiceGatewaySupport implemen
 		return response;
 	}
 
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.StreamingExchangeWebServices#findItem(com.microsoft.exchange.messages.FindItem, com.microsoft.exchange.ItemTypeHandler)
+	 */
+	@Override
+	public FindItemParentType findItem(FindItem request, final ItemTypeHandler handler) {
+		return internalInvoke(request, null, new WebServiceMessageExtractor<FindItemParentType>() {
+			@Override
+			public FindItemParentType extractData(WebServiceMessage message) {
+				return getStreamingItemParser().parse(message.getPayloadSource(), handler);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.StreamingExchangeWebServices#findItemIds(com.microsoft.exchange.messages.FindItem, com.microsoft.exchange.ItemIdHandler)
+	 */
+	@Override
+	public FindItemParentType findItemIds(FindItem request, final ItemIdHandler handler) {
+		return internalInvoke(request, null, new WebServiceMessageExtractor<FindItemParentType>() {
+			@Override
+			public FindItemParentType extractData(WebServiceMessage message) {
+				return getItemIdParser().parse(message.getPayloadSource(), handler);
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.StreamingExchangeWebServices#getItem(com.microsoft.exchange.messages.GetItem, com.microsoft.exchange.ItemTypeHandler)
+	 */
+	@Override
+	public void getItem(GetItem request, final ItemTypeHandler handler) {
+		internalInvoke(request, null, new WebServiceMessageExtractor<FindItemParentType>() {
+			@Override
+			public FindItemParentType extractData(WebServiceMessage message) {
+				return getStreamingItemParser().parse(message.getPayloadSource(), handler);
+			}
+		});
+	}
+
 	/* (non-Javadoc)
 	 * @see com.microsoft.exchange.ExchangeWebServices#createItem(com.microsoft.exchange.messages.CreateItem)
 	 */
@@ -547,10 +652,59 @@ public class ExchangeWebServicesClient extends WebServiceGatewaySupport implemen
 	 * @return
 	 */
 	protected Object internalInvoke(Object request, WebServiceMessageCallback callback) {
+		return internalInvoke(request, callback, null);
+	}
+	
+	/**
+	 * 
+	 * @param request
+	 * @param callback may be null
+	 * @param extractor reads the response message; if null the response is unmarshalled
+	 * @return the unmarshalled response, or the result of the extractor
+	 */
+	@SuppressWarnings("unchecked")
+	protected <T> T internalInvoke(Object request, WebServiceMessageCallback callback, WebServiceMessageExtractor<T> extractor) {
+		ThrottlingGovernor governor = getThrottlingGovernor();
+		if(null == governor) {
+			return (T) doInvoke(request, callback, extractor);
+		}
+		ThrottlingGovernor.Permit permit = governor.acquire(ExchangeRequestContextHolder.capture());
+		Object result = null;
+		RuntimeException failure = null;
+		try {
+			result = doInvoke(request, callback, extractor);
+			return (T) result;
+		} catch (RuntimeException e) {
+			failure = e;
+			throw e;
+		} finally {
+			governor.release(permit, result, failure);
+		}
+	}
+	
+	/**
+	 * Send the request, translating SOAP faults into {@link ExchangeWebServicesRuntimeException}s.
+	 * 
+	 * @param request
+	 * @param callback may be null
+	 * @param extractor may be null
+	 * @return the unmarshalled response, or the result of the extractor
+	 */
+	protected Object doInvoke(final Object request, final WebServiceMessageCallback callback, WebServiceMessageExtractor<?> extractor) {
 		try {
 			Object result;
 			log.trace("ExchangeRequest="+request);
-			if(null == callback) {
+			if(null != extractor) {
+				result = getWebServiceTemplate().sendAndReceive(new WebServiceMessageCallback() {
+					@Override
+					public void doWithMessage(WebServiceMessage message) throws IOException, TransformerException {
+						MarshallingUtils.marshal(getMarshaller(), request, message);
+						if(null != callback) {
+							callback.doWithMessage(message);
+						}
+					}
+				}, extractor);
+			} else if(null == callback) {
 				result = getWebServiceTemplate().marshalSendAndReceive(request);
 			} else {
 				result = getWebServiceTemplate().marshalSendAndReceive(request, callback);
@@ -0,0 +1,218 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.impl;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.Validate;
+import org.joda.time.Interval;
+
+import com.microsoft.exchange.DateHelp;
+
+/**
+ * Plans how a CalendarView FindItem over a date range should be partitioned so that no single request
+ * returns more than {@link #getMaxEntriesPerRequest()} items (and so fails with ErrorExceededFindCountLimit).
+ * 
+ * The planner learns the item density (items per millisecond of calendar time) of each mailbox from the 
+ * TotalItemsInView of successful responses, and from the fact that a failed range held more than the
+ * maximum. Densities are remembered for a bounded number of mailboxes (least recently used are forgotten).
+ * 
+ * Instances are thread safe.
+ */
+public class FindItemRangePlanner {
+
+	private int maxEntriesPerRequest = ExchangeOnlineThrottlingPolicy.FIND_ITEM_MAX_ENTRIES_RETURNED;
+	private double targetFill = 0.8;
+	private int exceededSplitCount = 4;
+	private int maxSplitCount = 64;
+	private int maxMailboxes = 10000;
+	
+	private final Map<String, Double> densities = new LinkedHashMap<String, Double>(16, 0.75f, true) {
+		private static final long serialVersionUID = 3186093532478375946L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Double> eldest) {
+			return size() > maxMailboxes;
+		}
+	};
+	
+	/**
+	 * @return the maxEntriesPerRequest
+	 */
+	public int getMaxEntriesPerRequest() {
+		return maxEntriesPerRequest;
+	}
+	/**
+	 * @param maxEntriesPerRequest the maxEntriesPerRequest to set
+	 */
+	public void setMaxEntriesPerRequest(int maxEntriesPerRequest) {
+		Validate.isTrue(maxEntriesPerRequest > 0, "maxEntriesPerRequest must be greater than 0");
+		this.maxEntriesPerRequest = maxEntriesPerRequest;
+	}
+	/**
+	 * @return the targetFill
+	 */
+	public double getTargetFill() {
+		return targetFill;
+	}
+	/**
+	 * @param targetFill the fraction of maxEntriesPerRequest each planned range should be expected to hold
+	 */
+	public void setTargetFill(double targetFill) {
+		Validate.isTrue(targetFill > 0.0 && targetFill <= 1.0, "targetFill must be between 0 and 1");
+		this.targetFill = targetFill;
+	}
+	/**
+	 * @return the exceededSplitCount
+	 */
+	public int getExceededSplitCount() {
+		return exceededSplitCount;
+	}
+	/**
+	 * @param exceededSplitCount the minimum number of parts a range that exceeded the limit is split into
+	 */
+	public void setExceededSplitCount(int exceededSplitCount) {
+		Validate.isTrue(exceededSplitCount > 1, "exceededSplitCount must be greater than 1");
+		this.exceededSplitCount = exceededSplitCount;
+	}
+	/**
+	 * @return the maxSplitCount
+	 */
+	public int getMaxSplitCount() {
+		return maxSplitCount;
+	}
+	/**
+	 * @param maxSplitCount the maxSplitCount to set
+	 */
+	public void setMaxSplitCount(int maxSplitCount) {
+		Validate.isTrue(maxSplitCount > 1, "maxSplitCount must be greater than 1");
+		this.maxSplitCount = maxSplitCount;
+	}
+	/**
+	 * @return the maxMailboxes
+	 */
+	public int getMaxMailboxes() {
+		return maxMailboxes;
+	}
+	/**
+	 * @param maxMailboxes the number of mailboxes for which densities are remembered
+	 */
+	public void setMaxMailboxes(int maxMailboxes) {
+		this.maxMailboxes = maxMailboxes;
+	}
+	
+	/**
+	 * 
+	 * @param upn
+	 * @param startDate
+	 * @param endDate
+	 * @return the ranges to request; a single interval if the density of the mailbox is unknown or low enough
+	 */
+	public List<Interval> plan(String upn, Date startDate, Date endDate) {
+		Double density = getDensity(upn);
+		if(density == null || !endDate.after(startDate)) {
+			return Collections.singletonList(new Interval(startDate.getTime(), endDate.getTime()));
+		}
+		double expected = density * (endDate.getTime() - startDate.getTime());
+		int count = (int) Math.ceil(expected / (maxEntriesPerRequest * targetFill));
+		if(count <= 1) {
+			return Collections.singletonList(new Interval(startDate.getTime(), endDate.getTime()));
+		}
+		return DateHelp.generateIntervals(startDate, endDate, Math.min(count, maxSplitCount));
+	}
+	
+	/**
+	 * Record a range that exceeded the find count limit, and plan how to split it.
+	 * 
+	 * @param upn
+	 * @param startDate
+	 * @param endDate
+	 * @return at least two intervals covering the range
+	 */
+	public List<Interval> planAfterLimitExceeded(String upn, Date startDate, Date endDate) {
+		long span = Math.max(1L, endDate.getTime() - startDate.getTime());
+		// the range held more than the maximum; a lower bound for the density
+		double lowerBound = (double) maxEntriesPerRequest / span;
+		Double density = updateDensity(upn, lowerBound, true);
+		
+		int count = (int) Math.ceil(density * span / (maxEntriesPerRequest * targetFill));
+		count = Math.max(count, exceededSplitCount);
+		return DateHelp.generateIntervals(startDate, endDate, Math.min(count, maxSplitCount));
+	}
+	
+	/**
+	 * Record the TotalItemsInView of a successful request.
+	 * 
+	 * @param upn
+	 * @param startDate
+	 * @param endDate
+	 * @param totalItemsInView ignored if negative
+	 */
+	public void recordSuccess(String upn, Date startDate, Date endDate, int totalItemsInView) {
+		if(totalItemsInView < 0) {
+			return;
+		}
+		long span = Math.max(1L, endDate.getTime() - startDate.getTime());
+		updateDensity(upn, (double) totalItemsInView / span, false);
+	}
+	
+	/**
+	 * 
+	 * @param upn
+	 * @return the learned density for the mailbox in items per millisecond, or null
+	 */
+	public Double getDensity(String upn) {
+		synchronized (densities) {
+			return densities.get(key(upn));
+		}
+	}
+	
+	/**
+	 * Higher observations replace the current estimate immediately (it is better to split once too often than to
+	 * exceed the limit); lower observations from successful requests decay the estimate by half. 
+	 * 
+	 * @param upn
+	 * @param observed
+	 * @param lowerBound true if observed is only known to be a lower bound
+	 * @return the new estimate
+	 */
+	private Double updateDensity(String upn, double observed, boolean lowerBound) {
+		String key = key(upn);
+		synchronized (densities) {
+			Double current = densities.get(key);
+			Double updated;
+			if(current == null || observed >= current) {
+				updated = observed;
+			} else if(lowerBound) {
+				updated = current;
+			} else {
+				updated = (current + observed) / 2.0;
+			}
+			densities.put(key, updated);
+			return updated;
+		}
+	}
+	
+	private static String key(String upn) {
+		return upn == null ? null : upn.toLowerCase();
+	}
+}
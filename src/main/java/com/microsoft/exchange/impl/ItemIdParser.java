@@ -0,0 +1,178 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.impl;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stax.StAXSource;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import com.microsoft.exchange.ExchangeResponseUtils;
+import com.microsoft.exchange.ItemIdHandler;
+import com.microsoft.exchange.exception.ExchangeRuntimeException;
+import com.microsoft.exchange.messages.ResponseCodeType;
+import com.microsoft.exchange.messages.ResponseMessageType;
+import com.microsoft.exchange.types.FindItemParentType;
+
+/**
+ * Reads a FindItem response requested with the IdOnly shape, passing the Id and ChangeKey of 
+ * each ItemId straight to an {@link ItemIdHandler}.
+ * 
+ * Nothing is bound with JAXB: the parser only looks at ItemId attributes, the RootFolder paging 
+ * attributes and the ResponseCode of each response message. Unsuccessful response messages are 
+ * reported through {@link ExchangeResponseUtils#confirmSuccess(com.microsoft.exchange.messages.BaseResponseMessageType)}.
+ * 
+ * Instances are thread safe.
+ */
+public class ItemIdParser {
+
+	private static final String ITEM_ID = "ItemId";
+	private static final String ID = "Id";
+	private static final String CHANGE_KEY = "ChangeKey";
+	private static final String ROOT_FOLDER = "RootFolder";
+	private static final String RESPONSE_CODE = "ResponseCode";
+	private static final String MESSAGE_TEXT = "MessageText";
+	private static final String RESPONSE_MESSAGE_SUFFIX = "ResponseMessage";
+	
+	protected final Log log = LogFactory.getLog(this.getClass());
+	
+	private final XMLInputFactory inputFactory = StreamingItemParser.newInputFactory();
+	private ExchangeResponseUtils responseUtils = new ExchangeResponseUtilsImpl();
+	
+	/**
+	 * @return the responseUtils
+	 */
+	public ExchangeResponseUtils getResponseUtils() {
+		return responseUtils;
+	}
+	/**
+	 * @param responseUtils the responseUtils to set
+	 */
+	public void setResponseUtils(ExchangeResponseUtils responseUtils) {
+		this.responseUtils = responseUtils;
+	}
+	
+	/**
+	 * 
+	 * @param payload the SOAP body payload of a FindItemResponse
+	 * @param handler
+	 * @return the paging attributes of the RootFolder, or null if the payload has no RootFolder
+	 * @throws ExchangeRuntimeException if the payload cannot be read, or contains an unsuccessful response message
+	 */
+	public FindItemParentType parse(Source payload, ItemIdHandler handler) {
+		Validate.notNull(payload, "payload argument cannot be null");
+		Validate.notNull(handler, "handler argument cannot be null");
+		if(payload instanceof DOMSource) {
+			Node node = ((DOMSource) payload).getNode();
+			if(node instanceof Document) {
+				node = ((Document) node).getDocumentElement();
+			}
+			return node instanceof Element ? parse((Element) node, handler) : null;
+		}
+		try {
+			XMLStreamReader reader = payload instanceof StAXSource && ((StAXSource) payload).getXMLStreamReader() != null ?
+					((StAXSource) payload).getXMLStreamReader() : inputFactory.createXMLStreamReader(payload);
+			try {
+				return parse(reader, handler);
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException e) {
+			throw new ExchangeRuntimeException(e);
+		}
+	}
+	
+	protected FindItemParentType parse(XMLStreamReader reader, ItemIdHandler handler) throws XMLStreamException {
+		FindItemParentType rootFolder = null;
+		ResponseMessageType message = null;
+		while(reader.hasNext()) {
+			int event = reader.next();
+			if(event == XMLStreamConstants.START_ELEMENT) {
+				String name = reader.getLocalName();
+				if(ITEM_ID.equals(name)) {
+					handler.itemId(reader.getAttributeValue(null, ID), reader.getAttributeValue(null, CHANGE_KEY));
+				} else if(ROOT_FOLDER.equals(name)) {
+					rootFolder = StreamingItemParser.rootFolder(reader.getAttributeValue(null, "TotalItemsInView"), 
+							reader.getAttributeValue(null, "IncludesLastItemInRange"), 
+							reader.getAttributeValue(null, "IndexedPagingOffset"));
+				} else if(message != null && RESPONSE_CODE.equals(name)) {
+					message.setResponseCode(ResponseCodeType.fromValue(reader.getElementText().trim()));
+				} else if(message != null && MESSAGE_TEXT.equals(name)) {
+					message.setMessageText(reader.getElementText());
+				} else if(name.endsWith(RESPONSE_MESSAGE_SUFFIX)) {
+					message = new ResponseMessageType();
+				}
+			} else if(event == XMLStreamConstants.END_ELEMENT && message != null && reader.getLocalName().endsWith(RESPONSE_MESSAGE_SUFFIX)) {
+				StreamingItemParser.confirmSuccess(getResponseUtils(), reader.getLocalName(), message);
+				message = null;
+			}
+		}
+		return rootFolder;
+	}
+	
+	protected FindItemParentType parse(Element payload, ItemIdHandler handler) {
+		FindItemParentType rootFolder = null;
+		ResponseMessageType message = null;
+		// pre-order walk without recursion; the response is only a few levels deep but can be very wide
+		Node node = payload;
+		while(node != null) {
+			if(node instanceof Element) {
+				Element element = (Element) node;
+				String name = StreamingItemParser.localName(element);
+				if(ITEM_ID.equals(name)) {
+					handler.itemId(element.getAttribute(ID), StringUtils.trimToNull(element.getAttribute(CHANGE_KEY)));
+				} else if(ROOT_FOLDER.equals(name)) {
+					rootFolder = StreamingItemParser.rootFolder(element.getAttribute("TotalItemsInView"), 
+							element.getAttribute("IncludesLastItemInRange"), element.getAttribute("IndexedPagingOffset"));
+				} else if(message != null && RESPONSE_CODE.equals(name)) {
+					message.setResponseCode(ResponseCodeType.fromValue(element.getTextContent().trim()));
+				} else if(message != null && MESSAGE_TEXT.equals(name)) {
+					message.setMessageText(element.getTextContent());
+				} else if(name.endsWith(RESPONSE_MESSAGE_SUFFIX)) {
+					message = new ResponseMessageType();
+				}
+				if(node.getFirstChild() != null && !ITEM_ID.equals(name)) {
+					node = node.getFirstChild();
+					continue;
+				}
+			}
+			// climb until there is a next sibling, completing response messages on the way
+			while(node != payload && node.getNextSibling() == null) {
+				node = node.getParentNode();
+				if(message != null && StreamingItemParser.localName((Element) node).endsWith(RESPONSE_MESSAGE_SUFFIX)) {
+					StreamingItemParser.confirmSuccess(getResponseUtils(), StreamingItemParser.localName((Element) node), message);
+					message = null;
+				}
+			}
+			node = node == payload ? null : node.getNextSibling();
+		}
+		return rootFolder;
+	}
+}
@@ -0,0 +1,80 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.microsoft.exchange.DateHelp;
+import com.microsoft.exchange.ExchangeRequestContext;
+
+/**
+ * {@link TimeZoneContextSource} for time zones configured per mailbox.
+ * 
+ * The mailbox's time zone is resolved when the mailbox is bound to the thread (see {@link #bindTimeZone(String)},
+ * called by {@link BaseExchangeCalendarDataDao} as it sets the impersonated mailbox) and carried in the 
+ * {@link ExchangeRequestContext} like any other time zone. The TimeZoneContext header is then taken from 
+ * that same bound time zone, so it always agrees with the dates converted by {@link DateHelp}.
+ * Mailboxes not in the map use the default time zone.
+ */
+public class MailboxTimeZoneContextSource extends ThreadLocalTimeZoneContextSource {
+
+	private Map<String, String> mailboxTimeZones = new HashMap<String, String>();
+	
+	/**
+	 * @return the mailboxTimeZones
+	 */
+	public Map<String, String> getMailboxTimeZones() {
+		return mailboxTimeZones;
+	}
+	/**
+	 * @param mailboxTimeZones time zone ids keyed by the mailbox's principal name or smtp address
+	 */
+	public void setMailboxTimeZones(Map<String, String> mailboxTimeZones) {
+		Map<String, String> copy = new HashMap<String, String>();
+		for(Map.Entry<String, String> entry : mailboxTimeZones.entrySet()) {
+			copy.put(entry.getKey().toLowerCase(), entry.getValue());
+		}
+		this.mailboxTimeZones = copy;
+	}
+	
+	/**
+	 * 
+	 * @param mailbox the mailbox's principal name or smtp address
+	 * @return the time zone id configured for the mailbox, or null
+	 */
+	public String getMailboxTimeZoneId(String mailbox) {
+		return mailbox == null ? null : mailboxTimeZones.get(mailbox.toLowerCase());
+	}
+	
+	/**
+	 * Bind the time zone of the mailbox to the current thread, replacing any time zone bound for a previous
+	 * mailbox; mailboxes not in the map are bound to no time zone, so the default applies.
+	 * 
+	 * @param mailbox the mailbox's principal name or smtp address
+	 */
+	public void bindTimeZone(String mailbox) {
+		String timeZoneId = getMailboxTimeZoneId(mailbox);
+		if(timeZoneId != null) {
+			setTimeZoneId(timeZoneId);
+		} else {
+			clear();
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.impl;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.transform.Result;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * Reuses {@link Marshaller}s created by a {@link JAXBContext}.
+ * 
+ * A {@link Marshaller} is not thread safe, and creating one per call is far more expensive 
+ * than marshalling a small element with it. Idle marshallers are kept up to {@link #getMaxIdle()}.
+ */
+public class MarshallerPool {
+
+	private final JAXBContext jaxbContext;
+	private final int maxIdle;
+	private final Queue<Marshaller> idle = new ConcurrentLinkedQueue<Marshaller>();
+	private final AtomicInteger idleCount = new AtomicInteger();
+	
+	/**
+	 * 
+	 * @param jaxbContext
+	 */
+	public MarshallerPool(JAXBContext jaxbContext) {
+		this(jaxbContext, 64);
+	}
+	/**
+	 * 
+	 * @param jaxbContext
+	 * @param maxIdle
+	 */
+	public MarshallerPool(JAXBContext jaxbContext, int maxIdle) {
+		Validate.notNull(jaxbContext, "jaxbContext cannot be null");
+		Validate.isTrue(maxIdle >= 0, "maxIdle cannot be negative");
+		this.jaxbContext = jaxbContext;
+		this.maxIdle = maxIdle;
+	}
+	/**
+	 * @return the jaxbContext
+	 */
+	public JAXBContext getJaxbContext() {
+		return jaxbContext;
+	}
+	/**
+	 * @return the maxIdle
+	 */
+	public int getMaxIdle() {
+		return maxIdle;
+	}
+	
+	/**
+	 * Marshal the object to the result with a pooled {@link Marshaller}.
+	 * 
+	 * @param jaxbElement
+	 * @param result
+	 * @throws JAXBException
+	 */
+	public void marshal(Object jaxbElement, Result result) throws JAXBException {
+		Marshaller marshaller = idle.poll();
+		if(marshaller == null) {
+			marshaller = jaxbContext.createMarshaller();
+		} else {
+			idleCount.decrementAndGet();
+		}
+		// a marshaller that failed is not returned to the pool
+		marshaller.marshal(jaxbElement, result);
+		if(idleCount.incrementAndGet() <= maxIdle) {
+			idle.offer(marshaller);
+		} else {
+			idleCount.decrementAndGet();
+		}
+	}
+}
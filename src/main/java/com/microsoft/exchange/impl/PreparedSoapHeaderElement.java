@@ -0,0 +1,89 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.impl;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Result;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.dom.DOMSource;
+
+import org.springframework.ws.soap.SoapHeader;
+import org.springframework.xml.transform.TransformerHelper;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * A SOAP header element that does not change between requests, marshalled once and copied into each request's {@link SoapHeader}.
+ * 
+ * When the header exposes a {@link DOMResult} (as SAAJ messages do) the element is imported directly into the 
+ * request document, skipping JAXB and any transformation.
+ */
+public class PreparedSoapHeaderElement {
+
+	private final Element element;
+	private final TransformerHelper transformerHelper = new TransformerHelper();
+	
+	/**
+	 * 
+	 * @param jaxbContext
+	 * @param jaxbElement the header element to marshal
+	 * @throws JAXBException
+	 */
+	public PreparedSoapHeaderElement(JAXBContext jaxbContext, Object jaxbElement) throws JAXBException {
+		Document document;
+		try {
+			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+			factory.setNamespaceAware(true);
+			document = factory.newDocumentBuilder().newDocument();
+		} catch (ParserConfigurationException e) {
+			throw new JAXBException(e);
+		}
+		jaxbContext.createMarshaller().marshal(jaxbElement, document);
+		this.element = document.getDocumentElement();
+	}
+	
+	/**
+	 * Append a copy of the element to the header.
+	 * 
+	 * @param header
+	 * @throws TransformerException
+	 */
+	public void writeTo(SoapHeader header) throws TransformerException {
+		Result result = header.getResult();
+		if(result instanceof DOMResult && ((DOMResult) result).getNode() != null) {
+			Node parent = ((DOMResult) result).getNode();
+			Document owner = parent.getNodeType() == Node.DOCUMENT_NODE ? (Document) parent : parent.getOwnerDocument();
+			Node copy;
+			// DOM implementations do not promise thread safe reads
+			synchronized (element) {
+				copy = owner.importNode(element, true);
+			}
+			parent.appendChild(copy);
+		} else {
+			synchronized (element) {
+				transformerHelper.transform(new DOMSource(element), result);
+			}
+		}
+	}
+}
@@ -18,9 +18,12 @@
  */
 package com.microsoft.exchange.impl;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Marshaller;
+import javax.xml.transform.TransformerException;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
@@ -32,7 +35,6 @@ import org.springframework.ws.WebServiceMessage;
 import org.springframework.ws.client.WebServiceClientException;
 import org.springframework.ws.client.support.interceptor.ClientInterceptor;
 import org.springframework.ws.context.MessageContext;
-import org.springframework.ws.soap.SoapEnvelope;
 import org.springframework.ws.soap.SoapHeader;
 import org.springframework.ws.soap.SoapMessage;
 
@@ -60,10 +62,13 @@ import com.microsoft.exchange.types.TimeZoneDefinitionType;
  * @author ctcudd
  * 
  */
-public class RequestServerTimeZoneInterceptor implements ClientInterceptor, InitializingBean {
+public class RequestServerTimeZoneInterceptor implements ClientInterceptor, SoapHeaderWriter, InitializingBean {
 
 	protected final Log log = LogFactory.getLog(this.getClass());
 	private JAXBContext jaxbContext;
+	private TimeZoneContextSource timeZoneContextSource = new ThreadLocalTimeZoneContextSource();
+	private final ConcurrentMap<String, PreparedSoapHeaderElement> preparedHeaders = new ConcurrentHashMap<String, PreparedSoapHeaderElement>();
+	private volatile DefaultTimeZone defaultTimeZone;
 
 	/**
 	 * @return the jaxbContext
@@ -79,6 +84,21 @@ public class RequestServerTimeZoneInterceptor implements ClientInterceptor, Init
 	@Autowired
 	public void setJaxbContext(JAXBContext jaxbContext) {
 		this.jaxbContext = jaxbContext;
+		this.preparedHeaders.clear();
+	}
+	
+	/**
+	 * @return the timeZoneContextSource, defaults to a {@link ThreadLocalTimeZoneContextSource}; may be null
+	 */
+	public TimeZoneContextSource getTimeZoneContextSource() {
+		return timeZoneContextSource;
+	}
+
+	/**
+	 * @param timeZoneContextSource supplies a time zone for requests that should not use the default; may be null
+	 */
+	public void setTimeZoneContextSource(TimeZoneContextSource timeZoneContextSource) {
+		this.timeZoneContextSource = timeZoneContextSource;
 	}
 
 	//try to set this with a valid windows time zone id which matches the jvm timezone
@@ -95,34 +115,80 @@ public class RequestServerTimeZoneInterceptor implements ClientInterceptor, Init
 	public boolean handleRequest(MessageContext messageContext)
 			throws WebServiceClientException {
 		WebServiceMessage request = messageContext.getRequest();
-		
+		if (request instanceof SoapMessage) {
+			SoapMessage soapMessage = (SoapMessage) request;
+			writeHeader(soapMessage, soapMessage.getSoapHeader(), messageContext);
+		}
+		return true;
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.impl.SoapHeaderWriter#writeHeader(org.springframework.ws.soap.SoapMessage, org.springframework.ws.soap.SoapHeader, org.springframework.ws.context.MessageContext)
+	 */
+	@Override
+	public void writeHeader(SoapMessage soapMessage, SoapHeader header, MessageContext messageContext) 
+			throws WebServiceClientException {
+		String requestTimeZoneID = getRequestTimeZoneID(soapMessage, messageContext);
+		try {
+			getPreparedHeader(requestTimeZoneID).writeTo(header);
+		} catch (JAXBException e) {
+			log.error(
+					"JAXBException raised while attempting to add TimeZoneContext to soap header "
+							+ requestTimeZoneID, e);
+			throw new ExchangeWebServicesRuntimeException(
+					"JAXBException raised while attempting to add TimeZoneContext to soap header "
+							+ requestTimeZoneID, e);
+		} catch (TransformerException e) {
+			log.error(
+					"TransformerException raised while attempting to add TimeZoneContext to soap header "
+							+ requestTimeZoneID, e);
+			throw new ExchangeWebServicesRuntimeException(
+					"TransformerException raised while attempting to add TimeZoneContext to soap header "
+							+ requestTimeZoneID, e);
+		}
+	}
+	
+	/**
+	 * 
+	 * @param soapMessage
+	 * @param messageContext
+	 * @return the Windows time zone id for the request: the one from the {@link #getTimeZoneContextSource()} if it 
+	 * supplies one, otherwise the {@link #getWindowsTimeZoneID()} (after checking the default time zone has not changed)
+	 */
+	protected String getRequestTimeZoneID(SoapMessage soapMessage, MessageContext messageContext) {
+		if(timeZoneContextSource != null) {
+			String requested = timeZoneContextSource.getTimeZoneId(soapMessage, messageContext);
+			if(StringUtils.isNotBlank(requested)) {
+				String windowsID = WindowsTimeZones.toWindowsId(requested);
+				if(windowsID == null) {
+					throw new ExchangeWebServicesRuntimeException("RequestServerTimeZoneInterceptor - no windows time zone matches the requested time zone ("+requested+")");
+				}
+				return windowsID;
+			}
+		}
 		if(!isTimeZoneValid()){
 			throw new ExchangeWebServicesRuntimeException("RequestServerTimeZoneInterceptor - the windowsTimeZoneID specified ("+this.windowsTimeZoneID+") does not match this systems default time zone ("+TimeZone.getDefault().getID()+")");
 		}
-		
-		if (request instanceof SoapMessage) {
-			SoapMessage soapMessage = (SoapMessage) request;
-			SoapEnvelope envelope = soapMessage.getEnvelope();
-			SoapHeader header = envelope.getHeader();
+		return windowsTimeZoneID;
+	}
 
+	/**
+	 * 
+	 * @param windowsTimeZoneID
+	 * @return the {@link TimeZoneContext} header for the time zone, marshalled on first use
+	 * @throws JAXBException
+	 */
+	protected PreparedSoapHeaderElement getPreparedHeader(String windowsTimeZoneID) throws JAXBException {
+		PreparedSoapHeaderElement prepared = this.preparedHeaders.get(windowsTimeZoneID);
+		if(prepared == null) {
 			TimeZoneContext tzc = new TimeZoneContext();
 			TimeZoneDefinitionType timeZoneDef = new TimeZoneDefinitionType();
 			timeZoneDef.setId(windowsTimeZoneID);
 			tzc.setTimeZoneDefinition(timeZoneDef);
-
-			try {
-				Marshaller m = jaxbContext.createMarshaller();
-				m.marshal(tzc, header.getResult());
-			} catch (JAXBException e) {
-				log.error(
-						"JAXBException raised while attempting to add TimeZoneContext to soap header "
-								+ tzc, e);
-				throw new ExchangeWebServicesRuntimeException(
-						"JAXBException raised while attempting to add TimeZoneContext to soap header "
-								+ tzc, e);
-			}
+			prepared = new PreparedSoapHeaderElement(jaxbContext, tzc);
+			this.preparedHeaders.put(windowsTimeZoneID, prepared);
 		}
-		return true;
+		return prepared;
 	}
 
 	@Override
@@ -142,7 +208,7 @@ public class RequestServerTimeZoneInterceptor implements ClientInterceptor, Init
 		boolean timeZoneSet = false;
 		TimeZone jvmTimeZone = TimeZone.getDefault();
 		if(jvmTimeZone != null){
-			String windowsID = TimeZone.getWindowsID(jvmTimeZone.getID());
+			String windowsID = WindowsTimeZones.getWindowsId(jvmTimeZone.getID());
 			if(StringUtils.isNotBlank(windowsID)){
 				log.info("windows time zone context has been set to '"+windowsID+"'.  All dates and times sent to (or recieved from) EWS must use this timezone information.");
 				this.windowsTimeZoneID = windowsID;
@@ -155,21 +221,48 @@ public class RequestServerTimeZoneInterceptor implements ClientInterceptor, Init
 		}
 		
 		if(!timeZoneSet){
-			log.warn("Failed to identify a matching time zone scheme.  Falling back to UTC.");
-			TimeZone fallbackTimeZone = TimeZone.getTimeZone(FALLBACK_TIMEZONE_ID);
-			TimeZone.setDefault(fallbackTimeZone);
+			// the JVM default is left alone; requests without a time zone of their own use UTC instead
+			log.warn("Failed to identify a matching time zone scheme.  Falling back to UTC for requests without a time zone.");
+			ThreadLocalTimeZoneContextSource.setDefaultTimeZoneId(FALLBACK_TIMEZONE_ID);
 			this.windowsTimeZoneID = FALLBACK_TIMEZONE_ID;
 		}
+		this.preparedHeaders.clear();
+		this.defaultTimeZone = null;
 	}
 	
+	/**
+	 * The default time zone is resolved (and mapped to a windows id) only when the 
+	 * {@link ThreadLocalTimeZoneContextSource#getDefaultTimeZoneVersion()} changes, so a change to the JVM default
+	 * time zone at runtime is seen after {@link ThreadLocalTimeZoneContextSource#defaultTimeZoneChanged()}.
+	 * 
+	 * @return true if the {@link #getWindowsTimeZoneID()} matches the default time zone
+	 */
 	public boolean isTimeZoneValid(){
-		boolean tzValid = false;
-		TimeZone tzDefault = TimeZone.getDefault();
-		if(null != tzDefault && StringUtils.isNotBlank(tzDefault.getID())){
-			String windowsID = TimeZone.getWindowsID(tzDefault.getID());
-			tzValid = this.windowsTimeZoneID.equals(windowsID);	
+		int version = ThreadLocalTimeZoneContextSource.getDefaultTimeZoneVersion();
+		DefaultTimeZone current = this.defaultTimeZone;
+		if(current == null || current.version != version) {
+			String defaultID = ThreadLocalTimeZoneContextSource.getDefaultTimeZoneId();
+			if(defaultID == null) {
+				TimeZone tzDefault = TimeZone.getDefault();
+				defaultID = tzDefault == null ? null : tzDefault.getID();
+			}
+			current = new DefaultTimeZone(version, StringUtils.isBlank(defaultID) ? null : WindowsTimeZones.getWindowsId(defaultID));
+			this.defaultTimeZone = current;
+		}
+		return current.windowsID != null && current.windowsID.equals(this.windowsTimeZoneID);
+	}
+	
+	/**
+	 * The windows id of the default time zone as of a {@link ThreadLocalTimeZoneContextSource#getDefaultTimeZoneVersion()}.
+	 */
+	private static class DefaultTimeZone {
+		private final int version;
+		private final String windowsID;
+		
+		DefaultTimeZone(int version, String windowsID) {
+			this.version = version;
+			this.windowsID = windowsID;
 		}
-		return tzValid;
 	}
 
 }
@@ -24,7 +24,7 @@ package com.microsoft.exchange.impl;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Marshaller;
+import javax.xml.transform.TransformerException;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -33,7 +33,6 @@ import org.springframework.ws.WebServiceMessage;
 import org.springframework.ws.client.WebServiceClientException;
 import org.springframework.ws.client.support.interceptor.ClientInterceptor;
 import org.springframework.ws.context.MessageContext;
-import org.springframework.ws.soap.SoapEnvelope;
 import org.springframework.ws.soap.SoapHeader;
 import org.springframework.ws.soap.SoapMessage;
 
@@ -52,10 +51,11 @@ import com.microsoft.exchange.types.RequestServerVersion;
  * 
  * @author Nicholas Blair
  */
-public class RequestServerVersionClientInterceptor implements ClientInterceptor {
+public class RequestServerVersionClientInterceptor implements ClientInterceptor, SoapHeaderWriter {
 
 	protected final Log log = LogFactory.getLog(this.getClass()); 
 	private JAXBContext jaxbContext;
+	private volatile PreparedSoapHeaderElement preparedHeader;
 	/**
 	 * @return the jaxbContext
 	 */
@@ -68,6 +68,20 @@ public class RequestServerVersionClientInterceptor implements ClientInterceptor
 	@Autowired
 	public void setJaxbContext(JAXBContext jaxbContext) {
 		this.jaxbContext = jaxbContext;
+		this.preparedHeader = null;
+	}
+	/**
+	 * 
+	 * @return the {@link RequestServerVersion} header, marshalled on first use
+	 * @throws JAXBException
+	 */
+	protected PreparedSoapHeaderElement getPreparedHeader() throws JAXBException {
+		PreparedSoapHeaderElement prepared = this.preparedHeader;
+		if(prepared == null) {
+			prepared = new PreparedSoapHeaderElement(jaxbContext, new RequestServerVersion());
+			this.preparedHeader = prepared;
+		}
+		return prepared;
 	}
 	
 	
@@ -80,20 +94,27 @@ public class RequestServerVersionClientInterceptor implements ClientInterceptor
 		WebServiceMessage request = messageContext.getRequest();
 		if(request instanceof SoapMessage) {
 			SoapMessage soapMessage = (SoapMessage) request;
-			SoapEnvelope envelope = soapMessage.getEnvelope();
-			SoapHeader header = envelope.getHeader();
-			RequestServerVersion rsv = new RequestServerVersion();
-
-			try {
-				Marshaller m = jaxbContext.createMarshaller();
-				m.marshal(rsv, header.getResult());
-			} catch (JAXBException e) {
-				log.error("JAXBException raised while attempting to add RequestServerVersion to soap header " + rsv, e);
-				throw new ExchangeWebServicesRuntimeException("JAXBException raised while attempting to add RequestServerVersion to soap header " + rsv, e);
-			}
+			writeHeader(soapMessage, soapMessage.getSoapHeader(), messageContext);
 		}
 		return true;
 	}
+	
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.impl.SoapHeaderWriter#writeHeader(org.springframework.ws.soap.SoapMessage, org.springframework.ws.soap.SoapHeader, org.springframework.ws.context.MessageContext)
+	 */
+	@Override
+	public void writeHeader(SoapMessage soapMessage, SoapHeader header, MessageContext messageContext) 
+			throws WebServiceClientException {
+		try {
+			getPreparedHeader().writeTo(header);
+		} catch (JAXBException e) {
+			log.error("JAXBException raised while attempting to add RequestServerVersion to soap header", e);
+			throw new ExchangeWebServicesRuntimeException("JAXBException raised while attempting to add RequestServerVersion to soap header", e);
+		} catch (TransformerException e) {
+			log.error("TransformerException raised while attempting to add RequestServerVersion to soap header", e);
+			throw new ExchangeWebServicesRuntimeException("TransformerException raised while attempting to add RequestServerVersion to soap header", e);
+		}
+	}
 
 	/* (non-Javadoc)
 	 * @see org.springframework.ws.client.support.interceptor.ClientInterceptor#handleResponse(org.springframework.ws.context.MessageContext)
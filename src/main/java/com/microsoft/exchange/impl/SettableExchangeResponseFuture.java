@@ -0,0 +1,210 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.lang.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.microsoft.exchange.ExchangeResponseCallback;
+import com.microsoft.exchange.ExchangeResponseFuture;
+
+/**
+ * {@link ExchangeResponseFuture} that is completed explicitly via {@link #set(Object)} or {@link #setFailure(Throwable)}.
+ * 
+ * An optional delegate {@link Future} (the task actually performing the work) may be attached with
+ * {@link #setDelegate(Future)} so that {@link #cancel(boolean)} is propagated to it.
+ * 
+ * @param <T> the response type
+ */
+public class SettableExchangeResponseFuture<T> implements ExchangeResponseFuture<T> {
+
+	protected final Log log = LogFactory.getLog(this.getClass());
+	
+	private final CountDownLatch latch = new CountDownLatch(1);
+	private final List<ExchangeResponseCallback<? super T>> callbacks = new ArrayList<ExchangeResponseCallback<? super T>>();
+	private volatile Future<?> delegate;
+	
+	private T value;
+	private Throwable failure;
+	private boolean cancelled = false;
+	private boolean completed = false;
+	
+	/**
+	 * Complete this future successfully.
+	 * 
+	 * @param value
+	 * @return true if this call completed the future, false if it was already complete
+	 */
+	public boolean set(T value) {
+		return complete(value, null, false);
+	}
+	
+	/**
+	 * Complete this future exceptionally.
+	 * 
+	 * @param failure
+	 * @return true if this call completed the future, false if it was already complete
+	 */
+	public boolean setFailure(Throwable failure) {
+		Validate.notNull(failure, "failure argument cannot be null");
+		return complete(null, failure, false);
+	}
+	
+	/**
+	 * Attach the {@link Future} of the task performing the work; cancellation of this future
+	 * will be propagated to the delegate.
+	 * 
+	 * @param delegate
+	 */
+	public void setDelegate(Future<?> delegate) {
+		this.delegate = delegate;
+		if(delegate != null && isCancelled()) {
+			delegate.cancel(true);
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.ExchangeResponseFuture#addCallback(com.microsoft.exchange.ExchangeResponseCallback)
+	 */
+	@Override
+	public void addCallback(ExchangeResponseCallback<? super T> callback) {
+		Validate.notNull(callback, "callback argument cannot be null");
+		synchronized (this) {
+			if(!completed) {
+				callbacks.add(callback);
+				return;
+			}
+		}
+		notifyCallback(callback);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.concurrent.Future#cancel(boolean)
+	 */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		boolean result = complete(null, null, true);
+		if(result) {
+			Future<?> d = this.delegate;
+			if(d != null) {
+				d.cancel(mayInterruptIfRunning);
+			}
+		}
+		return result;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.concurrent.Future#isCancelled()
+	 */
+	@Override
+	public synchronized boolean isCancelled() {
+		return cancelled;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.concurrent.Future#isDone()
+	 */
+	@Override
+	public synchronized boolean isDone() {
+		return completed;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.concurrent.Future#get()
+	 */
+	@Override
+	public T get() throws InterruptedException, ExecutionException {
+		latch.await();
+		return report();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.concurrent.Future#get(long, java.util.concurrent.TimeUnit)
+	 */
+	@Override
+	public T get(long timeout, TimeUnit unit) throws InterruptedException,
+			ExecutionException, TimeoutException {
+		if(!latch.await(timeout, unit)) {
+			throw new TimeoutException("timed out after " + timeout + " " + unit);
+		}
+		return report();
+	}
+	
+	private synchronized T report() throws ExecutionException {
+		if(cancelled) {
+			throw new CancellationException();
+		}
+		if(failure != null) {
+			throw new ExecutionException(failure);
+		}
+		return value;
+	}
+	
+	private boolean complete(T value, Throwable failure, boolean cancelled) {
+		List<ExchangeResponseCallback<? super T>> toNotify;
+		synchronized (this) {
+			if(completed) {
+				return false;
+			}
+			this.value = value;
+			this.failure = failure;
+			this.cancelled = cancelled;
+			this.completed = true;
+			toNotify = new ArrayList<ExchangeResponseCallback<? super T>>(callbacks);
+			callbacks.clear();
+		}
+		latch.countDown();
+		for(ExchangeResponseCallback<? super T> callback : toNotify) {
+			notifyCallback(callback);
+		}
+		return true;
+	}
+	
+	private void notifyCallback(ExchangeResponseCallback<? super T> callback) {
+		T v;
+		Throwable f;
+		boolean c;
+		synchronized (this) {
+			v = this.value;
+			f = this.failure;
+			c = this.cancelled;
+		}
+		try {
+			if(c) {
+				callback.onFailure(new CancellationException());
+			} else if(f != null) {
+				callback.onFailure(f);
+			} else {
+				callback.onSuccess(v);
+			}
+		} catch (RuntimeException e) {
+			log.error("ExchangeResponseCallback " + callback + " raised exception", e);
+		}
+	}
+}
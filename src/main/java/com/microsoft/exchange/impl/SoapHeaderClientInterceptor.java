@@ -0,0 +1,89 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.ws.WebServiceMessage;
+import org.springframework.ws.client.WebServiceClientException;
+import org.springframework.ws.client.support.interceptor.ClientInterceptor;
+import org.springframework.ws.context.MessageContext;
+import org.springframework.ws.soap.SoapHeader;
+import org.springframework.ws.soap.SoapMessage;
+
+/**
+ * {@link ClientInterceptor} that writes the headers of all its {@link SoapHeaderWriter}s, in order, 
+ * looking up the request's {@link SoapHeader} once.
+ * 
+ * Replaces registering {@link ExchangeImpersonationClientInterceptor}, {@link RequestServerVersionClientInterceptor}
+ * and {@link RequestServerTimeZoneInterceptor} as separate interceptors, each of which inspects the request on its own.
+ */
+public class SoapHeaderClientInterceptor implements ClientInterceptor {
+
+	private List<SoapHeaderWriter> headerWriters = new ArrayList<SoapHeaderWriter>();
+	
+	/**
+	 * @return the headerWriters
+	 */
+	public List<SoapHeaderWriter> getHeaderWriters() {
+		return headerWriters;
+	}
+	/**
+	 * @param headerWriters the headerWriters to set
+	 */
+	public void setHeaderWriters(List<SoapHeaderWriter> headerWriters) {
+		this.headerWriters = headerWriters;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.springframework.ws.client.support.interceptor.ClientInterceptor#handleRequest(org.springframework.ws.context.MessageContext)
+	 */
+	@Override
+	public boolean handleRequest(MessageContext messageContext)
+			throws WebServiceClientException {
+		WebServiceMessage request = messageContext.getRequest();
+		if(request instanceof SoapMessage && !headerWriters.isEmpty()) {
+			SoapMessage soapMessage = (SoapMessage) request;
+			SoapHeader header = soapMessage.getSoapHeader();
+			for(SoapHeaderWriter writer : headerWriters) {
+				writer.writeHeader(soapMessage, header, messageContext);
+			}
+		}
+		return true;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.springframework.ws.client.support.interceptor.ClientInterceptor#handleResponse(org.springframework.ws.context.MessageContext)
+	 */
+	@Override
+	public boolean handleResponse(MessageContext messageContext)
+			throws WebServiceClientException {
+		return true;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.springframework.ws.client.support.interceptor.ClientInterceptor#handleFault(org.springframework.ws.context.MessageContext)
+	 */
+	@Override
+	public boolean handleFault(MessageContext messageContext)
+			throws WebServiceClientException {
+		return true;
+	}
+}
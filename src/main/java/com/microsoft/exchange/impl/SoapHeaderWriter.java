@@ -0,0 +1,41 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.impl;
+
+import org.springframework.ws.client.WebServiceClientException;
+import org.springframework.ws.context.MessageContext;
+import org.springframework.ws.soap.SoapHeader;
+import org.springframework.ws.soap.SoapMessage;
+
+/**
+ * Adds one element to the {@link SoapHeader} of an outgoing request.
+ * 
+ * Writers are combined by {@link SoapHeaderClientInterceptor}, which looks up the header once per request.
+ */
+public interface SoapHeaderWriter {
+
+	/**
+	 * 
+	 * @param soapMessage the request
+	 * @param header the request's header
+	 * @param messageContext
+	 * @throws WebServiceClientException
+	 */
+	void writeHeader(SoapMessage soapMessage, SoapHeader header, MessageContext messageContext) throws WebServiceClientException;
+}
@@ -0,0 +1,400 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.impl;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlElements;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stax.StAXSource;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import com.microsoft.exchange.ExchangeResponseUtils;
+import com.microsoft.exchange.ItemTypeHandler;
+import com.microsoft.exchange.exception.ExchangeRuntimeException;
+import com.microsoft.exchange.messages.ArrayOfResponseMessagesType;
+import com.microsoft.exchange.messages.GetItemResponse;
+import com.microsoft.exchange.messages.ResponseCodeType;
+import com.microsoft.exchange.messages.ResponseMessageType;
+import com.microsoft.exchange.messages.ResponseMessageType.MessageXml;
+import com.microsoft.exchange.types.ArrayOfRealItemsType;
+import com.microsoft.exchange.types.FindItemParentType;
+import com.microsoft.exchange.types.ItemType;
+import com.microsoft.exchange.types.ResponseClassType;
+
+/**
+ * Reads the items out of a FindItem or GetItem response payload one element at a time, instead of
+ * unmarshalling the whole response into a single object graph.
+ * 
+ * Only the item element currently being read is bound with JAXB; completed items are handed to an
+ * {@link ItemTypeHandler} in batches of {@link #getBatchSize()} and can be discarded by the caller.
+ * {@link StAXSource} and stream payloads are read with StAX, so memory is bounded by the batch size.
+ * A {@link DOMSource} payload (what SAAJ messages produce) is walked in place; the DOM is already
+ * resident, but no JAXB copy of the full response is made.
+ * 
+ * Response messages with a ResponseCode other than NoError are reported through 
+ * {@link ExchangeResponseUtils#confirmSuccess(com.microsoft.exchange.messages.BaseResponseMessageType)},
+ * so the same exceptions are raised as for a fully unmarshalled response.
+ * 
+ * Instances are thread safe.
+ */
+public class StreamingItemParser {
+
+	private static final String RESPONSE_MESSAGE_SUFFIX = "ResponseMessage";
+	private static final String ROOT_FOLDER = "RootFolder";
+	private static final String ITEMS = "Items";
+	private static final String MESSAGE_TEXT = "MessageText";
+	private static final String RESPONSE_CODE = "ResponseCode";
+	private static final String DESCRIPTIVE_LINK_KEY = "DescriptiveLinkKey";
+	private static final String MESSAGE_XML = "MessageXml";
+	private static final String RESPONSE_CLASS = "ResponseClass";
+	
+	/**
+	 * Element name to bound type for the members of {@link ArrayOfRealItemsType}, read from its JAXB annotations.
+	 */
+	private static final Map<String, Class<? extends ItemType>> ITEM_ELEMENTS = itemElements();
+	
+	protected final Log log = LogFactory.getLog(this.getClass());
+	
+	private final JAXBContext jaxbContext;
+	private final XMLInputFactory inputFactory = newInputFactory();
+	private ExchangeResponseUtils responseUtils = new ExchangeResponseUtilsImpl();
+	private int batchSize = 100;
+	
+	/**
+	 * 
+	 * @param jaxbContext a context that binds the com.microsoft.exchange.messages and com.microsoft.exchange.types packages
+	 */
+	public StreamingItemParser(JAXBContext jaxbContext) {
+		Validate.notNull(jaxbContext, "jaxbContext argument cannot be null");
+		this.jaxbContext = jaxbContext;
+	}
+	/**
+	 * @return the responseUtils
+	 */
+	public ExchangeResponseUtils getResponseUtils() {
+		return responseUtils;
+	}
+	/**
+	 * @param responseUtils the responseUtils to set
+	 */
+	public void setResponseUtils(ExchangeResponseUtils responseUtils) {
+		this.responseUtils = responseUtils;
+	}
+	/**
+	 * @return the batchSize
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+	/**
+	 * @param batchSize the maximum number of items passed to the handler at once
+	 */
+	public void setBatchSize(int batchSize) {
+		Validate.isTrue(batchSize > 0, "batchSize must be greater than 0");
+		this.batchSize = batchSize;
+	}
+	
+	/**
+	 * Read every item in the payload, passing them to the handler as they are read.
+	 * 
+	 * @param payload the SOAP body payload of a FindItemResponse or GetItemResponse
+	 * @param handler
+	 * @return the paging attributes of the FindItem RootFolder (without items), or null if the payload has no RootFolder
+	 * @throws ExchangeRuntimeException if the payload cannot be read, or contains an unsuccessful response message
+	 */
+	public FindItemParentType parse(Source payload, ItemTypeHandler handler) {
+		Validate.notNull(payload, "payload argument cannot be null");
+		Validate.notNull(handler, "handler argument cannot be null");
+		try {
+			Unmarshaller unmarshaller = jaxbContext.createUnmarshaller();
+			ParseState state = new ParseState(handler);
+			if(payload instanceof DOMSource) {
+				Node node = ((DOMSource) payload).getNode();
+				if(node instanceof Document) {
+					node = ((Document) node).getDocumentElement();
+				}
+				if(node instanceof Element) {
+					parse((Element) node, unmarshaller, state);
+				}
+			} else {
+				XMLStreamReader reader = payload instanceof StAXSource && ((StAXSource) payload).getXMLStreamReader() != null ?
+						((StAXSource) payload).getXMLStreamReader() : inputFactory.createXMLStreamReader(payload);
+				try {
+					parse(reader, unmarshaller, state);
+				} finally {
+					reader.close();
+				}
+			}
+			state.flush();
+			return state.rootFolder;
+		} catch (JAXBException e) {
+			throw new ExchangeRuntimeException(e);
+		} catch (XMLStreamException e) {
+			throw new ExchangeRuntimeException(e);
+		}
+	}
+	
+	/**
+	 * Walk the stream; the reader is left on the event following each element JAXB consumes, so the
+	 * current event is examined before advancing.
+	 */
+	protected void parse(XMLStreamReader reader, Unmarshaller unmarshaller, ParseState state) throws XMLStreamException, JAXBException {
+		int event = reader.getEventType();
+		while(true) {
+			if(event == XMLStreamConstants.START_ELEMENT) {
+				String name = reader.getLocalName();
+				Class<? extends ItemType> itemClass = state.inItems ? ITEM_ELEMENTS.get(name) : null;
+				if(itemClass != null) {
+					state.item(unmarshaller.unmarshal(reader, itemClass).getValue());
+					event = reader.getEventType();
+					continue;
+				} else if(state.message != null && MESSAGE_XML.equals(name)) {
+					state.message.setMessageXml(unmarshaller.unmarshal(reader, MessageXml.class).getValue());
+					event = reader.getEventType();
+					continue;
+				} else if(state.message != null && isHeaderElement(name)) {
+					state.header(name, reader.getElementText());
+				} else if(name.endsWith(RESPONSE_MESSAGE_SUFFIX)) {
+					state.startMessage(reader.getAttributeValue(null, RESPONSE_CLASS));
+				} else if(ROOT_FOLDER.equals(name)) {
+					state.rootFolder(reader.getAttributeValue(null, "TotalItemsInView"), 
+							reader.getAttributeValue(null, "IncludesLastItemInRange"), 
+							reader.getAttributeValue(null, "IndexedPagingOffset"));
+				} else if(ITEMS.equals(name)) {
+					state.inItems = true;
+				}
+			} else if(event == XMLStreamConstants.END_ELEMENT) {
+				String name = reader.getLocalName();
+				if(ITEMS.equals(name)) {
+					state.inItems = false;
+				} else if(name.endsWith(RESPONSE_MESSAGE_SUFFIX)) {
+					state.endMessage(name);
+				}
+			}
+			if(!reader.hasNext()) {
+				return;
+			}
+			event = reader.next();
+		}
+	}
+	
+	/**
+	 * Walk an element already held in memory, binding each item element with JAXB in turn.
+	 */
+	protected void parse(Element element, Unmarshaller unmarshaller, ParseState state) throws JAXBException {
+		String name = localName(element);
+		Class<? extends ItemType> itemClass = state.inItems ? ITEM_ELEMENTS.get(name) : null;
+		if(itemClass != null) {
+			state.item(unmarshaller.unmarshal(element, itemClass).getValue());
+			return;
+		} else if(state.message != null && MESSAGE_XML.equals(name)) {
+			state.message.setMessageXml(unmarshaller.unmarshal(element, MessageXml.class).getValue());
+			return;
+		} else if(state.message != null && isHeaderElement(name)) {
+			state.header(name, element.getTextContent());
+			return;
+		} 
+		
+		boolean responseMessage = name.endsWith(RESPONSE_MESSAGE_SUFFIX);
+		if(responseMessage) {
+			state.startMessage(element.getAttribute(RESPONSE_CLASS));
+		} else if(ROOT_FOLDER.equals(name)) {
+			state.rootFolder(element.getAttribute("TotalItemsInView"), element.getAttribute("IncludesLastItemInRange"), element.getAttribute("IndexedPagingOffset"));
+		} else if(ITEMS.equals(name)) {
+			state.inItems = true;
+		}
+		for(Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+			if(child instanceof Element) {
+				parse((Element) child, unmarshaller, state);
+			}
+		}
+		if(ITEMS.equals(name)) {
+			state.inItems = false;
+		} else if(responseMessage) {
+			state.endMessage(name);
+		}
+	}
+	
+	private static boolean isHeaderElement(String name) {
+		return MESSAGE_TEXT.equals(name) || RESPONSE_CODE.equals(name) || DESCRIPTIVE_LINK_KEY.equals(name);
+	}
+	
+	/**
+	 * The position within, and pending output of, a single parse.
+	 */
+	protected class ParseState {
+		private final ItemTypeHandler handler;
+		private final List<ItemType> batch = new ArrayList<ItemType>();
+		private ResponseMessageType message;
+		private FindItemParentType rootFolder;
+		private boolean inItems;
+		
+		ParseState(ItemTypeHandler handler) {
+			this.handler = handler;
+		}
+		
+		void startMessage(String responseClass) {
+			message = new ResponseMessageType();
+			if(StringUtils.isNotBlank(responseClass)) {
+				message.setResponseClass(ResponseClassType.fromValue(responseClass));
+			}
+		}
+		
+		void header(String name, String text) {
+			text = StringUtils.trimToNull(text);
+			if(text == null) {
+				return;
+			}
+			if(MESSAGE_TEXT.equals(name)) {
+				message.setMessageText(text);
+			} else if(RESPONSE_CODE.equals(name)) {
+				message.setResponseCode(ResponseCodeType.fromValue(text));
+			} else if(DESCRIPTIVE_LINK_KEY.equals(name)) {
+				message.setDescriptiveLinkKey(Integer.valueOf(text));
+			}
+		}
+		
+		void endMessage(String name) {
+			ResponseMessageType completed = message;
+			message = null;
+			if(completed != null && completed.getResponseCode() != null && !ResponseCodeType.NO_ERROR.equals(completed.getResponseCode())) {
+				// deliver what was read before the failure
+				flush();
+				confirmSuccess(getResponseUtils(), name, completed);
+			}
+		}
+		
+		void rootFolder(String totalItemsInView, String includesLastItemInRange, String indexedPagingOffset) {
+			rootFolder = StreamingItemParser.rootFolder(totalItemsInView, includesLastItemInRange, indexedPagingOffset);
+		}
+		
+		void item(ItemType item) {
+			batch.add(item);
+			if(batch.size() >= getBatchSize()) {
+				flush();
+			}
+		}
+		
+		void flush() {
+			if(!batch.isEmpty()) {
+				handler.handle(new ArrayList<ItemType>(batch));
+				batch.clear();
+			}
+		}
+	}
+	
+	/**
+	 * 
+	 * @param element
+	 * @return the local name of the element, also when the DOM was not built namespace aware
+	 */
+	static String localName(Element element) {
+		return element.getLocalName() != null ? element.getLocalName() : StringUtils.substringAfterLast(":" + element.getNodeName(), ":");
+	}
+	
+	/**
+	 * 
+	 * @param totalItemsInView
+	 * @param includesLastItemInRange
+	 * @param indexedPagingOffset
+	 * @return a RootFolder carrying only the paging attributes that are present
+	 */
+	static FindItemParentType rootFolder(String totalItemsInView, String includesLastItemInRange, String indexedPagingOffset) {
+		FindItemParentType rootFolder = new FindItemParentType();
+		if(StringUtils.isNotBlank(totalItemsInView)) {
+			rootFolder.setTotalItemsInView(Integer.valueOf(totalItemsInView));
+		}
+		if(StringUtils.isNotBlank(includesLastItemInRange)) {
+			rootFolder.setIncludesLastItemInRange(Boolean.valueOf(includesLastItemInRange));
+		}
+		if(StringUtils.isNotBlank(indexedPagingOffset)) {
+			rootFolder.setIndexedPagingOffset(Integer.valueOf(indexedPagingOffset));
+		}
+		return rootFolder;
+	}
+	
+	/**
+	 * Raise the exception {@link ExchangeResponseUtils#confirmSuccess(com.microsoft.exchange.messages.BaseResponseMessageType)}
+	 * would for a response containing the message; does nothing for NoError (or a missing code).
+	 * 
+	 * @param responseUtils
+	 * @param name the element name of the response message
+	 * @param message
+	 */
+	static void confirmSuccess(ExchangeResponseUtils responseUtils, String name, ResponseMessageType message) {
+		if(message.getResponseCode() == null || ResponseCodeType.NO_ERROR.equals(message.getResponseCode())) {
+			return;
+		}
+		ArrayOfResponseMessagesType messages = new ArrayOfResponseMessagesType();
+		messages.getCreateItemResponseMessagesAndDeleteItemResponseMessagesAndGetItemResponseMessages().add(
+				new JAXBElement<ResponseMessageType>(new QName(name), ResponseMessageType.class, message));
+		GetItemResponse response = new GetItemResponse();
+		response.setResponseMessages(messages);
+		responseUtils.confirmSuccess(response);
+	}
+	
+	/**
+	 * Responses come from a remote server, so DTDs and external entities are never processed.
+	 * 
+	 * @return a new {@link XMLInputFactory} that does not read DTDs or resolve external entities
+	 */
+	static XMLInputFactory newInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		return factory;
+	}
+	
+	private static Map<String, Class<? extends ItemType>> itemElements() {
+		Map<String, Class<? extends ItemType>> elements = new HashMap<String, Class<? extends ItemType>>();
+		try {
+			Field field = ArrayOfRealItemsType.class.getDeclaredField("itemsAndMessagesAndCalendarItems");
+			for(XmlElement element : field.getAnnotation(XmlElements.class).value()) {
+				Class<?> type = XmlElement.DEFAULT.class.equals(element.type()) ? ItemType.class : element.type();
+				elements.put(element.name(), type.asSubclass(ItemType.class));
+			}
+		} catch (NoSuchFieldException e) {
+			throw new IllegalStateException("ArrayOfRealItemsType no longer declares itemsAndMessagesAndCalendarItems", e);
+		}
+		return elements;
+	}
+}
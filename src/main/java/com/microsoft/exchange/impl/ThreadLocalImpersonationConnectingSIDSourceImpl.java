@@ -44,6 +44,14 @@ public class ThreadLocalImpersonationConnectingSIDSourceImpl implements Imperson
 		return threadLocal.get();
 	}
 
+	/**
+	 * 
+	 * @return the {@link ConnectingSIDType} stored in the {@link ThreadLocal}, may be null
+	 */
+	public static ConnectingSIDType getCurrentConnectingSID() {
+		return threadLocal.get();
+	}
+	
 	/**
 	 * Set the specified {@link ConnectingSIDType} in the {@link ThreadLocal}.
 	 * 
@@ -0,0 +1,123 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.impl;
+
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.ws.context.MessageContext;
+import org.springframework.ws.soap.SoapMessage;
+
+import com.microsoft.exchange.DateHelp;
+import com.microsoft.exchange.ExchangeRequestContext;
+
+/**
+ * {@link TimeZoneContextSource} implemented with a {@link ThreadLocal}, set from the 
+ * {@link ExchangeRequestContext#getTimeZoneId()} by {@link ExchangeRequestContextHolder#bind(ExchangeRequestContext)}.
+ * 
+ * The same time zone is used by {@link DateHelp#convertDateToXMLGregorianCalendar(java.util.Date)}, so the
+ * dates in a request and its TimeZoneContext header agree without changing the JVM default time zone.
+ * When no time zone is bound the {@link #getDefaultTimeZoneId()} applies, and when that is null, the JVM default.
+ */
+public class ThreadLocalTimeZoneContextSource implements TimeZoneContextSource {
+
+	private static final ThreadLocal<String> threadLocal = new ThreadLocal<String>();
+	private static volatile String defaultTimeZoneId;
+	private static final AtomicInteger defaultTimeZoneVersion = new AtomicInteger();
+	
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.impl.TimeZoneContextSource#getTimeZoneId(org.springframework.ws.soap.SoapMessage, org.springframework.ws.context.MessageContext)
+	 */
+	@Override
+	public String getTimeZoneId(SoapMessage soapMessage, MessageContext messageContext) {
+		return getCurrentTimeZoneId();
+	}
+	
+	/**
+	 * 
+	 * @return the time zone id bound to the current thread, else the {@link #getDefaultTimeZoneId()}; may be null
+	 */
+	public static String getCurrentTimeZoneId() {
+		String timeZoneId = threadLocal.get();
+		return timeZoneId != null ? timeZoneId : defaultTimeZoneId;
+	}
+	
+	/**
+	 * 
+	 * @return the time zone id bound to the current thread, ignoring the {@link #getDefaultTimeZoneId()}; may be null
+	 */
+	public static String getBoundTimeZoneId() {
+		return threadLocal.get();
+	}
+	
+	/**
+	 * 
+	 * @return the {@link TimeZone} for {@link #getCurrentTimeZoneId()}, or null to use the JVM default
+	 */
+	public static TimeZone getCurrentTimeZone() {
+		String timeZoneId = getCurrentTimeZoneId();
+		return timeZoneId == null ? null : TimeZone.getTimeZone(timeZoneId);
+	}
+	
+	/**
+	 * Bind the time zone to the current thread.
+	 * 
+	 * @param timeZoneId an IANA time zone id, e.g. "America/Chicago"
+	 */
+	public static void setTimeZoneId(String timeZoneId) {
+		threadLocal.set(timeZoneId);
+	}
+	
+	/**
+	 * Remove the time zone from the current thread.
+	 */
+	public static void clear() {
+		threadLocal.remove();
+	}
+	
+	/**
+	 * @return the time zone used by threads with none bound, null for the JVM default
+	 */
+	public static String getDefaultTimeZoneId() {
+		return defaultTimeZoneId;
+	}
+	
+	/**
+	 * @param timeZoneId the time zone used by threads with none bound, null for the JVM default
+	 */
+	public static void setDefaultTimeZoneId(String timeZoneId) {
+		defaultTimeZoneId = timeZoneId;
+		defaultTimeZoneVersion.incrementAndGet();
+	}
+	
+	/**
+	 * Call after changing the JVM default time zone at runtime, so that cached checks of the default are repeated.
+	 */
+	public static void defaultTimeZoneChanged() {
+		defaultTimeZoneVersion.incrementAndGet();
+	}
+	
+	/**
+	 * @return a counter that changes whenever the default time zone changes through {@link #setDefaultTimeZoneId(String)}
+	 * or {@link #defaultTimeZoneChanged()}
+	 */
+	public static int getDefaultTimeZoneVersion() {
+		return defaultTimeZoneVersion.get();
+	}
+}
@@ -0,0 +1,175 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.fortuna.ical4j.model.TimeZone;
+import net.fortuna.ical4j.model.TimeZoneRegistry;
+import net.fortuna.ical4j.model.TimeZoneRegistryFactory;
+import net.fortuna.ical4j.model.component.VTimeZone;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.microsoft.exchange.types.TimeZoneDefinitionType;
+
+/**
+ * Bounded cache of the ical4j {@link TimeZone} (and its {@link VTimeZone}) for each Exchange time zone definition 
+ * (the StartTimeZone and EndTimeZone of a calendar item), so each zone is loaded from the ical4j {@link TimeZoneRegistry} 
+ * once rather than per event.
+ * 
+ * Definitions are keyed by id, either a Windows id ("Central Standard Time") or an IANA id ("America/Chicago").
+ * The returned components are shared between events and calendars and must not be modified.
+ */
+public class VTimeZoneRegistry {
+
+	private static final VTimeZoneRegistry DEFAULT = new VTimeZoneRegistry();
+	
+	protected final Log log = LogFactory.getLog(this.getClass());
+	
+	private final TimeZoneRegistry timeZoneRegistry = TimeZoneRegistryFactory.getInstance().createRegistry();
+	// values may be null, for ids without a zone
+	private final Map<String, TimeZone> entries = new LinkedHashMap<String, TimeZone>(16, 0.75f, true);
+	private int maxEntries = 256;
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	
+	/**
+	 * @return the registry shared by default between {@link ExchangeEventConverterImpl}s
+	 */
+	public static VTimeZoneRegistry getDefault() {
+		return DEFAULT;
+	}
+	
+	/**
+	 * @return the maxEntries
+	 */
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * @param maxEntries the number of time zone definitions kept, least recently used are dropped first
+	 */
+	public void setMaxEntries(int maxEntries) {
+		Validate.isTrue(maxEntries > 0, "maxEntries must be greater than 0");
+		this.maxEntries = maxEntries;
+	}
+	
+	/**
+	 * @return the number of lookups answered from the cache
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+	
+	/**
+	 * @return the number of lookups that loaded a zone
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+	
+	/**
+	 * @return the number of time zone definitions cached
+	 */
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * 
+	 * @param definition
+	 * @return the {@link TimeZone} for the definition's id, or null if the definition is null or has no matching zone
+	 */
+	public TimeZone getTimeZone(TimeZoneDefinitionType definition) {
+		return definition == null ? null : getTimeZone(definition.getId());
+	}
+	
+	/**
+	 * 
+	 * @param timeZoneId a Windows or IANA time zone id
+	 * @return the {@link VTimeZone}, or null if the id is blank or has no matching zone
+	 */
+	public VTimeZone getVTimeZone(String timeZoneId) {
+		TimeZone timeZone = getTimeZone(timeZoneId);
+		return timeZone == null ? null : timeZone.getVTimeZone();
+	}
+	
+	/**
+	 * 
+	 * @param timeZoneId a Windows or IANA time zone id
+	 * @return the {@link TimeZone}, its id the IANA id, or null if the id is blank or has no matching zone
+	 */
+	public TimeZone getTimeZone(String timeZoneId) {
+		if(StringUtils.isBlank(timeZoneId)) {
+			return null;
+		}
+		synchronized (entries) {
+			if(entries.containsKey(timeZoneId)) {
+				hitCount.incrementAndGet();
+				return entries.get(timeZoneId);
+			}
+		}
+		missCount.incrementAndGet();
+		TimeZone timeZone = load(timeZoneId);
+		synchronized (entries) {
+			// keep the first one loaded, should another thread have raced us
+			if(entries.containsKey(timeZoneId)) {
+				return entries.get(timeZoneId);
+			}
+			entries.put(timeZoneId, timeZone);
+			Iterator<TimeZone> eldest = entries.values().iterator();
+			while(entries.size() > maxEntries && eldest.hasNext()) {
+				eldest.next();
+				eldest.remove();
+			}
+		}
+		return timeZone;
+	}
+	
+	/**
+	 * 
+	 * @param timeZoneId a Windows or IANA time zone id
+	 * @return the {@link TimeZone} from the ical4j registry, or null
+	 */
+	protected TimeZone load(String timeZoneId) {
+		String ianaId = WindowsTimeZones.getIanaId(timeZoneId);
+		if(ianaId == null) {
+			ianaId = timeZoneId;
+		}
+		TimeZone timeZone;
+		// ical4j's registry loads zones into an unsynchronized map
+		synchronized (timeZoneRegistry) {
+			timeZone = timeZoneRegistry.getTimeZone(ianaId);
+		}
+		if(timeZone == null) {
+			log.debug("no VTimeZone for time zone id "+timeZoneId);
+		}
+		return timeZone;
+	}
+}
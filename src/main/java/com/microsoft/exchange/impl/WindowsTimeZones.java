@@ -0,0 +1,111 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.impl;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.ibm.icu.util.TimeZone;
+
+/**
+ * Precomputed mapping of time zone ids (IANA/Olson, as used by the JVM and iCalendar) to the
+ * Windows time zone ids Exchange expects in a TimeZoneContext, and back.
+ * 
+ * {@link TimeZone#getWindowsID(String)} consults ICU's resource bundles on every call; this table is built from it
+ * once, on first use, so lookups on the request path are a map read.
+ * 
+ * @see <a href="http://www.unicode.org/cldr/charts/latest/supplemental/zone_tzid.html">CLDR zone mapping</a>
+ */
+public final class WindowsTimeZones {
+
+	private WindowsTimeZones() {
+	}
+	
+	// built when first referenced
+	private static final class Table {
+		private static final Map<String, String> IANA_TO_WINDOWS;
+		private static final Set<String> WINDOWS_IDS;
+		private static final Map<String, String> WINDOWS_TO_IANA;
+		static {
+			Map<String, String> ianaToWindows = new HashMap<String, String>();
+			for(String id : TimeZone.getAvailableIDs()) {
+				String windowsId = TimeZone.getWindowsID(id);
+				if(windowsId != null) {
+					ianaToWindows.put(id, windowsId);
+				}
+			}
+			IANA_TO_WINDOWS = Collections.unmodifiableMap(ianaToWindows);
+			WINDOWS_IDS = Collections.unmodifiableSet(new HashSet<String>(ianaToWindows.values()));
+			Map<String, String> windowsToIana = new HashMap<String, String>();
+			for(String windowsId : WINDOWS_IDS) {
+				String id = TimeZone.getIDForWindowsID(windowsId, null);
+				if(id != null) {
+					windowsToIana.put(windowsId, id);
+				}
+			}
+			WINDOWS_TO_IANA = Collections.unmodifiableMap(windowsToIana);
+		}
+	}
+	
+	/**
+	 * 
+	 * @param ianaId a time zone id such as "America/Chicago"
+	 * @return the Windows id, e.g. "Central Standard Time", or null if there is no mapping
+	 */
+	public static String getWindowsId(String ianaId) {
+		return ianaId == null ? null : Table.IANA_TO_WINDOWS.get(ianaId);
+	}
+	
+	/**
+	 * 
+	 * @param windowsId a Windows time zone id such as "Central Standard Time"
+	 * @return the IANA id of the zone's principal location, e.g. "America/Chicago", or null if there is no mapping
+	 */
+	public static String getIanaId(String windowsId) {
+		return windowsId == null ? null : Table.WINDOWS_TO_IANA.get(windowsId);
+	}
+	
+	/**
+	 * 
+	 * @param timeZoneId either an IANA id or a Windows id
+	 * @return the Windows id, or null if the id is neither
+	 */
+	public static String toWindowsId(String timeZoneId) {
+		if(timeZoneId == null) {
+			return null;
+		}
+		String windowsId = Table.IANA_TO_WINDOWS.get(timeZoneId);
+		if(windowsId == null && Table.WINDOWS_IDS.contains(timeZoneId)) {
+			windowsId = timeZoneId;
+		}
+		return windowsId;
+	}
+	
+	/**
+	 * 
+	 * @param windowsId
+	 * @return true if the id is a Windows time zone id
+	 */
+	public static boolean isWindowsId(String windowsId) {
+		return windowsId != null && Table.WINDOWS_IDS.contains(windowsId);
+	}
+}
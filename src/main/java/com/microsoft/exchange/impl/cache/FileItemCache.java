@@ -0,0 +1,276 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.impl.cache;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.namespace.QName;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.InitializingBean;
+
+import com.microsoft.exchange.exception.ExchangeRuntimeException;
+import com.microsoft.exchange.types.ItemIdType;
+import com.microsoft.exchange.types.ItemType;
+
+/**
+ * {@link ItemCache} that keeps each item as XML in its own file under a directory, so the cache survives restarts.
+ * Usually the {@link LruItemCache#setDiskTier(ItemCache) disk tier} of an {@link LruItemCache}.
+ * 
+ * File names are a digest of the item id. Items are written to a temporary file and renamed into place.
+ * When more than {@link #getMaxEntries()} files exist, the least recently read or written are deleted 
+ * until the directory is back to 90% of that bound.
+ */
+public class FileItemCache implements ItemCache, InitializingBean {
+
+	private static final String SUFFIX = ".item";
+	private static final QName ITEM = new QName("http://schemas.microsoft.com/exchange/services/2006/types", "Item");
+	
+	protected final Log log = LogFactory.getLog(this.getClass());
+	
+	private File directory;
+	private JAXBContext jaxbContext;
+	private int maxEntries = 100000;
+	private final AtomicInteger count = new AtomicInteger();
+	
+	/**
+	 * @return the directory
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+	/**
+	 * @param directory the directory to keep items in, created if necessary
+	 */
+	public void setDirectory(File directory) {
+		this.directory = directory;
+	}
+	/**
+	 * @return the jaxbContext
+	 */
+	public JAXBContext getJaxbContext() {
+		return jaxbContext;
+	}
+	/**
+	 * @param jaxbContext a context for com.microsoft.exchange.types
+	 */
+	public void setJaxbContext(JAXBContext jaxbContext) {
+		this.jaxbContext = jaxbContext;
+	}
+	/**
+	 * @return the maxEntries
+	 */
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+	/**
+	 * @param maxEntries the maximum number of item files
+	 */
+	public void setMaxEntries(int maxEntries) {
+		Validate.isTrue(maxEntries > 0, "maxEntries must be greater than 0");
+		this.maxEntries = maxEntries;
+	}
+	/**
+	 * @return the approximate number of items on disk
+	 */
+	public int size() {
+		return count.get();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.springframework.beans.factory.InitializingBean#afterPropertiesSet()
+	 */
+	@Override
+	public void afterPropertiesSet() throws IOException {
+		Validate.notNull(directory, "directory is required");
+		Validate.notNull(jaxbContext, "jaxbContext is required");
+		FileUtils.forceMkdir(directory);
+		count.set(listItemFiles().length);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.impl.cache.ItemCache#get(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public ItemType get(String id, String changeKey) {
+		if(id == null || changeKey == null) {
+			return null;
+		}
+		File file = getFile(id);
+		if(!file.exists()) {
+			return null;
+		}
+		ItemType item;
+		try {
+			item = jaxbContext.createUnmarshaller().unmarshal(new StreamSource(file), ItemType.class).getValue();
+		} catch (JAXBException e) {
+			log.warn("failed to read cached item from "+file+", discarding it", e);
+			delete(file);
+			return null;
+		}
+		ItemIdType itemId = item.getItemId();
+		if(itemId == null || !id.equals(itemId.getId())) {
+			// digest collision or foreign file
+			return null;
+		}
+		if(!changeKey.equals(itemId.getChangeKey())) {
+			delete(file);
+			return null;
+		}
+		file.setLastModified(System.currentTimeMillis());
+		return item;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.impl.cache.ItemCache#put(com.microsoft.exchange.types.ItemType)
+	 */
+	@Override
+	public void put(ItemType item) {
+		ItemIdType itemId = item == null ? null : item.getItemId();
+		if(itemId == null || itemId.getId() == null || itemId.getChangeKey() == null) {
+			return;
+		}
+		File file = getFile(itemId.getId());
+		File temp = new File(file.getPath() + "." + Thread.currentThread().getId() + ".tmp");
+		try {
+			// declared as ItemType so the subtype is recorded in xsi:type
+			jaxbContext.createMarshaller().marshal(new JAXBElement<ItemType>(ITEM, ItemType.class, item), temp);
+			boolean replaced = file.exists();
+			if(!temp.renameTo(file)) {
+				// rename does not replace an existing file on every platform
+				FileUtils.forceDelete(file);
+				if(!temp.renameTo(file)) {
+					throw new IOException("failed to rename "+temp+" to "+file);
+				}
+			}
+			if(!replaced && count.incrementAndGet() > maxEntries) {
+				evict();
+			}
+		} catch (JAXBException e) {
+			temp.delete();
+			throw new ExchangeRuntimeException(e);
+		} catch (IOException e) {
+			temp.delete();
+			throw new ExchangeRuntimeException(e);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.impl.cache.ItemCache#remove(java.lang.String)
+	 */
+	@Override
+	public void remove(String id) {
+		File file = getFile(id);
+		if(file.exists()) {
+			delete(file);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.impl.cache.ItemCache#clear()
+	 */
+	@Override
+	public synchronized void clear() {
+		for(File file : listItemFiles()) {
+			delete(file);
+		}
+		count.set(0);
+	}
+	
+	/**
+	 * Delete the least recently used files until 90% of {@link #getMaxEntries()} remain.
+	 */
+	protected synchronized void evict() {
+		File[] files = listItemFiles();
+		int target = (int) (maxEntries * 0.9);
+		if(files.length > target) {
+			final long[] lastModified = new long[files.length];
+			Integer[] order = new Integer[files.length];
+			for(int i = 0; i < files.length; i++) {
+				lastModified[i] = files[i].lastModified();
+				order[i] = i;
+			}
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					return lastModified[a] < lastModified[b] ? -1 : (lastModified[a] == lastModified[b] ? 0 : 1);
+				}
+			});
+			for(int i = 0; i < files.length - target; i++) {
+				files[order[i]].delete();
+			}
+			log.debug("evicted "+(files.length - target)+" items from "+directory);
+		}
+		count.set(listItemFiles().length);
+	}
+	
+	/**
+	 * 
+	 * @param id
+	 * @return the file holding the item
+	 */
+	protected File getFile(String id) {
+		Validate.notNull(directory, "directory is required");
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(id.getBytes("UTF-8"));
+			StringBuilder name = new StringBuilder(digest.length * 2 + SUFFIX.length());
+			for(byte b : digest) {
+				name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			}
+			return new File(directory, name.append(SUFFIX).toString());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	private File[] listItemFiles() {
+		File[] files = directory.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return file.getName().endsWith(SUFFIX);
+			}
+		});
+		return files == null ? new File[0] : files;
+	}
+	
+	private void delete(File file) {
+		if(file.delete()) {
+			count.decrementAndGet();
+		} else if(file.exists()) {
+			log.warn("failed to delete "+file);
+		}
+	}
+}
@@ -0,0 +1,122 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.impl.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.microsoft.exchange.types.BaseFolderType;
+import com.microsoft.exchange.types.DistinguishedFolderIdNameType;
+
+/**
+ * An immutable snapshot of a distinguished folder and the folders of the same type below it,
+ * indexed by id and by display name.
+ */
+public final class FolderHierarchy {
+
+	private final DistinguishedFolderIdNameType root;
+	private final List<BaseFolderType> folders;
+	private final Map<String, BaseFolderType> byId;
+	private final Map<String, BaseFolderType> byDisplayName;
+	private final String syncState;
+	
+	/**
+	 * 
+	 * @param root the distinguished folder
+	 * @param folders the distinguished folder first, then its descendants
+	 * @param syncState the SyncFolderHierarchy state the snapshot corresponds to, may be null
+	 */
+	public FolderHierarchy(DistinguishedFolderIdNameType root, List<BaseFolderType> folders, String syncState) {
+		this.root = root;
+		this.folders = Collections.unmodifiableList(new ArrayList<BaseFolderType>(folders));
+		Map<String, BaseFolderType> ids = new HashMap<String, BaseFolderType>();
+		Map<String, BaseFolderType> names = new HashMap<String, BaseFolderType>();
+		for(BaseFolderType folder : this.folders) {
+			if(folder.getFolderId() != null) {
+				ids.put(folder.getFolderId().getId(), folder);
+			}
+			if(folder.getDisplayName() != null && !names.containsKey(folder.getDisplayName())) {
+				names.put(folder.getDisplayName(), folder);
+			}
+		}
+		this.byId = ids;
+		this.byDisplayName = names;
+		this.syncState = syncState;
+	}
+	
+	private FolderHierarchy(FolderHierarchy source, String syncState) {
+		this.root = source.root;
+		this.folders = source.folders;
+		this.byId = source.byId;
+		this.byDisplayName = source.byDisplayName;
+		this.syncState = syncState;
+	}
+	
+	/**
+	 * 
+	 * @param syncState
+	 * @return a copy of this snapshot carrying a new SyncState
+	 */
+	public FolderHierarchy withSyncState(String syncState) {
+		return new FolderHierarchy(this, syncState);
+	}
+	/**
+	 * @return the root
+	 */
+	public DistinguishedFolderIdNameType getRoot() {
+		return root;
+	}
+	/**
+	 * @return the distinguished folder, or null if the mailbox has none
+	 */
+	public BaseFolderType getPrimaryFolder() {
+		return folders.isEmpty() ? null : folders.get(0);
+	}
+	/**
+	 * @return the folders, distinguished folder first; never null
+	 */
+	public List<BaseFolderType> getFolders() {
+		return folders;
+	}
+	/**
+	 * 
+	 * @param id
+	 * @return the folder with the id, or null
+	 */
+	public BaseFolderType getFolder(String id) {
+		return byId.get(id);
+	}
+	/**
+	 * 
+	 * @param displayName
+	 * @return the first folder with the display name, or null
+	 */
+	public BaseFolderType getFolderByDisplayName(String displayName) {
+		return byDisplayName.get(displayName);
+	}
+	/**
+	 * @return the syncState, may be null
+	 */
+	public String getSyncState() {
+		return syncState;
+	}
+}
@@ -0,0 +1,284 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.impl.cache;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.microsoft.exchange.exception.ExchangeRuntimeException;
+import com.microsoft.exchange.types.DistinguishedFolderIdNameType;
+
+/**
+ * Keeps the {@link FolderHierarchy} of recently used mailboxes, at most {@link #getMaxEntries()} 
+ * (mailbox, distinguished folder) pairs, evicting the least recently used.
+ * 
+ * A snapshot older than {@link #getTimeToLiveMillis()} is revalidated through the {@link FolderHierarchyLoader}
+ * (one SyncFolderHierarchy request when nothing changed) and only reloaded when Exchange reports a change.
+ * Concurrent requests for the same (mailbox, distinguished folder) share one load, without holding any lock
+ * while it runs; other mailboxes proceed, and lookups of a current snapshot take no lock at all.
+ */
+public class FolderHierarchyCache {
+
+	protected final Log log = LogFactory.getLog(this.getClass());
+	
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+	private final ConcurrentMap<String, FutureTask<FolderHierarchy>> inFlight = new ConcurrentHashMap<String, FutureTask<FolderHierarchy>>();
+	private int maxEntries = 1000;
+	private long timeToLiveMillis = 300000L;
+	
+	// orders entries by last use, for eviction
+	private final AtomicLong clock = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong loads = new AtomicLong();
+	private final AtomicLong revalidations = new AtomicLong();
+	
+	/**
+	 * @return the maxEntries
+	 */
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+	/**
+	 * @param maxEntries the maximum number of hierarchies held
+	 */
+	public void setMaxEntries(int maxEntries) {
+		Validate.isTrue(maxEntries > 0, "maxEntries must be greater than 0");
+		this.maxEntries = maxEntries;
+	}
+	/**
+	 * @return the timeToLiveMillis
+	 */
+	public long getTimeToLiveMillis() {
+		return timeToLiveMillis;
+	}
+	/**
+	 * @param timeToLiveMillis how long a snapshot is used before it is revalidated
+	 */
+	public void setTimeToLiveMillis(long timeToLiveMillis) {
+		Validate.isTrue(timeToLiveMillis >= 0, "timeToLiveMillis cannot be negative");
+		this.timeToLiveMillis = timeToLiveMillis;
+	}
+	/**
+	 * @return the number of lookups answered without contacting Exchange
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+	/**
+	 * @return the number of full loads
+	 */
+	public long getLoadCount() {
+		return loads.get();
+	}
+	/**
+	 * @return the number of expired snapshots found to be still current
+	 */
+	public long getRevalidationCount() {
+		return revalidations.get();
+	}
+	
+	/**
+	 * 
+	 * @param upn
+	 * @param root
+	 * @param loader used if there is no current snapshot
+	 * @return the hierarchy, never null
+	 */
+	public FolderHierarchy get(final String upn, final DistinguishedFolderIdNameType root, final FolderHierarchyLoader loader) {
+		Validate.isTrue(StringUtils.isNotBlank(upn), "upn argument cannot be blank");
+		Validate.notNull(root, "root argument cannot be null");
+		Validate.notNull(loader, "loader argument cannot be null");
+		final String key = key(upn, root);
+		FolderHierarchy current = getCurrent(key);
+		if(current != null) {
+			hits.incrementAndGet();
+			return current;
+		}
+		FutureTask<FolderHierarchy> task = new FutureTask<FolderHierarchy>(new Callable<FolderHierarchy>() {
+			@Override
+			public FolderHierarchy call() {
+				FolderHierarchy stored = getCurrent(key);
+				if(stored != null) {
+					// stored by another thread between our lookup and putIfAbsent; complete 
+					// the published task with it, threads may already be waiting on it
+					hits.incrementAndGet();
+					return stored;
+				}
+				return loadOrRevalidate(upn, root, loader, entries.get(key));
+			}
+		});
+		FutureTask<FolderHierarchy> existing = inFlight.putIfAbsent(key, task);
+		if(existing != null) {
+			// loading on another thread, share its result
+			hits.incrementAndGet();
+			return await(existing);
+		}
+		try {
+			task.run();
+			FolderHierarchy hierarchy = await(task);
+			Entry stored = entries.get(key);
+			if(stored != null && stored.hierarchy == hierarchy) {
+				return hierarchy;
+			}
+			Entry loaded = new Entry(hierarchy, System.currentTimeMillis(), clock.incrementAndGet());
+			store(key, loaded);
+			if(!inFlight.remove(key, task)) {
+				// invalidated while loading
+				entries.remove(key, loaded);
+			}
+			return hierarchy;
+		} finally {
+			inFlight.remove(key, task);
+		}
+	}
+	
+	/**
+	 * Discard every hierarchy of the mailbox, for example after creating or deleting a folder.
+	 * Loads of the mailbox already under way are not stored.
+	 * 
+	 * @param upn
+	 */
+	public void invalidate(String upn) {
+		for(DistinguishedFolderIdNameType root : DistinguishedFolderIdNameType.values()) {
+			String key = key(upn, root);
+			inFlight.remove(key);
+			entries.remove(key);
+		}
+	}
+	
+	/**
+	 * Discard everything.
+	 */
+	public void clear() {
+		inFlight.clear();
+		entries.clear();
+	}
+	
+	/**
+	 * @return the number of hierarchies held
+	 */
+	public int size() {
+		return entries.size();
+	}
+	
+	private FolderHierarchy loadOrRevalidate(String upn, DistinguishedFolderIdNameType root, FolderHierarchyLoader loader, Entry expired) {
+		if(expired != null && expired.hierarchy.getSyncState() != null) {
+			String syncState = loader.revalidate(upn, expired.hierarchy);
+			if(syncState != null) {
+				revalidations.incrementAndGet();
+				return expired.hierarchy.withSyncState(syncState);
+			}
+		}
+		loads.incrementAndGet();
+		FolderHierarchy hierarchy = loader.load(upn, root);
+		log.debug("loaded "+root+" hierarchy of "+upn+", "+hierarchy.getFolders().size()+" folders");
+		return hierarchy;
+	}
+	
+	private static FolderHierarchy await(FutureTask<FolderHierarchy> task) {
+		boolean interrupted = false;
+		try {
+			while(true) {
+				try {
+					return task.get();
+				} catch (InterruptedException e) {
+					// the load is bounded by the web service timeouts; finish waiting, then restore the interrupt
+					interrupted = true;
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if(cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					}
+					if(cause instanceof Error) {
+						throw (Error) cause;
+					}
+					throw new ExchangeRuntimeException(cause);
+				}
+			}
+		} finally {
+			if(interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	private boolean isCurrent(Entry entry) {
+		return entry != null && System.currentTimeMillis() - entry.loadedAt < timeToLiveMillis;
+	}
+	
+	/**
+	 * 
+	 * @param key
+	 * @return the stored hierarchy if it is younger than {@link #getTimeToLiveMillis()}, otherwise null
+	 */
+	protected FolderHierarchy getCurrent(String key) {
+		Entry entry = entries.get(key);
+		if(entry == null) {
+			return null;
+		}
+		entry.lastUsed = clock.incrementAndGet();
+		return isCurrent(entry) ? entry.hierarchy : null;
+	}
+	
+	/**
+	 * Add the entry, then evict the least recently used while over {@link #getMaxEntries()}.
+	 * The scan only runs on loads, which cost a round trip to Exchange anyway.
+	 */
+	private void store(String key, Entry entry) {
+		entries.put(key, entry);
+		while(entries.size() > maxEntries) {
+			Map.Entry<String, Entry> eldest = null;
+			for(Map.Entry<String, Entry> candidate : entries.entrySet()) {
+				if(eldest == null || candidate.getValue().lastUsed < eldest.getValue().lastUsed) {
+					eldest = candidate;
+				}
+			}
+			if(eldest == null) {
+				break;
+			}
+			entries.remove(eldest.getKey(), eldest.getValue());
+		}
+	}
+	
+	private static String key(String upn, DistinguishedFolderIdNameType root) {
+		return upn.toLowerCase() + '\n' + root.value();
+	}
+	
+	private static final class Entry {
+		private final FolderHierarchy hierarchy;
+		private final long loadedAt;
+		private volatile long lastUsed;
+		
+		Entry(FolderHierarchy hierarchy, long loadedAt, long lastUsed) {
+			this.hierarchy = hierarchy;
+			this.loadedAt = loadedAt;
+			this.lastUsed = lastUsed;
+		}
+	}
+}
@@ -0,0 +1,44 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.impl.cache;
+
+import com.microsoft.exchange.types.DistinguishedFolderIdNameType;
+
+/**
+ * Reads folder hierarchies from Exchange on behalf of a {@link FolderHierarchyCache}.
+ */
+public interface FolderHierarchyLoader {
+
+	/**
+	 * 
+	 * @param upn
+	 * @param root
+	 * @return the current hierarchy below the distinguished folder, with a SyncState if one is available
+	 */
+	FolderHierarchy load(String upn, DistinguishedFolderIdNameType root);
+	
+	/**
+	 * Check whether a previously loaded hierarchy is still current, typically with SyncFolderHierarchy.
+	 * 
+	 * @param upn
+	 * @param hierarchy a snapshot carrying a SyncState
+	 * @return the new SyncState if nothing changed, or null if the hierarchy must be loaded again
+	 */
+	String revalidate(String upn, FolderHierarchy hierarchy);
+}
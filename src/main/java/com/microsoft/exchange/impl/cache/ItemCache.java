@@ -0,0 +1,57 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.impl.cache;
+
+import com.microsoft.exchange.types.ItemType;
+
+/**
+ * Holds full items retrieved with GetItem, keyed by {@link com.microsoft.exchange.types.ItemIdType#getId()},
+ * so an item whose ChangeKey has not moved need not be requested again.
+ * 
+ * Cached items are shared: callers must not modify them.
+ * Implementations must be thread safe.
+ */
+public interface ItemCache {
+
+	/**
+	 * 
+	 * @param id the item id
+	 * @param changeKey the current ChangeKey of the item
+	 * @return the cached item, or null if it is absent or was cached with a different ChangeKey
+	 */
+	ItemType get(String id, String changeKey);
+	
+	/**
+	 * Cache the item, replacing any previous version. Items without an ItemId and ChangeKey are ignored.
+	 * 
+	 * @param item
+	 */
+	void put(ItemType item);
+	
+	/**
+	 * 
+	 * @param id the item id
+	 */
+	void remove(String id);
+	
+	/**
+	 * Discard every entry.
+	 */
+	void clear();
+}
@@ -0,0 +1,178 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.impl.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.Validate;
+
+import com.microsoft.exchange.types.ItemIdType;
+import com.microsoft.exchange.types.ItemType;
+
+/**
+ * In memory {@link ItemCache} holding at most {@link #getMaxEntries()} items, evicting the least recently used.
+ * 
+ * An optional {@link #getDiskTier()} (typically a {@link FileItemCache}) receives every item put here, 
+ * and is consulted on a miss; items found there are promoted back into memory.
+ */
+public class LruItemCache implements ItemCache {
+
+	private final Map<String, ItemType> entries = new LinkedHashMap<String, ItemType>(16, 0.75f, true);
+	private int maxEntries = 10000;
+	private ItemCache diskTier;
+	
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	
+	public LruItemCache() {
+	}
+	
+	/**
+	 * 
+	 * @param maxEntries
+	 */
+	public LruItemCache(int maxEntries) {
+		setMaxEntries(maxEntries);
+	}
+	/**
+	 * @return the maxEntries
+	 */
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+	/**
+	 * @param maxEntries the maximum number of items held in memory
+	 */
+	public void setMaxEntries(int maxEntries) {
+		Validate.isTrue(maxEntries > 0, "maxEntries must be greater than 0");
+		this.maxEntries = maxEntries;
+	}
+	/**
+	 * @return the diskTier, may be null
+	 */
+	public ItemCache getDiskTier() {
+		return diskTier;
+	}
+	/**
+	 * @param diskTier the second level cache, may be null
+	 */
+	public void setDiskTier(ItemCache diskTier) {
+		this.diskTier = diskTier;
+	}
+	/**
+	 * @return the number of items held in memory
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+	/**
+	 * @return the number of lookups answered from memory or the disk tier
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+	/**
+	 * @return the number of lookups that found no current item
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.impl.cache.ItemCache#get(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public ItemType get(String id, String changeKey) {
+		if(id == null || changeKey == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		synchronized (this) {
+			ItemType item = entries.get(id);
+			if(item != null) {
+				if(changeKey.equals(item.getItemId().getChangeKey())) {
+					hits.incrementAndGet();
+					return item;
+				}
+				entries.remove(id);
+			}
+		}
+		ItemType item = diskTier == null ? null : diskTier.get(id, changeKey);
+		if(item == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		putInMemory(id, item);
+		return item;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.impl.cache.ItemCache#put(com.microsoft.exchange.types.ItemType)
+	 */
+	@Override
+	public void put(ItemType item) {
+		ItemIdType itemId = item == null ? null : item.getItemId();
+		if(itemId == null || itemId.getId() == null || itemId.getChangeKey() == null) {
+			return;
+		}
+		putInMemory(itemId.getId(), item);
+		if(diskTier != null) {
+			diskTier.put(item);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.impl.cache.ItemCache#remove(java.lang.String)
+	 */
+	@Override
+	public void remove(String id) {
+		synchronized (this) {
+			entries.remove(id);
+		}
+		if(diskTier != null) {
+			diskTier.remove(id);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.impl.cache.ItemCache#clear()
+	 */
+	@Override
+	public void clear() {
+		synchronized (this) {
+			entries.clear();
+		}
+		if(diskTier != null) {
+			diskTier.clear();
+		}
+	}
+	
+	private synchronized void putInMemory(String id, ItemType item) {
+		entries.put(id, item);
+		Iterator<ItemType> eldest = entries.values().iterator();
+		while(entries.size() > maxEntries && eldest.hasNext()) {
+			eldest.next();
+			eldest.remove();
+		}
+	}
+}
@@ -0,0 +1,61 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.impl.http;
+
+import org.apache.commons.lang.Validate;
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * {@link ConnectionKeepAliveStrategy} that honors the server's Keep-Alive timeout but never keeps 
+ * a connection longer than {@link #getMaxKeepAliveMillis()}.
+ * 
+ * Without a Keep-Alive header HttpClient keeps connections indefinitely, while Exchange and the load balancers
+ * in front of it close idle connections after a few minutes; reusing such a connection fails the request.
+ */
+public class BoundedKeepAliveStrategy implements ConnectionKeepAliveStrategy {
+
+	private final ConnectionKeepAliveStrategy serverStrategy = new DefaultConnectionKeepAliveStrategy();
+	private long maxKeepAliveMillis = 60000L;
+	
+	/**
+	 * @return the maxKeepAliveMillis
+	 */
+	public long getMaxKeepAliveMillis() {
+		return maxKeepAliveMillis;
+	}
+	/**
+	 * @param maxKeepAliveMillis the longest an idle connection is kept for reuse
+	 */
+	public void setMaxKeepAliveMillis(long maxKeepAliveMillis) {
+		Validate.isTrue(maxKeepAliveMillis > 0, "maxKeepAliveMillis must be greater than 0");
+		this.maxKeepAliveMillis = maxKeepAliveMillis;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.apache.http.conn.ConnectionKeepAliveStrategy#getKeepAliveDuration(org.apache.http.HttpResponse, org.apache.http.protocol.HttpContext)
+	 */
+	@Override
+	public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+		long serverDuration = serverStrategy.getKeepAliveDuration(response, context);
+		return serverDuration > 0 ? Math.min(serverDuration, maxKeepAliveMillis) : maxKeepAliveMillis;
+	}
+}
@@ -33,6 +33,7 @@ import org.apache.http.impl.auth.BasicScheme;
 import org.apache.http.impl.auth.DigestScheme;
 import org.apache.http.impl.conn.PoolingClientConnectionManager;
 import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.pool.ConnPoolControl;
 import org.apache.http.protocol.BasicHttpContext;
 import org.apache.http.protocol.HttpContext;
@@ -53,6 +54,7 @@ public class CustomHttpComponentsMessageSender extends
 	// preemptiveAuthScheme set by #afterPropertiesSet if enabled
 	private AuthScheme preemptiveAuthScheme;
 	private Integer defaultMaxPerRouteOverride;
+	private Boolean staleConnectionCheckEnabled;
 	/**
 	 * @return the defaultMaxPerRouteOverride
 	 */
@@ -65,6 +67,22 @@ public class CustomHttpComponentsMessageSender extends
 	public void setDefaultMaxPerRouteOverride(Integer defaultMaxPerRouteOverride) {
 		this.defaultMaxPerRouteOverride = defaultMaxPerRouteOverride;
 	}
+	/**
+	 * @return the staleConnectionCheckEnabled, null if the httpClient's setting is left alone
+	 */
+	public Boolean getStaleConnectionCheckEnabled() {
+		return staleConnectionCheckEnabled;
+	}
+	/**
+	 * The stale check costs a blocking read before every request. It can be turned off when the 
+	 * connection manager evicts idle connections (see {@link InstrumentedClientConnectionManager}) 
+	 * and keep-alive is bounded (see {@link BoundedKeepAliveStrategy}).
+	 * 
+	 * @param staleConnectionCheckEnabled the staleConnectionCheckEnabled to set
+	 */
+	public void setStaleConnectionCheckEnabled(Boolean staleConnectionCheckEnabled) {
+		this.staleConnectionCheckEnabled = staleConnectionCheckEnabled;
+	}
 	/**
 	 * @return the preemptiveAuthEnabled
 	 */
@@ -111,6 +129,9 @@ public class CustomHttpComponentsMessageSender extends
 		if(isPreemptiveAuthEnabled()) {
 			this.preemptiveAuthScheme = identifyScheme(getPreemptiveAuthScope().getScheme());
 		}
+		if(staleConnectionCheckEnabled != null) {
+			HttpConnectionParams.setStaleCheckingEnabled(getHttpClient().getParams(), staleConnectionCheckEnabled);
+		}
 		boolean overrideSuccess = false;
 		if(defaultMaxPerRouteOverride != null) {
 			overrideSuccess = this.overrideDefaultMaxPerRoute(defaultMaxPerRouteOverride);
@@ -121,7 +142,7 @@ public class CustomHttpComponentsMessageSender extends
 		}
 	}
 	protected Integer getMaxTotalConnections() {
-		ClientConnectionManager connectionManager = getHttpClient().getConnectionManager();
+		ClientConnectionManager connectionManager = getConnectionManager();
         if (connectionManager instanceof ThreadSafeClientConnManager) {
         	return ((ThreadSafeClientConnManager) connectionManager).getMaxTotal();
         }else if(connectionManager instanceof PoolingClientConnectionManager){
@@ -131,6 +152,17 @@ public class CustomHttpComponentsMessageSender extends
         
         return null;
 	}
+	/**
+	 * 
+	 * @return the {@link #getHttpClient()}'s {@link ClientConnectionManager}, unwrapped if it is an {@link InstrumentedClientConnectionManager}
+	 */
+	protected ClientConnectionManager getConnectionManager() {
+		ClientConnectionManager connectionManager = getHttpClient().getConnectionManager();
+		if(connectionManager instanceof InstrumentedClientConnectionManager) {
+			return ((InstrumentedClientConnectionManager) connectionManager).getDelegate();
+		}
+		return connectionManager;
+	}
 	/**
 	 * Method to expose {@link ThreadSafeClientConnManager#setDefaultMaxPerRoute(int)} 
 	 * Only sets the value if the {@link #getHttpClient()} is configured with a {@link ThreadSafeClientConnManager}.
@@ -139,7 +171,7 @@ public class CustomHttpComponentsMessageSender extends
 	 * @return true if the property was set
 	 */
 	protected boolean overrideDefaultMaxPerRoute(int defaultMaxPerRoute) {
-		ClientConnectionManager connectionManager = getHttpClient().getConnectionManager();
+		ClientConnectionManager connectionManager = getConnectionManager();
 		if(connectionManager instanceof ThreadSafeClientConnManager) {
 			((ThreadSafeClientConnManager) connectionManager).setDefaultMaxPerRoute(defaultMaxPerRoute);
 			return true;
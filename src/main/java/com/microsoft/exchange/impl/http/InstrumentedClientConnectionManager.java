@@ -0,0 +1,358 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.impl.http;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * {@link ClientConnectionManager} that adds to a {@link PoolingClientConnectionManager}:
+ * <ul>
+ * <li>per host connection limits ({@link #getMaxPerHost()}), applied to each route the first time it is used, 
+ * so they also cover EWS hosts found by autodiscover,</li>
+ * <li>a background thread closing expired connections and connections idle longer than {@link #getIdleTimeoutMillis()},
+ * so a connection the server has already dropped is not handed out,</li>
+ * <li>pool statistics, including how long requests waited to lease a connection, exported over JMX when the 
+ * Spring context has an annotation driven MBeanExporter.</li>
+ * </ul>
+ */
+@ManagedResource(objectName="com.microsoft.exchange:type=ConnectionPool,name=ews", description="EWS HTTP connection pool")
+public class InstrumentedClientConnectionManager implements ClientConnectionManager, InitializingBean, DisposableBean {
+
+	protected final Log log = LogFactory.getLog(this.getClass());
+	
+	private final PoolingClientConnectionManager delegate;
+	private Map<String, Integer> maxPerHost = new HashMap<String, Integer>();
+	private long idleTimeoutMillis = 60000L;
+	private long evictionIntervalMillis = 5000L;
+	
+	private final Set<HttpRoute> configuredRoutes = Collections.newSetFromMap(new ConcurrentHashMap<HttpRoute, Boolean>());
+	private volatile ScheduledExecutorService evictionExecutor;
+	private boolean destroyed = false;
+	
+	private final AtomicLong leases = new AtomicLong();
+	private final AtomicLong leaseWaitNanos = new AtomicLong();
+	private final AtomicLong maxLeaseWaitNanos = new AtomicLong();
+	private final AtomicLong leaseTimeouts = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	
+	/**
+	 * 
+	 * @param delegate the pool
+	 */
+	public InstrumentedClientConnectionManager(PoolingClientConnectionManager delegate) {
+		Validate.notNull(delegate, "delegate cannot be null");
+		this.delegate = delegate;
+	}
+	/**
+	 * @return the underlying pool
+	 */
+	public PoolingClientConnectionManager getDelegate() {
+		return delegate;
+	}
+	/**
+	 * @return the maxPerHost
+	 */
+	public Map<String, Integer> getMaxPerHost() {
+		return maxPerHost;
+	}
+	/**
+	 * @param maxPerHost connection limits keyed by host name, overriding the pool's defaultMaxPerRoute
+	 */
+	public void setMaxPerHost(Map<String, Integer> maxPerHost) {
+		Map<String, Integer> copy = new HashMap<String, Integer>();
+		for(Map.Entry<String, Integer> entry : maxPerHost.entrySet()) {
+			copy.put(entry.getKey().toLowerCase(), entry.getValue());
+		}
+		this.maxPerHost = copy;
+		this.configuredRoutes.clear();
+	}
+	/**
+	 * @return the idleTimeoutMillis
+	 */
+	public long getIdleTimeoutMillis() {
+		return idleTimeoutMillis;
+	}
+	/**
+	 * @param idleTimeoutMillis how long a connection may sit unused in the pool before it is closed
+	 */
+	public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+		Validate.isTrue(idleTimeoutMillis > 0, "idleTimeoutMillis must be greater than 0");
+		this.idleTimeoutMillis = idleTimeoutMillis;
+	}
+	/**
+	 * @return the evictionIntervalMillis
+	 */
+	public long getEvictionIntervalMillis() {
+		return evictionIntervalMillis;
+	}
+	/**
+	 * @param evictionIntervalMillis the delay between runs of the eviction thread
+	 */
+	public void setEvictionIntervalMillis(long evictionIntervalMillis) {
+		Validate.isTrue(evictionIntervalMillis > 0, "evictionIntervalMillis must be greater than 0");
+		this.evictionIntervalMillis = evictionIntervalMillis;
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.springframework.beans.factory.InitializingBean#afterPropertiesSet()
+	 */
+	@Override
+	public void afterPropertiesSet() {
+		initialize();
+	}
+	
+	/**
+	 * Start the eviction thread. Invoked by {@link #afterPropertiesSet()}, and safe to call more than once.
+	 */
+	public synchronized void initialize() {
+		if(evictionExecutor == null && !destroyed) {
+			CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("ews-connection-evictor-");
+			threadFactory.setDaemon(true);
+			ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, threadFactory);
+			executor.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					evictConnections();
+				}
+			}, evictionIntervalMillis, evictionIntervalMillis, TimeUnit.MILLISECONDS);
+			this.evictionExecutor = executor;
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.springframework.beans.factory.DisposableBean#destroy()
+	 */
+	@Override
+	public void destroy() {
+		shutdown();
+	}
+	
+	/**
+	 * Close expired connections and those idle longer than {@link #getIdleTimeoutMillis()}.
+	 */
+	@ManagedOperation(description="Close expired and idle connections now")
+	public void evictConnections() {
+		try {
+			delegate.closeExpiredConnections();
+			delegate.closeIdleConnections(idleTimeoutMillis, TimeUnit.MILLISECONDS);
+			evictions.incrementAndGet();
+		} catch (RuntimeException e) {
+			log.warn("failed to evict idle connections", e);
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.apache.http.conn.ClientConnectionManager#getSchemeRegistry()
+	 */
+	@Override
+	public SchemeRegistry getSchemeRegistry() {
+		return delegate.getSchemeRegistry();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.apache.http.conn.ClientConnectionManager#requestConnection(org.apache.http.conn.routing.HttpRoute, java.lang.Object)
+	 */
+	@Override
+	public ClientConnectionRequest requestConnection(HttpRoute route, Object state) {
+		configureRoute(route);
+		final ClientConnectionRequest request = delegate.requestConnection(route, state);
+		return new ClientConnectionRequest() {
+			@Override
+			public ManagedClientConnection getConnection(long timeout, TimeUnit tunit) throws InterruptedException, ConnectionPoolTimeoutException {
+				long start = System.nanoTime();
+				try {
+					ManagedClientConnection connection = request.getConnection(timeout, tunit);
+					recordLease(System.nanoTime() - start);
+					return connection;
+				} catch (ConnectionPoolTimeoutException e) {
+					leaseTimeouts.incrementAndGet();
+					throw e;
+				}
+			}
+			@Override
+			public void abortRequest() {
+				request.abortRequest();
+			}
+		};
+	}
+
+	/* (non-Javadoc)
+	 * @see org.apache.http.conn.ClientConnectionManager#releaseConnection(org.apache.http.conn.ManagedClientConnection, long, java.util.concurrent.TimeUnit)
+	 */
+	@Override
+	public void releaseConnection(ManagedClientConnection conn, long validDuration, TimeUnit timeUnit) {
+		delegate.releaseConnection(conn, validDuration, timeUnit);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.apache.http.conn.ClientConnectionManager#closeIdleConnections(long, java.util.concurrent.TimeUnit)
+	 */
+	@Override
+	public void closeIdleConnections(long idletime, TimeUnit tunit) {
+		delegate.closeIdleConnections(idletime, tunit);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.apache.http.conn.ClientConnectionManager#closeExpiredConnections()
+	 */
+	@Override
+	public void closeExpiredConnections() {
+		delegate.closeExpiredConnections();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.apache.http.conn.ClientConnectionManager#shutdown()
+	 */
+	@Override
+	public void shutdown() {
+		synchronized (this) {
+			destroyed = true;
+			if(evictionExecutor != null) {
+				evictionExecutor.shutdownNow();
+				evictionExecutor = null;
+			}
+		}
+		delegate.shutdown();
+	}
+	
+	/**
+	 * @return connections currently in use
+	 */
+	@ManagedAttribute(description="Connections currently leased")
+	public int getLeased() {
+		return delegate.getTotalStats().getLeased();
+	}
+	/**
+	 * @return requests waiting for a connection
+	 */
+	@ManagedAttribute(description="Requests waiting for a connection")
+	public int getPending() {
+		return delegate.getTotalStats().getPending();
+	}
+	/**
+	 * @return idle connections in the pool
+	 */
+	@ManagedAttribute(description="Idle connections available for lease")
+	public int getAvailable() {
+		return delegate.getTotalStats().getAvailable();
+	}
+	/**
+	 * @return the maximum number of connections
+	 */
+	@ManagedAttribute(description="Maximum total connections")
+	public int getMaxTotal() {
+		return delegate.getMaxTotal();
+	}
+	/**
+	 * @return the number of connections leased since startup
+	 */
+	@ManagedAttribute(description="Connections leased since startup")
+	public long getLeaseCount() {
+		return leases.get();
+	}
+	/**
+	 * @return the average time spent waiting for a connection, in milliseconds
+	 */
+	@ManagedAttribute(description="Average wait to lease a connection (ms)")
+	public double getAverageLeaseWaitMillis() {
+		long count = leases.get();
+		return count == 0 ? 0 : leaseWaitNanos.get() / 1000000.0 / count;
+	}
+	/**
+	 * @return the longest time spent waiting for a connection, in milliseconds
+	 */
+	@ManagedAttribute(description="Longest wait to lease a connection (ms)")
+	public double getMaxLeaseWaitMillis() {
+		return maxLeaseWaitNanos.get() / 1000000.0;
+	}
+	/**
+	 * @return the number of requests that gave up waiting for a connection because the pool was exhausted
+	 */
+	@ManagedAttribute(description="Lease requests that timed out on an exhausted pool")
+	public long getLeaseTimeoutCount() {
+		return leaseTimeouts.get();
+	}
+	/**
+	 * @return the number of completed eviction runs
+	 */
+	@ManagedAttribute(description="Completed idle connection eviction runs")
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+	/**
+	 * 
+	 * @param route
+	 * @return the pool statistics for the route
+	 */
+	public PoolStats getStats(HttpRoute route) {
+		return delegate.getStats(route);
+	}
+	
+	/**
+	 * Apply {@link #getMaxPerHost()} to the route, once.
+	 * 
+	 * @param route
+	 */
+	protected void configureRoute(HttpRoute route) {
+		if(maxPerHost.isEmpty() || configuredRoutes.contains(route)) {
+			return;
+		}
+		Integer max = maxPerHost.get(route.getTargetHost().getHostName().toLowerCase());
+		if(max != null) {
+			delegate.setMaxPerRoute(route, max);
+			log.debug("maxPerRoute for "+route+" set to "+max);
+		}
+		configuredRoutes.add(route);
+	}
+	
+	private void recordLease(long waitNanos) {
+		leases.incrementAndGet();
+		leaseWaitNanos.addAndGet(waitNanos);
+		long max = maxLeaseWaitNanos.get();
+		while(waitNanos > max && !maxLeaseWaitNanos.compareAndSet(max, waitNanos)) {
+			max = maxLeaseWaitNanos.get();
+		}
+	}
+}
@@ -0,0 +1,124 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.impl.notification;
+
+import java.util.Date;
+
+import com.microsoft.exchange.types.FolderIdType;
+import com.microsoft.exchange.types.ItemIdType;
+import com.microsoft.exchange.types.NotificationEventTypeType;
+
+/**
+ * An item level event read from a pull subscription by {@link PullSubscriptionManager}.
+ * 
+ * Folder level events (those without an ItemId) are not reported. 
+ */
+public final class ItemChangeEvent {
+
+	private final String upn;
+	private final NotificationEventTypeType eventType;
+	private final ItemIdType itemId;
+	private final FolderIdType parentFolderId;
+	private final ItemIdType oldItemId;
+	private final FolderIdType oldParentFolderId;
+	private final Date timeStamp;
+	private final String watermark;
+	
+	/**
+	 * @param upn
+	 * @param eventType
+	 * @param itemId
+	 * @param parentFolderId
+	 * @param oldItemId
+	 * @param oldParentFolderId
+	 * @param timeStamp
+	 * @param watermark
+	 */
+	public ItemChangeEvent(String upn, NotificationEventTypeType eventType,
+			ItemIdType itemId, FolderIdType parentFolderId,
+			ItemIdType oldItemId, FolderIdType oldParentFolderId,
+			Date timeStamp, String watermark) {
+		this.upn = upn;
+		this.eventType = eventType;
+		this.itemId = itemId;
+		this.parentFolderId = parentFolderId;
+		this.oldItemId = oldItemId;
+		this.oldParentFolderId = oldParentFolderId;
+		this.timeStamp = timeStamp;
+		this.watermark = watermark;
+	}
+	/**
+	 * @return the mailbox the event was read from
+	 */
+	public String getUpn() {
+		return upn;
+	}
+	/**
+	 * @return the eventType
+	 */
+	public NotificationEventTypeType getEventType() {
+		return eventType;
+	}
+	/**
+	 * @return the itemId; for moved and copied events, the id of the item in its new location
+	 */
+	public ItemIdType getItemId() {
+		return itemId;
+	}
+	/**
+	 * @return the parentFolderId
+	 */
+	public FolderIdType getParentFolderId() {
+		return parentFolderId;
+	}
+	/**
+	 * @return the previous item id of a moved or copied item, otherwise null
+	 */
+	public ItemIdType getOldItemId() {
+		return oldItemId;
+	}
+	/**
+	 * @return the previous parent folder of a moved or copied item, otherwise null
+	 */
+	public FolderIdType getOldParentFolderId() {
+		return oldParentFolderId;
+	}
+	/**
+	 * @return the time the event occurred, may be null
+	 */
+	public Date getTimeStamp() {
+		return timeStamp;
+	}
+	/**
+	 * @return the watermark of this event
+	 */
+	public String getWatermark() {
+		return watermark;
+	}
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "ItemChangeEvent [upn=" + upn + ", eventType=" + eventType
+				+ ", itemId=" + (itemId == null ? null : itemId.getId())
+				+ ", oldItemId=" + (oldItemId == null ? null : oldItemId.getId())
+				+ ", timeStamp=" + timeStamp + "]";
+	}
+}
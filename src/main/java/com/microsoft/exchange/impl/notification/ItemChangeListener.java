@@ -0,0 +1,46 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.impl.notification;
+
+import java.util.List;
+
+/**
+ * Receives the item changes read from pull subscriptions held by a {@link PullSubscriptionManager}.
+ * 
+ * Callbacks run on the manager's polling threads, one mailbox at a time; implementations 
+ * should hand off any slow work rather than delay the polling of other mailboxes.
+ */
+public interface ItemChangeListener {
+
+	/**
+	 * 
+	 * @param upn the mailbox
+	 * @param events the item events of one GetEvents response, in the order Exchange reported them; never empty
+	 */
+	void onItemChanges(String upn, List<ItemChangeEvent> events);
+	
+	/**
+	 * Called when a subscription could not be resumed from its last watermark and was replaced by a new one.
+	 * Changes made in between were not reported; the listener should fall back to a full synchronization
+	 * of the mailbox (for example {@link com.microsoft.exchange.impl.BaseExchangeCalendarDataDao#syncFolderItems(String, com.microsoft.exchange.types.BaseFolderIdType)}).
+	 * 
+	 * @param upn the mailbox
+	 */
+	void onEventsMissed(String upn);
+}
@@ -0,0 +1,694 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.impl.notification;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.bind.JAXBElement;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import com.microsoft.exchange.ExchangeRequestContext;
+import com.microsoft.exchange.ExchangeRequestFactory;
+import com.microsoft.exchange.ExchangeWebServices;
+import com.microsoft.exchange.exception.ExchangeRuntimeException;
+import com.microsoft.exchange.impl.ExchangeRequestContextHolder;
+import com.microsoft.exchange.impl.retry.ExponentialBackoff;
+import com.microsoft.exchange.impl.sync.SyncStateStore;
+import com.microsoft.exchange.messages.GetEvents;
+import com.microsoft.exchange.messages.GetEventsResponse;
+import com.microsoft.exchange.messages.GetEventsResponseMessageType;
+import com.microsoft.exchange.messages.ResponseCodeType;
+import com.microsoft.exchange.messages.ResponseMessageType;
+import com.microsoft.exchange.messages.Subscribe;
+import com.microsoft.exchange.messages.SubscribeResponse;
+import com.microsoft.exchange.messages.SubscribeResponseMessageType;
+import com.microsoft.exchange.messages.UnsubscribeResponse;
+import com.microsoft.exchange.types.BaseFolderIdType;
+import com.microsoft.exchange.types.BaseNotificationEventType;
+import com.microsoft.exchange.types.BaseObjectChangedEventType;
+import com.microsoft.exchange.types.DistinguishedFolderIdNameType;
+import com.microsoft.exchange.types.DistinguishedFolderIdType;
+import com.microsoft.exchange.types.MovedCopiedEventType;
+import com.microsoft.exchange.types.NotificationEventTypeType;
+import com.microsoft.exchange.types.NotificationType;
+
+/**
+ * Holds an EWS pull subscription for each registered mailbox and reports item changes to {@link ItemChangeListener}s.
+ * 
+ * Every mailbox is a task on one small {@link ScheduledExecutorService}: the task issues a single GetEvents 
+ * request and reschedules itself, immediately when Exchange reports MoreEvents, after {@link #getPollIntervalMillis()} 
+ * otherwise, and after an {@link ExponentialBackoff} delay when the request fails. No thread is held between polls,
+ * so thousands of mailboxes share {@link #getPoolSize()} threads, and at most one request per mailbox is ever in flight.
+ * 
+ * Subscriptions that Exchange expires or forgets are re-created from the last watermark, so no events are lost;
+ * only when that watermark is rejected as well are listeners told via {@link ItemChangeListener#onEventsMissed(String)}.
+ * Watermarks are saved to the optional {@link SyncStateStore} after the listeners have seen the events they cover, 
+ * which lets a restarted manager resume each mailbox where it left off (delivery is at least once).
+ * 
+ * {@link #destroy()} stops polling without unsubscribing; Exchange discards the subscriptions after {@link #getSubscriptionTimeoutMinutes()}.
+ */
+public class PullSubscriptionManager implements InitializingBean, DisposableBean {
+
+	/**
+	 * The folderKey watermarks are stored under in the {@link SyncStateStore}.
+	 */
+	public static final String WATERMARK_KEY = "pull-subscription-watermark";
+	
+	private static final Random random = new Random();
+	
+	protected final Log log = LogFactory.getLog(this.getClass());
+	
+	private final ConcurrentMap<String, MailboxSubscription> subscriptions = new ConcurrentHashMap<String, MailboxSubscription>();
+	private final List<ItemChangeListener> listeners = new CopyOnWriteArrayList<ItemChangeListener>();
+	
+	private ExchangeWebServices webServices;
+	private ExchangeRequestFactory requestFactory = new ExchangeRequestFactory();
+	private SyncStateStore watermarkStore;
+	private List<? extends BaseFolderIdType> folderIds = Collections.singletonList(distinguishedFolderId(DistinguishedFolderIdNameType.CALENDAR));
+	private List<NotificationEventTypeType> eventTypes = Arrays.asList(NotificationEventTypeType.CREATED_EVENT, 
+			NotificationEventTypeType.MODIFIED_EVENT, NotificationEventTypeType.DELETED_EVENT, 
+			NotificationEventTypeType.MOVED_EVENT, NotificationEventTypeType.COPIED_EVENT);
+	private int poolSize = 4;
+	private long pollIntervalMillis = 10000L;
+	private int subscriptionTimeoutMinutes = 30;
+	private ExponentialBackoff failureBackoff = new ExponentialBackoff(5000L, 300000L, Integer.MAX_VALUE);
+	
+	private volatile ScheduledExecutorService scheduledExecutorService;
+	private boolean ownsScheduledExecutorService = false;
+	private boolean destroyed = false;
+	
+	private final AtomicLong subscribeRequests = new AtomicLong();
+	private final AtomicLong getEventsRequests = new AtomicLong();
+	private final AtomicLong eventsDispatched = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	
+	/**
+	 * @return the webServices
+	 */
+	public ExchangeWebServices getWebServices() {
+		return webServices;
+	}
+	/**
+	 * @param webServices the webServices to set
+	 */
+	public void setWebServices(ExchangeWebServices webServices) {
+		this.webServices = webServices;
+	}
+	/**
+	 * @return the requestFactory
+	 */
+	public ExchangeRequestFactory getRequestFactory() {
+		return requestFactory;
+	}
+	/**
+	 * @param requestFactory the requestFactory to set
+	 */
+	public void setRequestFactory(ExchangeRequestFactory requestFactory) {
+		this.requestFactory = requestFactory;
+	}
+	/**
+	 * @return the watermarkStore, may be null
+	 */
+	public SyncStateStore getWatermarkStore() {
+		return watermarkStore;
+	}
+	/**
+	 * @param watermarkStore where watermarks are persisted between restarts; null to keep them in memory only
+	 */
+	public void setWatermarkStore(SyncStateStore watermarkStore) {
+		this.watermarkStore = watermarkStore;
+	}
+	/**
+	 * @return the folders subscribed to in each mailbox
+	 */
+	public List<? extends BaseFolderIdType> getFolderIds() {
+		return folderIds;
+	}
+	/**
+	 * @param folderIds the folders to subscribe to in each mailbox; defaults to the calendar
+	 */
+	public void setFolderIds(List<? extends BaseFolderIdType> folderIds) {
+		Validate.notEmpty(folderIds, "folderIds cannot be empty");
+		this.folderIds = new ArrayList<BaseFolderIdType>(folderIds);
+	}
+	/**
+	 * @return the eventTypes
+	 */
+	public List<NotificationEventTypeType> getEventTypes() {
+		return eventTypes;
+	}
+	/**
+	 * @param eventTypes the eventTypes to set
+	 */
+	public void setEventTypes(List<NotificationEventTypeType> eventTypes) {
+		Validate.notEmpty(eventTypes, "eventTypes cannot be empty");
+		this.eventTypes = new ArrayList<NotificationEventTypeType>(eventTypes);
+	}
+	/**
+	 * @return the listeners
+	 */
+	public List<ItemChangeListener> getListeners() {
+		return Collections.unmodifiableList(listeners);
+	}
+	/**
+	 * @param listeners replaces the current listeners
+	 */
+	public void setListeners(List<ItemChangeListener> listeners) {
+		this.listeners.clear();
+		this.listeners.addAll(listeners);
+	}
+	/**
+	 * @param listener
+	 */
+	public void addListener(ItemChangeListener listener) {
+		Validate.notNull(listener, "listener cannot be null");
+		listeners.add(listener);
+	}
+	/**
+	 * @param listener
+	 */
+	public void removeListener(ItemChangeListener listener) {
+		listeners.remove(listener);
+	}
+	/**
+	 * @return the number of polling threads
+	 */
+	public int getPoolSize() {
+		return poolSize;
+	}
+	/**
+	 * @param poolSize the poolSize to set
+	 */
+	public void setPoolSize(int poolSize) {
+		Validate.isTrue(poolSize > 0, "poolSize must be greater than 0");
+		this.poolSize = poolSize;
+	}
+	/**
+	 * @return the delay between GetEvents requests for a mailbox that has no pending events
+	 */
+	public long getPollIntervalMillis() {
+		return pollIntervalMillis;
+	}
+	/**
+	 * @param pollIntervalMillis the pollIntervalMillis to set
+	 */
+	public void setPollIntervalMillis(long pollIntervalMillis) {
+		Validate.isTrue(pollIntervalMillis > 0, "pollIntervalMillis must be greater than 0");
+		this.pollIntervalMillis = pollIntervalMillis;
+	}
+	/**
+	 * @return the subscriptionTimeoutMinutes
+	 */
+	public int getSubscriptionTimeoutMinutes() {
+		return subscriptionTimeoutMinutes;
+	}
+	/**
+	 * @param subscriptionTimeoutMinutes minutes without a GetEvents request before Exchange discards a subscription, 1 to 1440
+	 */
+	public void setSubscriptionTimeoutMinutes(int subscriptionTimeoutMinutes) {
+		Validate.isTrue(subscriptionTimeoutMinutes > 0 && subscriptionTimeoutMinutes <= 1440, "subscriptionTimeoutMinutes must be between 1 and 1440");
+		this.subscriptionTimeoutMinutes = subscriptionTimeoutMinutes;
+	}
+	/**
+	 * @return the failureBackoff
+	 */
+	public ExponentialBackoff getFailureBackoff() {
+		return failureBackoff;
+	}
+	/**
+	 * @param failureBackoff the delay before polling a mailbox whose last request failed
+	 */
+	public void setFailureBackoff(ExponentialBackoff failureBackoff) {
+		Validate.notNull(failureBackoff, "failureBackoff cannot be null");
+		this.failureBackoff = failureBackoff;
+	}
+	/**
+	 * Use an existing {@link ScheduledExecutorService} rather than creating one; it is not shut down by {@link #destroy()}.
+	 * 
+	 * @param scheduledExecutorService the scheduledExecutorService to set
+	 */
+	public void setScheduledExecutorService(ScheduledExecutorService scheduledExecutorService) {
+		this.scheduledExecutorService = scheduledExecutorService;
+	}
+	/**
+	 * @return the number of Subscribe requests sent
+	 */
+	public long getSubscribeCount() {
+		return subscribeRequests.get();
+	}
+	/**
+	 * @return the number of GetEvents requests sent
+	 */
+	public long getGetEventsCount() {
+		return getEventsRequests.get();
+	}
+	/**
+	 * @return the number of {@link ItemChangeEvent}s passed to listeners
+	 */
+	public long getEventCount() {
+		return eventsDispatched.get();
+	}
+	/**
+	 * @return the number of Subscribe or GetEvents requests that failed
+	 */
+	public long getFailureCount() {
+		return failures.get();
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.springframework.beans.factory.InitializingBean#afterPropertiesSet()
+	 */
+	@Override
+	public void afterPropertiesSet() {
+		initialize();
+	}
+	
+	/**
+	 * Create the default {@link ScheduledExecutorService} if one was not provided.
+	 * Invoked by {@link #afterPropertiesSet()}, and safe to call more than once.
+	 */
+	public synchronized void initialize() {
+		Validate.notNull(webServices, "webServices property cannot be null");
+		if(scheduledExecutorService == null && !destroyed) {
+			CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("ews-notification-");
+			threadFactory.setDaemon(true);
+			this.scheduledExecutorService = new ScheduledThreadPoolExecutor(poolSize, threadFactory);
+			this.ownsScheduledExecutorService = true;
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.springframework.beans.factory.DisposableBean#destroy()
+	 */
+	@Override
+	public synchronized void destroy() {
+		destroyed = true;
+		for(MailboxSubscription subscription : subscriptions.values()) {
+			subscription.cancel();
+		}
+		subscriptions.clear();
+		if(ownsScheduledExecutorService && scheduledExecutorService != null) {
+			scheduledExecutorService.shutdownNow();
+			ownsScheduledExecutorService = false;
+		}
+		scheduledExecutorService = null;
+	}
+	
+	/**
+	 * Start watching the mailbox. Returns immediately; the subscription is created by the first poll,
+	 * resuming from the stored watermark if there is one. 
+	 * 
+	 * @param upn
+	 * @return false if the mailbox was already subscribed
+	 */
+	public boolean subscribe(String upn) {
+		Validate.isTrue(StringUtils.isNotBlank(upn), "upn argument cannot be blank");
+		initialize();
+		MailboxSubscription subscription = new MailboxSubscription(upn, 
+				watermarkStore == null ? null : watermarkStore.getSyncState(upn, WATERMARK_KEY));
+		if(subscriptions.putIfAbsent(key(upn), subscription) != null) {
+			return false;
+		}
+		// spread the first polls of a large batch of mailboxes over one interval
+		schedule(subscription, (long) (random.nextDouble() * pollIntervalMillis));
+		return true;
+	}
+	
+	/**
+	 * Stop watching the mailbox and forget its watermark. The Unsubscribe request is sent asynchronously.
+	 * 
+	 * @param upn
+	 * @return false if the mailbox was not subscribed
+	 */
+	public boolean unsubscribe(String upn) {
+		Validate.isTrue(StringUtils.isNotBlank(upn), "upn argument cannot be blank");
+		final MailboxSubscription subscription = subscriptions.remove(key(upn));
+		if(subscription == null) {
+			return false;
+		}
+		subscription.cancel();
+		if(watermarkStore != null) {
+			watermarkStore.removeSyncState(upn, WATERMARK_KEY);
+		}
+		ScheduledExecutorService scheduler = this.scheduledExecutorService;
+		if(scheduler != null) {
+			try {
+				scheduler.execute(new Runnable() {
+					@Override
+					public void run() {
+						subscription.close();
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				log.debug("unsubscribe("+upn+") rejected, subscription left to expire");
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * 
+	 * @param upn
+	 * @return true if the mailbox is being watched
+	 */
+	public boolean isSubscribed(String upn) {
+		return subscriptions.containsKey(key(upn));
+	}
+	
+	/**
+	 * 
+	 * @return the mailboxes being watched
+	 */
+	public Set<String> getSubscribedMailboxes() {
+		return Collections.unmodifiableSet(subscriptions.keySet());
+	}
+	
+	/**
+	 * 
+	 * @param upn
+	 * @return the watermark of the last event delivered for the mailbox, or null
+	 */
+	public String getWatermark(String upn) {
+		MailboxSubscription subscription = subscriptions.get(key(upn));
+		return subscription == null ? null : subscription.watermark;
+	}
+	
+	/**
+	 * 
+	 * @param subscription
+	 * @param delay
+	 */
+	protected void schedule(MailboxSubscription subscription, long delay) {
+		ScheduledExecutorService scheduler = this.scheduledExecutorService;
+		if(scheduler == null || subscription.cancelled) {
+			return;
+		}
+		try {
+			subscription.future = scheduler.schedule(subscription, delay, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			log.warn("failed to schedule poll for "+subscription.upn+", executor is shut down");
+		}
+	}
+	
+	/**
+	 * Pass the events to every listener; a listener that throws does not prevent delivery to the others.
+	 * 
+	 * @param upn
+	 * @param events
+	 */
+	protected void dispatch(String upn, List<ItemChangeEvent> events) {
+		eventsDispatched.addAndGet(events.size());
+		for(ItemChangeListener listener : listeners) {
+			try {
+				listener.onItemChanges(upn, events);
+			} catch (RuntimeException e) {
+				log.error("listener "+listener+" failed on "+events.size()+" events for "+upn, e);
+			}
+		}
+	}
+	
+	/**
+	 * 
+	 * @param upn
+	 */
+	protected void dispatchEventsMissed(String upn) {
+		for(ItemChangeListener listener : listeners) {
+			try {
+				listener.onEventsMissed(upn);
+			} catch (RuntimeException e) {
+				log.error("listener "+listener+" failed onEventsMissed for "+upn, e);
+			}
+		}
+	}
+	
+	/**
+	 * 
+	 * @param upn
+	 * @param notification
+	 * @return the item level events in the notification
+	 */
+	protected static List<ItemChangeEvent> toItemChangeEvents(String upn, NotificationType notification) {
+		List<ItemChangeEvent> events = new ArrayList<ItemChangeEvent>();
+		for(JAXBElement<? extends BaseNotificationEventType> element : notification.getCopiedEventsAndCreatedEventsAndDeletedEvents()) {
+			BaseNotificationEventType value = element.getValue();
+			if(!(value instanceof BaseObjectChangedEventType)) {
+				// StatusEvent
+				continue;
+			}
+			BaseObjectChangedEventType changed = (BaseObjectChangedEventType) value;
+			if(changed.getItemId() == null) {
+				continue;
+			}
+			NotificationEventTypeType eventType;
+			try {
+				eventType = NotificationEventTypeType.fromValue(element.getName().getLocalPart());
+			} catch (IllegalArgumentException e) {
+				continue;
+			}
+			MovedCopiedEventType movedCopied = value instanceof MovedCopiedEventType ? (MovedCopiedEventType) value : null;
+			events.add(new ItemChangeEvent(upn, eventType, changed.getItemId(), changed.getParentFolderId(), 
+					movedCopied == null ? null : movedCopied.getOldItemId(), 
+					movedCopied == null ? null : movedCopied.getOldParentFolderId(),
+					changed.getTimeStamp() == null ? null : changed.getTimeStamp().toGregorianCalendar().getTime(),
+					changed.getWatermark()));
+		}
+		return events;
+	}
+	
+	/**
+	 * 
+	 * @param upn
+	 * @return the key for the subscriptions map
+	 */
+	protected static String key(String upn) {
+		return upn.toLowerCase();
+	}
+	
+	private static DistinguishedFolderIdType distinguishedFolderId(DistinguishedFolderIdNameType name) {
+		DistinguishedFolderIdType folderId = new DistinguishedFolderIdType();
+		folderId.setId(name);
+		return folderId;
+	}
+	
+	private static <T extends ResponseMessageType> T firstMessage(List<JAXBElement<? extends ResponseMessageType>> elements, Class<T> type) {
+		for(JAXBElement<? extends ResponseMessageType> element : elements) {
+			if(type.isInstance(element.getValue())) {
+				return type.cast(element.getValue());
+			}
+		}
+		throw new ExchangeRuntimeException("response without a "+type.getSimpleName());
+	}
+	
+	private static boolean isSubscriptionLost(ResponseCodeType responseCode) {
+		return ResponseCodeType.ERROR_SUBSCRIPTION_NOT_FOUND.equals(responseCode)
+				|| ResponseCodeType.ERROR_EXPIRED_SUBSCRIPTION.equals(responseCode)
+				|| ResponseCodeType.ERROR_INVALID_SUBSCRIPTION.equals(responseCode)
+				|| ResponseCodeType.ERROR_SUBSCRIPTION_UNSUBSCRIBED.equals(responseCode);
+	}
+	
+	/**
+	 * The state of one mailbox, and the task that polls it.
+	 * {@link #run()} and {@link #close()} are synchronized so a cancelled subscription cannot be re-created behind an Unsubscribe.
+	 */
+	protected class MailboxSubscription implements Runnable {
+		private final String upn;
+		private volatile String subscriptionId;
+		private volatile String watermark;
+		private volatile boolean cancelled = false;
+		private volatile ScheduledFuture<?> future;
+		private int consecutiveFailures = 0;
+		
+		MailboxSubscription(String upn, String watermark) {
+			this.upn = upn;
+			this.watermark = watermark;
+		}
+		
+		/* (non-Javadoc)
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public synchronized void run() {
+			if(cancelled) {
+				return;
+			}
+			long delay;
+			ExchangeRequestContextHolder.bind(ExchangeRequestContext.forPrincipalName(upn));
+			try {
+				boolean moreEvents = subscriptionId == null ? subscribe() : getEvents();
+				consecutiveFailures = 0;
+				delay = moreEvents ? 0L : pollIntervalMillis;
+			} catch (RuntimeException e) {
+				failures.incrementAndGet();
+				delay = failureBackoff.getDelay(++consecutiveFailures);
+				if(delay < 0) {
+					delay = failureBackoff.getMaxDelayMillis();
+				}
+				log.warn("poll for "+upn+" failed ("+consecutiveFailures+" consecutive), retrying in "+delay+"ms: "+e.getMessage());
+			} finally {
+				ExchangeRequestContextHolder.clear();
+			}
+			schedule(this, delay);
+		}
+		
+		/**
+		 * 
+		 * @return true to poll again without waiting
+		 */
+		private boolean subscribe() {
+			Subscribe request = requestFactory.constructPullSubscription(folderIds, eventTypes, watermark, subscriptionTimeoutMinutes);
+			subscribeRequests.incrementAndGet();
+			SubscribeResponse response = webServices.subscribe(request);
+			SubscribeResponseMessageType message = firstMessage(response.getResponseMessages().getCreateItemResponseMessagesAndDeleteItemResponseMessagesAndGetItemResponseMessages(), SubscribeResponseMessageType.class);
+			if(ResponseCodeType.NO_ERROR.equals(message.getResponseCode())) {
+				this.subscriptionId = message.getSubscriptionId();
+				if(watermark == null) {
+					// a new subscription starts at the watermark Exchange hands back
+					updateWatermark(message.getWatermark());
+				}
+				log.debug("subscribed "+upn);
+				return true;
+			}
+			if(watermark != null && ResponseCodeType.ERROR_INVALID_WATERMARK.equals(message.getResponseCode())) {
+				log.warn("watermark for "+upn+" rejected ("+message.getResponseCode()+"), starting a new subscription");
+				updateWatermark(null);
+				dispatchEventsMissed(upn);
+				return true;
+			}
+			throw new ExchangeRuntimeException("Subscribe for "+upn+" failed: "+message.getResponseCode()+" "+message.getMessageText());
+		}
+		
+		/**
+		 * 
+		 * @return true if Exchange has more events pending
+		 */
+		private boolean getEvents() {
+			GetEvents request = requestFactory.constructGetEvents(subscriptionId, watermark);
+			getEventsRequests.incrementAndGet();
+			GetEventsResponse response = webServices.getEvents(request);
+			GetEventsResponseMessageType message = firstMessage(response.getResponseMessages().getCreateItemResponseMessagesAndDeleteItemResponseMessagesAndGetItemResponseMessages(), GetEventsResponseMessageType.class);
+			ResponseCodeType responseCode = message.getResponseCode();
+			if(isSubscriptionLost(responseCode)) {
+				log.info("subscription for "+upn+" lost ("+responseCode+"), resubscribing from the last watermark");
+				this.subscriptionId = null;
+				return true;
+			}
+			if(ResponseCodeType.ERROR_INVALID_WATERMARK.equals(responseCode)) {
+				log.warn("watermark for "+upn+" rejected, starting a new subscription");
+				this.subscriptionId = null;
+				updateWatermark(null);
+				dispatchEventsMissed(upn);
+				return true;
+			}
+			if(!ResponseCodeType.NO_ERROR.equals(responseCode)) {
+				throw new ExchangeRuntimeException("GetEvents for "+upn+" failed: "+responseCode+" "+message.getMessageText());
+			}
+			NotificationType notification = message.getNotification();
+			if(notification == null) {
+				return false;
+			}
+			List<ItemChangeEvent> events = toItemChangeEvents(upn, notification);
+			if(!events.isEmpty() && !cancelled) {
+				dispatch(upn, events);
+			}
+			String last = null;
+			for(JAXBElement<? extends BaseNotificationEventType> element : notification.getCopiedEventsAndCreatedEventsAndDeletedEvents()) {
+				if(element.getValue().getWatermark() != null) {
+					last = element.getValue().getWatermark();
+				}
+			}
+			if(last != null && !last.equals(watermark)) {
+				updateWatermark(last);
+			}
+			return Boolean.TRUE.equals(notification.isMoreEvents());
+		}
+		
+		/**
+		 * Replace the watermark, saving it to the {@link SyncStateStore} (or removing the stored one if null)
+		 * so a restart never resumes from a watermark Exchange has already rejected.
+		 * 
+		 * @param newWatermark
+		 */
+		private void updateWatermark(String newWatermark) {
+			this.watermark = newWatermark;
+			if(watermarkStore == null || cancelled) {
+				return;
+			}
+			if(newWatermark == null) {
+				watermarkStore.removeSyncState(upn, WATERMARK_KEY);
+			} else {
+				watermarkStore.putSyncState(upn, WATERMARK_KEY, newWatermark);
+			}
+		}
+		
+		/**
+		 * Stop polling; a poll in progress completes.
+		 */
+		void cancel() {
+			cancelled = true;
+			ScheduledFuture<?> f = future;
+			if(f != null) {
+				f.cancel(false);
+			}
+		}
+		
+		/**
+		 * Send the Unsubscribe request for the current subscription, if any.
+		 */
+		synchronized void close() {
+			String id = subscriptionId;
+			if(id == null) {
+				return;
+			}
+			subscriptionId = null;
+			ExchangeRequestContextHolder.bind(ExchangeRequestContext.forPrincipalName(upn));
+			try {
+				UnsubscribeResponse response = webServices.unsubscribe(requestFactory.constructUnsubscribe(id));
+				ResponseMessageType message = firstMessage(response.getResponseMessages().getCreateItemResponseMessagesAndDeleteItemResponseMessagesAndGetItemResponseMessages(), ResponseMessageType.class);
+				if(!ResponseCodeType.NO_ERROR.equals(message.getResponseCode())) {
+					log.debug("Unsubscribe for "+upn+" returned "+message.getResponseCode());
+				}
+			} catch (RuntimeException e) {
+				log.warn("Unsubscribe for "+upn+" failed, subscription left to expire: "+e.getMessage());
+			} finally {
+				ExchangeRequestContextHolder.clear();
+			}
+		}
+	}
+}
@@ -0,0 +1,151 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.impl.retry;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.apache.commons.lang.Validate;
+import org.springframework.ws.client.WebServiceIOException;
+import org.springframework.ws.soap.client.SoapFaultClientException;
+
+import com.microsoft.exchange.exception.ExchangeExceededFindCountLimitRuntimeException;
+import com.microsoft.exchange.exception.ExchangeInvalidUPNRuntimeException;
+import com.microsoft.exchange.exception.ExchangeItemNotFoundRuntimeException;
+import com.microsoft.exchange.exception.ExchangeThrottledRuntimeException;
+import com.microsoft.exchange.exception.ExchangeTimeoutRuntimeException;
+import com.microsoft.exchange.impl.throttle.ThrottlingFaults;
+
+/**
+ * Default {@link RetryPolicy}, with an {@link ExponentialBackoff} per {@link ExchangeErrorClass}.
+ * 
+ * Out of the box, throttling responses back off from 1 second up to 1 minute; timeouts, 
+ * transport errors, SOAP faults and other failures back off from 100 milliseconds up to 30 seconds 
+ * (the same progression as {@link com.microsoft.exchange.impl.BaseExchangeCalendarDataDao#getWaitTimeExp(int)}).
+ * {@link ExchangeErrorClass#NON_RETRYABLE} failures are never retried.
+ */
+public class DefaultRetryPolicy implements RetryPolicy {
+
+	private final Map<ExchangeErrorClass, ExponentialBackoff> backoffs = new EnumMap<ExchangeErrorClass, ExponentialBackoff>(ExchangeErrorClass.class);
+	
+	public DefaultRetryPolicy() {
+		this(10);
+	}
+	
+	/**
+	 * @param maxRetries the maximum number of retries for every retryable {@link ExchangeErrorClass}
+	 */
+	public DefaultRetryPolicy(int maxRetries) {
+		backoffs.put(ExchangeErrorClass.THROTTLED, new ExponentialBackoff(1000L, 60000L, maxRetries));
+		backoffs.put(ExchangeErrorClass.TIMEOUT, new ExponentialBackoff(100L, 30000L, maxRetries));
+		backoffs.put(ExchangeErrorClass.IO, new ExponentialBackoff(100L, 30000L, maxRetries));
+		backoffs.put(ExchangeErrorClass.SOAP_FAULT, new ExponentialBackoff(100L, 30000L, maxRetries));
+		backoffs.put(ExchangeErrorClass.OTHER, new ExponentialBackoff(100L, 30000L, maxRetries));
+		backoffs.put(ExchangeErrorClass.NON_RETRYABLE, ExponentialBackoff.none());
+	}
+	
+	/**
+	 * 
+	 * @param errorClass
+	 * @return the {@link ExponentialBackoff} used for the errorClass
+	 */
+	public ExponentialBackoff getBackoff(ExchangeErrorClass errorClass) {
+		return backoffs.get(errorClass);
+	}
+	
+	/**
+	 * 
+	 * @param errorClass
+	 * @param backoff
+	 */
+	public void setBackoff(ExchangeErrorClass errorClass, ExponentialBackoff backoff) {
+		Validate.notNull(errorClass, "errorClass argument cannot be null");
+		Validate.notNull(backoff, "backoff argument cannot be null");
+		backoffs.put(errorClass, backoff);
+	}
+	
+	/**
+	 * Replace the backoff configuration, for use with Spring property injection.
+	 * Classes absent from the map keep their current backoff.
+	 * 
+	 * @param backoffs
+	 */
+	public void setBackoffs(Map<ExchangeErrorClass, ExponentialBackoff> backoffs) {
+		for(Map.Entry<ExchangeErrorClass, ExponentialBackoff> entry : backoffs.entrySet()) {
+			setBackoff(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.impl.retry.RetryPolicy#getRetryDelay(com.microsoft.exchange.impl.retry.ExchangeErrorClass, int)
+	 */
+	@Override
+	public long getRetryDelay(ExchangeErrorClass errorClass, int failedAttempts) {
+		ExponentialBackoff backoff = backoffs.get(errorClass);
+		if(backoff == null) {
+			return -1L;
+		}
+		return backoff.getDelay(failedAttempts);
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.impl.retry.RetryPolicy#classify(java.lang.Throwable)
+	 */
+	@Override
+	public ExchangeErrorClass classify(Throwable failure) {
+		if(failure instanceof ExchangeInvalidUPNRuntimeException
+				|| failure instanceof ExchangeExceededFindCountLimitRuntimeException
+				|| failure instanceof ExchangeItemNotFoundRuntimeException
+				|| failure instanceof IllegalArgumentException
+				|| failure instanceof InterruptedException) {
+			return ExchangeErrorClass.NON_RETRYABLE;
+		}
+		
+		if(isThrottled(failure)) {
+			return ExchangeErrorClass.THROTTLED;
+		}
+		
+		Throwable t = failure;
+		for(int i = 0; t != null && i < 10; i++, t = t.getCause()) {
+			if(t instanceof ExchangeTimeoutRuntimeException) {
+				return ExchangeErrorClass.TIMEOUT;
+			}
+			if(t instanceof IOException || t instanceof WebServiceIOException) {
+				return ExchangeErrorClass.IO;
+			}
+			if(t instanceof SoapFaultClientException) {
+				return ExchangeErrorClass.SOAP_FAULT;
+			}
+			if(t.getCause() == t) {
+				break;
+			}
+		}
+		return ExchangeErrorClass.OTHER;
+	}
+	
+	/**
+	 * 
+	 * @param t
+	 * @return true if the message (or SOAP fault detail) of t contains one of the throttling response codes
+	 */
+	protected boolean isThrottled(Throwable t) {
+		return t instanceof ExchangeThrottledRuntimeException || ThrottlingFaults.getThrottlingCode(t) != null;
+	}
+}
@@ -0,0 +1,54 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.impl.retry;
+
+/**
+ * Coarse classification of failures raised while invoking Exchange Web Services,
+ * used to select a retry/backoff strategy.
+ * 
+ * @see RetryPolicy#classify(Throwable)
+ */
+public enum ExchangeErrorClass {
+
+	/**
+	 * The server asked us to slow down (ErrorServerBusy, ErrorExceededConnectionCount, ...).
+	 */
+	THROTTLED,
+	/**
+	 * The request timed out on the server (ErrorTimeoutExpired).
+	 */
+	TIMEOUT,
+	/**
+	 * Transport level failure: connection refused/reset, socket timeout, etc.
+	 */
+	IO,
+	/**
+	 * The server returned a SOAP fault not covered by one of the other classes.
+	 */
+	SOAP_FAULT,
+	/**
+	 * Any other failure.
+	 */
+	OTHER,
+	/**
+	 * The failure will not be resolved by trying again (invalid arguments, invalid impersonation principal, 
+	 * ErrorExceededFindCountLimit, ...).
+	 */
+	NON_RETRYABLE;
+}
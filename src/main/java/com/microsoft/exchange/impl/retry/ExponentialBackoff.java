@@ -0,0 +1,153 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.impl.retry;
+
+import java.util.Random;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * Jittered exponential backoff.
+ * 
+ * The nominal delay before retry n (1 based) is <code>initialDelayMillis * multiplier^(n-1)</code>, capped at 
+ * maxDelayMillis. The actual delay is chosen uniformly between <code>nominal * (1 - jitter)</code> and the nominal
+ * delay, which keeps many clients throttled at the same moment from retrying in lockstep.
+ */
+public class ExponentialBackoff {
+
+	private static final Random random = new Random();
+	
+	private long initialDelayMillis = 100L;
+	private double multiplier = 2.0;
+	private long maxDelayMillis = 30000L;
+	private int maxRetries = 10;
+	private double jitter = 0.5;
+	
+	public ExponentialBackoff() {
+	}
+	
+	/**
+	 * @param initialDelayMillis
+	 * @param maxDelayMillis
+	 * @param maxRetries
+	 */
+	public ExponentialBackoff(long initialDelayMillis, long maxDelayMillis, int maxRetries) {
+		setInitialDelayMillis(initialDelayMillis);
+		setMaxDelayMillis(maxDelayMillis);
+		setMaxRetries(maxRetries);
+	}
+	
+	/**
+	 * @return a backoff that never retries
+	 */
+	public static ExponentialBackoff none() {
+		return new ExponentialBackoff(0L, 0L, 0);
+	}
+	
+	/**
+	 * @param failedAttempts the number of attempts that failed so far
+	 * @return the delay in milliseconds before the next attempt, or -1 if maxRetries is exhausted
+	 */
+	public long getDelay(int failedAttempts) {
+		if(failedAttempts > maxRetries) {
+			return -1L;
+		}
+		double nominal = initialDelayMillis * Math.pow(multiplier, Math.max(0, failedAttempts - 1));
+		nominal = Math.min(nominal, maxDelayMillis);
+		double jittered = nominal * (1.0 - jitter * random.nextDouble());
+		return (long) jittered;
+	}
+	
+	/**
+	 * @return the initialDelayMillis
+	 */
+	public long getInitialDelayMillis() {
+		return initialDelayMillis;
+	}
+	/**
+	 * @param initialDelayMillis the initialDelayMillis to set
+	 */
+	public void setInitialDelayMillis(long initialDelayMillis) {
+		Validate.isTrue(initialDelayMillis >= 0, "initialDelayMillis cannot be negative");
+		this.initialDelayMillis = initialDelayMillis;
+	}
+	/**
+	 * @return the multiplier
+	 */
+	public double getMultiplier() {
+		return multiplier;
+	}
+	/**
+	 * @param multiplier the multiplier to set
+	 */
+	public void setMultiplier(double multiplier) {
+		Validate.isTrue(multiplier >= 1.0, "multiplier must be at least 1");
+		this.multiplier = multiplier;
+	}
+	/**
+	 * @return the maxDelayMillis
+	 */
+	public long getMaxDelayMillis() {
+		return maxDelayMillis;
+	}
+	/**
+	 * @param maxDelayMillis the maxDelayMillis to set
+	 */
+	public void setMaxDelayMillis(long maxDelayMillis) {
+		Validate.isTrue(maxDelayMillis >= 0, "maxDelayMillis cannot be negative");
+		this.maxDelayMillis = maxDelayMillis;
+	}
+	/**
+	 * @return the maxRetries
+	 */
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+	/**
+	 * @param maxRetries the maxRetries to set
+	 */
+	public void setMaxRetries(int maxRetries) {
+		Validate.isTrue(maxRetries >= 0, "maxRetries cannot be negative");
+		this.maxRetries = maxRetries;
+	}
+	/**
+	 * @return the jitter
+	 */
+	public double getJitter() {
+		return jitter;
+	}
+	/**
+	 * @param jitter the fraction (0 to 1) of the nominal delay that may be randomly subtracted
+	 */
+	public void setJitter(double jitter) {
+		Validate.isTrue(jitter >= 0.0 && jitter <= 1.0, "jitter must be between 0 and 1");
+		this.jitter = jitter;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "ExponentialBackoff [initialDelayMillis=" + initialDelayMillis
+				+ ", multiplier=" + multiplier + ", maxDelayMillis="
+				+ maxDelayMillis + ", maxRetries=" + maxRetries + ", jitter="
+				+ jitter + "]";
+	}
+}
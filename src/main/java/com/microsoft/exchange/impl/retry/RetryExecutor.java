@@ -0,0 +1,355 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.impl.retry;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import com.microsoft.exchange.ExchangeRequestContext;
+import com.microsoft.exchange.ExchangeResponseFuture;
+import com.microsoft.exchange.exception.ExchangeRuntimeException;
+import com.microsoft.exchange.impl.ExchangeOnlineThrottlingPolicy;
+import com.microsoft.exchange.impl.ExchangeRequestContextHolder;
+import com.microsoft.exchange.impl.SettableExchangeResponseFuture;
+
+/**
+ * Runs a unit of work against Exchange Web Services, retrying failures according to a {@link RetryPolicy}.
+ * 
+ * Each attempt runs on a {@link ScheduledExecutorService}, and retries are scheduled on it after the backoff 
+ * delay rather than by sleeping: no thread is held while waiting to retry.
+ * The {@link ExchangeRequestContext} of the submitting thread is captured at submission and bound to the
+ * worker thread for every attempt.
+ * 
+ * {@link #submit(String, Callable)} returns immediately; {@link #execute(String, Callable)} waits for the outcome 
+ * and responds to interruption of the calling thread by cancelling any pending retry.
+ */
+public class RetryExecutor implements InitializingBean, DisposableBean {
+
+	protected final Log log = LogFactory.getLog(this.getClass());
+	
+	private volatile ScheduledExecutorService scheduledExecutorService;
+	private boolean ownsScheduledExecutorService = false;
+	private boolean destroyed = false;
+	private int poolSize = ExchangeOnlineThrottlingPolicy.MAX_CONCURRENT_CONNECTIONS_IMPERSONATION;
+	private RetryPolicy retryPolicy = new DefaultRetryPolicy();
+	
+	private final AtomicLong attempts = new AtomicLong();
+	private final AtomicLong successes = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private final Map<ExchangeErrorClass, AtomicLong> retries = new EnumMap<ExchangeErrorClass, AtomicLong>(ExchangeErrorClass.class);
+	
+	public RetryExecutor() {
+		for(ExchangeErrorClass errorClass : ExchangeErrorClass.values()) {
+			retries.put(errorClass, new AtomicLong());
+		}
+	}
+	
+	/**
+	 * @param retryPolicy
+	 */
+	public RetryExecutor(RetryPolicy retryPolicy) {
+		this();
+		setRetryPolicy(retryPolicy);
+	}
+	
+	/**
+	 * @return the scheduledExecutorService
+	 */
+	public ScheduledExecutorService getScheduledExecutorService() {
+		return scheduledExecutorService;
+	}
+	/**
+	 * @param scheduledExecutorService the scheduledExecutorService to set
+	 */
+	public void setScheduledExecutorService(ScheduledExecutorService scheduledExecutorService) {
+		this.scheduledExecutorService = scheduledExecutorService;
+	}
+	/**
+	 * @return the poolSize
+	 */
+	public int getPoolSize() {
+		return poolSize;
+	}
+	/**
+	 * @param poolSize the number of threads used if no scheduledExecutorService is provided
+	 */
+	public void setPoolSize(int poolSize) {
+		Validate.isTrue(poolSize > 0, "poolSize must be greater than 0");
+		this.poolSize = poolSize;
+	}
+	/**
+	 * @return the retryPolicy
+	 */
+	public RetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+	/**
+	 * @param retryPolicy the retryPolicy to set
+	 */
+	public void setRetryPolicy(RetryPolicy retryPolicy) {
+		Validate.notNull(retryPolicy, "retryPolicy argument cannot be null");
+		this.retryPolicy = retryPolicy;
+	}
+	
+	/**
+	 * @return the total number of attempts made, including retries
+	 */
+	public long getAttemptCount() {
+		return attempts.get();
+	}
+	/**
+	 * @return the number of units of work that eventually succeeded
+	 */
+	public long getSuccessCount() {
+		return successes.get();
+	}
+	/**
+	 * @return the number of units of work that failed after exhausting (or not qualifying for) retries
+	 */
+	public long getFailureCount() {
+		return failures.get();
+	}
+	/**
+	 * @return the total number of retries scheduled
+	 */
+	public long getRetryCount() {
+		long total = 0;
+		for(AtomicLong count : retries.values()) {
+			total += count.get();
+		}
+		return total;
+	}
+	/**
+	 * @param errorClass
+	 * @return the number of retries scheduled for failures of the errorClass
+	 */
+	public long getRetryCount(ExchangeErrorClass errorClass) {
+		return retries.get(errorClass).get();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.springframework.beans.factory.InitializingBean#afterPropertiesSet()
+	 */
+	@Override
+	public void afterPropertiesSet() {
+		initialize();
+	}
+	
+	/**
+	 * Create the default {@link ScheduledExecutorService} if one was not provided.
+	 * Invoked by {@link #afterPropertiesSet()}, and safe to call more than once.
+	 */
+	public synchronized void initialize() {
+		if(scheduledExecutorService == null && !destroyed) {
+			CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("ews-retry-");
+			threadFactory.setDaemon(true);
+			this.scheduledExecutorService = new ScheduledThreadPoolExecutor(poolSize, threadFactory);
+			this.ownsScheduledExecutorService = true;
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.springframework.beans.factory.DisposableBean#destroy()
+	 */
+	@Override
+	public synchronized void destroy() {
+		destroyed = true;
+		if(ownsScheduledExecutorService && scheduledExecutorService != null) {
+			scheduledExecutorService.shutdownNow();
+			scheduledExecutorService = null;
+			ownsScheduledExecutorService = false;
+		}
+	}
+	
+	/**
+	 * Submit the task, retrying failures according to {@link #getRetryPolicy()}, and return immediately.
+	 * 
+	 * @see #submit(String, Callable, RetryPolicy)
+	 * @param description a short description of the task, used in log messages
+	 * @param task
+	 * @return a never null {@link ExchangeResponseFuture} completed with the outcome of the last attempt
+	 */
+	public <T> ExchangeResponseFuture<T> submit(String description, Callable<T> task) {
+		return submit(description, task, retryPolicy);
+	}
+	
+	/**
+	 * Submit the task, retrying failures according to the policy, and return immediately.
+	 * 
+	 * Every attempt runs on the {@link ScheduledExecutorService} with the {@link ExchangeRequestContext} 
+	 * of the submitting thread; a failed attempt schedules the next one after the backoff delay.
+	 * 
+	 * @param description a short description of the task, used in log messages
+	 * @param task
+	 * @param policy the {@link RetryPolicy} deciding whether and when to retry
+	 * @return a never null {@link ExchangeResponseFuture} completed with the outcome of the last attempt
+	 */
+	public <T> ExchangeResponseFuture<T> submit(String description, Callable<T> task, RetryPolicy policy) {
+		Validate.notNull(task, "task argument cannot be null");
+		Validate.notNull(policy, "policy argument cannot be null");
+		initialize();
+		SettableExchangeResponseFuture<T> future = new SettableExchangeResponseFuture<T>();
+		schedule(new Attempt<T>(description, task, policy, ExchangeRequestContextHolder.capture(), future), 0L);
+		return future;
+	}
+	
+	/**
+	 * Submit the task with {@link #getRetryPolicy()} and wait for the outcome.
+	 * 
+	 * @see #execute(String, Callable, RetryPolicy)
+	 * @param description a short description of the task, used in log messages
+	 * @param task
+	 * @return the result of the first successful attempt
+	 */
+	public <T> T execute(String description, Callable<T> task) {
+		return execute(description, task, retryPolicy);
+	}
+	
+	/**
+	 * Submit the task and wait for the outcome.
+	 * 
+	 * {@link RuntimeException}s raised by the final attempt are rethrown unchanged.
+	 * If the calling thread is interrupted, pending retries are cancelled, the interrupt status
+	 * is restored and an {@link ExchangeRuntimeException} is thrown.
+	 * 
+	 * @param description a short description of the task, used in log messages
+	 * @param task
+	 * @param policy the {@link RetryPolicy} deciding whether and when to retry
+	 * @return the result of the first successful attempt
+	 */
+	public <T> T execute(String description, Callable<T> task, RetryPolicy policy) {
+		ExchangeResponseFuture<T> future = submit(description, task, policy);
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new ExchangeRuntimeException(description + " interrupted");
+		} catch (CancellationException e) {
+			throw new ExchangeRuntimeException(description + " cancelled");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if(cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new ExchangeRuntimeException(cause);
+		}
+	}
+	
+	/**
+	 * 
+	 * @param attempt
+	 * @param delay
+	 */
+	protected <T> void schedule(Attempt<T> attempt, long delay) {
+		if(attempt.future.isCancelled()) {
+			return;
+		}
+		ScheduledExecutorService scheduler = this.scheduledExecutorService;
+		if(scheduler == null) {
+			failures.incrementAndGet();
+			attempt.future.setFailure(new RejectedExecutionException("RetryExecutor has been destroyed"));
+			return;
+		}
+		try {
+			attempt.future.setDelegate(scheduler.schedule(attempt, delay, TimeUnit.MILLISECONDS));
+		} catch (RejectedExecutionException e) {
+			failures.incrementAndGet();
+			attempt.future.setFailure(e);
+		}
+	}
+	
+	/**
+	 * One attempt of a unit of work; reschedules itself on failure.
+	 */
+	protected class Attempt<T> implements Runnable {
+		private final String description;
+		private final Callable<T> task;
+		private final RetryPolicy policy;
+		private final ExchangeRequestContext context;
+		private final SettableExchangeResponseFuture<T> future;
+		private int failedAttempts = 0;
+		
+		Attempt(String description, Callable<T> task, RetryPolicy policy, ExchangeRequestContext context, SettableExchangeResponseFuture<T> future) {
+			this.description = description;
+			this.task = task;
+			this.policy = policy;
+			this.context = context;
+			this.future = future;
+		}
+		
+		/* (non-Javadoc)
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run() {
+			if(future.isCancelled()) {
+				return;
+			}
+			attempts.incrementAndGet();
+			T result;
+			ExchangeRequestContextHolder.bind(context);
+			try {
+				result = task.call();
+			} catch (Throwable e) {
+				onFailure(e);
+				return;
+			} finally {
+				ExchangeRequestContextHolder.clear();
+			}
+			successes.incrementAndGet();
+			future.set(result);
+		}
+		
+		private void onFailure(Throwable e) {
+			failedAttempts++;
+			ExchangeErrorClass errorClass = policy.classify(e);
+			long delay = (e instanceof Error) ? -1L : policy.getRetryDelay(errorClass, failedAttempts);
+			if(delay < 0 || future.isCancelled()) {
+				failures.incrementAndGet();
+				if(log.isDebugEnabled()) {
+					log.debug(description + " - failure #" + failedAttempts + " (" + errorClass + "), giving up. " + e.getMessage());
+				}
+				future.setFailure(e);
+				return;
+			}
+			retries.get(errorClass).incrementAndGet();
+			log.warn(description + " - failure #" + failedAttempts + " (" + errorClass + "). Retrying in " + delay + " ms. " + e.getMessage());
+			schedule(this, delay);
+		}
+	}
+}
@@ -0,0 +1,43 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.impl.retry;
+
+/**
+ * Strategy deciding whether, and after how long, a failed Exchange Web Services
+ * invocation should be attempted again.
+ * 
+ * Implementations must be thread safe.
+ */
+public interface RetryPolicy {
+
+	/**
+	 * 
+	 * @param failure the failure raised by the most recent attempt
+	 * @return the {@link ExchangeErrorClass} of the failure, never null
+	 */
+	ExchangeErrorClass classify(Throwable failure);
+	
+	/**
+	 * 
+	 * @param errorClass the classification of the most recent failure
+	 * @param failedAttempts the number of attempts that have failed so far (at least 1)
+	 * @return the delay in milliseconds before the next attempt, or a negative value to give up
+	 */
+	long getRetryDelay(ExchangeErrorClass errorClass, int failedAttempts);
+}
@@ -0,0 +1,153 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.impl.sync;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.InitializingBean;
+
+import com.microsoft.exchange.exception.ExchangeRuntimeException;
+
+/**
+ * {@link SyncStateStore} that keeps each SyncState in its own file under a directory, so they survive restarts.
+ * 
+ * File names are a digest of the mailbox and folder key; a SyncState is written to a temporary file
+ * and renamed into place, so a reader never sees a partially written state.
+ */
+public class FileSyncStateStore implements SyncStateStore, InitializingBean {
+
+	private static final String ENCODING = "UTF-8";
+	private static final String SUFFIX = ".syncstate";
+	
+	protected final Log log = LogFactory.getLog(this.getClass());
+	
+	private File directory;
+	
+	public FileSyncStateStore() {
+	}
+	
+	/**
+	 * 
+	 * @param directory
+	 */
+	public FileSyncStateStore(File directory) {
+		this.directory = directory;
+	}
+	/**
+	 * @return the directory
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+	/**
+	 * @param directory the directory to keep SyncStates in, created if necessary
+	 */
+	public void setDirectory(File directory) {
+		this.directory = directory;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.springframework.beans.factory.InitializingBean#afterPropertiesSet()
+	 */
+	@Override
+	public void afterPropertiesSet() throws IOException {
+		Validate.notNull(directory, "directory is required");
+		FileUtils.forceMkdir(directory);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.impl.sync.SyncStateStore#getSyncState(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public String getSyncState(String upn, String folderKey) {
+		File file = getFile(upn, folderKey);
+		if(!file.exists()) {
+			return null;
+		}
+		try {
+			return FileUtils.readFileToString(file, ENCODING);
+		} catch (IOException e) {
+			log.warn("failed to read SyncState from "+file+", folder will be synchronized from the beginning", e);
+			return null;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.impl.sync.SyncStateStore#putSyncState(java.lang.String, java.lang.String, java.lang.String)
+	 */
+	@Override
+	public synchronized void putSyncState(String upn, String folderKey, String syncState) {
+		Validate.notNull(syncState, "syncState argument cannot be null");
+		File file = getFile(upn, folderKey);
+		File temp = new File(file.getPath() + ".tmp");
+		try {
+			FileUtils.writeStringToFile(temp, syncState, ENCODING);
+			if(!temp.renameTo(file)) {
+				// rename does not replace an existing file on every platform
+				FileUtils.forceDelete(file);
+				if(!temp.renameTo(file)) {
+					throw new IOException("failed to rename "+temp+" to "+file);
+				}
+			}
+		} catch (IOException e) {
+			throw new ExchangeRuntimeException(e);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.impl.sync.SyncStateStore#removeSyncState(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public synchronized void removeSyncState(String upn, String folderKey) {
+		File file = getFile(upn, folderKey);
+		if(file.exists() && !file.delete()) {
+			log.warn("failed to delete "+file);
+		}
+	}
+	
+	/**
+	 * 
+	 * @param upn
+	 * @param folderKey
+	 * @return the file holding the SyncState of the folder
+	 */
+	protected File getFile(String upn, String folderKey) {
+		Validate.notNull(directory, "directory is required");
+		String key = InMemorySyncStateStore.key(upn, folderKey);
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(ENCODING));
+			StringBuilder name = new StringBuilder(digest.length * 2 + SUFFIX.length());
+			for(byte b : digest) {
+				name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			}
+			return new File(directory, name.append(SUFFIX).toString());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,63 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.impl.sync;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * {@link SyncStateStore} that keeps SyncStates for the life of the JVM.
+ */
+public class InMemorySyncStateStore implements SyncStateStore {
+
+	private final ConcurrentMap<String, String> syncStates = new ConcurrentHashMap<String, String>();
+	
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.impl.sync.SyncStateStore#getSyncState(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public String getSyncState(String upn, String folderKey) {
+		return syncStates.get(key(upn, folderKey));
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.impl.sync.SyncStateStore#putSyncState(java.lang.String, java.lang.String, java.lang.String)
+	 */
+	@Override
+	public void putSyncState(String upn, String folderKey, String syncState) {
+		Validate.notNull(syncState, "syncState argument cannot be null");
+		syncStates.put(key(upn, folderKey), syncState);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.microsoft.exchange.impl.sync.SyncStateStore#removeSyncState(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public void removeSyncState(String upn, String folderKey) {
+		syncStates.remove(key(upn, folderKey));
+	}
+	
+	static String key(String upn, String folderKey) {
+		Validate.notNull(upn, "upn argument cannot be null");
+		Validate.notNull(folderKey, "folderKey argument cannot be null");
+		return upn.toLowerCase() + '\n' + folderKey;
+	}
+}
@@ -0,0 +1,204 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.impl.sync;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.bind.JAXBElement;
+
+import org.apache.commons.lang.Validate;
+
+import com.microsoft.exchange.types.ItemIdType;
+import com.microsoft.exchange.types.ItemType;
+import com.microsoft.exchange.types.SyncFolderItemsChangesType;
+import com.microsoft.exchange.types.SyncFolderItemsCreateOrUpdateType;
+import com.microsoft.exchange.types.SyncFolderItemsDeleteType;
+
+/**
+ * The items created, updated and deleted in a folder since its previous synchronization, accumulated over
+ * every SyncFolderItems page of one synchronization.
+ * 
+ * Changes to the same item are merged: an item created and then updated is reported once as created 
+ * (with its latest ChangeKey), and an item created and then deleted is not reported at all. 
+ * ReadFlagChanges are ignored.
+ */
+public class ItemSyncDelta {
+
+	private static final String CREATE = "Create";
+	private static final String UPDATE = "Update";
+	private static final String DELETE = "Delete";
+	
+	private final String upn;
+	private final String folderKey;
+	private final boolean fullSync;
+	private final Map<String, ItemIdType> created = new LinkedHashMap<String, ItemIdType>();
+	private final Map<String, ItemIdType> updated = new LinkedHashMap<String, ItemIdType>();
+	private final Map<String, ItemIdType> deleted = new LinkedHashMap<String, ItemIdType>();
+	private String syncState;
+	
+	/**
+	 * 
+	 * @param upn
+	 * @param folderKey
+	 * @param fullSync true if the synchronization started without a SyncState
+	 */
+	public ItemSyncDelta(String upn, String folderKey, boolean fullSync) {
+		this.upn = upn;
+		this.folderKey = folderKey;
+		this.fullSync = fullSync;
+	}
+	/**
+	 * @return the upn
+	 */
+	public String getUpn() {
+		return upn;
+	}
+	/**
+	 * @return the folderKey
+	 */
+	public String getFolderKey() {
+		return folderKey;
+	}
+	/**
+	 * When true every item in the folder is reported as created, and the caller should replace (rather than
+	 * update) what it holds for the folder.
+	 * 
+	 * @return true if the synchronization started without a SyncState
+	 */
+	public boolean isFullSync() {
+		return fullSync;
+	}
+	/**
+	 * @return the SyncState after the last page applied, or null if none has been applied
+	 */
+	public String getSyncState() {
+		return syncState;
+	}
+	/**
+	 * @param syncState the syncState to set
+	 */
+	public void setSyncState(String syncState) {
+		this.syncState = syncState;
+	}
+	/**
+	 * @return the ids of items created since the previous synchronization
+	 */
+	public Collection<ItemIdType> getCreated() {
+		return Collections.unmodifiableCollection(created.values());
+	}
+	/**
+	 * @return the ids of items updated since the previous synchronization
+	 */
+	public Collection<ItemIdType> getUpdated() {
+		return Collections.unmodifiableCollection(updated.values());
+	}
+	/**
+	 * @return the ids of items deleted since the previous synchronization
+	 */
+	public Collection<ItemIdType> getDeleted() {
+		return Collections.unmodifiableCollection(deleted.values());
+	}
+	/**
+	 * @return true if nothing changed
+	 */
+	public boolean isEmpty() {
+		return created.isEmpty() && updated.isEmpty() && deleted.isEmpty();
+	}
+	
+	/**
+	 * Merge the changes of one SyncFolderItems response page, in the order Exchange reported them.
+	 * 
+	 * @param changes may be null
+	 */
+	public void apply(SyncFolderItemsChangesType changes) {
+		if(null == changes) {
+			return;
+		}
+		for(JAXBElement<?> change : changes.getCreatesAndUpdatesAndDeletes()) {
+			String type = change.getName().getLocalPart();
+			Object value = change.getValue();
+			if(CREATE.equals(type) && value instanceof SyncFolderItemsCreateOrUpdateType) {
+				created(getItem((SyncFolderItemsCreateOrUpdateType) value));
+			} else if(UPDATE.equals(type) && value instanceof SyncFolderItemsCreateOrUpdateType) {
+				updated(getItem((SyncFolderItemsCreateOrUpdateType) value));
+			} else if(DELETE.equals(type) && value instanceof SyncFolderItemsDeleteType) {
+				deleted(((SyncFolderItemsDeleteType) value).getItemId());
+			}
+		}
+	}
+	
+	protected void created(ItemType item) {
+		if(null != item && null != item.getItemId()) {
+			String id = item.getItemId().getId();
+			deleted.remove(id);
+			created.put(id, item.getItemId());
+		}
+	}
+	
+	protected void updated(ItemType item) {
+		if(null != item && null != item.getItemId()) {
+			String id = item.getItemId().getId();
+			if(created.containsKey(id)) {
+				created.put(id, item.getItemId());
+			} else {
+				updated.put(id, item.getItemId());
+			}
+		}
+	}
+	
+	protected void deleted(ItemIdType itemId) {
+		if(null != itemId) {
+			String id = itemId.getId();
+			if(created.remove(id) == null) {
+				updated.remove(id);
+				deleted.put(id, itemId);
+			}
+		}
+	}
+	
+	/**
+	 * 
+	 * @param change
+	 * @return whichever of the item elements is present
+	 */
+	static ItemType getItem(SyncFolderItemsCreateOrUpdateType change) {
+		Validate.notNull(change);
+		ItemType[] candidates = new ItemType[] { change.getCalendarItem(), change.getItem(), change.getTask(), change.getMessage(),
+				change.getMeetingRequest(), change.getMeetingResponse(), change.getMeetingCancellation(), change.getMeetingMessage(), 
+				change.getContact(), change.getDistributionList(), change.getPostItem() };
+		for(ItemType candidate : candidates) {
+			if(null != candidate) {
+				return candidate;
+			}
+		}
+		return null;
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "ItemSyncDelta [upn=" + upn + ", folderKey=" + folderKey + ", fullSync=" + fullSync 
+				+ ", created=" + created.size() + ", updated=" + updated.size() + ", deleted=" + deleted.size() + "]";
+	}
+}
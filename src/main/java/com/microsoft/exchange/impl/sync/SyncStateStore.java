@@ -0,0 +1,52 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.impl.sync;
+
+/**
+ * Persists the opaque SyncState Exchange returns from SyncFolderItems, keyed by mailbox and folder,
+ * so that the next synchronization only asks for what changed since.
+ * 
+ * Implementations must be thread safe.
+ */
+public interface SyncStateStore {
+
+	/**
+	 * 
+	 * @param upn the mailbox
+	 * @param folderKey identifies the folder within the mailbox
+	 * @return the stored SyncState, or null if the folder has not been synchronized
+	 */
+	String getSyncState(String upn, String folderKey);
+	
+	/**
+	 * 
+	 * @param upn the mailbox
+	 * @param folderKey identifies the folder within the mailbox
+	 * @param syncState the SyncState to store, replacing any previous value
+	 */
+	void putSyncState(String upn, String folderKey, String syncState);
+	
+	/**
+	 * Forget the SyncState, so the next synchronization starts from the beginning.
+	 * 
+	 * @param upn the mailbox
+	 * @param folderKey identifies the folder within the mailbox
+	 */
+	void removeSyncState(String upn, String folderKey);
+}
@@ -0,0 +1,222 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.impl.throttle;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * Concurrency limit that adapts using additive increase / multiplicative decrease (AIMD).
+ * 
+ * Each successful request raises the limit by <code>1/limit</code> (roughly +1 per "round" of requests), 
+ * each throttling response multiplies it by {@link #getDecreaseRatio()}. A throttling response may also 
+ * pause the limiter entirely for the BackOffMilliseconds requested by the server.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition available = lock.newCondition();
+	
+	private final int minLimit;
+	private final int maxLimit;
+	private final double decreaseRatio;
+	
+	private double limit;
+	private int inFlight = 0;
+	private long pausedUntil = 0L;
+	private long lastUsed = System.currentTimeMillis();
+	private boolean retired = false;
+	
+	/**
+	 * @param initialLimit
+	 * @param minLimit
+	 * @param maxLimit
+	 * @param decreaseRatio the factor (between 0 and 1) applied to the limit on throttling
+	 */
+	public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double decreaseRatio) {
+		Validate.isTrue(minLimit > 0, "minLimit must be greater than 0");
+		Validate.isTrue(maxLimit >= minLimit, "maxLimit must be at least minLimit");
+		Validate.isTrue(initialLimit >= minLimit && initialLimit <= maxLimit, "initialLimit must be between minLimit and maxLimit");
+		Validate.isTrue(decreaseRatio > 0.0 && decreaseRatio < 1.0, "decreaseRatio must be between 0 and 1");
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.decreaseRatio = decreaseRatio;
+		this.limit = initialLimit;
+	}
+	
+	/**
+	 * Wait until fewer than {@link #getLimit()} permits are in use and the limiter is not paused.
+	 * 
+	 * @param timeout
+	 * @param unit
+	 * @return true if a permit was acquired, false if the timeout elapsed first or the limiter has been retired
+	 * @throws InterruptedException
+	 */
+	public boolean acquire(long timeout, TimeUnit unit) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+		lock.lockInterruptibly();
+		try {
+			while(true) {
+				if(retired) {
+					return false;
+				}
+				long now = System.currentTimeMillis();
+				long paused = pausedUntil - now;
+				if(paused <= 0 && inFlight < getLimit()) {
+					inFlight++;
+					lastUsed = now;
+					return true;
+				}
+				long remaining = deadline - now;
+				if(remaining <= 0) {
+					return false;
+				}
+				available.await(paused > 0 ? Math.min(paused, remaining) : remaining, TimeUnit.MILLISECONDS);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Return a permit obtained from {@link #acquire(long, TimeUnit)}.
+	 */
+	public void release() {
+		lock.lock();
+		try {
+			if(inFlight > 0) {
+				inFlight--;
+			}
+			lastUsed = System.currentTimeMillis();
+			available.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Additive increase.
+	 */
+	public void onSuccess() {
+		lock.lock();
+		try {
+			int before = getLimit();
+			limit = Math.min(maxLimit, limit + 1.0 / limit);
+			if(getLimit() > before) {
+				available.signalAll();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Multiplicative decrease.
+	 * 
+	 * @param backOffMillis if greater than 0, no permits are granted for this long
+	 */
+	public void onThrottled(long backOffMillis) {
+		lock.lock();
+		try {
+			limit = Math.max(minLimit, limit * decreaseRatio);
+			if(backOffMillis > 0) {
+				pausedUntil = Math.max(pausedUntil, System.currentTimeMillis() + backOffMillis);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * @return the current concurrency limit
+	 */
+	public int getLimit() {
+		lock.lock();
+		try {
+			return (int) limit;
+		} finally {
+			lock.unlock();
+		}
+	}
+	/**
+	 * @return the number of permits currently held
+	 */
+	public int getInFlight() {
+		lock.lock();
+		try {
+			return inFlight;
+		} finally {
+			lock.unlock();
+		}
+	}
+	/**
+	 * @return true if a BackOffMilliseconds pause is in effect
+	 */
+	public boolean isPaused() {
+		lock.lock();
+		try {
+			return pausedUntil > System.currentTimeMillis();
+		} finally {
+			lock.unlock();
+		}
+	}
+	/**
+	 * Retire the limiter if no permits are held, no pause is in effect and no permit has been
+	 * acquired or released for idleMillis. A retired limiter grants no further permits.
+	 * 
+	 * @param idleMillis
+	 * @return true if the limiter is retired
+	 */
+	public boolean retireIfIdle(long idleMillis) {
+		lock.lock();
+		try {
+			long now = System.currentTimeMillis();
+			if(!retired && inFlight == 0 && pausedUntil <= now && now - Math.max(lastUsed, pausedUntil) >= idleMillis) {
+				retired = true;
+				available.signalAll();
+			}
+			return retired;
+		} finally {
+			lock.unlock();
+		}
+	}
+	/**
+	 * @return true if {@link #retireIfIdle(long)} has retired the limiter
+	 */
+	public boolean isRetired() {
+		lock.lock();
+		try {
+			return retired;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "AdaptiveConcurrencyLimiter [limit=" + getLimit() + ", inFlight=" + getInFlight() 
+				+ ", paused=" + isPaused() + "]";
+	}
+}
@@ -0,0 +1,246 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.impl.throttle;
+
+import java.util.Iterator;
+import java.util.List;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMSource;
+
+import org.apache.commons.lang.StringUtils;
+import org.springframework.ws.soap.SoapFault;
+import org.springframework.ws.soap.SoapFaultDetail;
+import org.springframework.ws.soap.SoapFaultDetailElement;
+import org.springframework.ws.soap.client.SoapFaultClientException;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import com.microsoft.exchange.impl.ExchangeOnlineThrottlingPolicy;
+import com.microsoft.exchange.messages.ArrayOfResponseMessagesType;
+import com.microsoft.exchange.messages.BaseResponseMessageType;
+import com.microsoft.exchange.messages.ResponseCodeType;
+import com.microsoft.exchange.messages.ResponseMessageType;
+import com.microsoft.exchange.messages.ResponseMessageType.MessageXml;
+
+/**
+ * Static helpers to recognize the throttling responses described by {@link ExchangeOnlineThrottlingPolicy},
+ * whether they arrive as a SOAP fault or as the ResponseCode of a response message, and to extract the
+ * <code>BackOffMilliseconds</code> hint Exchange includes in the MessageXml.
+ * 
+ * <pre>
+ * &lt;m:MessageXml&gt;
+ *   &lt;t:Value Name="BackOffMilliseconds"&gt;30000&lt;/t:Value&gt;
+ * &lt;/m:MessageXml&gt;
+ * </pre>
+ */
+public final class ThrottlingFaults {
+
+	public static final String BACK_OFF_MILLISECONDS = "BackOffMilliseconds";
+	/**
+	 * The fault string of the SOAP fault Exchange returns with {@link ExchangeOnlineThrottlingPolicy#ERROR_SERVER_BUSY}.
+	 */
+	public static final String SERVER_BUSY_FAULT_MESSAGE = "The server cannot service this request right now. Try again later.";
+	
+	private static final String[] THROTTLING_CODES = new String[] {
+		ExchangeOnlineThrottlingPolicy.ERROR_SERVER_BUSY,
+		ExchangeOnlineThrottlingPolicy.ERROR_EXCEEDED_CONNECTION_COUNT,
+		ExchangeOnlineThrottlingPolicy.ERROR_EXCEEDED_SUBSCRIPTION_COUNT
+	};
+	
+	private ThrottlingFaults() {
+	}
+	
+	/**
+	 * Inspect the failure, its causes and any SOAP fault detail for a throttling response code.
+	 * 
+	 * @param failure
+	 * @return one of the throttling codes from {@link ExchangeOnlineThrottlingPolicy}, or null
+	 */
+	public static String getThrottlingCode(Throwable failure) {
+		Throwable t = failure;
+		for(int i = 0; t != null && i < 10; i++, t = t.getCause()) {
+			String code = findCode(t.getMessage());
+			if(code == null && t instanceof SoapFaultClientException) {
+				if(SERVER_BUSY_FAULT_MESSAGE.equals(t.getMessage())) {
+					return ExchangeOnlineThrottlingPolicy.ERROR_SERVER_BUSY;
+				}
+				code = findCode(getFaultDetailText(((SoapFaultClientException) t).getSoapFault()));
+			}
+			if(code != null) {
+				return code;
+			}
+			if(t.getCause() == t) {
+				break;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Inspect the response messages of an otherwise successful response for a throttling response code.
+	 * 
+	 * @param response
+	 * @return one of the throttling codes from {@link ExchangeOnlineThrottlingPolicy}, or null
+	 */
+	public static String getThrottlingCode(Object response) {
+		ResponseMessageType message = getThrottledResponseMessage(response);
+		return message == null ? null : message.getResponseCode().value();
+	}
+	
+	/**
+	 * 
+	 * @param failure
+	 * @return the BackOffMilliseconds hint from the SOAP fault detail, or 0
+	 */
+	public static long getBackOffMillis(Throwable failure) {
+		Throwable t = failure;
+		for(int i = 0; t != null && i < 10; i++, t = t.getCause()) {
+			if(t instanceof SoapFaultClientException) {
+				SoapFault fault = ((SoapFaultClientException) t).getSoapFault();
+				if(fault != null && fault.getFaultDetail() != null) {
+					Iterator<SoapFaultDetailElement> entries = fault.getFaultDetail().getDetailEntries();
+					while(entries.hasNext()) {
+						Source source = entries.next().getSource();
+						if(source instanceof DOMSource) {
+							long backOff = findBackOffMillis(((DOMSource) source).getNode());
+							if(backOff > 0) {
+								return backOff;
+							}
+						}
+					}
+				}
+			}
+			if(t.getCause() == t) {
+				break;
+			}
+		}
+		return 0L;
+	}
+	
+	/**
+	 * 
+	 * @param response
+	 * @return the BackOffMilliseconds hint from the MessageXml of a throttled response message, or 0
+	 */
+	public static long getBackOffMillis(Object response) {
+		ResponseMessageType message = getThrottledResponseMessage(response);
+		if(message == null) {
+			return 0L;
+		}
+		MessageXml messageXml = message.getMessageXml();
+		if(messageXml == null || messageXml.getAnies() == null) {
+			return 0L;
+		}
+		for(Element element : messageXml.getAnies()) {
+			long backOff = findBackOffMillis(element);
+			if(backOff > 0) {
+				return backOff;
+			}
+		}
+		return 0L;
+	}
+	
+	/**
+	 * 
+	 * @param text
+	 * @return the first throttling code found in text (either the schema value or the enum constant name), or null
+	 */
+	static String findCode(String text) {
+		if(StringUtils.isBlank(text)) {
+			return null;
+		}
+		for(String code : THROTTLING_CODES) {
+			if(text.contains(code) || text.contains(ResponseCodeType.fromValue(code).name())) {
+				return code;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * 
+	 * @param fault
+	 * @return the text content of the fault detail, or null
+	 */
+	static String getFaultDetailText(SoapFault fault) {
+		if(fault == null) {
+			return null;
+		}
+		SoapFaultDetail detail = fault.getFaultDetail();
+		if(detail == null) {
+			return null;
+		}
+		StringBuilder text = new StringBuilder();
+		Iterator<SoapFaultDetailElement> entries = detail.getDetailEntries();
+		while(entries.hasNext()) {
+			Source source = entries.next().getSource();
+			if(source instanceof DOMSource && ((DOMSource) source).getNode() != null) {
+				text.append(((DOMSource) source).getNode().getTextContent()).append(' ');
+			}
+		}
+		return text.toString();
+	}
+	
+	/**
+	 * Depth first search for an element with a Name attribute of BackOffMilliseconds.
+	 * 
+	 * @param node
+	 * @return the numeric value, or 0
+	 */
+	static long findBackOffMillis(Node node) {
+		if(node == null) {
+			return 0L;
+		}
+		if(node.getNodeType() == Node.ELEMENT_NODE && BACK_OFF_MILLISECONDS.equals(((Element) node).getAttribute("Name"))) {
+			String value = StringUtils.trimToNull(node.getTextContent());
+			if(value != null && StringUtils.isNumeric(value)) {
+				return Long.parseLong(value);
+			}
+		}
+		NodeList children = node.getChildNodes();
+		for(int i = 0; i < children.getLength(); i++) {
+			long backOff = findBackOffMillis(children.item(i));
+			if(backOff > 0) {
+				return backOff;
+			}
+		}
+		return 0L;
+	}
+	
+	private static ResponseMessageType getThrottledResponseMessage(Object response) {
+		if(!(response instanceof BaseResponseMessageType)) {
+			return null;
+		}
+		ArrayOfResponseMessagesType messages = ((BaseResponseMessageType) response).getResponseMessages();
+		if(messages == null) {
+			return null;
+		}
+		List<JAXBElement<? extends ResponseMessageType>> inner = messages.getCreateItemResponseMessagesAndDeleteItemResponseMessagesAndGetItemResponseMessages();
+		for(JAXBElement<? extends ResponseMessageType> element : inner) {
+			ResponseMessageType message = element.getValue();
+			if(message != null && message.getResponseCode() != null && findCode(message.getResponseCode().value()) != null) {
+				return message;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,364 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.impl.throttle;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.Validate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.microsoft.exchange.ExchangeRequestContext;
+import com.microsoft.exchange.exception.ExchangeRuntimeException;
+import com.microsoft.exchange.exception.ExchangeThrottledRuntimeException;
+import com.microsoft.exchange.impl.ExchangeOnlineThrottlingPolicy;
+import com.microsoft.exchange.types.ConnectingSIDType;
+
+/**
+ * Client side concurrency governor for Exchange Web Services requests.
+ * 
+ * Every request must hold a permit from the {@link AdaptiveConcurrencyLimiter} of the impersonated user
+ * and then from the limiter of the service account (the authenticated principal) before it is sent.
+ * Limits grow slowly while requests succeed and shrink sharply on the throttling codes defined in 
+ * {@link ExchangeOnlineThrottlingPolicy}:
+ * <ul>
+ * <li>{@link ExchangeOnlineThrottlingPolicy#ERROR_EXCEEDED_CONNECTION_COUNT} reduces the service account limit,</li>
+ * <li>{@link ExchangeOnlineThrottlingPolicy#ERROR_SERVER_BUSY} (and other throttling codes) reduce the impersonated user limit.</li>
+ * </ul>
+ * A <code>BackOffMilliseconds</code> hint pauses the affected limiter for the requested time.
+ * 
+ * Limiters for impersonated users are discarded once unused for {@link #getIdleTimeoutMillis()}, whatever
+ * their limit, so memory use is bounded by the number of mailboxes with recent requests. A discarded limiter 
+ * is retired first, so a request that looked it up just before cannot use it alongside its replacement.
+ */
+public class ThrottlingGovernor {
+
+	/**
+	 * Key used for the service account when the request carries no explicit credentials.
+	 */
+	public static final String DEFAULT_ACCOUNT = "default";
+	
+	protected final Log log = LogFactory.getLog(this.getClass());
+	
+	private final ConcurrentMap<String, AdaptiveConcurrencyLimiter> accountLimiters = new ConcurrentHashMap<String, AdaptiveConcurrencyLimiter>();
+	private final ConcurrentMap<String, AdaptiveConcurrencyLimiter> userLimiters = new ConcurrentHashMap<String, AdaptiveConcurrencyLimiter>();
+	
+	private int accountInitialLimit = ExchangeOnlineThrottlingPolicy.MAX_CONCURRENT_CONNECTIONS_IMPERSONATION;
+	private int accountMaxLimit = ExchangeOnlineThrottlingPolicy.MAX_CONCURRENT_CONNECTIONS_IMPERSONATION;
+	private int userInitialLimit = 2;
+	private int userMaxLimit = ExchangeOnlineThrottlingPolicy.MAX_CONCURRENT_CONNECTIONS_IMPERSONATION;
+	private double decreaseRatio = 0.5;
+	private long acquireTimeoutMillis = 300000L;
+	private long idleTimeoutMillis = 300000L;
+	
+	private final AtomicLong nextSweep = new AtomicLong(System.currentTimeMillis());
+	
+	/**
+	 * @return the accountInitialLimit
+	 */
+	public int getAccountInitialLimit() {
+		return accountInitialLimit;
+	}
+	/**
+	 * @param accountInitialLimit the accountInitialLimit to set
+	 */
+	public void setAccountInitialLimit(int accountInitialLimit) {
+		this.accountInitialLimit = accountInitialLimit;
+	}
+	/**
+	 * @return the accountMaxLimit
+	 */
+	public int getAccountMaxLimit() {
+		return accountMaxLimit;
+	}
+	/**
+	 * @param accountMaxLimit the accountMaxLimit to set
+	 */
+	public void setAccountMaxLimit(int accountMaxLimit) {
+		this.accountMaxLimit = accountMaxLimit;
+	}
+	/**
+	 * @return the userInitialLimit
+	 */
+	public int getUserInitialLimit() {
+		return userInitialLimit;
+	}
+	/**
+	 * @param userInitialLimit the userInitialLimit to set
+	 */
+	public void setUserInitialLimit(int userInitialLimit) {
+		this.userInitialLimit = userInitialLimit;
+	}
+	/**
+	 * @return the userMaxLimit
+	 */
+	public int getUserMaxLimit() {
+		return userMaxLimit;
+	}
+	/**
+	 * @param userMaxLimit the userMaxLimit to set
+	 */
+	public void setUserMaxLimit(int userMaxLimit) {
+		this.userMaxLimit = userMaxLimit;
+	}
+	/**
+	 * @return the decreaseRatio
+	 */
+	public double getDecreaseRatio() {
+		return decreaseRatio;
+	}
+	/**
+	 * @param decreaseRatio the decreaseRatio to set
+	 */
+	public void setDecreaseRatio(double decreaseRatio) {
+		this.decreaseRatio = decreaseRatio;
+	}
+	/**
+	 * @return the acquireTimeoutMillis
+	 */
+	public long getAcquireTimeoutMillis() {
+		return acquireTimeoutMillis;
+	}
+	/**
+	 * @param acquireTimeoutMillis the maximum time a request will wait for a permit
+	 */
+	public void setAcquireTimeoutMillis(long acquireTimeoutMillis) {
+		this.acquireTimeoutMillis = acquireTimeoutMillis;
+	}
+	/**
+	 * @return the idleTimeoutMillis
+	 */
+	public long getIdleTimeoutMillis() {
+		return idleTimeoutMillis;
+	}
+	/**
+	 * @param idleTimeoutMillis how long an unused impersonated user limiter is kept, whatever its current limit
+	 */
+	public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+		Validate.isTrue(idleTimeoutMillis >= 0, "idleTimeoutMillis cannot be negative");
+		this.idleTimeoutMillis = idleTimeoutMillis;
+	}
+	
+	/**
+	 * 
+	 * @param context the context of the request about to be sent
+	 * @return a {@link Permit} that must be passed to {@link #release(Permit, Object, Throwable)}
+	 * @throws ExchangeThrottledRuntimeException if a permit could not be obtained within {@link #getAcquireTimeoutMillis()}
+	 */
+	public Permit acquire(ExchangeRequestContext context) {
+		String account = getAccountKey(context);
+		String user = getUserKey(context);
+		
+		AdaptiveConcurrencyLimiter userLimiter = null;
+		if(user != null) {
+			userLimiter = acquire(userLimiters, user, userInitialLimit, userMaxLimit, "user " + user);
+		}
+		AdaptiveConcurrencyLimiter accountLimiter;
+		try {
+			accountLimiter = acquire(accountLimiters, account, accountInitialLimit, accountMaxLimit, "account " + account);
+		} catch (RuntimeException e) {
+			if(userLimiter != null) {
+				userLimiter.release();
+			}
+			throw e;
+		}
+		return new Permit(account, accountLimiter, user, userLimiter);
+	}
+	
+	/**
+	 * Return the permit and adapt the limits to the outcome of the request.
+	 * 
+	 * @param permit
+	 * @param response the response, if the request completed
+	 * @param failure the failure, if the request did not complete
+	 */
+	public void release(Permit permit, Object response, Throwable failure) {
+		if(permit == null || !permit.release()) {
+			return;
+		}
+		String code;
+		long backOffMillis;
+		if(failure != null) {
+			code = ThrottlingFaults.getThrottlingCode(failure);
+			backOffMillis = code == null ? 0L : ThrottlingFaults.getBackOffMillis(failure);
+		} else {
+			code = ThrottlingFaults.getThrottlingCode(response);
+			backOffMillis = code == null ? 0L : ThrottlingFaults.getBackOffMillis(response);
+		}
+		
+		if(code == null) {
+			if(failure == null) {
+				permit.accountLimiter.onSuccess();
+				if(permit.userLimiter != null) {
+					permit.userLimiter.onSuccess();
+				}
+			}
+		} else if(ExchangeOnlineThrottlingPolicy.ERROR_EXCEEDED_CONNECTION_COUNT.equals(code) || permit.userLimiter == null) {
+			permit.accountLimiter.onThrottled(backOffMillis);
+			log.warn(code + " for account " + permit.account + ", backOffMillis=" + backOffMillis + ", " + permit.accountLimiter);
+		} else {
+			permit.userLimiter.onThrottled(backOffMillis);
+			log.warn(code + " for user " + permit.user + ", backOffMillis=" + backOffMillis + ", " + permit.userLimiter);
+		}
+		
+		permit.accountLimiter.release();
+		if(permit.userLimiter != null) {
+			permit.userLimiter.release();
+		}
+		sweepIfDue();
+	}
+	
+	/**
+	 * Retire and discard impersonated user limiters that have been unused for at least {@link #getIdleTimeoutMillis()},
+	 * whatever their limit. Invoked periodically by {@link #release(Permit, Object, Throwable)}.
+	 * 
+	 * @return the number of limiters discarded
+	 */
+	public int evictIdleLimiters() {
+		int evicted = 0;
+		for(Map.Entry<String, AdaptiveConcurrencyLimiter> entry : userLimiters.entrySet()) {
+			if(entry.getValue().retireIfIdle(idleTimeoutMillis) && userLimiters.remove(entry.getKey(), entry.getValue())) {
+				evicted++;
+			}
+		}
+		if(evicted > 0 && log.isDebugEnabled()) {
+			log.debug("evicted " + evicted + " idle user limiters, " + userLimiters.size() + " remaining");
+		}
+		return evicted;
+	}
+	
+	/**
+	 * 
+	 * @param account
+	 * @return the limiter for the service account, or null if no request has been made for it
+	 */
+	public AdaptiveConcurrencyLimiter getAccountLimiter(String account) {
+		return accountLimiters.get(account);
+	}
+	/**
+	 * 
+	 * @param user
+	 * @return the limiter for the impersonated user, or null if it has not been used within {@link #getIdleTimeoutMillis()}
+	 */
+	public AdaptiveConcurrencyLimiter getUserLimiter(String user) {
+		return userLimiters.get(user);
+	}
+	
+	/**
+	 * 
+	 * @param context
+	 * @return the service account key for the context, never null
+	 */
+	protected String getAccountKey(ExchangeRequestContext context) {
+		if(context != null && context.getCredentials() != null && context.getCredentials().getUserPrincipal() != null) {
+			return context.getCredentials().getUserPrincipal().getName();
+		}
+		return DEFAULT_ACCOUNT;
+	}
+	
+	/**
+	 * 
+	 * @param context
+	 * @return the impersonated user key for the context, or null if the request does not use impersonation
+	 */
+	protected String getUserKey(ExchangeRequestContext context) {
+		if(context == null || context.getConnectingSID() == null) {
+			return null;
+		}
+		ConnectingSIDType sid = context.getConnectingSID();
+		String key = StringUtils.defaultIfEmpty(sid.getPrincipalName(), 
+				StringUtils.defaultIfEmpty(sid.getPrimarySmtpAddress(), 
+						StringUtils.defaultIfEmpty(sid.getSmtpAddress(), sid.getSID())));
+		return key == null ? null : key.toLowerCase();
+	}
+	
+	private AdaptiveConcurrencyLimiter getLimiter(ConcurrentMap<String, AdaptiveConcurrencyLimiter> limiters, String key, int initialLimit, int maxLimit) {
+		AdaptiveConcurrencyLimiter limiter = limiters.get(key);
+		if(limiter == null) {
+			AdaptiveConcurrencyLimiter created = new AdaptiveConcurrencyLimiter(Math.min(initialLimit, maxLimit), 1, maxLimit, decreaseRatio);
+			limiter = limiters.putIfAbsent(key, created);
+			if(limiter == null) {
+				limiter = created;
+			}
+		}
+		return limiter;
+	}
+	
+	/**
+	 * Acquire a permit from the limiter for the key, replacing it if it was retired by {@link #evictIdleLimiters()}.
+	 * 
+	 * @return the limiter the permit was acquired from
+	 */
+	private AdaptiveConcurrencyLimiter acquire(ConcurrentMap<String, AdaptiveConcurrencyLimiter> limiters, String key, int initialLimit, int maxLimit, String description) {
+		while(true) {
+			AdaptiveConcurrencyLimiter limiter = getLimiter(limiters, key, initialLimit, maxLimit);
+			try {
+				if(limiter.acquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+					return limiter;
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ExchangeRuntimeException("interrupted waiting for a permit for " + description);
+			}
+			if(!limiter.isRetired()) {
+				throw new ExchangeThrottledRuntimeException("timed out after " + acquireTimeoutMillis + " ms waiting for a permit for " + description + ", " + limiter);
+			}
+			limiters.remove(key, limiter);
+		}
+	}
+	
+	private void sweepIfDue() {
+		long now = System.currentTimeMillis();
+		long due = nextSweep.get();
+		if(now >= due && nextSweep.compareAndSet(due, now + Math.max(1000L, idleTimeoutMillis / 2))) {
+			evictIdleLimiters();
+		}
+	}
+	
+	/**
+	 * Permit held for the duration of a single request.
+	 */
+	public static final class Permit {
+		private final String account;
+		private final AdaptiveConcurrencyLimiter accountLimiter;
+		private final String user;
+		private final AdaptiveConcurrencyLimiter userLimiter;
+		private boolean released = false;
+		
+		Permit(String account, AdaptiveConcurrencyLimiter accountLimiter, String user, AdaptiveConcurrencyLimiter userLimiter) {
+			this.account = account;
+			this.accountLimiter = accountLimiter;
+			this.user = user;
+			this.userLimiter = userLimiter;
+		}
+		
+		private synchronized boolean release() {
+			if(released) {
+				return false;
+			}
+			released = true;
+			return true;
+		}
+	}
+}
@@ -0,0 +1,148 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.microsoft.exchange.autodiscover.AutodiscoverDestinationProvider;
+import com.microsoft.exchange.autodiscover.CachingAutodiscoverService;
+import com.microsoft.exchange.autodiscover.ExchangeAutodiscoverService;
+import com.microsoft.exchange.impl.ThreadLocalImpersonationConnectingSIDSourceImpl;
+import com.microsoft.exchange.types.ConnectingSIDType;
+
+public class AutodiscoverDestinationProviderTest {
+
+	private static final String EWS_URL = "https://outlook.office365.com/EWS/Exchange.asmx";
+	private static final String ONPREM_URL = "https://mail.example.edu/EWS/Exchange.asmx";
+	
+	@Test
+	public void concurrentLookupsShareOneRequest() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger calls = new AtomicInteger();
+		ExchangeAutodiscoverService service = mock(ExchangeAutodiscoverService.class);
+		when(service.getAutodiscoverEndpoint(anyString())).thenAnswer(new Answer<String>() {
+			@Override
+			public String answer(InvocationOnMock invocation) throws Throwable {
+				calls.incrementAndGet();
+				release.await();
+				return EWS_URL;
+			}
+		});
+		final AutodiscoverDestinationProvider provider = newProvider(service);
+		
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<URI>> results = new ArrayList<Future<URI>>();
+			for(int i = 0; i < 8; i++) {
+				results.add(executor.submit(new Callable<URI>() {
+					@Override
+					public URI call() {
+						return destinationFor(provider, "someone@example.edu");
+					}
+				}));
+			}
+			while(provider.getCoalescedCount() < 7) {
+				Thread.sleep(10);
+			}
+			release.countDown();
+			for(Future<URI> result : results) {
+				assertEquals(new URI(EWS_URL), result.get());
+			}
+			assertEquals(1, calls.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	@Test
+	public void domainShortcutAndRedirect() throws Exception {
+		ExchangeAutodiscoverService service = mock(ExchangeAutodiscoverService.class);
+		when(service.getAutodiscoverEndpoint(anyString())).thenReturn(EWS_URL);
+		AutodiscoverDestinationProvider provider = newProvider(service);
+		provider.setDomainShortcutEnabled(true);
+		
+		assertEquals(new URI(EWS_URL), destinationFor(provider, "first@example.edu"));
+		assertEquals(new URI(EWS_URL), destinationFor(provider, "second@example.edu"));
+		assertEquals(new URI(EWS_URL), destinationFor(provider, "third@example.edu"));
+		verify(service, times(3)).getAutodiscoverEndpoint("first@example.edu");
+		verify(service, times(0)).getAutodiscoverEndpoint("second@example.edu");
+		
+		provider.redirect("Second@example.edu", ONPREM_URL);
+		assertEquals(new URI(ONPREM_URL), destinationFor(provider, "second@example.edu"));
+		assertEquals(new URI(EWS_URL), destinationFor(provider, "third@example.edu"));
+	}
+	
+	@Test
+	public void domainShortcutUsesCachedDomainEndpoint() throws Exception {
+		ExchangeAutodiscoverService delegate = mock(ExchangeAutodiscoverService.class);
+		when(delegate.getAutodiscoverEndpoint(anyString())).thenReturn(EWS_URL);
+		CachingAutodiscoverService cache = new CachingAutodiscoverService(delegate);
+		cache.afterPropertiesSet();
+		try {
+			// found for a user before the shortcut ever ran, e.g. by a previous run
+			assertEquals(EWS_URL, cache.getAutodiscoverEndpoint("first@example.edu"));
+			AutodiscoverDestinationProvider provider = newProvider(cache);
+			provider.setDomainShortcutEnabled(true);
+			
+			assertEquals(new URI(EWS_URL), destinationFor(provider, "second@example.edu"));
+			assertEquals(new URI(EWS_URL), destinationFor(provider, "third@example.edu"));
+			verify(delegate, times(1)).getAutodiscoverEndpoint(anyString());
+		} finally {
+			cache.destroy();
+		}
+	}
+	
+	private static AutodiscoverDestinationProvider newProvider(ExchangeAutodiscoverService service) {
+		AutodiscoverDestinationProvider provider = new AutodiscoverDestinationProvider();
+		provider.setConnectingSIDSource(new ThreadLocalImpersonationConnectingSIDSourceImpl());
+		provider.setCompositeAutodiscoverService(service);
+		provider.setDefaultUri("https://outlook.office365.com/ews/exchange.asmx");
+		return provider;
+	}
+	
+	private static URI destinationFor(AutodiscoverDestinationProvider provider, String upn) {
+		ConnectingSIDType connectingSID = new ConnectingSIDType();
+		connectingSID.setPrincipalName(upn);
+		ThreadLocalImpersonationConnectingSIDSourceImpl.setConnectingSID(connectingSID);
+		try {
+			return provider.getDestination();
+		} finally {
+			ThreadLocalImpersonationConnectingSIDSourceImpl.clear();
+		}
+	}
+}
@@ -0,0 +1,545 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.microsoft.exchange.exception.ExchangeRuntimeException;
+import com.microsoft.exchange.impl.BaseExchangeCalendarDataDao;
+import com.microsoft.exchange.impl.ExchangeRequestContextHolder;
+import com.microsoft.exchange.impl.MailboxTimeZoneContextSource;
+import com.microsoft.exchange.impl.ThreadLocalImpersonationConnectingSIDSourceImpl;
+import com.microsoft.exchange.impl.http.ThreadLocalCredentialsProviderFactory;
+import com.microsoft.exchange.impl.cache.LruItemCache;
+import com.microsoft.exchange.impl.sync.ItemSyncDelta;
+import com.microsoft.exchange.messages.ArrayOfResponseMessagesType;
+import com.microsoft.exchange.messages.FindItem;
+import com.microsoft.exchange.messages.FindItemResponse;
+import com.microsoft.exchange.messages.FindItemResponseMessageType;
+import com.microsoft.exchange.messages.GetItem;
+import com.microsoft.exchange.messages.GetItemResponse;
+import com.microsoft.exchange.messages.ItemInfoResponseMessageType;
+import com.microsoft.exchange.messages.ObjectFactory;
+import com.microsoft.exchange.messages.ResponseCodeType;
+import com.microsoft.exchange.messages.SyncFolderItems;
+import com.microsoft.exchange.messages.SyncFolderItemsResponse;
+import com.microsoft.exchange.messages.SyncFolderItemsResponseMessageType;
+import com.microsoft.exchange.types.ArrayOfRealItemsType;
+import com.microsoft.exchange.types.BaseItemIdType;
+import com.microsoft.exchange.types.CalendarItemType;
+import com.microsoft.exchange.types.DistinguishedFolderIdNameType;
+import com.microsoft.exchange.types.DistinguishedFolderIdType;
+import com.microsoft.exchange.types.FindItemParentType;
+import com.microsoft.exchange.types.FolderIdType;
+import com.microsoft.exchange.types.ItemIdType;
+import com.microsoft.exchange.types.ItemType;
+import com.microsoft.exchange.types.ResponseClassType;
+import com.microsoft.exchange.types.SyncFolderItemsChangesType;
+import com.microsoft.exchange.types.SyncFolderItemsCreateOrUpdateType;
+import com.microsoft.exchange.types.SyncFolderItemsDeleteType;
+
+public class BaseExchangeCalendarDataDaoTest {
+
+	/**
+	 * Serve a folder of total items in pages, the way Exchange does for an IndexedPageItemView.
+	 */
+	static Answer<FindItemResponse> pagedFolder(final int total) {
+		return new Answer<FindItemResponse>() {
+			@Override
+			public FindItemResponse answer(InvocationOnMock invocation) throws Throwable {
+				FindItem request = (FindItem) invocation.getArguments()[0];
+				int offset = request.getIndexedPageItemView().getOffset();
+				int max = request.getIndexedPageItemView().getMaxEntriesReturned();
+				
+				FindItemParentType rootFolder = new FindItemParentType();
+				ArrayOfRealItemsType items = new ArrayOfRealItemsType();
+				int end = Math.min(total, offset + max);
+				for(int i = offset; i < end; i++) {
+					ItemType item = new ItemType();
+					ItemIdType itemId = new ItemIdType();
+					itemId.setId("item-" + i);
+					item.setItemId(itemId);
+					items.getItemsAndMessagesAndCalendarItems().add(item);
+				}
+				rootFolder.setItems(items);
+				rootFolder.setTotalItemsInView(total);
+				rootFolder.setIncludesLastItemInRange(end >= total);
+				rootFolder.setIndexedPagingOffset(end);
+				
+				FindItemResponseMessageType message = new FindItemResponseMessageType();
+				message.setResponseClass(ResponseClassType.SUCCESS);
+				message.setResponseCode(ResponseCodeType.NO_ERROR);
+				message.setRootFolder(rootFolder);
+				ArrayOfResponseMessagesType messages = new ArrayOfResponseMessagesType();
+				messages.getCreateItemResponseMessagesAndDeleteItemResponseMessagesAndGetItemResponseMessages().add(
+						new ObjectFactory().createArrayOfResponseMessagesTypeFindItemResponseMessage(message));
+				FindItemResponse response = new FindItemResponse();
+				response.setResponseMessages(messages);
+				return response;
+			}
+		};
+	}
+	
+	/**
+	 * Echo each requested id back as an item; the first request containing failId fails once.
+	 */
+	static Answer<GetItemResponse> echoItems(final String failId) {
+		final AtomicBoolean failed = new AtomicBoolean();
+		return new Answer<GetItemResponse>() {
+			@Override
+			public GetItemResponse answer(InvocationOnMock invocation) throws Throwable {
+				GetItem request = (GetItem) invocation.getArguments()[0];
+				ArrayOfRealItemsType items = new ArrayOfRealItemsType();
+				for(BaseItemIdType baseId : request.getItemIds().getItemIdsAndOccurrenceItemIdsAndRecurringMasterItemIds()) {
+					ItemIdType itemId = (ItemIdType) baseId;
+					if(itemId.getId().equals(failId) && failed.compareAndSet(false, true)) {
+						throw new ExchangeRuntimeException("simulated failure");
+					}
+					ItemType item = new ItemType();
+					item.setItemId(itemId);
+					items.getItemsAndMessagesAndCalendarItems().add(item);
+				}
+				ItemInfoResponseMessageType message = new ItemInfoResponseMessageType();
+				message.setResponseClass(ResponseClassType.SUCCESS);
+				message.setResponseCode(ResponseCodeType.NO_ERROR);
+				message.setItems(items);
+				ArrayOfResponseMessagesType messages = new ArrayOfResponseMessagesType();
+				messages.getCreateItemResponseMessagesAndDeleteItemResponseMessagesAndGetItemResponseMessages().add(
+						new ObjectFactory().createArrayOfResponseMessagesTypeGetItemResponseMessage(message));
+				GetItemResponse response = new GetItemResponse();
+				response.setResponseMessages(messages);
+				return response;
+			}
+		};
+	}
+	
+	/**
+	 * Serve a calendar view of three items for the impersonated mailbox, with ids prefixed by its upn;
+	 * requests for failUpn fail.
+	 */
+	static Answer<FindItemResponse> mailboxCalendar(final String failUpn) {
+		return new Answer<FindItemResponse>() {
+			@Override
+			public FindItemResponse answer(InvocationOnMock invocation) throws Throwable {
+				String upn = ThreadLocalImpersonationConnectingSIDSourceImpl.getCurrentConnectingSID().getPrincipalName();
+				if(upn.equals(failUpn)) {
+					throw new ExchangeRuntimeException("simulated failure for " + upn);
+				}
+				FindItemParentType rootFolder = new FindItemParentType();
+				ArrayOfRealItemsType items = new ArrayOfRealItemsType();
+				for(int i = 0; i < 3; i++) {
+					CalendarItemType item = new CalendarItemType();
+					ItemIdType itemId = new ItemIdType();
+					itemId.setId(upn + "-" + i);
+					item.setItemId(itemId);
+					items.getItemsAndMessagesAndCalendarItems().add(item);
+				}
+				rootFolder.setItems(items);
+				rootFolder.setTotalItemsInView(3);
+				rootFolder.setIncludesLastItemInRange(true);
+				
+				FindItemResponseMessageType message = new FindItemResponseMessageType();
+				message.setResponseClass(ResponseClassType.SUCCESS);
+				message.setResponseCode(ResponseCodeType.NO_ERROR);
+				message.setRootFolder(rootFolder);
+				ArrayOfResponseMessagesType messages = new ArrayOfResponseMessagesType();
+				messages.getCreateItemResponseMessagesAndDeleteItemResponseMessagesAndGetItemResponseMessages().add(
+						new ObjectFactory().createArrayOfResponseMessagesTypeFindItemResponseMessage(message));
+				FindItemResponse response = new FindItemResponse();
+				response.setResponseMessages(messages);
+				return response;
+			}
+		};
+	}
+	
+	/**
+	 * Echo each requested id back as a calendar item.
+	 */
+	static Answer<GetItemResponse> echoCalendarItems() {
+		return new Answer<GetItemResponse>() {
+			@Override
+			public GetItemResponse answer(InvocationOnMock invocation) throws Throwable {
+				GetItem request = (GetItem) invocation.getArguments()[0];
+				ArrayOfRealItemsType items = new ArrayOfRealItemsType();
+				for(BaseItemIdType baseId : request.getItemIds().getItemIdsAndOccurrenceItemIdsAndRecurringMasterItemIds()) {
+					CalendarItemType item = new CalendarItemType();
+					item.setItemId((ItemIdType) baseId);
+					items.getItemsAndMessagesAndCalendarItems().add(item);
+				}
+				ItemInfoResponseMessageType message = new ItemInfoResponseMessageType();
+				message.setResponseClass(ResponseClassType.SUCCESS);
+				message.setResponseCode(ResponseCodeType.NO_ERROR);
+				message.setItems(items);
+				ArrayOfResponseMessagesType messages = new ArrayOfResponseMessagesType();
+				messages.getCreateItemResponseMessagesAndDeleteItemResponseMessagesAndGetItemResponseMessages().add(
+						new ObjectFactory().createArrayOfResponseMessagesTypeGetItemResponseMessage(message));
+				GetItemResponse response = new GetItemResponse();
+				response.setResponseMessages(messages);
+				return response;
+			}
+		};
+	}
+	
+	@Test
+	public void getItemsBatched() {
+		ExchangeWebServices webServices = mock(ExchangeWebServices.class);
+		when(webServices.getItem(any(GetItem.class))).thenAnswer(echoItems("item-120"));
+		
+		BaseExchangeCalendarDataDao dao = new BaseExchangeCalendarDataDao();
+		dao.setWebServices(webServices);
+		dao.setGetItemBatchSize(100);
+		
+		List<ItemIdType> itemIds = new ArrayList<ItemIdType>();
+		for(int i = 0; i < 250; i++) {
+			ItemIdType itemId = new ItemIdType();
+			itemId.setId("item-" + i);
+			itemIds.add(itemId);
+		}
+		final List<Integer> batchSizes = new ArrayList<Integer>();
+		final Set<String> received = new HashSet<String>();
+		dao.getItems("someone@example.edu", itemIds, new ItemTypeHandler() {
+			@Override
+			public void handle(Collection<? extends ItemType> items) {
+				batchSizes.add(items.size());
+				for(ItemType item : items) {
+					received.add(item.getItemId().getId());
+				}
+			}
+		});
+		assertEquals(3, batchSizes.size());
+		assertEquals(250, received.size());
+		// three batches, only the failed one requested again
+		verify(webServices, times(4)).getItem(any(GetItem.class));
+	}
+	
+	@Test
+	public void getItemsStreamsWhenSupported() {
+		ExchangeWebServices webServices = mock(ExchangeWebServices.class, withSettings().extraInterfaces(StreamingExchangeWebServices.class));
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(InvocationOnMock invocation) {
+				GetItem request = (GetItem) invocation.getArguments()[0];
+				ItemTypeHandler handler = (ItemTypeHandler) invocation.getArguments()[1];
+				// as StreamingItemParser does, in several batches per response
+				for(BaseItemIdType baseId : request.getItemIds().getItemIdsAndOccurrenceItemIdsAndRecurringMasterItemIds()) {
+					CalendarItemType item = new CalendarItemType();
+					item.setItemId((ItemIdType) baseId);
+					handler.handle(Collections.singleton(item));
+				}
+				return null;
+			}
+		}).when((StreamingExchangeWebServices) webServices).getItem(any(GetItem.class), any(ItemTypeHandler.class));
+		
+		BaseExchangeCalendarDataDao dao = new BaseExchangeCalendarDataDao();
+		dao.setWebServices(webServices);
+		dao.setGetItemBatchSize(100);
+		
+		List<ItemIdType> itemIds = new ArrayList<ItemIdType>();
+		for(int i = 0; i < 150; i++) {
+			ItemIdType itemId = new ItemIdType();
+			itemId.setId("item-" + i);
+			itemIds.add(itemId);
+		}
+		final List<Integer> batchSizes = new ArrayList<Integer>();
+		final Set<String> received = new HashSet<String>();
+		dao.getItems("someone@example.edu", itemIds, new ItemTypeHandler() {
+			@Override
+			public void handle(Collection<? extends ItemType> items) {
+				batchSizes.add(items.size());
+				for(ItemType item : items) {
+					received.add(item.getItemId().getId());
+				}
+			}
+		});
+		assertEquals(150, received.size());
+		// one call per GetItem batch
+		assertEquals(2, batchSizes.size());
+		verify((StreamingExchangeWebServices) webServices, times(2)).getItem(any(GetItem.class), any(ItemTypeHandler.class));
+		verify(webServices, never()).getItem(any(GetItem.class));
+	}
+	
+	@Test
+	public void getItemsSkipsUnchangedItems() {
+		ExchangeWebServices webServices = mock(ExchangeWebServices.class);
+		when(webServices.getItem(any(GetItem.class))).thenAnswer(echoItems(null));
+		
+		BaseExchangeCalendarDataDao dao = new BaseExchangeCalendarDataDao();
+		dao.setWebServices(webServices);
+		dao.setItemCache(new LruItemCache());
+		
+		Set<ItemIdType> itemIds = new HashSet<ItemIdType>();
+		for(int i = 0; i < 10; i++) {
+			itemIds.add(ItemCacheTest.itemId("item-" + i, "ck1"));
+		}
+		final Set<String> received = new HashSet<String>();
+		ItemTypeHandler handler = new ItemTypeHandler() {
+			@Override
+			public void handle(Collection<? extends ItemType> items) {
+				for(ItemType item : items) {
+					received.add(item.getItemId().getId());
+				}
+			}
+		};
+		dao.getItems("someone@example.edu", itemIds, handler);
+		assertEquals(10, received.size());
+		verify(webServices, times(1)).getItem(any(GetItem.class));
+		
+		// nothing changed: no request at all
+		received.clear();
+		dao.getItems("someone@example.edu", itemIds, handler);
+		assertEquals(10, received.size());
+		verify(webServices, times(1)).getItem(any(GetItem.class));
+		
+		// one changed item: only it is requested
+		itemIds.add(ItemCacheTest.itemId("item-3", "ck2"));
+		itemIds.remove(ItemCacheTest.itemId("item-3", "ck1"));
+		ArgumentCaptor<GetItem> captor = ArgumentCaptor.forClass(GetItem.class);
+		received.clear();
+		dao.getItems("someone@example.edu", itemIds, handler);
+		assertEquals(10, received.size());
+		verify(webServices, times(2)).getItem(captor.capture());
+		assertEquals(1, captor.getValue().getItemIds().getItemIdsAndOccurrenceItemIdsAndRecurringMasterItemIds().size());
+	}
+	
+	@Test
+	public void findAllItemIdsPipelined() {
+		ExchangeWebServices webServices = mock(ExchangeWebServices.class);
+		when(webServices.findItem(any(FindItem.class))).thenAnswer(pagedFolder(2250));
+		
+		BaseExchangeCalendarDataDao dao = new BaseExchangeCalendarDataDao();
+		dao.setWebServices(webServices);
+		dao.setPagingDepth(3);
+		
+		Set<ItemIdType> itemIds = dao.findAllItemIds("someone@example.edu", Collections.singleton(new FolderIdType()));
+		assertEquals(2250, itemIds.size());
+		// merged in paging order
+		Iterator<ItemIdType> iterator = itemIds.iterator();
+		for(int i = 0; i < 2250; i++) {
+			assertEquals("item-" + i, iterator.next().getId());
+		}
+		// 500 per page
+		verify(webServices, times(5)).findItem(any(FindItem.class));
+	}
+	
+	@Test
+	public void findAllItemIdsSerial() {
+		ExchangeWebServices webServices = mock(ExchangeWebServices.class);
+		when(webServices.findItem(any(FindItem.class))).thenAnswer(pagedFolder(1200));
+		
+		BaseExchangeCalendarDataDao dao = new BaseExchangeCalendarDataDao();
+		dao.setWebServices(webServices);
+		dao.setPagingDepth(1);
+		
+		Set<ItemIdType> itemIds = dao.findAllItemIds("someone@example.edu", Collections.singleton(new FolderIdType()));
+		assertEquals(1200, itemIds.size());
+		verify(webServices, times(3)).findItem(any(FindItem.class));
+	}
+	
+	static SyncFolderItemsCreateOrUpdateType calendarItemChange(String id, String changeKey) {
+		CalendarItemType item = new CalendarItemType();
+		ItemIdType itemId = new ItemIdType();
+		itemId.setId(id);
+		itemId.setChangeKey(changeKey);
+		item.setItemId(itemId);
+		SyncFolderItemsCreateOrUpdateType change = new SyncFolderItemsCreateOrUpdateType();
+		change.setCalendarItem(item);
+		return change;
+	}
+	
+	static SyncFolderItemsResponse syncResponse(ResponseCodeType code, String syncState, boolean last, SyncFolderItemsChangesType changes) {
+		SyncFolderItemsResponseMessageType message = new SyncFolderItemsResponseMessageType();
+		message.setResponseClass(ResponseCodeType.NO_ERROR.equals(code) ? ResponseClassType.SUCCESS : ResponseClassType.ERROR);
+		message.setResponseCode(code);
+		message.setSyncState(syncState);
+		message.setIncludesLastItemInRange(last);
+		message.setChanges(changes);
+		ArrayOfResponseMessagesType messages = new ArrayOfResponseMessagesType();
+		messages.getCreateItemResponseMessagesAndDeleteItemResponseMessagesAndGetItemResponseMessages().add(
+				new ObjectFactory().createArrayOfResponseMessagesTypeSyncFolderItemsResponseMessage(message));
+		SyncFolderItemsResponse response = new SyncFolderItemsResponse();
+		response.setResponseMessages(messages);
+		return response;
+	}
+	
+	@Test
+	public void syncFolderItems() {
+		com.microsoft.exchange.types.ObjectFactory types = new com.microsoft.exchange.types.ObjectFactory();
+		// first page: a, b and c created
+		SyncFolderItemsChangesType page1 = new SyncFolderItemsChangesType();
+		page1.getCreatesAndUpdatesAndDeletes().add(types.createSyncFolderItemsChangesTypeCreate(calendarItemChange("a", "a1")));
+		page1.getCreatesAndUpdatesAndDeletes().add(types.createSyncFolderItemsChangesTypeCreate(calendarItemChange("b", "b1")));
+		page1.getCreatesAndUpdatesAndDeletes().add(types.createSyncFolderItemsChangesTypeCreate(calendarItemChange("c", "c1")));
+		// second page: a updated, b deleted
+		SyncFolderItemsChangesType page2 = new SyncFolderItemsChangesType();
+		page2.getCreatesAndUpdatesAndDeletes().add(types.createSyncFolderItemsChangesTypeUpdate(calendarItemChange("a", "a2")));
+		SyncFolderItemsDeleteType delete = new SyncFolderItemsDeleteType();
+		ItemIdType b = new ItemIdType();
+		b.setId("b");
+		delete.setItemId(b);
+		page2.getCreatesAndUpdatesAndDeletes().add(types.createSyncFolderItemsChangesTypeDelete(delete));
+		// incremental: c updated
+		SyncFolderItemsChangesType page3 = new SyncFolderItemsChangesType();
+		page3.getCreatesAndUpdatesAndDeletes().add(types.createSyncFolderItemsChangesTypeUpdate(calendarItemChange("c", "c2")));
+		
+		ExchangeWebServices webServices = mock(ExchangeWebServices.class);
+		when(webServices.syncFolderItems(any(SyncFolderItems.class))).thenReturn(
+				syncResponse(ResponseCodeType.NO_ERROR, "state1", false, page1),
+				syncResponse(ResponseCodeType.NO_ERROR, "state2", true, page2),
+				syncResponse(ResponseCodeType.NO_ERROR, "state3", true, page3),
+				syncResponse(ResponseCodeType.ERROR_INVALID_SYNC_STATE_DATA, null, true, null),
+				syncResponse(ResponseCodeType.NO_ERROR, "state4", true, page1));
+		
+		BaseExchangeCalendarDataDao dao = new BaseExchangeCalendarDataDao();
+		dao.setWebServices(webServices);
+		DistinguishedFolderIdType calendar = new DistinguishedFolderIdType();
+		calendar.setId(DistinguishedFolderIdNameType.CALENDAR);
+		
+		ItemSyncDelta full = dao.syncFolderItems("someone@example.edu", calendar);
+		assertTrue(full.isFullSync());
+		assertEquals(2, full.getCreated().size());
+		assertEquals("a2", full.getCreated().iterator().next().getChangeKey());
+		assertTrue(full.getUpdated().isEmpty());
+		assertTrue(full.getDeleted().isEmpty());
+		assertEquals("state2", dao.getSyncStateStore().getSyncState("someone@example.edu", full.getFolderKey()));
+		
+		ItemSyncDelta incremental = dao.syncFolderItems("someone@example.edu", calendar, false);
+		assertFalse(incremental.isFullSync());
+		assertEquals(1, incremental.getUpdated().size());
+		// not committed
+		assertEquals("state2", dao.getSyncStateStore().getSyncState("someone@example.edu", full.getFolderKey()));
+		
+		// state2 is rejected: start again
+		ItemSyncDelta restarted = dao.syncFolderItems("someone@example.edu", calendar);
+		assertTrue(restarted.isFullSync());
+		assertEquals(3, restarted.getCreated().size());
+		assertEquals("state4", dao.getSyncStateStore().getSyncState("someone@example.edu", full.getFolderKey()));
+	}
+	
+	@Test
+	public void getCalendarItemsForManyMailboxes() {
+		ExchangeWebServices webServices = mock(ExchangeWebServices.class);
+		when(webServices.findItem(any(FindItem.class))).thenAnswer(mailboxCalendar("broken@example.edu"));
+		when(webServices.getItem(any(GetItem.class))).thenAnswer(echoCalendarItems());
+		
+		BaseExchangeCalendarDataDao dao = new BaseExchangeCalendarDataDao();
+		dao.setWebServices(webServices);
+		dao.setMaxRetries(0);
+		dao.setBulkConcurrency(2);
+		
+		List<String> upns = Arrays.asList("c@example.edu", "broken@example.edu", "a@example.edu", "b@example.edu");
+		final List<String> progress = new ArrayList<String>();
+		final Set<String> notified = new HashSet<String>();
+		Map<String, MailboxResult<Set<CalendarItemType>>> results = dao.getCalendarItems(upns, new Date(0L), new Date(86400000L), new MailboxProgressListener() {
+			@Override
+			public void onMailboxComplete(MailboxResult<?> result, int completed, int total) {
+				progress.add(completed + "/" + total);
+				notified.add(result.getUpn());
+				if(completed == 1) {
+					throw new IllegalStateException("a failing listener does not stop the others");
+				}
+			}
+		});
+		// in the order requested, whatever the order of completion
+		assertEquals(upns, new ArrayList<String>(results.keySet()));
+		for(String upn : upns) {
+			MailboxResult<Set<CalendarItemType>> result = results.get(upn);
+			assertEquals(upn, result.getUpn());
+			if(upn.equals("broken@example.edu")) {
+				assertFalse(result.isSuccess());
+				assertNotNull(result.getFailure());
+			} else {
+				assertTrue(result.isSuccess());
+				assertEquals(3, result.getResult().size());
+				for(CalendarItemType item : result.getResult()) {
+					assertTrue(item.getItemId().getId().startsWith(upn + "-"));
+				}
+			}
+		}
+		assertEquals(Arrays.asList("1/4", "2/4", "3/4", "4/4"), progress);
+		assertEquals(new HashSet<String>(upns), notified);
+	}
+	
+	@Test
+	public void failedMailboxLeavesNoContextOnWorker() throws Exception {
+		MailboxTimeZoneContextSource mailboxTimeZones = new MailboxTimeZoneContextSource();
+		mailboxTimeZones.setMailboxTimeZones(Collections.singletonMap("broken@example.edu", "Europe/Berlin"));
+		ExecutorService worker = Executors.newSingleThreadExecutor();
+		try {
+			BaseExchangeCalendarDataDao dao = new BaseExchangeCalendarDataDao() {
+				@Override
+				public Set<ItemIdType> findCalendarItemIds(String upn, Date startDate, Date endDate) {
+					// bind everything a mailbox may leave on the worker, then fail
+					setContextCredentials(upn);
+					ThreadLocalCredentialsProviderFactory.set(new UsernamePasswordCredentials(upn, "secret"));
+					throw new ExchangeRuntimeException("broken mailbox");
+				}
+			};
+			dao.setMailboxTimeZoneContextSource(mailboxTimeZones);
+			dao.setBulkExecutorService(worker);
+			
+			Map<String, MailboxResult<Set<CalendarItemType>>> results = dao.getCalendarItems(Collections.singleton("broken@example.edu"), new Date(0L), new Date(86400000L), null);
+			assertFalse(results.get("broken@example.edu").isSuccess());
+			
+			ExchangeRequestContext context = worker.submit(new Callable<ExchangeRequestContext>() {
+				@Override
+				public ExchangeRequestContext call() {
+					return ExchangeRequestContextHolder.capture();
+				}
+			}).get();
+			assertNull(context.getConnectingSID());
+			assertNull(context.getCredentials());
+			assertNull(context.getTimeZoneId());
+		} finally {
+			worker.shutdownNow();
+		}
+	}
+}
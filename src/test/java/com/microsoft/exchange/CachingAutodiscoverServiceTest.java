@@ -0,0 +1,143 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.microsoft.exchange.autodiscover.CachingAutodiscoverService;
+import com.microsoft.exchange.autodiscover.ExchangeAutodiscoverService;
+import com.microsoft.exchange.exception.AutodiscoverException;
+
+public class CachingAutodiscoverServiceTest {
+
+	private static final String EWS_URL = "https://outlook.office365.com/EWS/Exchange.asmx";
+	
+	private File directory;
+	
+	@Before
+	public void createDirectory() {
+		directory = new File(System.getProperty("java.io.tmpdir"), "CachingAutodiscoverServiceTest-" + System.nanoTime());
+	}
+	
+	@After
+	public void deleteDirectory() throws Exception {
+		FileUtils.deleteDirectory(directory);
+	}
+	
+	@Test
+	public void cachesSuccessPerUserAndDomain() throws Exception {
+		ExchangeAutodiscoverService delegate = mock(ExchangeAutodiscoverService.class);
+		when(delegate.getAutodiscoverEndpoint("someone@example.edu")).thenReturn(EWS_URL);
+		CachingAutodiscoverService service = new CachingAutodiscoverService(delegate);
+		service.afterPropertiesSet();
+		try {
+			assertNull(service.getCachedDomainEndpoint("example.edu"));
+			assertEquals(EWS_URL, service.getAutodiscoverEndpoint("someone@example.edu"));
+			assertEquals(EWS_URL, service.getAutodiscoverEndpoint("SOMEONE@example.edu"));
+			verify(delegate, times(1)).getAutodiscoverEndpoint("someone@example.edu");
+			assertEquals(1, service.getHitCount());
+			assertEquals(1, service.getMissCount());
+			assertEquals(EWS_URL, service.getCachedDomainEndpoint("EXAMPLE.edu"));
+		} finally {
+			service.destroy();
+		}
+	}
+	
+	@Test
+	public void cachesFailures() throws Exception {
+		ExchangeAutodiscoverService delegate = mock(ExchangeAutodiscoverService.class);
+		when(delegate.getAutodiscoverEndpoint("nobody@example.edu")).thenThrow(new AutodiscoverException("not found"));
+		CachingAutodiscoverService service = new CachingAutodiscoverService(delegate);
+		service.setNegativeTimeToLiveMillis(60000);
+		service.afterPropertiesSet();
+		try {
+			for(int i = 0; i < 3; i++) {
+				try {
+					service.getAutodiscoverEndpoint("nobody@example.edu");
+					fail("expected AutodiscoverException");
+				} catch (AutodiscoverException e) {
+					// expected
+				}
+			}
+			verify(delegate, times(1)).getAutodiscoverEndpoint("nobody@example.edu");
+			assertEquals(2, service.getNegativeHitCount());
+			assertNull(service.getCachedDomainEndpoint("example.edu"));
+		} finally {
+			service.destroy();
+		}
+	}
+	
+	@Test
+	public void refreshesAheadOfExpiry() throws Exception {
+		ExchangeAutodiscoverService delegate = mock(ExchangeAutodiscoverService.class);
+		when(delegate.getAutodiscoverEndpoint("someone@example.edu")).thenReturn(EWS_URL);
+		CachingAutodiscoverService service = new CachingAutodiscoverService(delegate);
+		service.setTimeToLiveMillis(60000);
+		// any read after the first millisecond is old enough to refresh
+		service.setRefreshAheadFactor(0.00001);
+		service.afterPropertiesSet();
+		try {
+			service.getAutodiscoverEndpoint("someone@example.edu");
+			Thread.sleep(5);
+			assertEquals(EWS_URL, service.getAutodiscoverEndpoint("someone@example.edu"));
+			verify(delegate, timeout(5000).times(2)).getAutodiscoverEndpoint("someone@example.edu");
+			assertEquals(1, service.getRefreshCount());
+		} finally {
+			service.destroy();
+		}
+	}
+	
+	@Test
+	public void persistsAcrossInstances() throws Exception {
+		File file = new File(directory, "autodiscover.properties");
+		ExchangeAutodiscoverService delegate = mock(ExchangeAutodiscoverService.class);
+		when(delegate.getAutodiscoverEndpoint("someone@example.edu")).thenReturn(EWS_URL);
+		CachingAutodiscoverService service = new CachingAutodiscoverService(delegate);
+		service.setPersistenceFile(file);
+		service.afterPropertiesSet();
+		service.getAutodiscoverEndpoint("someone@example.edu");
+		service.destroy();
+		
+		ExchangeAutodiscoverService unused = mock(ExchangeAutodiscoverService.class);
+		CachingAutodiscoverService reopened = new CachingAutodiscoverService(unused);
+		reopened.setPersistenceFile(file);
+		reopened.afterPropertiesSet();
+		try {
+			assertEquals(EWS_URL, reopened.getAutodiscoverEndpoint("someone@example.edu"));
+			assertEquals(EWS_URL, reopened.getCachedDomainEndpoint("example.edu"));
+			verify(unused, times(0)).getAutodiscoverEndpoint("someone@example.edu");
+		} finally {
+			reopened.destroy();
+		}
+	}
+}
@@ -0,0 +1,115 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+import java.util.List;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.junit.Test;
+
+import com.microsoft.exchange.types.ItemIdType;
+
+public class CompactItemIdSetTest {
+
+	static String id(int i) {
+		return DatatypeConverter.printBase64Binary(("AAMkADk0ZjU3ZmZmLTNhYjItNGFmMi05ZTkyLTkxMGI1ZDA0YzQ1NwBGAAAAAAC" + i).getBytes());
+	}
+	
+	@Test
+	public void addContainsAndChangeKeys() {
+		CompactItemIdSet set = new CompactItemIdSet();
+		assertTrue(set.add(id(1), "ck1"));
+		assertTrue(set.add(id(2), null));
+		assertFalse(set.add(id(1), null));
+		assertEquals(2, set.size());
+		assertTrue(set.contains(id(1)));
+		assertFalse(set.contains(id(3)));
+		assertEquals("ck1", set.getChangeKey(id(1)));
+		assertNull(set.getChangeKey(id(2)));
+		
+		// a later ChangeKey replaces the earlier one, position is kept
+		assertFalse(set.add(id(1), "ck1b"));
+		assertEquals("ck1b", set.getChangeKey(0));
+		assertEquals(id(1), set.getId(0));
+	}
+	
+	@Test
+	public void nonBase64IdsRoundTrip() {
+		CompactItemIdSet set = new CompactItemIdSet();
+		String[] ids = new String[] { "not base64!", "abc", "QQ==", "QR==", "QUI=", "QUJD", "" };
+		for(String id : ids) {
+			set.add(id, null);
+		}
+		assertEquals(ids.length, set.size());
+		for(int i = 0; i < ids.length; i++) {
+			assertEquals(ids[i], set.getId(i));
+			assertTrue(set.contains(ids[i]));
+		}
+	}
+	
+	@Test
+	public void growthAndIterationOrder() {
+		CompactItemIdSet set = new CompactItemIdSet(0);
+		for(int i = 0; i < 20000; i++) {
+			set.add(id(i), "ck" + i);
+		}
+		assertEquals(20000, set.size());
+		Iterator<ItemIdType> iterator = set.iterator();
+		for(int i = 0; i < 20000; i++) {
+			ItemIdType itemId = iterator.next();
+			assertEquals(id(i), itemId.getId());
+			assertEquals("ck" + i, itemId.getChangeKey());
+		}
+		assertFalse(iterator.hasNext());
+		assertTrue(CompactItemIdSet.of(set.toItemIdList()).difference(set).isEmpty());
+	}
+	
+	@Test
+	public void difference() {
+		CompactItemIdSet previous = new CompactItemIdSet();
+		CompactItemIdSet current = new CompactItemIdSet();
+		for(int i = 0; i < 1000; i++) {
+			previous.add(id(i), null);
+		}
+		for(int i = 500; i < 1500; i++) {
+			current.add(id(i), "ck" + i);
+		}
+		CompactItemIdSet added = current.difference(previous);
+		CompactItemIdSet removed = previous.difference(current);
+		assertEquals(500, added.size());
+		assertEquals(500, removed.size());
+		assertEquals(id(1000), added.getId(0));
+		assertEquals("ck1000", added.getChangeKey(0));
+		assertEquals(id(0), removed.getId(0));
+		
+		CompactItemIdSet merged = new CompactItemIdSet();
+		merged.addAll(previous);
+		merged.addAll(added);
+		assertEquals(1500, merged.size());
+		List<ItemIdType> itemIds = merged.toItemIdList();
+		assertEquals(id(1499), itemIds.get(1499).getId());
+	}
+}
@@ -0,0 +1,140 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.params.HttpConnectionParams;
+import org.junit.Test;
+import org.springframework.ws.transport.context.DefaultTransportContext;
+import org.springframework.ws.transport.context.TransportContextHolder;
+import org.springframework.ws.transport.http.HttpComponentsConnection;
+
+import com.microsoft.exchange.autodiscover.AbstractExchangeAutodiscoverService;
+import com.microsoft.exchange.autodiscover.ConcurrentAutodiscoverServiceImpl;
+import com.microsoft.exchange.autodiscover.SoapAutodiscoverServiceImpl;
+import com.microsoft.exchange.exception.AutodiscoverException;
+
+public class ConcurrentAutodiscoverServiceTest {
+
+	private static final String EWS_URL = "https://outlook.office365.com/EWS/Exchange.asmx";
+	
+	/**
+	 * Answers only from the given endpoint; every other endpoint hangs like an unreachable host until interrupted.
+	 */
+	static class StubAutodiscoverService extends AbstractExchangeAutodiscoverService {
+		private final String answeringEndpoint;
+		final CountDownLatch cancelled = new CountDownLatch(1);
+		
+		StubAutodiscoverService(String answeringEndpoint) {
+			this.answeringEndpoint = answeringEndpoint;
+		}
+		@Override
+		protected String getServiceSuffix() {
+			return "xml";
+		}
+		@Override
+		public String getAutodiscoverEndpoint(String email) throws AutodiscoverException {
+			throw new UnsupportedOperationException();
+		}
+		@Override
+		public String probeAutodiscoverEndpoint(String email, String potentialEndpoint) throws AutodiscoverException {
+			if(potentialEndpoint.equals(answeringEndpoint)) {
+				return EWS_URL;
+			}
+			try {
+				Thread.sleep(60000);
+			} catch (InterruptedException e) {
+				cancelled.countDown();
+			}
+			throw new AutodiscoverException("connect timed out: "+potentialEndpoint);
+		}
+	}
+	
+	@Test
+	public void firstSuccessWinsAndCancelsTheRest() throws Exception {
+		// the last of the four candidates is the only one that answers
+		StubAutodiscoverService stub = new StubAutodiscoverService("http://autodiscover.example.edu/autodiscover/autodiscover.xml");
+		List<String> potentials = stub.getPotentialAutodiscoverEndpoints("someone@example.edu");
+		assertEquals(4, potentials.size());
+		assertEquals("http://autodiscover.example.edu/autodiscover/autodiscover.xml", potentials.get(3));
+		
+		ConcurrentAutodiscoverServiceImpl service = new ConcurrentAutodiscoverServiceImpl();
+		service.setAutodiscoverServices(Arrays.<AbstractExchangeAutodiscoverService>asList(stub));
+		service.afterPropertiesSet();
+		try {
+			long start = System.currentTimeMillis();
+			assertEquals(EWS_URL, service.getAutodiscoverEndpoint("someone@example.edu"));
+			assertTrue(System.currentTimeMillis() - start < 5000);
+			assertTrue("remaining probes were not cancelled", stub.cancelled.await(5, TimeUnit.SECONDS));
+		} finally {
+			service.destroy();
+		}
+	}
+	
+	@Test
+	public void timesOutWhenNoProbeSucceeds() throws Exception {
+		StubAutodiscoverService stub = new StubAutodiscoverService("none");
+		ConcurrentAutodiscoverServiceImpl service = new ConcurrentAutodiscoverServiceImpl();
+		service.setAutodiscoverServices(Arrays.<AbstractExchangeAutodiscoverService>asList(stub));
+		service.setProbeTimeoutMillis(200);
+		service.afterPropertiesSet();
+		try {
+			service.getAutodiscoverEndpoint("someone@example.edu");
+			fail("expected AutodiscoverException");
+		} catch (AutodiscoverException e) {
+			// expected
+		} finally {
+			service.destroy();
+		}
+	}
+	
+	static class ExposedSoapAutodiscoverService extends SoapAutodiscoverServiceImpl {
+		@Override
+		public void applyProbeTimeout() {
+			super.applyProbeTimeout();
+		}
+	}
+	
+	@Test
+	public void soapProbeSetsRequestTimeouts() {
+		final HttpPost request = new HttpPost("https://autodiscover.example.edu/autodiscover/autodiscover.svc");
+		HttpComponentsConnection connection = new HttpComponentsConnection(new DefaultHttpClient(), request, null) {
+		};
+		ExposedSoapAutodiscoverService soap = new ExposedSoapAutodiscoverService();
+		soap.setProbeTimeoutMillis(2500);
+		TransportContextHolder.setTransportContext(new DefaultTransportContext(connection));
+		try {
+			soap.applyProbeTimeout();
+		} finally {
+			TransportContextHolder.setTransportContext(null);
+		}
+		assertEquals(2500, HttpConnectionParams.getConnectionTimeout(request.getParams()));
+		assertEquals(2500, HttpConnectionParams.getSoTimeout(request.getParams()));
+	}
+}
@@ -20,18 +20,30 @@ package com.microsoft.exchange;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.TimeZone;
 
 import javax.xml.datatype.DatatypeConfigurationException;
 import javax.xml.datatype.DatatypeFactory;
 import javax.xml.datatype.Duration;
 import javax.xml.datatype.XMLGregorianCalendar;
 
+import net.fortuna.ical4j.data.CalendarBuilder;
+import net.fortuna.ical4j.data.CalendarOutputter;
 import net.fortuna.ical4j.model.Calendar;
 import net.fortuna.ical4j.model.ComponentList;
+import net.fortuna.ical4j.model.Parameter;
+import net.fortuna.ical4j.model.Property;
 import net.fortuna.ical4j.model.component.VEvent;
+import net.fortuna.ical4j.model.component.VTimeZone;
 import net.fortuna.ical4j.model.parameter.PartStat;
 import net.fortuna.ical4j.model.property.Clazz;
 import net.fortuna.ical4j.model.property.DtStart;
@@ -46,10 +58,13 @@ import org.apache.commons.logging.LogFactory;
 import org.junit.Test;
 
 import com.microsoft.exchange.impl.ExchangeEventConverterImpl;
+import com.microsoft.exchange.impl.VTimeZoneRegistry;
 import com.microsoft.exchange.types.CalendarItemType;
 import com.microsoft.exchange.types.ImportanceChoicesType;
+import com.microsoft.exchange.types.ItemType;
 import com.microsoft.exchange.types.ResponseTypeType;
 import com.microsoft.exchange.types.SensitivityChoicesType;
+import com.microsoft.exchange.types.TimeZoneDefinitionType;
 
 import edu.emory.mathcs.backport.java.util.Collections;
 
@@ -88,6 +103,139 @@ public class ExchangeEventConverterImplTest {
 		log.info("version="+version);
 	}
 	
+	@Test
+	public void writtenCalendarMatchesConvertedCalendar() throws Exception {
+		List<ItemType> items = new ArrayList<ItemType>();
+		long start = 1389808800000L;
+		for(int i = 0; i < 1000; i++) {
+			CalendarItemType calendarItem = new CalendarItemType();
+			calendarItem.setSubject("event " + i + " " + RandomStringUtils.randomAlphanumeric(100));
+			calendarItem.setUID("uid-" + i);
+			calendarItem.setStart(DateHelp.convertDateToXMLGregorianCalendar(new Date(start + i * 3600000L), TimeZone.getTimeZone("UTC")));
+			calendarItem.setEnd(DateHelp.convertDateToXMLGregorianCalendar(new Date(start + i * 3600000L + 1800000L), TimeZone.getTimeZone("UTC")));
+			calendarItem.setDateTimeCreated(calendarItem.getStart());
+			if(i % 100 == 0) {
+				calendarItem.setStartTimeZone(timeZoneDefinition(WINDOWS_TIME_ZONES[i / 100 % WINDOWS_TIME_ZONES.length]));
+			}
+			items.add(calendarItem);
+		}
+		ExchangeEventConverterImpl converter = new ExchangeEventConverterImpl();
+		converter.setExportChunkSize(50);
+		converter.setExportThreads(4);
+		converter.afterPropertiesSet();
+		try {
+			StringWriter expected = new StringWriter();
+			new CalendarOutputter(false).output(converter.convertToCalendar(items, null), expected);
+			StringWriter written = new StringWriter();
+			converter.writeCalendar(items, null, written);
+			assertEquals(expected.toString(), written.toString());
+			
+			StringWriter single = new StringWriter();
+			converter.writeCalendar(items.subList(0, 1), null, single);
+			assertEquals(1, new CalendarBuilder().build(new StringReader(single.toString())).getComponents(VEvent.VEVENT).size());
+		} finally {
+			converter.destroy();
+		}
+	}
+	
+	private static final String[] WINDOWS_TIME_ZONES = { "Central Standard Time", "Eastern Standard Time", "Tokyo Standard Time" };
+	
+	private static TimeZoneDefinitionType timeZoneDefinition(String id) {
+		TimeZoneDefinitionType definition = new TimeZoneDefinitionType();
+		definition.setId(id);
+		return definition;
+	}
+	
+	@Test
+	public void convertedCalendarHasNoUnreferencedTimeZones() {
+		VTimeZoneRegistry registry = new VTimeZoneRegistry();
+		ExchangeEventConverterImpl converter = new ExchangeEventConverterImpl();
+		converter.setVTimeZoneRegistry(registry);
+		List<ItemType> items = new ArrayList<ItemType>();
+		for(int i = 0; i < 30; i++) {
+			CalendarItemType calendarItem = new CalendarItemType();
+			calendarItem.setStart(DateHelp.convertDateToXMLGregorianCalendar(new Date()));
+			calendarItem.setEnd(DateHelp.convertDateToXMLGregorianCalendar(new Date()));
+			if(i % 2 == 0) {
+				// all day events are dates, they name no zone
+				calendarItem.setIsAllDayEvent(true);
+				calendarItem.setStartTimeZone(timeZoneDefinition(WINDOWS_TIME_ZONES[i % 3]));
+			} else {
+				calendarItem.setStartTimeZone(timeZoneDefinition("Not A Time Zone"));
+			}
+			items.add(calendarItem);
+		}
+		Calendar calendar = converter.convertToCalendar(items, null);
+		assertEquals(30, calendar.getComponents(VEvent.VEVENT).size());
+		assertEquals(0, calendar.getComponents(VTimeZone.VTIMEZONE).size());
+		
+		VEvent second = (VEvent) calendar.getComponents(VEvent.VEVENT).get(1);
+		assertTrue(second.getStartDate().isUtc());
+		assertNull(second.getStartDate().getParameter(Parameter.TZID));
+		Property startTimeZone = second.getProperty("X-EWS-START-TIMEZONE");
+		assertEquals("Not A Time Zone", startTimeZone.getValue());
+		assertNull(startTimeZone.getParameter(Parameter.TZID));
+	}
+	
+	@Test
+	public void convertedCalendarHasEachReferencedTimeZoneOnce() {
+		VTimeZoneRegistry registry = new VTimeZoneRegistry();
+		ExchangeEventConverterImpl converter = new ExchangeEventConverterImpl();
+		converter.setVTimeZoneRegistry(registry);
+		Date start = new Date(1389808800000L);
+		List<ItemType> items = new ArrayList<ItemType>();
+		for(int i = 0; i < 30; i++) {
+			CalendarItemType calendarItem = new CalendarItemType();
+			calendarItem.setStart(DateHelp.convertDateToXMLGregorianCalendar(start));
+			calendarItem.setEnd(DateHelp.convertDateToXMLGregorianCalendar(new Date(start.getTime() + 1800000L)));
+			calendarItem.setStartTimeZone(timeZoneDefinition(WINDOWS_TIME_ZONES[i % 3]));
+			calendarItem.setEndTimeZone(timeZoneDefinition("Central Standard Time"));
+			items.add(calendarItem);
+		}
+		Calendar calendar = converter.convertToCalendar(items, null);
+		assertEquals(30, calendar.getComponents(VEvent.VEVENT).size());
+		ComponentList timeZones = calendar.getComponents(VTimeZone.VTIMEZONE);
+		assertEquals(3, timeZones.size());
+		assertEquals("America/Chicago", ((VTimeZone) timeZones.get(0)).getTimeZoneId().getValue());
+		assertEquals(3, registry.getMissCount());
+		assertEquals(3, registry.size());
+		
+		VEvent second = (VEvent) calendar.getComponents(VEvent.VEVENT).get(1);
+		assertEquals("America/New_York", second.getStartDate().getParameter(Parameter.TZID).getValue());
+		assertEquals(start.getTime(), second.getStartDate().getDate().getTime());
+		assertEquals("America/Chicago", second.getEndDate().getParameter(Parameter.TZID).getValue());
+		assertEquals(start.getTime() + 1800000L, second.getEndDate().getDate().getTime());
+		
+		assertNull(registry.getVTimeZone("Not A Time Zone"));
+		assertSame(timeZones.get(0), registry.getVTimeZone("Central Standard Time"));
+	}
+	
+	@Test
+	public void writtenCalendarHasEachTimeZoneOnce() throws Exception {
+		ExchangeEventConverterImpl converter = new ExchangeEventConverterImpl();
+		converter.setExportChunkSize(10);
+		List<ItemType> items = new ArrayList<ItemType>();
+		for(int i = 0; i < 100; i++) {
+			CalendarItemType calendarItem = new CalendarItemType();
+			calendarItem.setStart(DateHelp.convertDateToXMLGregorianCalendar(new Date()));
+			calendarItem.setEnd(DateHelp.convertDateToXMLGregorianCalendar(new Date()));
+			calendarItem.setStartTimeZone(timeZoneDefinition("Central Standard Time"));
+			items.add(calendarItem);
+		}
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			converter.writeCalendar(items, null, out);
+			Calendar calendar = new CalendarBuilder().build(new ByteArrayInputStream(out.toByteArray()));
+			assertEquals(100, calendar.getComponents(VEvent.VEVENT).size());
+			assertEquals(1, calendar.getComponents(VTimeZone.VTIMEZONE).size());
+			assertEquals("America/Chicago", ((VTimeZone) calendar.getComponents().get(0)).getTimeZoneId().getValue());
+			VEvent last = (VEvent) calendar.getComponents(VEvent.VEVENT).get(99);
+			assertEquals("America/Chicago", last.getStartDate().getParameter(Parameter.TZID).getValue());
+		} finally {
+			converter.destroy();
+		}
+	}
+	
 	@Test
 	public void convertEmptyCalendarItem(){
 		CalendarItemType calendarItem = new CalendarItemType();
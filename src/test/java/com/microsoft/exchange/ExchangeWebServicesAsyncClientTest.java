@@ -0,0 +1,120 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.microsoft.exchange.impl.ExchangeWebServicesAsyncClient;
+import com.microsoft.exchange.impl.ThreadLocalImpersonationConnectingSIDSourceImpl;
+import com.microsoft.exchange.messages.FindItem;
+import com.microsoft.exchange.messages.FindItemResponse;
+import com.microsoft.exchange.types.ConnectingSIDType;
+
+public class ExchangeWebServicesAsyncClientTest {
+
+	private ExchangeWebServices webServices;
+	private ExchangeWebServicesAsyncClient asyncClient;
+	
+	@Before
+	public void setUp() throws Exception {
+		webServices = mock(ExchangeWebServices.class);
+		asyncClient = new ExchangeWebServicesAsyncClient();
+		asyncClient.setWebServices(webServices);
+		asyncClient.setPoolSize(2);
+		asyncClient.afterPropertiesSet();
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		asyncClient.destroy();
+	}
+	
+	/**
+	 * The connectingSID from the {@link ExchangeRequestContext} must be visible to the
+	 * worker thread during the invocation, and cleared afterwards.
+	 */
+	@Test
+	public void findItemBindsContext() throws Exception {
+		final AtomicReference<ConnectingSIDType> seen = new AtomicReference<ConnectingSIDType>();
+		final FindItemResponse response = new FindItemResponse();
+		when(webServices.findItem(any(FindItem.class))).thenAnswer(new Answer<FindItemResponse>() {
+			@Override
+			public FindItemResponse answer(InvocationOnMock invocation) throws Throwable {
+				seen.set(new ThreadLocalImpersonationConnectingSIDSourceImpl().getConnectingSID(null, null));
+				return response;
+			}
+		});
+		
+		ExchangeRequestContext context = ExchangeRequestContext.forPrincipalName("someone@example.edu");
+		ExchangeResponseFuture<FindItemResponse> future = asyncClient.findItem(new FindItem(), context);
+		assertSame(response, future.get(5, TimeUnit.SECONDS));
+		assertSame(context.getConnectingSID(), seen.get());
+		
+		// the calling thread is never bound
+		assertNull(new ThreadLocalImpersonationConnectingSIDSourceImpl().getConnectingSID(null, null));
+	}
+	
+	@Test
+	public void failureNotifiesCallback() throws Exception {
+		when(webServices.findItem(any(FindItem.class))).thenThrow(new IllegalStateException("boom"));
+		
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		ExchangeResponseFuture<FindItemResponse> future = asyncClient.findItem(new FindItem(), ExchangeRequestContext.forPrincipalName("someone@example.edu"));
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			fail("expected ExecutionException");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		// already complete, callback is invoked immediately
+		future.addCallback(new ExchangeResponseCallback<FindItemResponse>() {
+			@Override
+			public void onSuccess(FindItemResponse response) {
+				fail("unexpected success");
+			}
+			@Override
+			public void onFailure(Throwable t) {
+				failure.set(t);
+			}
+		});
+		assertNotSame(null, failure.get());
+		assertEquals("boom", failure.get().getMessage());
+		assertTrue(future.isDone());
+		assertFalse(future.isCancelled());
+	}
+}
@@ -0,0 +1,67 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.microsoft.exchange.impl.sync.FileSyncStateStore;
+
+public class FileSyncStateStoreTest {
+
+	private File directory;
+	
+	@Before
+	public void createDirectory() {
+		directory = new File(System.getProperty("java.io.tmpdir"), "FileSyncStateStoreTest-" + System.nanoTime());
+	}
+	
+	@After
+	public void deleteDirectory() throws Exception {
+		FileUtils.deleteDirectory(directory);
+	}
+	
+	@Test
+	public void putGetRemove() throws Exception {
+		FileSyncStateStore store = new FileSyncStateStore(directory);
+		store.afterPropertiesSet();
+		assertNull(store.getSyncState("someone@example.edu", "distinguished:calendar"));
+		
+		store.putSyncState("someone@example.edu", "distinguished:calendar", "H4sIAAAAAAAEAO29B2");
+		store.putSyncState("someone@example.edu", "distinguished:tasks", "other");
+		store.putSyncState("SOMEONE@example.edu", "distinguished:calendar", "H4sIAAAAAAAEAO29B3");
+		
+		// survives a new instance
+		FileSyncStateStore reopened = new FileSyncStateStore(directory);
+		reopened.afterPropertiesSet();
+		assertEquals("H4sIAAAAAAAEAO29B3", reopened.getSyncState("someone@example.edu", "distinguished:calendar"));
+		assertEquals("other", reopened.getSyncState("someone@example.edu", "distinguished:tasks"));
+		
+		reopened.removeSyncState("someone@example.edu", "distinguished:calendar");
+		assertNull(store.getSyncState("someone@example.edu", "distinguished:calendar"));
+		assertEquals(1, directory.listFiles().length);
+	}
+}
@@ -0,0 +1,72 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.List;
+
+import org.joda.time.Interval;
+import org.junit.Test;
+
+import com.microsoft.exchange.impl.FindItemRangePlanner;
+
+public class FindItemRangePlannerTest {
+
+	private static final long DAY = 24L * 60L * 60L * 1000L;
+	
+	private final Date start = DateHelp.makeDate("2014-01-01");
+	private final Date end = new Date(start.getTime() + 100 * DAY);
+	
+	@Test
+	public void unknownMailboxIsNotSplit() {
+		FindItemRangePlanner planner = new FindItemRangePlanner();
+		assertEquals(1, planner.plan("someone@example.edu", start, end).size());
+	}
+	
+	@Test
+	public void learnedDensitySplitsUpFront() {
+		FindItemRangePlanner planner = new FindItemRangePlanner();
+		// 40 items per day => 4000 items in 100 days, 800 per range at 80% of 1000
+		planner.recordSuccess("someone@example.edu", start, new Date(start.getTime() + 10 * DAY), 400);
+		List<Interval> intervals = planner.plan("SOMEONE@example.edu", start, end);
+		assertEquals(5, intervals.size());
+		assertContiguous(intervals);
+	}
+	
+	@Test
+	public void limitExceededSplitsAtLeastExceededSplitCount() {
+		FindItemRangePlanner planner = new FindItemRangePlanner();
+		List<Interval> intervals = planner.planAfterLimitExceeded("someone@example.edu", start, end);
+		assertEquals(planner.getExceededSplitCount(), intervals.size());
+		assertContiguous(intervals);
+		// the lower bound is remembered
+		assertTrue(planner.plan("someone@example.edu", start, end).size() > 1);
+	}
+	
+	private void assertContiguous(List<Interval> intervals) {
+		assertEquals(start.getTime(), intervals.get(0).getStartMillis());
+		assertEquals(end.getTime(), intervals.get(intervals.size() - 1).getEndMillis());
+		for(int i = 1; i < intervals.size(); i++) {
+			assertEquals(intervals.get(i - 1).getEndMillis(), intervals.get(i).getStartMillis());
+		}
+	}
+}
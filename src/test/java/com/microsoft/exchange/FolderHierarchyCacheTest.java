@@ -0,0 +1,270 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.microsoft.exchange.impl.cache.FolderHierarchy;
+import com.microsoft.exchange.impl.cache.FolderHierarchyCache;
+import com.microsoft.exchange.impl.cache.FolderHierarchyLoader;
+import com.microsoft.exchange.types.BaseFolderType;
+import com.microsoft.exchange.types.CalendarFolderType;
+import com.microsoft.exchange.types.DistinguishedFolderIdNameType;
+import com.microsoft.exchange.types.FolderIdType;
+
+public class FolderHierarchyCacheTest {
+
+	private static class CountingLoader implements FolderHierarchyLoader {
+		final AtomicInteger loads = new AtomicInteger();
+		final AtomicInteger revalidations = new AtomicInteger();
+		volatile boolean changed = false;
+		
+		@Override
+		public FolderHierarchy load(String upn, DistinguishedFolderIdNameType root) {
+			int n = loads.incrementAndGet();
+			try {
+				// widen the window for concurrent callers
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			List<BaseFolderType> folders = new ArrayList<BaseFolderType>();
+			folders.add(folder("primary", "Calendar"));
+			folders.add(folder("secondary", "Room " + n));
+			return new FolderHierarchy(root, folders, "state" + n);
+		}
+		
+		@Override
+		public String revalidate(String upn, FolderHierarchy hierarchy) {
+			revalidations.incrementAndGet();
+			return changed ? null : hierarchy.getSyncState() + "+";
+		}
+	}
+	
+	@Test
+	public void indexesAndCaches() {
+		FolderHierarchyCache cache = new FolderHierarchyCache();
+		CountingLoader loader = new CountingLoader();
+		FolderHierarchy hierarchy = cache.get("someone@example.edu", DistinguishedFolderIdNameType.CALENDAR, loader);
+		assertEquals("primary", hierarchy.getPrimaryFolder().getFolderId().getId());
+		assertEquals("secondary", hierarchy.getFolderByDisplayName("Room 1").getFolderId().getId());
+		assertEquals("Room 1", hierarchy.getFolder("secondary").getDisplayName());
+		assertNull(hierarchy.getFolderByDisplayName("missing"));
+		
+		assertSame(hierarchy, cache.get("SOMEONE@example.edu", DistinguishedFolderIdNameType.CALENDAR, loader));
+		cache.get("someone@example.edu", DistinguishedFolderIdNameType.TASKS, loader);
+		assertEquals(2, loader.loads.get());
+		assertEquals(1, cache.getHitCount());
+		
+		cache.invalidate("someone@example.edu");
+		assertEquals(0, cache.size());
+	}
+	
+	@Test
+	public void revalidateAfterTimeToLive() {
+		FolderHierarchyCache cache = new FolderHierarchyCache();
+		cache.setTimeToLiveMillis(0L);
+		CountingLoader loader = new CountingLoader();
+		cache.get("someone@example.edu", DistinguishedFolderIdNameType.CALENDAR, loader);
+		FolderHierarchy revalidated = cache.get("someone@example.edu", DistinguishedFolderIdNameType.CALENDAR, loader);
+		assertEquals(1, loader.loads.get());
+		assertEquals("state1+", revalidated.getSyncState());
+		assertEquals("Room 1", revalidated.getFolder("secondary").getDisplayName());
+		
+		loader.changed = true;
+		FolderHierarchy reloaded = cache.get("someone@example.edu", DistinguishedFolderIdNameType.CALENDAR, loader);
+		assertEquals(2, loader.loads.get());
+		assertEquals(2, loader.revalidations.get());
+		assertEquals("Room 2", reloaded.getFolder("secondary").getDisplayName());
+	}
+	
+	@Test
+	public void concurrentCallersShareOneLoad() throws InterruptedException {
+		final FolderHierarchyCache cache = new FolderHierarchyCache();
+		cache.setMaxEntries(2);
+		final CountingLoader loader = new CountingLoader();
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Thread> threads = new ArrayList<Thread>();
+		for(int i = 0; i < 8; i++) {
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					cache.get("someone@example.edu", DistinguishedFolderIdNameType.CALENDAR, loader);
+				}
+			};
+			thread.start();
+			threads.add(thread);
+		}
+		start.countDown();
+		for(Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(1, loader.loads.get());
+		
+		// bounded
+		cache.get("a@example.edu", DistinguishedFolderIdNameType.CALENDAR, loader);
+		cache.get("b@example.edu", DistinguishedFolderIdNameType.CALENDAR, loader);
+		assertEquals(2, cache.size());
+	}
+	
+	@Test
+	public void hitsDoNotWaitForLoads() throws Exception {
+		final FolderHierarchyCache cache = new FolderHierarchyCache();
+		final CountingLoader loader = new CountingLoader();
+		FolderHierarchy cached = cache.get("cached@example.edu", DistinguishedFolderIdNameType.CALENDAR, loader);
+		
+		final CountDownLatch loading = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		Thread slow = new Thread() {
+			@Override
+			public void run() {
+				cache.get("slow@example.edu", DistinguishedFolderIdNameType.CALENDAR, new CountingLoader() {
+					@Override
+					public FolderHierarchy load(String upn, DistinguishedFolderIdNameType root) {
+						loading.countDown();
+						try {
+							release.await();
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+						return super.load(upn, root);
+					}
+				});
+			}
+		};
+		slow.start();
+		loading.await();
+		try {
+			assertSame(cached, cache.get("cached@example.edu", DistinguishedFolderIdNameType.CALENDAR, loader));
+			// invalidated while loading: the load finishes but is not kept
+			cache.invalidate("slow@example.edu");
+		} finally {
+			release.countDown();
+			slow.join();
+		}
+		assertEquals(1, cache.size());
+	}
+	
+	/**
+	 * Holds the owner between its first lookup and publishing its load until another caller has stored 
+	 * the hierarchy, and has a joiner wait on the owner's published load.
+	 */
+	static class RacingCache extends FolderHierarchyCache {
+		final CountDownLatch ownerLookedUp = new CountDownLatch(1);
+		final CountDownLatch stored = new CountDownLatch(1);
+		final CountDownLatch published = new CountDownLatch(1);
+		final CountDownLatch joinerLookedUp = new CountDownLatch(1);
+		volatile Thread owner;
+		volatile Thread joiner;
+		private int ownerLookups = 0;
+		private int joinerLookups = 0;
+		
+		@Override
+		public FolderHierarchy getCurrent(String key) {
+			try {
+				if(Thread.currentThread() == owner && ownerLookups++ == 0) {
+					FolderHierarchy current = super.getCurrent(key);
+					ownerLookedUp.countDown();
+					stored.await();
+					return current;
+				}
+				if(Thread.currentThread() == owner) {
+					published.countDown();
+					joinerLookedUp.await();
+					while(joiner.getState() != Thread.State.WAITING && joiner.getState() != Thread.State.TERMINATED) {
+						Thread.sleep(5L);
+					}
+				} else if(Thread.currentThread() == joiner && joinerLookups++ == 0) {
+					// looked before the store
+					published.await();
+					joinerLookedUp.countDown();
+					return null;
+				}
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+			return super.getCurrent(key);
+		}
+	}
+	
+	@Test
+	public void callerJoiningALoadRacingAStoreGetsTheHierarchy() throws Exception {
+		final RacingCache cache = new RacingCache();
+		final CountingLoader loader = new CountingLoader();
+		final List<Object> results = Collections.synchronizedList(new ArrayList<Object>());
+		Thread owner = new Thread() {
+			@Override
+			public void run() {
+				try {
+					results.add(cache.get("someone@example.edu", DistinguishedFolderIdNameType.CALENDAR, loader));
+				} catch (RuntimeException e) {
+					results.add(e);
+				}
+			}
+		};
+		Thread joiner = new Thread() {
+			@Override
+			public void run() {
+				try {
+					results.add(cache.get("someone@example.edu", DistinguishedFolderIdNameType.CALENDAR, loader));
+				} catch (RuntimeException e) {
+					results.add(e);
+				}
+			}
+		};
+		cache.owner = owner;
+		cache.joiner = joiner;
+		owner.start();
+		cache.ownerLookedUp.await();
+		FolderHierarchy hierarchy = cache.get("someone@example.edu", DistinguishedFolderIdNameType.CALENDAR, loader);
+		cache.stored.countDown();
+		joiner.start();
+		owner.join(5000L);
+		joiner.join(5000L);
+		
+		assertEquals(2, results.size());
+		assertSame(hierarchy, results.get(0));
+		assertSame(hierarchy, results.get(1));
+		assertEquals(1, loader.loads.get());
+	}
+	
+	static BaseFolderType folder(String id, String displayName) {
+		CalendarFolderType folder = new CalendarFolderType();
+		FolderIdType folderId = new FolderIdType();
+		folderId.setId(id);
+		folder.setFolderId(folderId);
+		folder.setDisplayName(displayName);
+		return folder;
+	}
+}
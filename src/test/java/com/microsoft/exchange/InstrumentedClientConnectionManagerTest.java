@@ -0,0 +1,78 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.junit.Test;
+
+import com.microsoft.exchange.impl.http.InstrumentedClientConnectionManager;
+
+public class InstrumentedClientConnectionManagerTest {
+
+	@Test
+	public void perHostLimitsAndLeaseStatistics() throws Exception {
+		PoolingClientConnectionManager pool = new PoolingClientConnectionManager();
+		pool.setMaxTotal(10);
+		pool.setDefaultMaxPerRoute(1);
+		InstrumentedClientConnectionManager manager = new InstrumentedClientConnectionManager(pool);
+		manager.setMaxPerHost(Collections.singletonMap("Mail.Example.edu", 2));
+		manager.afterPropertiesSet();
+		try {
+			HttpRoute limited = new HttpRoute(new HttpHost("outlook.office365.com", 443, "https"));
+			HttpRoute configured = new HttpRoute(new HttpHost("mail.example.edu", 443, "https"));
+			
+			ManagedClientConnection first = manager.requestConnection(limited, null).getConnection(1, TimeUnit.SECONDS);
+			try {
+				manager.requestConnection(limited, null).getConnection(50, TimeUnit.MILLISECONDS);
+				fail("expected ConnectionPoolTimeoutException");
+			} catch (ConnectionPoolTimeoutException e) {
+				// the route allows one connection
+			}
+			ManagedClientConnection second = manager.requestConnection(configured, null).getConnection(1, TimeUnit.SECONDS);
+			ManagedClientConnection third = manager.requestConnection(configured, null).getConnection(1, TimeUnit.SECONDS);
+			assertEquals(2, manager.getStats(configured).getMax());
+			
+			assertEquals(3, manager.getLeased());
+			assertEquals(0, manager.getPending());
+			assertEquals(3, manager.getLeaseCount());
+			assertEquals(1, manager.getLeaseTimeoutCount());
+			assertTrue(manager.getAverageLeaseWaitMillis() >= 0);
+			
+			manager.releaseConnection(first, 0, TimeUnit.MILLISECONDS);
+			manager.releaseConnection(second, 0, TimeUnit.MILLISECONDS);
+			manager.releaseConnection(third, 0, TimeUnit.MILLISECONDS);
+			assertEquals(0, manager.getLeased());
+			manager.evictConnections();
+			assertEquals(0, manager.getAvailable());
+		} finally {
+			manager.destroy();
+		}
+	}
+}
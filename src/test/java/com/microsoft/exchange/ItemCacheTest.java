@@ -0,0 +1,126 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import javax.xml.bind.JAXBContext;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.microsoft.exchange.impl.cache.FileItemCache;
+import com.microsoft.exchange.impl.cache.LruItemCache;
+import com.microsoft.exchange.types.CalendarItemType;
+import com.microsoft.exchange.types.ItemIdType;
+import com.microsoft.exchange.types.ItemType;
+
+public class ItemCacheTest {
+
+	private File directory;
+	
+	@Before
+	public void createDirectory() {
+		directory = new File(System.getProperty("java.io.tmpdir"), "ItemCacheTest-" + System.nanoTime());
+	}
+	
+	@After
+	public void deleteDirectory() throws Exception {
+		FileUtils.deleteDirectory(directory);
+	}
+	
+	@Test
+	public void lruEvictionAndChangeKey() {
+		LruItemCache cache = new LruItemCache(2);
+		ItemType a = item("a", "1");
+		cache.put(a);
+		cache.put(item("b", "1"));
+		assertSame(a, cache.get("a", "1"));
+		// b is now least recently used
+		cache.put(item("c", "1"));
+		assertEquals(2, cache.size());
+		assertNull(cache.get("b", "1"));
+		assertNotNull(cache.get("c", "1"));
+		
+		// a newer ChangeKey misses and drops the stale entry
+		assertNull(cache.get("a", "2"));
+		assertEquals(1, cache.size());
+		assertEquals(2, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+		
+		// items without a ChangeKey are not cached
+		cache.put(item("d", null));
+		assertEquals(1, cache.size());
+	}
+	
+	@Test
+	public void diskTier() throws Exception {
+		FileItemCache disk = new FileItemCache();
+		disk.setDirectory(directory);
+		disk.setJaxbContext(JAXBContext.newInstance("com.microsoft.exchange.messages:com.microsoft.exchange.types"));
+		disk.setMaxEntries(10);
+		disk.afterPropertiesSet();
+		
+		LruItemCache cache = new LruItemCache(1);
+		cache.setDiskTier(disk);
+		CalendarItemType calendarItem = new CalendarItemType();
+		calendarItem.setItemId(itemId("a", "1"));
+		calendarItem.setSubject("subject");
+		cache.put(calendarItem);
+		cache.put(item("b", "1"));
+		
+		// evicted from memory, read back from disk with its type intact
+		ItemType fromDisk = cache.get("a", "1");
+		assertTrue(fromDisk instanceof CalendarItemType);
+		assertEquals("subject", fromDisk.getSubject());
+		assertNull(cache.get("a", "2"));
+		assertNull(disk.get("a", "1"));
+		
+		for(int i = 0; i < 20; i++) {
+			disk.put(item("item-" + i, "1"));
+		}
+		assertTrue(disk.size() <= 10);
+		assertNotNull(disk.get("item-19", "1"));
+		
+		cache.clear();
+		assertEquals(0, disk.size());
+		assertNull(cache.get("b", "1"));
+	}
+	
+	static ItemIdType itemId(String id, String changeKey) {
+		ItemIdType itemId = new ItemIdType();
+		itemId.setId(id);
+		itemId.setChangeKey(changeKey);
+		return itemId;
+	}
+	
+	static ItemType item(String id, String changeKey) {
+		ItemType item = new ItemType();
+		item.setItemId(itemId(id, changeKey));
+		return item;
+	}
+}
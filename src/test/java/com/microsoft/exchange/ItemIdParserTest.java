@@ -0,0 +1,131 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamSource;
+
+import org.junit.Test;
+import org.xml.sax.InputSource;
+
+import com.microsoft.exchange.exception.ExchangeItemNotFoundRuntimeException;
+import com.microsoft.exchange.exception.ExchangeRuntimeException;
+import com.microsoft.exchange.impl.ItemIdParser;
+import com.microsoft.exchange.types.FindItemParentType;
+
+public class ItemIdParserTest {
+
+	static final String NAMESPACES = "xmlns:m=\"http://schemas.microsoft.com/exchange/services/2006/messages\" xmlns:t=\"http://schemas.microsoft.com/exchange/services/2006/types\"";
+	
+	/**
+	 * An IdOnly FindItemResponse the way Exchange returns one.
+	 */
+	static String idOnlyResponse(int count, int total) {
+		StringBuilder xml = new StringBuilder("<m:FindItemResponse ").append(NAMESPACES).append("><m:ResponseMessages>");
+		xml.append("<m:FindItemResponseMessage ResponseClass=\"Success\"><m:ResponseCode>NoError</m:ResponseCode>");
+		xml.append("<m:RootFolder IndexedPagingOffset=\"").append(count).append("\" TotalItemsInView=\"").append(total)
+			.append("\" IncludesLastItemInRange=\"").append(count >= total).append("\"><t:Items>");
+		for(int i = 0; i < count; i++) {
+			xml.append("<t:CalendarItem><t:ItemId Id=\"AAMkADk0ZjU3ZmZmLTNhYjItNGFmMi05ZTkyLTkxMGI1ZDA0YzQ1NwBGAAAAAAC-item-").append(i)
+				.append("\" ChangeKey=\"DwAAABYAAAB-ck-").append(i).append("\"/></t:CalendarItem>");
+		}
+		xml.append("</t:Items></m:RootFolder></m:FindItemResponseMessage></m:ResponseMessages></m:FindItemResponse>");
+		return xml.toString();
+	}
+	
+	static class CollectingHandler implements ItemIdHandler {
+		final List<String> ids = new ArrayList<String>();
+		final List<String> changeKeys = new ArrayList<String>();
+		@Override
+		public void itemId(String id, String changeKey) {
+			ids.add(id);
+			changeKeys.add(changeKey);
+		}
+	}
+	
+	@Test
+	public void parseStream() {
+		CollectingHandler handler = new CollectingHandler();
+		FindItemParentType rootFolder = new ItemIdParser().parse(new StreamSource(new StringReader(idOnlyResponse(3, 10))), handler);
+		assertEquals(Integer.valueOf(10), rootFolder.getTotalItemsInView());
+		assertEquals(Integer.valueOf(3), rootFolder.getIndexedPagingOffset());
+		assertFalse(rootFolder.isIncludesLastItemInRange());
+		assertEquals(3, handler.ids.size());
+		assertEquals("AAMkADk0ZjU3ZmZmLTNhYjItNGFmMi05ZTkyLTkxMGI1ZDA0YzQ1NwBGAAAAAAC-item-2", handler.ids.get(2));
+		assertEquals("DwAAABYAAAB-ck-0", handler.changeKeys.get(0));
+	}
+	
+	@Test
+	public void parseDom() throws Exception {
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setNamespaceAware(true);
+		DOMSource source = new DOMSource(factory.newDocumentBuilder().parse(new InputSource(new StringReader(idOnlyResponse(4, 4)))));
+		CollectingHandler handler = new CollectingHandler();
+		FindItemParentType rootFolder = new ItemIdParser().parse(source, handler);
+		assertEquals(Integer.valueOf(4), rootFolder.getTotalItemsInView());
+		assertEquals(4, handler.ids.size());
+		assertEquals("DwAAABYAAAB-ck-3", handler.changeKeys.get(3));
+	}
+	
+	@Test
+	public void errorResponseMessage() throws Exception {
+		String xml = "<m:FindItemResponse " + NAMESPACES + "><m:ResponseMessages>"
+				+ "<m:FindItemResponseMessage ResponseClass=\"Error\"><m:MessageText>not found</m:MessageText>"
+				+ "<m:ResponseCode>ErrorItemNotFound</m:ResponseCode></m:FindItemResponseMessage></m:ResponseMessages></m:FindItemResponse>";
+		try {
+			new ItemIdParser().parse(new StreamSource(new StringReader(xml)), new CollectingHandler());
+			fail("expected ExchangeItemNotFoundRuntimeException");
+		} catch (ExchangeItemNotFoundRuntimeException e) {
+			// expected
+		}
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setNamespaceAware(true);
+		try {
+			new ItemIdParser().parse(new DOMSource(factory.newDocumentBuilder().parse(new InputSource(new StringReader(xml)))), new CollectingHandler());
+			fail("expected ExchangeItemNotFoundRuntimeException");
+		} catch (ExchangeItemNotFoundRuntimeException e) {
+			// expected
+		}
+	}
+	
+	@Test
+	public void entitiesDeclaredInDtdAreNotExpanded() {
+		String xml = "<!DOCTYPE m:FindItemResponse [<!ENTITY expanded \"expanded\">]>"
+				+ idOnlyResponse(1, 1).replace("-item-0", "&expanded;");
+		CollectingHandler handler = new CollectingHandler();
+		try {
+			new ItemIdParser().parse(new StreamSource(new StringReader(xml)), handler);
+		} catch (ExchangeRuntimeException e) {
+			// rejecting the undeclared entity is fine too
+		}
+		for(String id : handler.ids) {
+			assertTrue(!id.contains("expanded"));
+		}
+	}
+}
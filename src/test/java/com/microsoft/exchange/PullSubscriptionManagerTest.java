@@ -0,0 +1,246 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.microsoft.exchange.impl.notification.ItemChangeEvent;
+import com.microsoft.exchange.impl.notification.ItemChangeListener;
+import com.microsoft.exchange.impl.notification.PullSubscriptionManager;
+import com.microsoft.exchange.impl.retry.ExponentialBackoff;
+import com.microsoft.exchange.impl.sync.InMemorySyncStateStore;
+import com.microsoft.exchange.messages.ArrayOfResponseMessagesType;
+import com.microsoft.exchange.messages.GetEvents;
+import com.microsoft.exchange.messages.GetEventsResponse;
+import com.microsoft.exchange.messages.GetEventsResponseMessageType;
+import com.microsoft.exchange.messages.ObjectFactory;
+import com.microsoft.exchange.messages.ResponseCodeType;
+import com.microsoft.exchange.messages.Subscribe;
+import com.microsoft.exchange.messages.SubscribeResponse;
+import com.microsoft.exchange.messages.SubscribeResponseMessageType;
+import com.microsoft.exchange.types.BaseObjectChangedEventType;
+import com.microsoft.exchange.types.ItemIdType;
+import com.microsoft.exchange.types.ModifiedEventType;
+import com.microsoft.exchange.types.NotificationEventTypeType;
+import com.microsoft.exchange.types.NotificationType;
+import com.microsoft.exchange.types.ResponseClassType;
+
+public class PullSubscriptionManagerTest {
+
+	private static final String UPN = "someone@example.edu";
+	
+	private ExchangeWebServices webServices;
+	private InMemorySyncStateStore watermarkStore;
+	private RecordingListener listener;
+	private PullSubscriptionManager manager;
+	
+	@Before
+	public void setUp() {
+		webServices = mock(ExchangeWebServices.class);
+		watermarkStore = new InMemorySyncStateStore();
+		listener = new RecordingListener();
+		manager = new PullSubscriptionManager();
+		manager.setWebServices(webServices);
+		manager.setWatermarkStore(watermarkStore);
+		manager.setPoolSize(1);
+		manager.setPollIntervalMillis(20L);
+		manager.setFailureBackoff(new ExponentialBackoff(1L, 5L, Integer.MAX_VALUE));
+		manager.addListener(listener);
+		manager.afterPropertiesSet();
+	}
+	
+	@After
+	public void tearDown() {
+		manager.destroy();
+	}
+	
+	@Test
+	public void dispatchEventsAndStoreWatermark() throws InterruptedException {
+		when(webServices.subscribe(any(Subscribe.class))).thenReturn(subscribeResponse(ResponseCodeType.NO_ERROR, "sub1", "w0"));
+		when(webServices.getEvents(any(GetEvents.class))).thenReturn(
+				getEventsResponse(ResponseCodeType.NO_ERROR, true, "CreatedEvent", "item1", "w1"),
+				getEventsResponse(ResponseCodeType.NO_ERROR, false, "ModifiedEvent", "item1", "w2"),
+				getEventsResponse(ResponseCodeType.NO_ERROR, false, "StatusEvent", null, "w3"));
+		
+		assertTrue(manager.subscribe(UPN));
+		assertTrue(!manager.subscribe(UPN.toUpperCase()));
+		assertTrue(listener.events.await(5, TimeUnit.SECONDS));
+		assertEquals(NotificationEventTypeType.CREATED_EVENT, listener.received.get(0).getEventType());
+		assertEquals(NotificationEventTypeType.MODIFIED_EVENT, listener.received.get(1).getEventType());
+		assertEquals("item1", listener.received.get(1).getItemId().getId());
+		
+		ArgumentCaptor<GetEvents> captor = ArgumentCaptor.forClass(GetEvents.class);
+		verify(webServices, timeout(5000).atLeast(4)).getEvents(captor.capture());
+		List<GetEvents> requests = captor.getAllValues();
+		assertEquals("w0", requests.get(0).getWatermark());
+		assertEquals("w1", requests.get(1).getWatermark());
+		assertEquals("w2", requests.get(2).getWatermark());
+		assertEquals("w3", requests.get(3).getWatermark());
+		assertEquals("w3", watermarkStore.getSyncState(UPN, PullSubscriptionManager.WATERMARK_KEY));
+		assertEquals(1, manager.getSubscribeCount());
+	}
+	
+	@Test
+	public void resubscribeFromWatermarkWhenSubscriptionLost() {
+		watermarkStore.putSyncState(UPN, PullSubscriptionManager.WATERMARK_KEY, "stored");
+		when(webServices.subscribe(any(Subscribe.class))).thenReturn(subscribeResponse(ResponseCodeType.NO_ERROR, "sub1", "ignored"));
+		when(webServices.getEvents(any(GetEvents.class))).thenReturn(
+				getEventsResponse(ResponseCodeType.ERROR_SUBSCRIPTION_NOT_FOUND, false, null, null, null),
+				getEventsResponse(ResponseCodeType.NO_ERROR, false, "StatusEvent", null, "stored"));
+		
+		manager.subscribe(UPN);
+		ArgumentCaptor<Subscribe> captor = ArgumentCaptor.forClass(Subscribe.class);
+		verify(webServices, timeout(5000).times(2)).subscribe(captor.capture());
+		for(Subscribe request : captor.getAllValues()) {
+			assertEquals("stored", request.getPullSubscriptionRequest().getWatermark());
+		}
+		verify(webServices, timeout(5000).atLeast(2)).getEvents(any(GetEvents.class));
+		assertEquals(0, listener.missed.size());
+	}
+	
+	@Test
+	public void rejectedWatermarkStartsNewSubscription() {
+		watermarkStore.putSyncState(UPN, PullSubscriptionManager.WATERMARK_KEY, "expired");
+		when(webServices.subscribe(any(Subscribe.class))).thenReturn(
+				subscribeResponse(ResponseCodeType.ERROR_INVALID_WATERMARK, null, null),
+				subscribeResponse(ResponseCodeType.NO_ERROR, "sub2", "fresh"));
+		when(webServices.getEvents(any(GetEvents.class))).thenReturn(
+				getEventsResponse(ResponseCodeType.NO_ERROR, false, "StatusEvent", null, "fresh"));
+		
+		manager.subscribe(UPN);
+		ArgumentCaptor<Subscribe> captor = ArgumentCaptor.forClass(Subscribe.class);
+		verify(webServices, timeout(5000).times(2)).subscribe(captor.capture());
+		assertEquals("expired", captor.getAllValues().get(0).getPullSubscriptionRequest().getWatermark());
+		assertNull(captor.getAllValues().get(1).getPullSubscriptionRequest().getWatermark());
+		
+		ArgumentCaptor<GetEvents> getEvents = ArgumentCaptor.forClass(GetEvents.class);
+		verify(webServices, timeout(5000).atLeast(1)).getEvents(getEvents.capture());
+		assertEquals("sub2", getEvents.getValue().getSubscriptionId());
+		assertEquals("fresh", getEvents.getValue().getWatermark());
+		assertEquals(1, listener.missed.size());
+		// the watermark of the new subscription is saved before any event arrives
+		assertEquals("fresh", watermarkStore.getSyncState(UPN, PullSubscriptionManager.WATERMARK_KEY));
+		
+		assertTrue(manager.unsubscribe(UPN));
+		assertTrue(!manager.isSubscribed(UPN));
+		assertNull(watermarkStore.getSyncState(UPN, PullSubscriptionManager.WATERMARK_KEY));
+	}
+	
+	@Test
+	public void rejectedWatermarkIsRemovedFromStore() {
+		watermarkStore.putSyncState(UPN, PullSubscriptionManager.WATERMARK_KEY, "stored");
+		when(webServices.subscribe(any(Subscribe.class))).thenReturn(
+				subscribeResponse(ResponseCodeType.NO_ERROR, "sub1", "ignored"),
+				subscribeResponse(ResponseCodeType.ERROR_INTERNAL_SERVER_ERROR, null, null));
+		when(webServices.getEvents(any(GetEvents.class))).thenReturn(
+				getEventsResponse(ResponseCodeType.ERROR_INVALID_WATERMARK, false, null, null, null));
+		
+		manager.subscribe(UPN);
+		verify(webServices, timeout(5000).atLeast(2)).subscribe(any(Subscribe.class));
+		// a restart must not resume from the rejected watermark
+		assertNull(watermarkStore.getSyncState(UPN, PullSubscriptionManager.WATERMARK_KEY));
+		assertEquals(1, listener.missed.size());
+	}
+	
+	private static SubscribeResponse subscribeResponse(ResponseCodeType code, String subscriptionId, String watermark) {
+		SubscribeResponseMessageType message = new SubscribeResponseMessageType();
+		message.setResponseCode(code);
+		message.setResponseClass(ResponseCodeType.NO_ERROR.equals(code) ? ResponseClassType.SUCCESS : ResponseClassType.ERROR);
+		message.setSubscriptionId(subscriptionId);
+		message.setWatermark(watermark);
+		ArrayOfResponseMessagesType messages = new ArrayOfResponseMessagesType();
+		messages.getCreateItemResponseMessagesAndDeleteItemResponseMessagesAndGetItemResponseMessages().add(
+				new ObjectFactory().createArrayOfResponseMessagesTypeSubscribeResponseMessage(message));
+		SubscribeResponse response = new SubscribeResponse();
+		response.setResponseMessages(messages);
+		return response;
+	}
+	
+	private static GetEventsResponse getEventsResponse(ResponseCodeType code, boolean moreEvents, String eventName, String itemId, String watermark) {
+		GetEventsResponseMessageType message = new GetEventsResponseMessageType();
+		message.setResponseCode(code);
+		message.setResponseClass(ResponseCodeType.NO_ERROR.equals(code) ? ResponseClassType.SUCCESS : ResponseClassType.ERROR);
+		if(eventName != null) {
+			NotificationType notification = new NotificationType();
+			notification.setSubscriptionId("sub");
+			notification.setMoreEvents(moreEvents);
+			com.microsoft.exchange.types.ObjectFactory factory = new com.microsoft.exchange.types.ObjectFactory();
+			BaseObjectChangedEventType event = new BaseObjectChangedEventType();
+			event.setWatermark(watermark);
+			if(itemId != null) {
+				ItemIdType id = new ItemIdType();
+				id.setId(itemId);
+				event.setItemId(id);
+			}
+			if("CreatedEvent".equals(eventName)) {
+				notification.getCopiedEventsAndCreatedEventsAndDeletedEvents().add(factory.createNotificationTypeCreatedEvent(event));
+			} else if("StatusEvent".equals(eventName)) {
+				notification.getCopiedEventsAndCreatedEventsAndDeletedEvents().add(factory.createNotificationTypeStatusEvent(event));
+			} else {
+				ModifiedEventType modified = new ModifiedEventType();
+				modified.setWatermark(watermark);
+				modified.setItemId(event.getItemId());
+				notification.getCopiedEventsAndCreatedEventsAndDeletedEvents().add(factory.createNotificationTypeModifiedEvent(modified));
+			}
+			message.setNotification(notification);
+		}
+		ArrayOfResponseMessagesType messages = new ArrayOfResponseMessagesType();
+		messages.getCreateItemResponseMessagesAndDeleteItemResponseMessagesAndGetItemResponseMessages().add(
+				new ObjectFactory().createArrayOfResponseMessagesTypeGetEventsResponseMessage(message));
+		GetEventsResponse response = new GetEventsResponse();
+		response.setResponseMessages(messages);
+		return response;
+	}
+	
+	private static class RecordingListener implements ItemChangeListener {
+		final List<ItemChangeEvent> received = new CopyOnWriteArrayList<ItemChangeEvent>();
+		final List<String> missed = new CopyOnWriteArrayList<String>();
+		final CountDownLatch events = new CountDownLatch(2);
+		
+		@Override
+		public void onItemChanges(String upn, List<ItemChangeEvent> changes) {
+			received.addAll(changes);
+			for(int i = 0; i < changes.size(); i++) {
+				events.countDown();
+			}
+		}
+		@Override
+		public void onEventsMissed(String upn) {
+			missed.add(upn);
+		}
+	}
+}
@@ -0,0 +1,187 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.microsoft.exchange.exception.ExchangeInvalidUPNRuntimeException;
+import com.microsoft.exchange.exception.ExchangeRuntimeException;
+import com.microsoft.exchange.impl.ExchangeOnlineThrottlingPolicy;
+import com.microsoft.exchange.impl.ThreadLocalTimeZoneContextSource;
+import com.microsoft.exchange.impl.retry.DefaultRetryPolicy;
+import com.microsoft.exchange.impl.retry.ExchangeErrorClass;
+import com.microsoft.exchange.impl.retry.ExponentialBackoff;
+import com.microsoft.exchange.impl.retry.RetryExecutor;
+
+public class RetryExecutorTest {
+
+	private RetryExecutor retryExecutor;
+	
+	@Before
+	public void setUp() {
+		DefaultRetryPolicy policy = new DefaultRetryPolicy(3);
+		for(ExchangeErrorClass errorClass : new ExchangeErrorClass[] { ExchangeErrorClass.THROTTLED, ExchangeErrorClass.OTHER }) {
+			policy.setBackoff(errorClass, new ExponentialBackoff(1L, 5L, 3));
+		}
+		retryExecutor = new RetryExecutor(policy);
+		retryExecutor.setPoolSize(1);
+		retryExecutor.afterPropertiesSet();
+	}
+	
+	@After
+	public void tearDown() {
+		retryExecutor.destroy();
+	}
+	
+	@Test
+	public void retryUntilSuccess() {
+		final AtomicInteger calls = new AtomicInteger();
+		String result = retryExecutor.execute("retryUntilSuccess", new Callable<String>() {
+			@Override
+			public String call() {
+				if(calls.incrementAndGet() < 3) {
+					throw new ExchangeRuntimeException("Response[code=" + ExchangeOnlineThrottlingPolicy.ERROR_SERVER_BUSY + "]");
+				}
+				return "ok";
+			}
+		});
+		assertEquals("ok", result);
+		assertEquals(3, calls.get());
+		assertEquals(3, retryExecutor.getAttemptCount());
+		assertEquals(2, retryExecutor.getRetryCount(ExchangeErrorClass.THROTTLED));
+		assertEquals(1, retryExecutor.getSuccessCount());
+	}
+	
+	@Test
+	public void noThreadIsHeldBetweenAttempts() throws Exception {
+		DefaultRetryPolicy policy = new DefaultRetryPolicy(1);
+		policy.setBackoff(ExchangeErrorClass.THROTTLED, new ExponentialBackoff(500L, 500L, 1));
+		RetryExecutor singleThread = new RetryExecutor(policy);
+		singleThread.setPoolSize(1);
+		singleThread.afterPropertiesSet();
+		try {
+			final AtomicInteger calls = new AtomicInteger();
+			ExchangeResponseFuture<String> throttled = singleThread.submit("throttled", new Callable<String>() {
+				@Override
+				public String call() {
+					if(calls.incrementAndGet() < 2) {
+						throw new ExchangeRuntimeException("Response[code=" + ExchangeOnlineThrottlingPolicy.ERROR_SERVER_BUSY + "]");
+					}
+					return "retried";
+				}
+			});
+			while(calls.get() == 0) {
+				Thread.sleep(5L);
+			}
+			// the only thread is free to run other work while the first task waits to retry
+			ExchangeResponseFuture<String> other = singleThread.submit("other", new Callable<String>() {
+				@Override
+				public String call() {
+					return "other";
+				}
+			});
+			assertEquals("other", other.get(200L, TimeUnit.MILLISECONDS));
+			assertFalse(throttled.isDone());
+			assertEquals("retried", throttled.get(5L, TimeUnit.SECONDS));
+		} finally {
+			singleThread.destroy();
+		}
+	}
+	
+	@Test
+	public void attemptsRunWithSubmittingContext() {
+		final AtomicInteger calls = new AtomicInteger();
+		ThreadLocalTimeZoneContextSource.setTimeZoneId("Europe/Berlin");
+		try {
+			retryExecutor.execute("attemptsRunWithSubmittingContext", new Callable<String>() {
+				@Override
+				public String call() {
+					assertEquals("Europe/Berlin", ThreadLocalTimeZoneContextSource.getBoundTimeZoneId());
+					if(calls.incrementAndGet() < 2) {
+						throw new ExchangeRuntimeException("Response[code=" + ExchangeOnlineThrottlingPolicy.ERROR_SERVER_BUSY + "]");
+					}
+					return "ok";
+				}
+			});
+		} finally {
+			ThreadLocalTimeZoneContextSource.clear();
+		}
+		assertEquals(2, calls.get());
+	}
+	
+	@Test
+	public void giveUpAfterMaxRetries() {
+		final AtomicInteger calls = new AtomicInteger();
+		try {
+			retryExecutor.execute("giveUpAfterMaxRetries", new Callable<String>() {
+				@Override
+				public String call() {
+					calls.incrementAndGet();
+					throw new IllegalStateException("always");
+				}
+			});
+			fail("expected IllegalStateException");
+		} catch (IllegalStateException e) {
+			// the original exception is rethrown
+		}
+		assertEquals(4, calls.get());
+		assertEquals(3, retryExecutor.getRetryCount(ExchangeErrorClass.OTHER));
+		assertEquals(1, retryExecutor.getFailureCount());
+	}
+	
+	@Test
+	public void nonRetryableFailsImmediately() {
+		final AtomicInteger calls = new AtomicInteger();
+		try {
+			retryExecutor.execute("nonRetryableFailsImmediately", new Callable<String>() {
+				@Override
+				public String call() {
+					calls.incrementAndGet();
+					throw new ExchangeInvalidUPNRuntimeException(new RuntimeException("The impersonation principal name is invalid."));
+				}
+			});
+			fail("expected ExchangeInvalidUPNRuntimeException");
+		} catch (ExchangeInvalidUPNRuntimeException e) {
+			// expected
+		}
+		assertEquals(1, calls.get());
+		assertEquals(0, retryExecutor.getRetryCount());
+	}
+	
+	@Test
+	public void backoffIsBounded() {
+		ExponentialBackoff backoff = new ExponentialBackoff(100L, 1000L, 10);
+		for(int i = 1; i <= 10; i++) {
+			long delay = backoff.getDelay(i);
+			assertTrue(delay >= 0 && delay <= 1000L);
+		}
+		assertEquals(-1L, backoff.getDelay(11));
+	}
+}
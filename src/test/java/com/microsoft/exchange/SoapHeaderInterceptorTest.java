@@ -0,0 +1,248 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.namespace.QName;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.ws.client.support.interceptor.ClientInterceptor;
+import org.springframework.ws.context.DefaultMessageContext;
+import org.springframework.ws.context.MessageContext;
+import org.springframework.ws.soap.SoapHeaderElement;
+import org.springframework.ws.soap.SoapMessage;
+import org.springframework.ws.soap.saaj.SaajSoapMessageFactory;
+
+import com.microsoft.exchange.impl.ExchangeImpersonationClientInterceptor;
+import com.microsoft.exchange.impl.ExchangeRequestContextHolder;
+import com.microsoft.exchange.impl.MailboxTimeZoneContextSource;
+import com.microsoft.exchange.impl.RequestServerTimeZoneInterceptor;
+import com.microsoft.exchange.impl.RequestServerVersionClientInterceptor;
+import com.microsoft.exchange.impl.SoapHeaderClientInterceptor;
+import com.microsoft.exchange.impl.SoapHeaderWriter;
+import com.microsoft.exchange.impl.ThreadLocalImpersonationConnectingSIDSourceImpl;
+import com.microsoft.exchange.impl.ThreadLocalTimeZoneContextSource;
+import com.microsoft.exchange.impl.WindowsTimeZones;
+import com.microsoft.exchange.types.ConnectingSIDType;
+import com.microsoft.exchange.types.TimeZoneContext;
+
+public class SoapHeaderInterceptorTest {
+
+	private static final String TYPES_NS = "http://schemas.microsoft.com/exchange/services/2006/types";
+	
+	private static JAXBContext jaxbContext;
+	private static SaajSoapMessageFactory messageFactory;
+	
+	@BeforeClass
+	public static void setUp() throws Exception {
+		jaxbContext = JAXBContext.newInstance("com.microsoft.exchange.messages:com.microsoft.exchange.types");
+		messageFactory = new SaajSoapMessageFactory();
+		messageFactory.afterPropertiesSet();
+	}
+	
+	@Test
+	public void headersAreWrittenOnEveryRequest() throws Exception {
+		RequestServerVersionClientInterceptor version = versionInterceptor();
+		RequestServerTimeZoneInterceptor timeZone = timeZoneInterceptor();
+		ExchangeImpersonationClientInterceptor impersonation = impersonationInterceptor();
+		assertHeadersWritten(timeZone.getWindowsTimeZoneID(), version, timeZone, impersonation);
+	}
+	
+	@Test
+	public void singlePassInterceptorWritesAllHeaders() throws Exception {
+		RequestServerTimeZoneInterceptor timeZone = timeZoneInterceptor();
+		SoapHeaderClientInterceptor interceptor = new SoapHeaderClientInterceptor();
+		interceptor.setHeaderWriters(Arrays.<SoapHeaderWriter>asList(versionInterceptor(), timeZone, impersonationInterceptor()));
+		assertHeadersWritten(timeZone.getWindowsTimeZoneID(), interceptor);
+	}
+	
+	@Test
+	public void mailboxTimeZoneOverridesDefault() throws Exception {
+		assertEquals("Central Standard Time", WindowsTimeZones.getWindowsId("America/Chicago"));
+		assertEquals("Central Standard Time", WindowsTimeZones.toWindowsId("Central Standard Time"));
+		assertNull(WindowsTimeZones.toWindowsId("Not/AZone"));
+		
+		MailboxTimeZoneContextSource source = new MailboxTimeZoneContextSource();
+		source.setMailboxTimeZones(Collections.singletonMap("Chicago@example.edu", "America/Chicago"));
+		RequestServerTimeZoneInterceptor timeZone = timeZoneInterceptor();
+		timeZone.setTimeZoneContextSource(source);
+		
+		// 2014-01-15T18:00:00Z
+		Date instant = new Date(1389808800000L);
+		try {
+			source.bindTimeZone("chicago@example.edu");
+			assertEquals("Central Standard Time", timeZoneDefinitionId(timeZone, "chicago@example.edu"));
+			// the dates of the request use the same time zone as its header
+			assertEquals("2014-01-15T12:00:00.000", DateHelp.convertDateToXMLGregorianCalendar(instant).toXMLFormat());
+			
+			source.bindTimeZone("someone@example.edu");
+			assertEquals(timeZone.getWindowsTimeZoneID(), timeZoneDefinitionId(timeZone, "someone@example.edu"));
+		} finally {
+			ThreadLocalTimeZoneContextSource.clear();
+		}
+	}
+	
+	@Test
+	public void requestContextTimeZonesAreIndependentPerThread() throws Exception {
+		final RequestServerTimeZoneInterceptor timeZone = timeZoneInterceptor();
+		// 2014-01-15T18:00:00Z
+		final Date instant = new Date(1389808800000L);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			List<Future<String[]>> results = new ArrayList<Future<String[]>>();
+			for(final String timeZoneId : new String[] { "America/Chicago", "Asia/Tokyo" }) {
+				results.add(executor.submit(new Callable<String[]>() {
+					@Override
+					public String[] call() throws Exception {
+						ExchangeRequestContextHolder.bind(ExchangeRequestContext.forPrincipalName("someone@example.edu").withTimeZoneId(timeZoneId));
+						try {
+							assertEquals(timeZoneId, ExchangeRequestContextHolder.capture().getTimeZoneId());
+							MessageContext messageContext = new DefaultMessageContext(messageFactory);
+							timeZone.handleRequest(messageContext);
+							SoapHeaderElement element = ((SoapMessage) messageContext.getRequest()).getSoapHeader().examineAllHeaderElements().next();
+							TimeZoneContext context = (TimeZoneContext) jaxbContext.createUnmarshaller().unmarshal(element.getSource());
+							return new String[] { context.getTimeZoneDefinition().getId(), 
+									DateHelp.convertDateToXMLGregorianCalendar(instant).toXMLFormat() };
+						} finally {
+							ExchangeRequestContextHolder.clear();
+						}
+					}
+				}));
+			}
+			assertEquals("Central Standard Time", results.get(0).get()[0]);
+			assertEquals("2014-01-15T12:00:00.000", results.get(0).get()[1]);
+			assertEquals("Tokyo Standard Time", results.get(1).get()[0]);
+			assertEquals("2014-01-16T03:00:00.000", results.get(1).get()[1]);
+		} finally {
+			executor.shutdownNow();
+		}
+		assertEquals(timeZone.getWindowsTimeZoneID(), timeZoneDefinitionId(timeZone, "someone@example.edu"));
+	}
+	
+	@Test
+	public void defaultTimeZoneIsResolvedOnlyWhenItChanges() throws Exception {
+		String defaultTimeZoneId = ThreadLocalTimeZoneContextSource.getDefaultTimeZoneId();
+		java.util.TimeZone jvmTimeZone = java.util.TimeZone.getDefault();
+		com.ibm.icu.util.TimeZone icuTimeZone = com.ibm.icu.util.TimeZone.getDefault();
+		try {
+			ThreadLocalTimeZoneContextSource.setDefaultTimeZoneId(null);
+			com.ibm.icu.util.TimeZone.setDefault(com.ibm.icu.util.TimeZone.getTimeZone("America/Denver"));
+			ThreadLocalTimeZoneContextSource.defaultTimeZoneChanged();
+			RequestServerTimeZoneInterceptor timeZone = timeZoneInterceptor();
+			assertEquals("Mountain Standard Time", timeZone.getWindowsTimeZoneID());
+			assertTrue(timeZone.isTimeZoneValid());
+			
+			// the default is not looked up again until it is reported as changed
+			com.ibm.icu.util.TimeZone.setDefault(com.ibm.icu.util.TimeZone.getTimeZone("Asia/Tokyo"));
+			assertTrue(timeZone.isTimeZoneValid());
+			ThreadLocalTimeZoneContextSource.defaultTimeZoneChanged();
+			assertFalse(timeZone.isTimeZoneValid());
+			
+			ThreadLocalTimeZoneContextSource.setDefaultTimeZoneId("America/Denver");
+			assertTrue(timeZone.isTimeZoneValid());
+			assertEquals("Mountain Standard Time", timeZoneDefinitionId(timeZone, "someone@example.edu"));
+		} finally {
+			com.ibm.icu.util.TimeZone.setDefault(icuTimeZone);
+			java.util.TimeZone.setDefault(jvmTimeZone);
+			ThreadLocalTimeZoneContextSource.setDefaultTimeZoneId(defaultTimeZoneId);
+		}
+	}
+	
+	private String timeZoneDefinitionId(RequestServerTimeZoneInterceptor timeZone, String upn) throws Exception {
+		ConnectingSIDType connectingSID = new ConnectingSIDType();
+		connectingSID.setPrincipalName(upn);
+		ThreadLocalImpersonationConnectingSIDSourceImpl.setConnectingSID(connectingSID);
+		try {
+			MessageContext messageContext = new DefaultMessageContext(messageFactory);
+			timeZone.handleRequest(messageContext);
+			SoapHeaderElement element = ((SoapMessage) messageContext.getRequest()).getSoapHeader().examineAllHeaderElements().next();
+			TimeZoneContext context = (TimeZoneContext) jaxbContext.createUnmarshaller().unmarshal(element.getSource());
+			return context.getTimeZoneDefinition().getId();
+		} finally {
+			ThreadLocalImpersonationConnectingSIDSourceImpl.clear();
+		}
+	}
+	
+	static RequestServerVersionClientInterceptor versionInterceptor() {
+		RequestServerVersionClientInterceptor version = new RequestServerVersionClientInterceptor();
+		version.setJaxbContext(jaxbContext);
+		return version;
+	}
+	
+	static RequestServerTimeZoneInterceptor timeZoneInterceptor() throws Exception {
+		RequestServerTimeZoneInterceptor timeZone = new RequestServerTimeZoneInterceptor();
+		timeZone.setJaxbContext(jaxbContext);
+		timeZone.afterPropertiesSet();
+		return timeZone;
+	}
+	
+	static ExchangeImpersonationClientInterceptor impersonationInterceptor() {
+		ExchangeImpersonationClientInterceptor impersonation = new ExchangeImpersonationClientInterceptor();
+		impersonation.setJaxbContext(jaxbContext);
+		impersonation.setConnectingSIDSource(new ThreadLocalImpersonationConnectingSIDSourceImpl());
+		return impersonation;
+	}
+	
+	private void assertHeadersWritten(String windowsTimeZoneID, ClientInterceptor... interceptors) throws Exception {
+		for(String upn : new String[] { "first@example.edu", "second@example.edu" }) {
+			ConnectingSIDType connectingSID = new ConnectingSIDType();
+			connectingSID.setPrincipalName(upn);
+			ThreadLocalImpersonationConnectingSIDSourceImpl.setConnectingSID(connectingSID);
+			try {
+				MessageContext messageContext = new DefaultMessageContext(messageFactory);
+				for(ClientInterceptor interceptor : interceptors) {
+					interceptor.handleRequest(messageContext);
+				}
+				
+				SoapMessage request = (SoapMessage) messageContext.getRequest();
+				Iterator<SoapHeaderElement> elements = request.getSoapHeader().examineAllHeaderElements();
+				assertEquals(new QName(TYPES_NS, "RequestServerVersion"), elements.next().getName());
+				assertEquals(new QName(TYPES_NS, "TimeZoneContext"), elements.next().getName());
+				assertEquals(new QName(TYPES_NS, "ExchangeImpersonation"), elements.next().getName());
+				assertFalse(elements.hasNext());
+				
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				request.writeTo(out);
+				String xml = out.toString("UTF-8");
+				assertTrue(xml, xml.contains(windowsTimeZoneID));
+				assertTrue(xml, xml.contains(upn));
+			} finally {
+				ThreadLocalImpersonationConnectingSIDSourceImpl.clear();
+			}
+		}
+	}
+}
@@ -0,0 +1,150 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamSource;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xml.sax.InputSource;
+
+import com.microsoft.exchange.exception.ExchangeExceededFindCountLimitRuntimeException;
+import com.microsoft.exchange.exception.ExchangeRuntimeException;
+import com.microsoft.exchange.impl.StreamingItemParser;
+import com.microsoft.exchange.types.CalendarItemType;
+import com.microsoft.exchange.types.FindItemParentType;
+import com.microsoft.exchange.types.ItemType;
+
+public class StreamingItemParserTest {
+
+	private static final String NAMESPACES = "xmlns:m=\"http://schemas.microsoft.com/exchange/services/2006/messages\" xmlns:t=\"http://schemas.microsoft.com/exchange/services/2006/types\"";
+	
+	private static JAXBContext jaxbContext;
+	
+	@BeforeClass
+	public static void createContext() throws Exception {
+		jaxbContext = JAXBContext.newInstance("com.microsoft.exchange.messages:com.microsoft.exchange.types");
+	}
+	
+	static String findItemResponse(int count) {
+		StringBuilder xml = new StringBuilder("<m:FindItemResponse ").append(NAMESPACES).append("><m:ResponseMessages>");
+		xml.append("<m:FindItemResponseMessage ResponseClass=\"Success\"><m:ResponseCode>NoError</m:ResponseCode>");
+		xml.append("<m:RootFolder TotalItemsInView=\"").append(count).append("\" IncludesLastItemInRange=\"true\"><t:Items>");
+		for(int i = 0; i < count; i++) {
+			xml.append("<t:CalendarItem><t:ItemId Id=\"item-").append(i).append("\" ChangeKey=\"ck\"/><t:Subject>meeting ").append(i).append("</t:Subject></t:CalendarItem>");
+		}
+		xml.append("</t:Items></m:RootFolder></m:FindItemResponseMessage></m:ResponseMessages></m:FindItemResponse>");
+		return xml.toString();
+	}
+	
+	static class CollectingHandler implements ItemTypeHandler {
+		final List<ItemType> items = new ArrayList<ItemType>();
+		int batches;
+		@Override
+		public void handle(Collection<? extends ItemType> batch) {
+			batches++;
+			items.addAll(batch);
+		}
+	}
+	
+	@Test
+	public void parseStream() {
+		StreamingItemParser parser = new StreamingItemParser(jaxbContext);
+		parser.setBatchSize(2);
+		CollectingHandler handler = new CollectingHandler();
+		FindItemParentType rootFolder = parser.parse(new StreamSource(new StringReader(findItemResponse(5))), handler);
+		
+		assertEquals(Integer.valueOf(5), rootFolder.getTotalItemsInView());
+		assertTrue(rootFolder.isIncludesLastItemInRange());
+		assertNull(rootFolder.getItems());
+		assertEquals(3, handler.batches);
+		assertEquals(5, handler.items.size());
+		for(int i = 0; i < 5; i++) {
+			ItemType item = handler.items.get(i);
+			assertTrue(item instanceof CalendarItemType);
+			assertEquals("item-" + i, item.getItemId().getId());
+			assertEquals("meeting " + i, item.getSubject());
+		}
+	}
+	
+	@Test
+	public void parseDom() throws Exception {
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setNamespaceAware(true);
+		DOMSource source = new DOMSource(factory.newDocumentBuilder().parse(new InputSource(new StringReader(findItemResponse(3)))).getDocumentElement());
+		
+		CollectingHandler handler = new CollectingHandler();
+		FindItemParentType rootFolder = new StreamingItemParser(jaxbContext).parse(source, handler);
+		assertEquals(Integer.valueOf(3), rootFolder.getTotalItemsInView());
+		assertEquals(3, handler.items.size());
+		assertEquals("item-2", handler.items.get(2).getItemId().getId());
+	}
+	
+	@Test
+	public void errorResponseMessage() {
+		String xml = "<m:FindItemResponse " + NAMESPACES + "><m:ResponseMessages>"
+				+ "<m:FindItemResponseMessage ResponseClass=\"Error\"><m:MessageText>too many</m:MessageText>"
+				+ "<m:ResponseCode>ErrorExceededFindCountLimit</m:ResponseCode><m:DescriptiveLinkKey>0</m:DescriptiveLinkKey>"
+				+ "</m:FindItemResponseMessage></m:ResponseMessages></m:FindItemResponse>";
+		try {
+			new StreamingItemParser(jaxbContext).parse(new StreamSource(new StringReader(xml)), new CollectingHandler());
+			fail("expected ExchangeExceededFindCountLimitRuntimeException");
+		} catch (ExchangeExceededFindCountLimitRuntimeException e) {
+			// expected
+		}
+	}
+	
+	@Test
+	public void externalEntitiesAreNotResolved() throws Exception {
+		File secret = File.createTempFile("secret", ".txt");
+		secret.deleteOnExit();
+		FileWriter writer = new FileWriter(secret);
+		try {
+			writer.write("secret");
+		} finally {
+			writer.close();
+		}
+		String xml = "<!DOCTYPE m:FindItemResponse [<!ENTITY xxe SYSTEM \"" + secret.toURI() + "\">]>"
+				+ findItemResponse(1).replace("meeting 0", "&xxe;");
+		CollectingHandler handler = new CollectingHandler();
+		try {
+			new StreamingItemParser(jaxbContext).parse(new StreamSource(new StringReader(xml)), handler);
+		} catch (ExchangeRuntimeException e) {
+			// rejecting the undeclared entity is fine too
+		}
+		for(ItemType item : handler.items) {
+			assertTrue(item.getSubject() == null || !item.getSubject().contains("secret"));
+		}
+	}
+}
@@ -0,0 +1,141 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.microsoft.exchange.exception.ExchangeRuntimeException;
+import com.microsoft.exchange.impl.ExchangeOnlineThrottlingPolicy;
+import com.microsoft.exchange.impl.throttle.AdaptiveConcurrencyLimiter;
+import com.microsoft.exchange.impl.throttle.ThrottlingGovernor;
+
+public class ThrottlingGovernorTest {
+
+	@Test
+	public void limiterIncreasesAndDecreases() throws InterruptedException {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 4, 0.5);
+		assertTrue(limiter.acquire(0, TimeUnit.MILLISECONDS));
+		assertTrue(limiter.acquire(0, TimeUnit.MILLISECONDS));
+		assertFalse(limiter.acquire(10, TimeUnit.MILLISECONDS));
+		
+		for(int i = 0; i < 10; i++) {
+			limiter.onSuccess();
+		}
+		assertEquals(4, limiter.getLimit());
+		
+		limiter.onThrottled(0);
+		assertEquals(2, limiter.getLimit());
+		limiter.onThrottled(0);
+		limiter.onThrottled(0);
+		assertEquals(1, limiter.getLimit());
+	}
+	
+	@Test
+	public void backOffPausesLimiter() throws InterruptedException {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 4, 0.5);
+		limiter.onThrottled(60000L);
+		assertTrue(limiter.isPaused());
+		assertFalse(limiter.acquire(10, TimeUnit.MILLISECONDS));
+	}
+	
+	@Test
+	public void serverBusyShrinksUserLimit() {
+		ThrottlingGovernor governor = new ThrottlingGovernor();
+		governor.setUserInitialLimit(4);
+		ExchangeRequestContext context = ExchangeRequestContext.forPrincipalName("Someone@example.edu");
+		
+		ThrottlingGovernor.Permit first = governor.acquire(context);
+		ThrottlingGovernor.Permit second = governor.acquire(context);
+		AdaptiveConcurrencyLimiter userLimiter = governor.getUserLimiter("someone@example.edu");
+		assertEquals(2, userLimiter.getInFlight());
+		
+		governor.release(first, null, new ExchangeRuntimeException("Response[code=" + ExchangeOnlineThrottlingPolicy.ERROR_SERVER_BUSY + "]"));
+		assertEquals(2, userLimiter.getLimit());
+		assertEquals(ExchangeOnlineThrottlingPolicy.MAX_CONCURRENT_CONNECTIONS_IMPERSONATION, 
+				governor.getAccountLimiter(ThrottlingGovernor.DEFAULT_ACCOUNT).getLimit());
+		
+		governor.release(second, new Object(), null);
+		assertEquals(0, userLimiter.getInFlight());
+		assertEquals(0, governor.getAccountLimiter(ThrottlingGovernor.DEFAULT_ACCOUNT).getInFlight());
+		
+		// releasing twice has no effect
+		governor.release(second, new Object(), null);
+		assertEquals(0, governor.getAccountLimiter(ThrottlingGovernor.DEFAULT_ACCOUNT).getInFlight());
+	}
+	
+	@Test
+	public void userLimiterKeepsGrownLimitBetweenSerialRequests() {
+		ThrottlingGovernor governor = new ThrottlingGovernor();
+		AdaptiveConcurrencyLimiter limiter = null;
+		for(int i = 0; i < 10; i++) {
+			ThrottlingGovernor.Permit permit = governor.acquire(ExchangeRequestContext.forPrincipalName("someone@example.edu"));
+			governor.release(permit, new Object(), null);
+			if(limiter == null) {
+				limiter = governor.getUserLimiter("someone@example.edu");
+			}
+			assertSame(limiter, governor.getUserLimiter("someone@example.edu"));
+		}
+		assertTrue(limiter.getLimit() > governor.getUserInitialLimit());
+	}
+	
+	@Test
+	public void retiredUserLimiterIsReplaced() {
+		ThrottlingGovernor governor = new ThrottlingGovernor();
+		governor.release(governor.acquire(ExchangeRequestContext.forPrincipalName("someone@example.edu")), new Object(), null);
+		AdaptiveConcurrencyLimiter evicted = governor.getUserLimiter("someone@example.edu");
+		
+		// retired after a request looked it up, but before it acquired a permit
+		assertTrue(evicted.retireIfIdle(0L));
+		ThrottlingGovernor.Permit permit = governor.acquire(ExchangeRequestContext.forPrincipalName("someone@example.edu"));
+		assertEquals(0, evicted.getInFlight());
+		AdaptiveConcurrencyLimiter replacement = governor.getUserLimiter("someone@example.edu");
+		assertNotSame(evicted, replacement);
+		assertEquals(1, replacement.getInFlight());
+		governor.release(permit, new Object(), null);
+	}
+	
+	@Test
+	public void throttledUserLimiterIsEvictedOnceIdle() throws InterruptedException {
+		ThrottlingGovernor governor = new ThrottlingGovernor();
+		governor.setIdleTimeoutMillis(50);
+		ThrottlingGovernor.Permit permit = governor.acquire(ExchangeRequestContext.forPrincipalName("someone@example.edu"));
+		governor.release(permit, null, new ExchangeRuntimeException("Response[code=" + ExchangeOnlineThrottlingPolicy.ERROR_SERVER_BUSY + "]"));
+		AdaptiveConcurrencyLimiter limiter = governor.getUserLimiter("someone@example.edu");
+		assertNotNull(limiter);
+		assertEquals(1, limiter.getLimit());
+		
+		// still recently used
+		assertEquals(0, governor.evictIdleLimiters());
+		assertSame(limiter, governor.getUserLimiter("someone@example.edu"));
+		
+		Thread.sleep(100);
+		assertEquals(1, governor.evictIdleLimiters());
+		assertNull(governor.getUserLimiter("someone@example.edu"));
+	}
+}
@@ -0,0 +1,83 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Random;
+import java.util.TimeZone;
+
+import javax.xml.datatype.DatatypeConstants;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import org.junit.Test;
+
+/**
+ * Compares {@link XmlDateTimes} with the {@link GregorianCalendar} based conversions it replaces.
+ */
+public class XmlDateTimesTest {
+
+	private static final String[] ZONES = { "UTC", "America/Chicago", "Asia/Kolkata", "Australia/Lord_Howe", "Pacific/Chatham", "Europe/London" };
+	
+	@Test
+	public void matchesGregorianCalendarConversion() throws Exception {
+		DatatypeFactory factory = DatatypeFactory.newInstance();
+		Random random = new Random(42);
+		for(String id : ZONES) {
+			TimeZone zone = TimeZone.getTimeZone(id);
+			for(int i = 0; i < 2000; i++) {
+				// 1900 through 2100
+				Date date = new Date(-2208988800000L + (long) (random.nextDouble() * 6311433600000L));
+				GregorianCalendar calendar = new GregorianCalendar(zone);
+				calendar.setTime(date);
+				XMLGregorianCalendar expected = factory.newXMLGregorianCalendar(calendar);
+				
+				XMLGregorianCalendar actual = XmlDateTimes.toXMLGregorianCalendar(date, zone, true);
+				assertEquals(expected.toXMLFormat(), actual.toXMLFormat());
+				assertEquals(expected.toXMLFormat(), XmlDateTimes.formatDateTime(date, zone, true));
+				assertEquals(expected.toGregorianCalendar().getTime(), XmlDateTimes.toDate(actual, null));
+				
+				expected.setTimezone(DatatypeConstants.FIELD_UNDEFINED);
+				assertEquals(expected.toXMLFormat(), XmlDateTimes.formatDateTime(date, zone, false));
+				assertEquals(expected.toGregorianCalendar(zone, null, null).getTime(), XmlDateTimes.toDate(expected, zone));
+			}
+		}
+	}
+	
+	@Test
+	public void localTimeWithoutOffset() {
+		TimeZone chicago = TimeZone.getTimeZone("America/Chicago");
+		// 2014-01-15T18:00:00Z
+		Date date = new Date(1389808800000L);
+		XMLGregorianCalendar local = XmlDateTimes.toXMLGregorianCalendar(date, chicago, false);
+		assertEquals("2014-01-15T12:00:00.000", local.toXMLFormat());
+		assertEquals(date, XmlDateTimes.toDate(local, chicago));
+		assertEquals("2014-01-15T18:00:00.000Z", XmlDateTimes.formatDateTime(date));
+		assertEquals("2014-01-15T12:00:00.000-06:00", XmlDateTimes.formatDateTime(date, chicago, true));
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void ambiguousLocalTimeIsRejected() {
+		// 2013-11-03T06:30:00Z is 01:30 CST, the second 01:30 that day in Chicago
+		XmlDateTimes.toXMLGregorianCalendar(new Date(1383460200000L), TimeZone.getTimeZone("America/Chicago"), false);
+	}
+}
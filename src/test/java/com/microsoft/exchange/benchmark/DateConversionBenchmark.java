@@ -0,0 +1,155 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.benchmark;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import javax.xml.datatype.DatatypeConstants;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import net.fortuna.ical4j.model.DateTime;
+
+import org.junit.Test;
+
+import com.microsoft.exchange.DateHelp;
+import com.microsoft.exchange.XmlDateTimes;
+
+/**
+ * Per-date cost of converting to and from xs:dateTime: the previous {@link DateHelp} implementation 
+ * (a DatatypeFactory lookup, an ical4j DateTime and two GregorianCalendars per call), against {@link DateHelp} 
+ * over {@link XmlDateTimes} and the {@link XmlDateTimes} text writer.
+ * 
+ * Not run by the build (see the surefire excludes); run it directly, e.g.
+ * mvn test -Dtest=DateConversionBenchmark
+ */
+public class DateConversionBenchmark {
+
+	private static final int DATES = 1000;
+	private static final int ITERATIONS = 200;
+	private static final int WARMUP = 50;
+	
+	interface Operation {
+		int run(Date date) throws Exception;
+	}
+	
+	@Test
+	public void compare() throws Exception {
+		final Date[] dates = new Date[DATES];
+		// one every 7 hours from 2014-01-01T00:00:00Z, across both daylight saving time transitions
+		for(int i = 0; i < DATES; i++) {
+			dates[i] = new Date(1388534400000L + i * 7 * 3600000L);
+		}
+		final TimeZone chicago = TimeZone.getTimeZone("America/Chicago");
+		final XMLGregorianCalendar utc = DatatypeFactory.newInstance().newXMLGregorianCalendar(2014, 1, 15, 18, 0, 0, 0, 0);
+		
+		measure("previous DateHelp", dates, new Operation() {
+			@Override
+			public int run(Date date) throws Exception {
+				DateTime dt = new DateTime(date);
+				GregorianCalendar calendar = new GregorianCalendar();
+				calendar.setTimeInMillis(dt.getTime());
+				XMLGregorianCalendar xmlDate = DatatypeFactory.newInstance().newXMLGregorianCalendar(calendar);
+				xmlDate.setTimezone(DatatypeConstants.FIELD_UNDEFINED);
+				long msDiff = Math.abs(xmlDate.toGregorianCalendar().getTime().getTime() - date.getTime());
+				return msDiff < 1000 ? xmlDate.getHour() : -1;
+			}
+		});
+		measure("DateHelp", dates, new Operation() {
+			@Override
+			public int run(Date date) throws Exception {
+				return DateHelp.convertDateToXMLGregorianCalendar(date).getHour();
+			}
+		});
+		measure("previous DateHelp, with zone", dates, new Operation() {
+			@Override
+			public int run(Date date) throws Exception {
+				DateTime dt = new DateTime(date);
+				GregorianCalendar calendar = new GregorianCalendar();
+				calendar.setTimeInMillis(dt.getTime());
+				calendar.setTimeZone(chicago);
+				XMLGregorianCalendar xmlDate = DatatypeFactory.newInstance().newXMLGregorianCalendar(calendar);
+				long msDiff = Math.abs(xmlDate.toGregorianCalendar().getTime().getTime() - date.getTime());
+				return msDiff < 1000 ? xmlDate.getHour() : -1;
+			}
+		});
+		measure("DateHelp, with zone", dates, new Operation() {
+			@Override
+			public int run(Date date) throws Exception {
+				return DateHelp.convertDateToXMLGregorianCalendar(date, chicago).getHour();
+			}
+		});
+		measure("XMLGregorianCalendar#toXMLFormat", dates, new Operation() {
+			@Override
+			public int run(Date date) throws Exception {
+				GregorianCalendar calendar = new GregorianCalendar(chicago);
+				calendar.setTime(date);
+				return DatatypeFactory.newInstance().newXMLGregorianCalendar(calendar).toXMLFormat().length();
+			}
+		});
+		measure("XmlDateTimes#formatDateTime", dates, new Operation() {
+			@Override
+			public int run(Date date) throws Exception {
+				return XmlDateTimes.formatDateTime(date, chicago, true).length();
+			}
+		});
+		measure("SimpleDateFormat per call", dates, new Operation() {
+			@Override
+			public int run(Date date) throws Exception {
+				return new SimpleDateFormat("yyyyMMdd-HHmm").format(date).length();
+			}
+		});
+		measure("toGregorianCalendar().getTime()", dates, new Operation() {
+			@Override
+			public int run(Date date) throws Exception {
+				return (int) utc.toGregorianCalendar().getTime().getTime();
+			}
+		});
+		measure("DateHelp#convertXMLGregorianCalendarToDate", dates, new Operation() {
+			@Override
+			public int run(Date date) throws Exception {
+				return (int) DateHelp.convertXMLGregorianCalendarToDate(utc).getTime();
+			}
+		});
+	}
+	
+	static void measure(String name, Date[] dates, Operation operation) throws Exception {
+		int check = 0;
+		for(int i = 0; i < WARMUP; i++) {
+			for(Date date : dates) {
+				check += operation.run(date);
+			}
+		}
+		long allocatedBefore = ItemIdParserBenchmark.allocatedBytes();
+		long start = System.nanoTime();
+		for(int i = 0; i < ITERATIONS; i++) {
+			for(Date date : dates) {
+				check += operation.run(date);
+			}
+		}
+		long elapsed = System.nanoTime() - start;
+		long allocated = ItemIdParserBenchmark.allocatedBytes() - allocatedBefore;
+		long operations = (long) ITERATIONS * dates.length;
+		System.out.println(String.format("%-44s %8.3f us/op %8d bytes/op (check %d)", 
+				name, elapsed / 1000.0 / operations, allocated / operations, check));
+	}
+}
@@ -0,0 +1,125 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.transform.stream.StreamSource;
+
+import org.junit.Test;
+
+import com.microsoft.exchange.ItemIdHandler;
+import com.microsoft.exchange.impl.ExchangeResponseUtilsImpl;
+import com.microsoft.exchange.impl.ItemIdParser;
+import com.microsoft.exchange.messages.FindItemResponse;
+
+/**
+ * Compares {@link ItemIdParser} with unmarshalling an IdOnly FindItemResponse and calling
+ * {@link ExchangeResponseUtilsImpl#parseFindItemIdResponse(FindItemResponse)}.
+ * 
+ * Not run by the build (see the surefire excludes); run it directly, e.g.
+ * mvn test -Dtest=ItemIdParserBenchmark
+ */
+public class ItemIdParserBenchmark {
+
+	private static final String NAMESPACES = "xmlns:m=\"http://schemas.microsoft.com/exchange/services/2006/messages\" xmlns:t=\"http://schemas.microsoft.com/exchange/services/2006/types\"";
+	private static final int ITEMS = 1000;
+	private static final int WARMUP = 200;
+	private static final int ITERATIONS = 1000;
+	
+	static byte[] idOnlyResponse(int count) throws UnsupportedEncodingException {
+		StringBuilder xml = new StringBuilder("<m:FindItemResponse ").append(NAMESPACES).append("><m:ResponseMessages>");
+		xml.append("<m:FindItemResponseMessage ResponseClass=\"Success\"><m:ResponseCode>NoError</m:ResponseCode>");
+		xml.append("<m:RootFolder IndexedPagingOffset=\"").append(count).append("\" TotalItemsInView=\"").append(count)
+			.append("\" IncludesLastItemInRange=\"true\"><t:Items>");
+		for(int i = 0; i < count; i++) {
+			xml.append("<t:CalendarItem><t:ItemId Id=\"AAMkADk0ZjU3ZmZmLTNhYjItNGFmMi05ZTkyLTkxMGI1ZDA0YzQ1NwBGAAAAAAC").append(i)
+				.append("\" ChangeKey=\"DwAAABYAAAB").append(i).append("\"/></t:CalendarItem>");
+		}
+		xml.append("</t:Items></m:RootFolder></m:FindItemResponseMessage></m:ResponseMessages></m:FindItemResponse>");
+		return xml.toString().getBytes("UTF-8");
+	}
+	
+	interface Operation {
+		int run() throws Exception;
+	}
+	
+	@Test
+	public void compare() throws Exception {
+		final byte[] response = idOnlyResponse(ITEMS);
+		JAXBContext jaxbContext = JAXBContext.newInstance("com.microsoft.exchange.messages:com.microsoft.exchange.types");
+		final Unmarshaller unmarshaller = jaxbContext.createUnmarshaller();
+		final ExchangeResponseUtilsImpl responseUtils = new ExchangeResponseUtilsImpl();
+		final ItemIdParser parser = new ItemIdParser();
+		
+		measure("jaxb + parseFindItemIdResponse", new Operation() {
+			@Override
+			public int run() throws Exception {
+				FindItemResponse findItemResponse = (FindItemResponse) unmarshaller.unmarshal(new ByteArrayInputStream(response));
+				return responseUtils.parseFindItemIdResponse(findItemResponse).getLeft().size();
+			}
+		});
+		measure("ItemIdParser", new Operation() {
+			@Override
+			public int run() throws Exception {
+				final Set<String> ids = new HashSet<String>();
+				parser.parse(new StreamSource(new ByteArrayInputStream(response)), new ItemIdHandler() {
+					@Override
+					public void itemId(String id, String changeKey) {
+						ids.add(id);
+					}
+				});
+				return ids.size();
+			}
+		});
+	}
+	
+	static void measure(String name, Operation operation) throws Exception {
+		int check = 0;
+		for(int i = 0; i < WARMUP; i++) {
+			check += operation.run();
+		}
+		long allocatedBefore = allocatedBytes();
+		long start = System.nanoTime();
+		for(int i = 0; i < ITERATIONS; i++) {
+			check += operation.run();
+		}
+		long elapsed = System.nanoTime() - start;
+		long allocated = allocatedBytes() - allocatedBefore;
+		System.out.println(String.format("%-32s %8.1f us/op %10d bytes/op (%d items, check %d)", 
+				name, elapsed / 1000.0 / ITERATIONS, allocated / ITERATIONS, ITEMS, check));
+	}
+	
+	/**
+	 * @return bytes allocated by the current thread, or 0 where the JVM does not report it
+	 */
+	static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0L;
+	}
+}
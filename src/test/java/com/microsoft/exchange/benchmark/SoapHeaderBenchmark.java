@@ -0,0 +1,144 @@
+/**
+ * See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Board of Regents of the University of Wisconsin System
+ * licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a
+ * copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.microsoft.exchange.benchmark;
+
+import java.util.Arrays;
+
+import javax.xml.bind.JAXBContext;
+
+import org.junit.Test;
+import org.springframework.ws.context.DefaultMessageContext;
+import org.springframework.ws.context.MessageContext;
+import org.springframework.ws.soap.SoapHeader;
+import org.springframework.ws.soap.SoapMessage;
+import org.springframework.ws.soap.saaj.SaajSoapMessageFactory;
+
+import com.ibm.icu.util.TimeZone;
+import com.microsoft.exchange.impl.ExchangeImpersonationClientInterceptor;
+import com.microsoft.exchange.impl.RequestServerTimeZoneInterceptor;
+import com.microsoft.exchange.impl.RequestServerVersionClientInterceptor;
+import com.microsoft.exchange.impl.SoapHeaderClientInterceptor;
+import com.microsoft.exchange.impl.SoapHeaderWriter;
+import com.microsoft.exchange.impl.ThreadLocalImpersonationConnectingSIDSourceImpl;
+import com.microsoft.exchange.types.ConnectingSIDType;
+import com.microsoft.exchange.types.ExchangeImpersonation;
+import com.microsoft.exchange.types.RequestServerVersion;
+import com.microsoft.exchange.types.TimeZoneContext;
+import com.microsoft.exchange.types.TimeZoneDefinitionType;
+
+/**
+ * Per-request cost of writing the ExchangeImpersonation, RequestServerVersion and TimeZoneContext headers:
+ * three interceptors that each look up the header and create a JAXB Marshaller (as before), 
+ * against one {@link SoapHeaderClientInterceptor} over the prepared and pooled header writers.
+ * The cost of creating the message itself is measured separately.
+ * 
+ * Not run by the build (see the surefire excludes); run it directly, e.g.
+ * mvn test -Dtest=SoapHeaderBenchmark
+ */
+public class SoapHeaderBenchmark {
+
+	private static final int ITERATIONS = 20000;
+	private static final int WARMUP = 5000;
+	
+	interface Operation {
+		int run() throws Exception;
+	}
+	
+	@Test
+	public void compare() throws Exception {
+		final JAXBContext jaxbContext = JAXBContext.newInstance("com.microsoft.exchange.messages:com.microsoft.exchange.types");
+		final SaajSoapMessageFactory messageFactory = new SaajSoapMessageFactory();
+		messageFactory.afterPropertiesSet();
+		
+		RequestServerVersionClientInterceptor version = new RequestServerVersionClientInterceptor();
+		version.setJaxbContext(jaxbContext);
+		final RequestServerTimeZoneInterceptor timeZone = new RequestServerTimeZoneInterceptor();
+		timeZone.setJaxbContext(jaxbContext);
+		timeZone.afterPropertiesSet();
+		ExchangeImpersonationClientInterceptor impersonation = new ExchangeImpersonationClientInterceptor();
+		impersonation.setJaxbContext(jaxbContext);
+		impersonation.setConnectingSIDSource(new ThreadLocalImpersonationConnectingSIDSourceImpl());
+		final SoapHeaderClientInterceptor interceptor = new SoapHeaderClientInterceptor();
+		interceptor.setHeaderWriters(Arrays.<SoapHeaderWriter>asList(version, timeZone, impersonation));
+		
+		final ConnectingSIDType connectingSID = new ConnectingSIDType();
+		connectingSID.setPrincipalName("someone@example.edu");
+		ThreadLocalImpersonationConnectingSIDSourceImpl.setConnectingSID(connectingSID);
+		try {
+			measure("message only", new Operation() {
+				@Override
+				public int run() throws Exception {
+					MessageContext messageContext = new DefaultMessageContext(messageFactory);
+					return ((SoapMessage) messageContext.getRequest()).getSoapHeader() != null ? 1 : 0;
+				}
+			});
+			measure("3 interceptors, new Marshaller", new Operation() {
+				@Override
+				public int run() throws Exception {
+					MessageContext messageContext = new DefaultMessageContext(messageFactory);
+					
+					SoapHeader header = ((SoapMessage) messageContext.getRequest()).getEnvelope().getHeader();
+					jaxbContext.createMarshaller().marshal(new RequestServerVersion(), header.getResult());
+					
+					header = ((SoapMessage) messageContext.getRequest()).getEnvelope().getHeader();
+					// the per-request time zone check
+					if(!timeZone.getWindowsTimeZoneID().equals(TimeZone.getWindowsID(TimeZone.getDefault().getID()))) {
+						throw new IllegalStateException();
+					}
+					TimeZoneContext tzc = new TimeZoneContext();
+					TimeZoneDefinitionType timeZoneDef = new TimeZoneDefinitionType();
+					timeZoneDef.setId(timeZone.getWindowsTimeZoneID());
+					tzc.setTimeZoneDefinition(timeZoneDef);
+					jaxbContext.createMarshaller().marshal(tzc, header.getResult());
+					
+					header = ((SoapMessage) messageContext.getRequest()).getEnvelope().getHeader();
+					ExchangeImpersonation exchangeImpersonation = new ExchangeImpersonation();
+					exchangeImpersonation.setConnectingSID(ThreadLocalImpersonationConnectingSIDSourceImpl.getCurrentConnectingSID());
+					jaxbContext.createMarshaller().marshal(exchangeImpersonation, header.getResult());
+					return 1;
+				}
+			});
+			measure("SoapHeaderClientInterceptor", new Operation() {
+				@Override
+				public int run() throws Exception {
+					MessageContext messageContext = new DefaultMessageContext(messageFactory);
+					return interceptor.handleRequest(messageContext) ? 1 : 0;
+				}
+			});
+		} finally {
+			ThreadLocalImpersonationConnectingSIDSourceImpl.clear();
+		}
+	}
+	
+	static void measure(String name, Operation operation) throws Exception {
+		int check = 0;
+		for(int i = 0; i < WARMUP; i++) {
+			check += operation.run();
+		}
+		long allocatedBefore = ItemIdParserBenchmark.allocatedBytes();
+		long start = System.nanoTime();
+		for(int i = 0; i < ITERATIONS; i++) {
+			check += operation.run();
+		}
+		long elapsed = System.nanoTime() - start;
+		long allocated = ItemIdParserBenchmark.allocatedBytes() - allocatedBefore;
+		System.out.println(String.format("%-32s %8.1f us/op %10d bytes/op (check %d)", 
+				name, elapsed / 1000.0 / ITERATIONS, allocated / ITERATIONS, check));
+	}
+}